@@ -0,0 +1,39 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Main class of the benchmark jar. This is the JMH command line (see
+ * {@code -h}), which also reports the allocation rate with the GC
+ * profiler and the peak RSS with {@link PeakRssProfiler}.
+ *
+ * <p>For instance, to only run the hash and match phases on the Java
+ * corpus of 10M tokens:
+ * <pre>
+ * java -jar pmd-benchmark/target/pmd-benchmarks.jar 'CpdPhaseBenchmark.(hash|match)' -p language=java -p totalTokens=10000000
+ * </pre>
+ */
+public final class CpdBenchmarks {
+
+    private CpdBenchmarks() {
+        // main class
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>();
+        jmhArgs.add("-prof");
+        jmhArgs.add("gc");
+        jmhArgs.add("-prof");
+        jmhArgs.add(PeakRssProfiler.class.getName());
+        jmhArgs.addAll(Arrays.asList(args));
+        Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
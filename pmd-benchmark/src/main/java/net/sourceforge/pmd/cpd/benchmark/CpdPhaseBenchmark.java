@@ -0,0 +1,245 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.cpd.CPDConfiguration;
+import net.sourceforge.pmd.cpd.CPDReport;
+import net.sourceforge.pmd.cpd.CPDReportRenderer;
+import net.sourceforge.pmd.cpd.CpdCapableLanguage;
+import net.sourceforge.pmd.cpd.CpdLexer;
+import net.sourceforge.pmd.cpd.CpdPhases;
+import net.sourceforge.pmd.cpd.Match;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+/**
+ * Measures each phase of CPD separately on a {@linkplain SyntheticCorpusGenerator generated corpus},
+ * through {@link CpdPhases}:
+ * <ul>
+ *     <li>tokenize: lexing all files, the files are already in memory;</li>
+ *     <li>hash: grouping the tokens by the hash of the following tokens;</li>
+ *     <li>match: finding the matches in the hash groups, and sorting them;</li>
+ *     <li>render: writing the report in a given format, the output is discarded.</li>
+ * </ul>
+ *
+ * <p>The primary result is the number of runs of the phase per second, and
+ * the secondary result "tokens" is the throughput in tokens per second.
+ * Allocation rate and peak RSS are reported by the profilers added by
+ * {@link CpdBenchmarks}.
+ *
+ * <p>The corpus is generated into the directory given by the system
+ * property {@value #CORPUS_DIR_PROPERTY}, or {@code target/cpd-corpus},
+ * and reused by the next runs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class CpdPhaseBenchmark {
+
+    static final String CORPUS_DIR_PROPERTY = "pmd.benchmark.corpusDir";
+
+    @Benchmark
+    public CpdPhases.Tokenized tokenize(Corpus corpus, TokenCounter counter) throws IOException {
+        CpdPhases.Tokenized tokenized = corpus.phases.tokenize();
+        counter.tokens += tokenized.size();
+        return tokenized;
+    }
+
+    @Benchmark
+    public CpdPhases.Hashed hash(Tokenized tokenized, TokenCounter counter) {
+        counter.tokens += tokenized.tokens.size();
+        return tokenized.corpus.phases.hash(tokenized.tokens, tokenized.minimumTileSize, tokenized.threads);
+    }
+
+    @Benchmark
+    public List<Match> match(Hashed hashed, TokenCounter counter) {
+        counter.tokens += hashed.tokenized.tokens.size();
+        return hashed.tokenized.corpus.phases.match(hashed.hashed);
+    }
+
+    @Benchmark
+    public long render(Rendered rendered, TokenCounter counter) throws IOException {
+        CountingWriter writer = new CountingWriter();
+        rendered.renderer.render(rendered.report, writer);
+        counter.tokens += rendered.tokenized.tokens.size();
+        return writer.count;
+    }
+
+    /** The files of the corpus, loaded in memory. */
+    @State(Scope.Benchmark)
+    public static class Corpus {
+
+        @Param({"1000000", "10000000", "50000000"})
+        public long totalTokens;
+
+        @Param({"java", "cpp", "python", "kotlin"})
+        public String language;
+
+        @Param("0.2")
+        public double duplicationRatio;
+
+        @Param("EXPONENTIAL")
+        public SyntheticCorpusGenerator.CloneLengthDistribution cloneLengthDistribution;
+
+        @Param("1")
+        public long seed;
+
+        CpdPhases phases;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            CPDConfiguration configuration = new CPDConfiguration();
+            Language lang = configuration.getLanguageRegistry().getLanguageById(language);
+            if (!(lang instanceof CpdCapableLanguage)) {
+                throw new IllegalStateException("Language " + language + " is not on the classpath");
+            }
+            CpdLexer cpdLexer = ((CpdCapableLanguage) lang).createCpdLexer(configuration.getLanguageProperties(lang));
+
+            List<Path> paths = new SyntheticCorpusGenerator(language)
+                .setTotalTokens(totalTokens)
+                .setDuplicationRatio(duplicationRatio)
+                .setCloneLengthDistribution(cloneLengthDistribution)
+                .setSeed(seed)
+                .generateCached(Paths.get(System.getProperty(CORPUS_DIR_PROPERTY, "target/cpd-corpus")));
+            List<TextFile> files = new ArrayList<>(paths.size());
+            for (Path path : paths) {
+                files.add(TextFile.forPath(path, StandardCharsets.UTF_8, lang.getDefaultVersion()));
+            }
+            // the documents are kept in memory, so that reading the files is not measured
+            phases = new CpdPhases(cpdLexer, files);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            phases.close();
+        }
+    }
+
+    /** The tokens of the corpus. */
+    @State(Scope.Benchmark)
+    public static class Tokenized {
+
+        @Param("100")
+        public int minimumTileSize;
+
+        @Param("1")
+        public int threads;
+
+        Corpus corpus;
+        CpdPhases.Tokenized tokens;
+
+        @Setup(Level.Trial)
+        public void setUp(Corpus corpus) throws IOException {
+            this.corpus = corpus;
+            tokens = corpus.phases.tokenize();
+        }
+    }
+
+    /** The hash groups of the tokens, which the match phase only reads. */
+    @State(Scope.Benchmark)
+    public static class Hashed {
+
+        Tokenized tokenized;
+        CpdPhases.Hashed hashed;
+
+        @Setup(Level.Trial)
+        public void setUp(Tokenized tokenized) {
+            this.tokenized = tokenized;
+            hashed = tokenized.corpus.phases.hash(tokenized.tokens, tokenized.minimumTileSize, tokenized.threads);
+        }
+    }
+
+    /** The report to render. */
+    @State(Scope.Benchmark)
+    public static class Rendered {
+
+        @Param({"text", "xml", "csv", "vs"})
+        public String format;
+
+        Tokenized tokenized;
+        CPDReport report;
+        CPDReportRenderer renderer;
+
+        @Setup(Level.Trial)
+        public void setUp(Tokenized tokenized) {
+            this.tokenized = tokenized;
+            CpdPhases phases = tokenized.corpus.phases;
+            List<Match> matches = phases.match(phases.hash(tokenized.tokens, tokenized.minimumTileSize, tokenized.threads));
+            report = phases.report(tokenized.tokens, matches);
+            CPDConfiguration configuration = new CPDConfiguration();
+            configuration.setSourceEncoding(StandardCharsets.UTF_8);
+            configuration.setRendererName(format);
+            renderer = configuration.getCPDReportRenderer();
+        }
+    }
+
+    /**
+     * Counts the tokens processed by an iteration. These are operations,
+     * so JMH divides them by the time of the iteration, like the primary
+     * result. Events would be reported as a raw count per iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class TokenCounter {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    /** Discards the report, but counts its characters so that rendering cannot be optimized away. */
+    private static final class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+            // nothing to do
+        }
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+    }
+}
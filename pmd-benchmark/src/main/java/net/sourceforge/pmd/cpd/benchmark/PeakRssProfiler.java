@@ -0,0 +1,70 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * Reports the peak resident set size of the benchmark JVM, as the
+ * secondary result "rss.peak". The peak is the high water mark since
+ * the start of the fork, so it includes the setup of the benchmark,
+ * e.g. the tokens that are kept for the hash and match phases.
+ *
+ * <p>This reads {@code /proc/self/status}, so it only reports something on Linux.
+ */
+public class PeakRssProfiler implements InternalProfiler {
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    @Override
+    public String getDescription() {
+        return "Peak resident set size of the JVM (Linux only)";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        // the peak is tracked by the OS
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+        long peakKb = readPeakRssKb();
+        if (peakKb < 0) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new ScalarResult("rss.peak", peakKb / 1024.0, "MB", AggregationPolicy.MAX));
+    }
+
+    private static long readPeakRssKb() {
+        if (!Files.isReadable(PROC_STATUS)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS, StandardCharsets.UTF_8)) {
+                // eg "VmHWM:	  123456 kB"
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // not reported
+        }
+        return -1;
+    }
+}
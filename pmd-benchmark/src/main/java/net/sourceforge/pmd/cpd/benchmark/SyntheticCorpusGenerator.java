@@ -0,0 +1,734 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates a corpus of source files to run CPD on. The corpus only
+ * depends on the parameters of the generator, including the seed, so
+ * that benchmark results can be compared between runs and machines.
+ *
+ * <p>The code is made of functions with random identifiers and literals,
+ * so that it only contains the duplications that were generated on
+ * purpose. A {@linkplain #setDuplicationRatio(double) part} of the tokens
+ * are in clone groups: the same function body, repeated 2 to 4 times in
+ * different files under different function names. The length of the
+ * clones follows a {@link CloneLengthDistribution}.
+ *
+ * <p>The number of tokens is counted while generating, it is close to
+ * (but not exactly) the number of tokens CPD reads for the files.
+ */
+public class SyntheticCorpusGenerator {
+
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final int MIN_UNIQUE_FUNCTION_TOKENS = 30;
+    private static final int MAX_UNIQUE_FUNCTION_TOKENS = 300;
+    private static final int MAX_BLOCK_DEPTH = 3;
+
+    private final Dialect dialect;
+    private long totalTokens = 1_000_000;
+    private int fileCount = -1;
+    private double duplicationRatio = 0.2;
+    private int minCloneTokens = 100;
+    private int maxCloneTokens = 1000;
+    private CloneLengthDistribution cloneLengthDistribution = CloneLengthDistribution.EXPONENTIAL;
+    private long seed = 1;
+
+    /**
+     * Creates a generator for the given language.
+     *
+     * @param languageId One of {@link #getSupportedLanguages()}
+     *
+     * @throws IllegalArgumentException If the language is not supported
+     */
+    public SyntheticCorpusGenerator(String languageId) {
+        this.dialect = Dialect.forLanguage(languageId);
+    }
+
+    /** Returns the ids of the languages the generator can write. */
+    public static List<String> getSupportedLanguages() {
+        return Collections.unmodifiableList(Dialect.LANGUAGES);
+    }
+
+    public String getLanguageId() {
+        return dialect.languageId;
+    }
+
+    /** Sets the approximate number of tokens of the whole corpus. */
+    public SyntheticCorpusGenerator setTotalTokens(long totalTokens) {
+        if (totalTokens <= 0) {
+            throw new IllegalArgumentException("Total tokens must be positive: " + totalTokens);
+        }
+        this.totalTokens = totalTokens;
+        return this;
+    }
+
+    /**
+     * Sets the number of files. By default, there is one file every
+     * 5000 tokens.
+     */
+    public SyntheticCorpusGenerator setFileCount(int fileCount) {
+        if (fileCount <= 0) {
+            throw new IllegalArgumentException("File count must be positive: " + fileCount);
+        }
+        this.fileCount = fileCount;
+        return this;
+    }
+
+    public int getFileCount() {
+        return fileCount > 0 ? fileCount : (int) Math.max(1, totalTokens / 5000);
+    }
+
+    /** Sets the part of the tokens that are in a clone, between 0 and 1. */
+    public SyntheticCorpusGenerator setDuplicationRatio(double duplicationRatio) {
+        if (duplicationRatio < 0 || duplicationRatio > 1) {
+            throw new IllegalArgumentException("Duplication ratio must be between 0 and 1: " + duplicationRatio);
+        }
+        this.duplicationRatio = duplicationRatio;
+        return this;
+    }
+
+    /** Sets the bounds of the length of a clone, in tokens. */
+    public SyntheticCorpusGenerator setCloneTokens(int minCloneTokens, int maxCloneTokens) {
+        if (minCloneTokens <= 0 || maxCloneTokens < minCloneTokens) {
+            throw new IllegalArgumentException("Invalid clone length bounds: " + minCloneTokens + ", " + maxCloneTokens);
+        }
+        this.minCloneTokens = minCloneTokens;
+        this.maxCloneTokens = maxCloneTokens;
+        return this;
+    }
+
+    public SyntheticCorpusGenerator setCloneLengthDistribution(CloneLengthDistribution cloneLengthDistribution) {
+        this.cloneLengthDistribution = cloneLengthDistribution;
+        return this;
+    }
+
+    public SyntheticCorpusGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Returns a name that identifies the corpus generated with the
+     * current parameters.
+     */
+    public String getCorpusKey() {
+        return String.format(Locale.ROOT, "%s-%d-%d-%.3f-%d-%d-%s-%d",
+                             dialect.languageId, totalTokens, getFileCount(), duplicationRatio,
+                             minCloneTokens, maxCloneTokens,
+                             cloneLengthDistribution.name().toLowerCase(Locale.ROOT), seed);
+    }
+
+    /**
+     * Returns the files of the corpus in a subdirectory of the given
+     * directory named after the {@linkplain #getCorpusKey() key} of the
+     * corpus. The corpus is only generated if it was not generated
+     * completely there before.
+     *
+     * @param cacheDir Directory that contains the generated corpora
+     *
+     * @return The files of the corpus, in the order they were generated
+     *
+     * @throws IOException If the files cannot be read or written
+     */
+    public List<Path> generateCached(Path cacheDir) throws IOException {
+        Path dir = cacheDir.resolve(getCorpusKey());
+        if (Files.exists(dir.resolve(COMPLETE_MARKER))) {
+            try (Stream<Path> files = Files.list(dir)) {
+                return files.filter(f -> f.getFileName().toString().endsWith(dialect.extension))
+                            .sorted()
+                            .collect(Collectors.toList());
+            }
+        }
+        List<Path> files = generate(dir);
+        Files.createFile(dir.resolve(COMPLETE_MARKER));
+        return files;
+    }
+
+    /**
+     * Writes the corpus into the given directory.
+     *
+     * @param dir Directory, created if it does not exist
+     *
+     * @return The files of the corpus, in the order they were generated
+     *
+     * @throws IOException If the files cannot be written
+     */
+    public List<Path> generate(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(seed);
+        int numFiles = getFileCount();
+        long tokensPerFile = Math.max(1, totalTokens / numFiles);
+        String fileNameFormat = "Unit%0" + String.valueOf(numFiles - 1).length() + "d";
+
+        List<Path> files = new ArrayList<>(numFiles);
+        List<Body> pendingCopies = new ArrayList<>();
+        long emittedTokens = 0;
+        long duplicatedTokens = 0;
+        for (int i = 0; i < numFiles; i++) {
+            String unitName = String.format(Locale.ROOT, fileNameFormat, i);
+            CodeWriter out = new CodeWriter();
+            dialect.fileStart(out, unitName);
+            boolean lastFile = i == numFiles - 1;
+            while (out.tokenCount < tokensPerFile || lastFile && !pendingCopies.isEmpty()) {
+                long before = out.tokenCount;
+                if (lastFile && out.tokenCount >= tokensPerFile) {
+                    // flush the remaining copies, so that all clone groups have at least two copies
+                    writeCopy(out, pendingCopies.remove(pendingCopies.size() - 1), random);
+                } else if (duplicatedTokens < duplicationRatio * (emittedTokens + out.tokenCount + 1)) {
+                    if (pendingCopies.isEmpty()) {
+                        pendingCopies.addAll(newCloneGroup(random));
+                    }
+                    writeCopy(out, pendingCopies.remove(random.nextInt(pendingCopies.size())), random);
+                } else {
+                    int length = MIN_UNIQUE_FUNCTION_TOKENS + random.nextInt(MAX_UNIQUE_FUNCTION_TOKENS - MIN_UNIQUE_FUNCTION_TOKENS);
+                    writeFunction(out, randomFunctionName(random), generateBody(random, length));
+                    continue;
+                }
+                duplicatedTokens += out.tokenCount - before;
+            }
+            dialect.fileEnd(out);
+            emittedTokens += out.tokenCount;
+
+            Path file = dir.resolve(unitName + dialect.extension);
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.append(out.text);
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private List<Body> newCloneGroup(Random random) {
+        int length = cloneLengthDistribution.next(random, minCloneTokens, maxCloneTokens);
+        int copies = 2 + random.nextInt(3);
+        return Collections.nCopies(copies, generateBody(random, length));
+    }
+
+    private void writeCopy(CodeWriter out, Body body, Random random) {
+        // each copy has its own name, only the body is duplicated
+        writeFunction(out, randomFunctionName(random), body);
+    }
+
+    private void writeFunction(CodeWriter out, String name, Body body) {
+        dialect.functionStart(out, name, "a");
+        out.indent++;
+        out.append(body.code);
+        dialect.returnStatement(out, body.result);
+        out.indent--;
+        dialect.functionEnd(out);
+    }
+
+    /**
+     * Generates the statements of a function with about the given number
+     * of tokens. The function has a single int parameter named "a".
+     */
+    private Body generateBody(Random random, int length) {
+        CodeWriter out = new CodeWriter();
+        String prefix = randomIdentifier(random);
+        List<String> locals = new ArrayList<>();
+        locals.add(prefix + 0);
+        dialect.declare(out, prefix + 0, "a", "+", String.valueOf(random.nextInt(1000)));
+        int depth = 0;
+        while (out.tokenCount < length) {
+            int choice = random.nextInt(10);
+            if (choice < 3 && depth == 0) {
+                String local = prefix + locals.size();
+                dialect.declare(out, local, pick(random, locals), randomOperator(random), randomOperand(random, locals));
+                locals.add(local);
+            } else if (choice < 6) {
+                dialect.assign(out, pick(random, locals), pick(random, locals), randomOperator(random), randomOperand(random, locals));
+            } else if (choice < 7) {
+                dialect.call(out, random.nextInt(Dialect.CALLEES), pick(random, locals));
+            } else if (choice < 9 && depth < MAX_BLOCK_DEPTH) {
+                if (choice == 7) {
+                    dialect.ifStart(out, pick(random, locals), String.valueOf(random.nextInt(1000)));
+                } else {
+                    dialect.loopStart(out, prefix + "i" + out.tokenCount, pick(random, locals));
+                }
+                out.indent++;
+                depth++;
+                // blocks are never empty
+                dialect.assign(out, pick(random, locals), pick(random, locals), randomOperator(random), randomOperand(random, locals));
+            } else if (depth > 0) {
+                out.indent--;
+                depth--;
+                dialect.blockEnd(out);
+            } else {
+                dialect.call(out, random.nextInt(Dialect.CALLEES), pick(random, locals));
+            }
+        }
+        while (depth-- > 0) {
+            out.indent--;
+            dialect.blockEnd(out);
+        }
+        return new Body(out, pick(random, locals));
+    }
+
+    private static String pick(Random random, List<String> names) {
+        return names.get(random.nextInt(names.size()));
+    }
+
+    private static String randomOperand(Random random, List<String> locals) {
+        return random.nextBoolean() ? pick(random, locals) : String.valueOf(random.nextInt(1000));
+    }
+
+    private static String randomOperator(Random random) {
+        switch (random.nextInt(4)) {
+        case 0: return "+";
+        case 1: return "-";
+        case 2: return "*";
+        default: return "^";
+        }
+    }
+
+    private static String randomFunctionName(Random random) {
+        return "f" + randomIdentifier(random);
+    }
+
+    private static String randomIdentifier(Random random) {
+        return "v" + Integer.toString(random.nextInt(Integer.MAX_VALUE), Character.MAX_RADIX) + "_";
+    }
+
+    /**
+     * Generates a corpus from the command line, for instance to run the
+     * CLI on it. Run without arguments to print the usage.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println("Usage: SyntheticCorpusGenerator [--language " + String.join("|", Dialect.LANGUAGES) + "]"
+                                   + " [--tokens n] [--files n] [--duplication ratio] [--min-clone n] [--max-clone n]"
+                                   + " [--distribution uniform|exponential] [--seed n] <output directory>");
+            System.exit(1);
+        }
+        String language = "java";
+        for (int i = 0; i < args.length - 1; i += 2) {
+            if ("--language".equals(args[i])) {
+                language = args[i + 1];
+            }
+        }
+        SyntheticCorpusGenerator generator = new SyntheticCorpusGenerator(language);
+        int minClone = generator.minCloneTokens;
+        int maxClone = generator.maxCloneTokens;
+        for (int i = 0; i < args.length - 1; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--language":
+                break;
+            case "--tokens":
+                generator.setTotalTokens(Long.parseLong(value));
+                break;
+            case "--files":
+                generator.setFileCount(Integer.parseInt(value));
+                break;
+            case "--duplication":
+                generator.setDuplicationRatio(Double.parseDouble(value));
+                break;
+            case "--min-clone":
+                minClone = Integer.parseInt(value);
+                break;
+            case "--max-clone":
+                maxClone = Integer.parseInt(value);
+                break;
+            case "--distribution":
+                generator.setCloneLengthDistribution(CloneLengthDistribution.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "--seed":
+                generator.setSeed(Long.parseLong(value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        generator.setCloneTokens(minClone, maxClone);
+        List<Path> files = generator.generate(Paths.get(args[args.length - 1]));
+        System.err.println("Generated " + files.size() + " files");
+    }
+
+    /** How the length of a clone is chosen between the bounds. */
+    public enum CloneLengthDistribution {
+        /** All lengths are equally likely. */
+        UNIFORM {
+            @Override
+            int next(Random random, int min, int max) {
+                return min + random.nextInt(max - min + 1);
+            }
+        },
+        /**
+         * Short clones are the most frequent, as in real code. The mean
+         * length is a quarter of the way between the bounds.
+         */
+        EXPONENTIAL {
+            @Override
+            int next(Random random, int min, int max) {
+                double length = -Math.log(1 - random.nextDouble()) * (max - min) / 4;
+                return min + (int) Math.min(max - min, length);
+            }
+        };
+
+        abstract int next(Random random, int min, int max);
+    }
+
+    private static final class Body {
+        final CodeWriter code;
+        final String result;
+
+        Body(CodeWriter code, String result) {
+            this.code = code;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Accumulates lines of code and counts their tokens. Each line is
+     * given as its tokens.
+     */
+    static final class CodeWriter {
+        private final StringBuilder text = new StringBuilder();
+        private long tokenCount;
+        private int indent;
+
+        void line(String... tokens) {
+            for (int i = 0; i < indent; i++) {
+                text.append("    ");
+            }
+            for (int i = 0; i < tokens.length; i++) {
+                if (i > 0 && needsSpace(tokens[i - 1], tokens[i])) {
+                    text.append(' ');
+                }
+                text.append(tokens[i]);
+            }
+            text.append('\n');
+            tokenCount += tokens.length;
+        }
+
+        private static boolean needsSpace(String previous, String token) {
+            switch (token) {
+            case ")": case ";": case ",": case ".": case ":": case "++":
+                return false;
+            case "(":
+                return "if".equals(previous) || "for".equals(previous);
+            default:
+                return !"(".equals(previous) && !".".equals(previous);
+            }
+        }
+
+        /** Appends the code of the other writer, indented at the current level. */
+        void append(CodeWriter other) {
+            StringBuilder prefix = new StringBuilder();
+            for (int i = 0; i < indent; i++) {
+                prefix.append("    ");
+            }
+            int start = 0;
+            while (start < other.text.length()) {
+                int end = other.text.indexOf("\n", start) + 1;
+                text.append(prefix).append(other.text, start, end);
+                start = end;
+            }
+            tokenCount += other.tokenCount;
+        }
+
+        long getTokenCount() {
+            return tokenCount;
+        }
+    }
+
+    /** Syntax of a language. */
+    private abstract static class Dialect {
+        static final List<String> LANGUAGES = Collections.unmodifiableList(Arrays.asList("java", "cpp", "python", "kotlin"));
+        static final int CALLEES = 3;
+
+        final String languageId;
+        final String extension;
+
+        Dialect(String languageId, String extension) {
+            this.languageId = languageId;
+            this.extension = extension;
+        }
+
+        static Dialect forLanguage(String languageId) {
+            switch (languageId) {
+            case "java": return new JavaDialect();
+            case "cpp": return new CppDialect();
+            case "python": return new PythonDialect();
+            case "kotlin": return new KotlinDialect();
+            default:
+                throw new IllegalArgumentException("Unsupported language '" + languageId + "', expected one of " + LANGUAGES);
+            }
+        }
+
+        abstract void fileStart(CodeWriter out, String unitName);
+
+        abstract void fileEnd(CodeWriter out);
+
+        abstract void functionStart(CodeWriter out, String name, String param);
+
+        abstract void functionEnd(CodeWriter out);
+
+        abstract void returnStatement(CodeWriter out, String value);
+
+        abstract void declare(CodeWriter out, String local, String left, String operator, String right);
+
+        abstract void assign(CodeWriter out, String local, String left, String operator, String right);
+
+        /** Calls one of the {@link #CALLEES} library functions with a single argument. */
+        abstract void call(CodeWriter out, int callee, String argument);
+
+        abstract void ifStart(CodeWriter out, String local, String bound);
+
+        abstract void loopStart(CodeWriter out, String index, String bound);
+
+        abstract void blockEnd(CodeWriter out);
+    }
+
+    /** Java and C++ only differ by their top-level declarations. */
+    private abstract static class CFamilyDialect extends Dialect {
+
+        CFamilyDialect(String languageId, String extension) {
+            super(languageId, extension);
+        }
+
+        @Override
+        void functionEnd(CodeWriter out) {
+            out.line("}");
+        }
+
+        @Override
+        void returnStatement(CodeWriter out, String value) {
+            out.line("return", value, ";");
+        }
+
+        @Override
+        void declare(CodeWriter out, String local, String left, String operator, String right) {
+            out.line("int", local, "=", left, operator, right, ";");
+        }
+
+        @Override
+        void assign(CodeWriter out, String local, String left, String operator, String right) {
+            out.line(local, "=", left, operator, right, ";");
+        }
+
+        @Override
+        void ifStart(CodeWriter out, String local, String bound) {
+            out.line("if", "(", local, ">", bound, ")", "{");
+        }
+
+        @Override
+        void loopStart(CodeWriter out, String index, String bound) {
+            out.line("for", "(", "int", index, "=", "0", ";", index, "<", bound, ";", index, "++", ")", "{");
+        }
+
+        @Override
+        void blockEnd(CodeWriter out) {
+            out.line("}");
+        }
+    }
+
+    private static final class JavaDialect extends CFamilyDialect {
+
+        JavaDialect() {
+            super("java", ".java");
+        }
+
+        @Override
+        void fileStart(CodeWriter out, String unitName) {
+            out.line("package", "bench", ";");
+            out.line("public", "class", unitName, "{");
+            out.indent++;
+        }
+
+        @Override
+        void fileEnd(CodeWriter out) {
+            out.indent--;
+            out.line("}");
+        }
+
+        @Override
+        void functionStart(CodeWriter out, String name, String param) {
+            out.line("static", "int", name, "(", "int", param, ")", "{");
+        }
+
+        @Override
+        void call(CodeWriter out, int callee, String argument) {
+            String[] names = {"abs", "signum", "bitCount"};
+            String owner = callee == 0 ? "Math" : "Integer";
+            out.line(owner, ".", names[callee], "(", argument, ")", ";");
+        }
+    }
+
+    private static final class CppDialect extends CFamilyDialect {
+
+        CppDialect() {
+            super("cpp", ".cpp");
+        }
+
+        @Override
+        void fileStart(CodeWriter out, String unitName) {
+            out.line("#include <cstdlib>");
+            out.line("namespace", unitName, "{");
+        }
+
+        @Override
+        void fileEnd(CodeWriter out) {
+            out.line("}");
+        }
+
+        @Override
+        void functionStart(CodeWriter out, String name, String param) {
+            out.line("int", name, "(", "int", param, ")", "{");
+        }
+
+        @Override
+        void call(CodeWriter out, int callee, String argument) {
+            String[] names = {"abs", "labs", "srand"};
+            out.line("std", "::", names[callee], "(", argument, ")", ";");
+        }
+    }
+
+    private static final class PythonDialect extends Dialect {
+
+        PythonDialect() {
+            super("python", ".py");
+        }
+
+        @Override
+        void fileStart(CodeWriter out, String unitName) {
+            out.line("import", "math");
+        }
+
+        @Override
+        void fileEnd(CodeWriter out) {
+            // nothing to close
+        }
+
+        @Override
+        void functionStart(CodeWriter out, String name, String param) {
+            out.line("def", name, "(", param, ")", ":");
+        }
+
+        @Override
+        void functionEnd(CodeWriter out) {
+            // the end of the indentation closes the function
+        }
+
+        @Override
+        void returnStatement(CodeWriter out, String value) {
+            out.line("return", value);
+        }
+
+        @Override
+        void declare(CodeWriter out, String local, String left, String operator, String right) {
+            assign(out, local, left, operator, right);
+        }
+
+        @Override
+        void assign(CodeWriter out, String local, String left, String operator, String right) {
+            out.line(local, "=", left, operator, right);
+        }
+
+        @Override
+        void call(CodeWriter out, int callee, String argument) {
+            String[] names = {"abs", "bin", "hex"};
+            out.line(names[callee], "(", argument, ")");
+        }
+
+        @Override
+        void ifStart(CodeWriter out, String local, String bound) {
+            out.line("if", local, ">", bound, ":");
+        }
+
+        @Override
+        void loopStart(CodeWriter out, String index, String bound) {
+            out.line("for", index, "in", "range", "(", bound, ")", ":");
+        }
+
+        @Override
+        void blockEnd(CodeWriter out) {
+            // the end of the indentation closes the block
+        }
+    }
+
+    private static final class KotlinDialect extends Dialect {
+
+        KotlinDialect() {
+            super("kotlin", ".kt");
+        }
+
+        @Override
+        void fileStart(CodeWriter out, String unitName) {
+            out.line("package", "bench");
+            out.line("import", "kotlin", ".", "math", ".", "abs");
+        }
+
+        @Override
+        void fileEnd(CodeWriter out) {
+            // top-level functions only
+        }
+
+        @Override
+        void functionStart(CodeWriter out, String name, String param) {
+            out.line("fun", name, "(", param, ":", "Int", ")", ":", "Int", "{");
+        }
+
+        @Override
+        void functionEnd(CodeWriter out) {
+            out.line("}");
+        }
+
+        @Override
+        void returnStatement(CodeWriter out, String value) {
+            out.line("return", value);
+        }
+
+        @Override
+        void declare(CodeWriter out, String local, String left, String operator, String right) {
+            out.line("var", local, "=", left, kotlinOperator(operator), right);
+        }
+
+        @Override
+        void assign(CodeWriter out, String local, String left, String operator, String right) {
+            out.line(local, "=", left, kotlinOperator(operator), right);
+        }
+
+        private static String kotlinOperator(String operator) {
+            return "^".equals(operator) ? "xor" : operator;
+        }
+
+        @Override
+        void call(CodeWriter out, int callee, String argument) {
+            String[] names = {"println", "print", "abs"};
+            out.line(names[callee], "(", argument, ")");
+        }
+
+        @Override
+        void ifStart(CodeWriter out, String local, String bound) {
+            out.line("if", "(", local, ">", bound, ")", "{");
+        }
+
+        @Override
+        void loopStart(CodeWriter out, String index, String bound) {
+            out.line("for", "(", index, "in", "0", "until", bound, ")", "{");
+        }
+
+        @Override
+        void blockEnd(CodeWriter out) {
+            out.line("}");
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.cpd.CPDConfiguration;
+import net.sourceforge.pmd.cpd.CPDReport;
+import net.sourceforge.pmd.cpd.CpdAnalysis;
+import net.sourceforge.pmd.cpd.Mark;
+import net.sourceforge.pmd.cpd.Match;
+
+class SyntheticCorpusGeneratorTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private SyntheticCorpusGenerator javaGenerator(double duplicationRatio) {
+        return new SyntheticCorpusGenerator("java")
+            .setTotalTokens(200_000)
+            .setFileCount(20)
+            .setDuplicationRatio(duplicationRatio)
+            .setCloneTokens(50, 300);
+    }
+
+    @Test
+    void testSameSeedSameCorpus() throws IOException {
+        List<Path> first = javaGenerator(0.2).generate(tempDir.resolve("first"));
+        List<Path> second = javaGenerator(0.2).generate(tempDir.resolve("second"));
+        List<Path> otherSeed = javaGenerator(0.2).setSeed(2).generate(tempDir.resolve("third"));
+
+        assertEquals(20, first.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getFileName(), second.get(i).getFileName());
+            assertEquals(readString(first.get(i)), readString(second.get(i)));
+        }
+        assertNotEquals(readString(first.get(0)), readString(otherSeed.get(0)));
+    }
+
+    @Test
+    void testCachedCorpusIsReused() throws IOException {
+        SyntheticCorpusGenerator generator = javaGenerator(0.2);
+        List<Path> generated = generator.generateCached(tempDir);
+        Files.write(generated.get(0), new byte[0]);
+
+        assertEquals(generated, generator.generateCached(tempDir));
+        assertEquals(0, Files.size(generated.get(0)));
+    }
+
+    @Test
+    void testNoDuplication() throws IOException {
+        CPDReport report = runCpd(javaGenerator(0).generate(tempDir));
+
+        assertEquals(200_000, totalTokens(report), 20_000);
+        assertTrue(report.getMatches().isEmpty(), "no match expected");
+    }
+
+    @Test
+    void testDuplicationRatio() throws IOException {
+        CPDReport report = runCpd(javaGenerator(0.3).generate(tempDir));
+
+        int totalTokens = totalTokens(report);
+        assertEquals(200_000, totalTokens, 20_000);
+        // tokens of each file are numbered from the end of the previous file
+        BitSet duplicated = new BitSet();
+        for (Match match : report.getMatches()) {
+            for (Mark mark : match) {
+                int begin = mark.getBeginTokenIndex();
+                duplicated.set(begin, begin + match.getTokenCount());
+            }
+        }
+        assertEquals(0.3, duplicated.cardinality() / (double) totalTokens, 0.05);
+    }
+
+    private static CPDReport runCpd(List<Path> files) throws IOException {
+        CPDConfiguration config = new CPDConfiguration();
+        config.setOnlyRecognizeLanguage(config.getLanguageRegistry().getLanguageById("java"));
+        config.setMinimumTileSize(50);
+        AtomicReference<CPDReport> report = new AtomicReference<>();
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            files.forEach(cpd.files()::addFile);
+            cpd.performAnalysis(report::set);
+        }
+        return report.get();
+    }
+
+    private static int totalTokens(CPDReport report) {
+        return report.getNumberOfTokensPerFile().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private static String readString(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+}
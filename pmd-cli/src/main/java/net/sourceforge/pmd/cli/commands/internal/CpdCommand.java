@@ -5,6 +5,8 @@
 package net.sourceforge.pmd.cli.commands.internal;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -13,10 +15,14 @@ import java.util.List;
 import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+import net.sourceforge.pmd.benchmark.TextTimingReportRenderer;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimingReport;
 import net.sourceforge.pmd.cli.commands.typesupport.internal.CpdLanguageTypeSupport;
 import net.sourceforge.pmd.cli.internal.CliExitCode;
 import net.sourceforge.pmd.cpd.CPDConfiguration;
 import net.sourceforge.pmd.cpd.CpdAnalysis;
+import net.sourceforge.pmd.cpd.CpdMatchAlgorithm;
 import net.sourceforge.pmd.cpd.internal.CpdLanguagePropertiesDefaults;
 import net.sourceforge.pmd.internal.LogMessages;
 import net.sourceforge.pmd.lang.Language;
@@ -91,6 +97,63 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
     @Option(names = "--non-recursive", description = "Don't scan subdirectiories.")
     private boolean nonRecursive;
 
+    private int threads;
+
+    @Option(names = { "--threads", "-t" }, description = "Sets the number of threads used to tokenize files and find duplications.",
+            defaultValue = "1")
+    public void setThreads(final int threads) {
+        if (threads < 0) {
+            throw new ParameterException(spec.commandLine(), "Thread count should be a positive number or zero, found " + threads + " instead.");
+        }
+        this.threads = threads;
+    }
+
+    @Option(names = "--match-algorithm",
+            description = "Algorithm used to find duplications, one of ${COMPLETION-CANDIDATES}. "
+                    + "'suffix_array' is faster when the same code is duplicated very often, eg in generated code. "
+                    + "'near_miss' also finds duplications where some tokens were inserted, removed or changed.",
+            defaultValue = "rolling_hash")
+    private CpdMatchAlgorithm matchAlgorithm;
+
+    private double minimumSimilarity;
+
+    @Option(names = "--minimum-similarity",
+            description = "The minimal similarity of the duplications found by the near_miss algorithm, "
+                    + "greater than 0 and at most 1. The similarity is one minus the edit distance divided by the length.",
+            defaultValue = "0.8")
+    public void setMinimumSimilarity(final double minimumSimilarity) {
+        if (!(minimumSimilarity > 0 && minimumSimilarity <= 1)) {
+            throw new ParameterException(spec.commandLine(), "Minimum similarity should be greater than 0 and at most 1, found " + minimumSimilarity + " instead.");
+        }
+        this.minimumSimilarity = minimumSimilarity;
+    }
+
+    @Option(names = "--cache",
+            description = "Specify the location of the cache file for incremental analysis. "
+                    + "The tokens of files that did not change since the previous run are read from the cache "
+                    + "instead of being lexed again.")
+    private Path cacheLocation;
+
+    @Option(names = "--only-changed-files",
+            description = "Only report duplications that involve at least one file that changed since the previous run. "
+                    + "This has no effect without --cache.")
+    private boolean reportOnlyChangedFiles;
+
+    @Option(names = "--spill-dir",
+            description = "Store the tokens and their hashes in temporary files in this directory instead of the heap, "
+                    + "to analyse code bases that don't fit in memory. This is slower, and always uses the rolling_hash algorithm.")
+    private Path spillDirectory;
+
+    @Option(names = "--streaming-report",
+            description = "Write the duplications one at a time, instead of building the whole report in memory first. "
+                    + "The code fragments of the report are read first, file by file, and only they are kept in memory, "
+                    + "not the files. The duplications found are still all kept in memory. "
+                    + "The xml format is then indented differently.")
+    private boolean streamingReport;
+
+    @Option(names = { "--benchmark", "-b" },
+            description = "Benchmark mode - output the time spent in each phase of CPD upon completion to System.err.")
+    private boolean benchmark;
 
     /**
      * Converts these parameters into a configuration.
@@ -126,6 +189,13 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
         configuration.setSkipDuplicates(skipDuplicates);
         configuration.setSourceEncoding(encoding.getEncoding());
         configuration.setInputUri(uri);
+        configuration.setThreads(threads);
+        configuration.setMatchAlgorithm(matchAlgorithm);
+        configuration.setMinimumSimilarity(minimumSimilarity);
+        configuration.setCacheLocation(cacheLocation);
+        configuration.setReportOnlyChangedFiles(reportOnlyChangedFiles);
+        configuration.setSpillDirectory(spillDirectory);
+        configuration.setStreamingReport(streamingReport);
 
         if (skipLexicalErrors) {
             configuration.getReporter().warn("--skip-lexical-errors is deprecated. Use --no-fail-on-error instead.");
@@ -137,6 +207,9 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
 
     @Override
     protected @NonNull CliExitCode doExecute(CPDConfiguration configuration) {
+        if (benchmark) {
+            TimeTracker.startGlobalTracking();
+        }
         try (CpdAnalysis cpd = CpdAnalysis.create(configuration)) {
 
             MutableBoolean hasViolations = new MutableBoolean();
@@ -154,11 +227,27 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand<CPDConfiguration>
             configuration.getReporter().errorEx("Exception while running CPD.", e);
             configuration.getReporter().info(StringUtil.quoteMessageFormat(LogMessages.errorDetectedMessage(1, "cpd")));
             return CliExitCode.ERROR;
+        } finally {
+            finishBenchmarker(configuration);
         }
 
         return CliExitCode.OK;
     }
 
+    private void finishBenchmarker(CPDConfiguration configuration) {
+        if (benchmark) {
+            final TimingReport timingReport = TimeTracker.stopGlobalTracking();
+            try {
+                // No try-with-resources, do not want to close STDERR
+                @SuppressWarnings("PMD.CloseResource")
+                final Writer writer = new OutputStreamWriter(System.err);
+                new TextTimingReportRenderer().render(timingReport, writer);
+            } catch (final IOException e) {
+                configuration.getReporter().errorEx("Error producing benchmark report", e);
+            }
+        }
+    }
+
     /**
      * Provider of candidates for valid report formats.
      */
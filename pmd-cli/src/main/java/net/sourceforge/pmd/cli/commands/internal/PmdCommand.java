@@ -32,6 +32,7 @@ import net.sourceforge.pmd.cli.internal.ProgressBarListener;
 import net.sourceforge.pmd.internal.LogMessages;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.impl.FileSchedulingPolicy;
 import net.sourceforge.pmd.lang.rule.RulePriority;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.renderers.Renderer;
@@ -84,6 +85,14 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
 
     private int threads;
 
+    private FileSchedulingPolicy fileSchedulingPolicy;
+
+    private boolean virtualThreads;
+
+    private int readerThreads;
+
+    private boolean sortReportsByFile;
+
     private boolean benchmark;
 
     private boolean showSuppressed;
@@ -235,6 +244,41 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         this.threads = threads;
     }
 
+    @Option(names = "--file-scheduling",
+            description = "Order in which files are submitted to the analysis threads, one of ${COMPLETION-CANDIDATES}. "
+                    + "'largest_first' starts with the files that are expected to take the longest, based on the "
+                    + "analysis cache or on the file size.",
+            defaultValue = "input_order")
+    public void setFileSchedulingPolicy(final FileSchedulingPolicy fileSchedulingPolicy) {
+        this.fileSchedulingPolicy = fileSchedulingPolicy;
+    }
+
+    @Option(names = "--virtual-threads",
+            description = "Process each file on its own virtual thread (requires Java 21). "
+                    + "The thread count then only limits how many files are parsed and analyzed at the same time.")
+    public void setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Option(names = "--reader-threads",
+            description = "Sets the number of threads that read files ahead of their analysis, "
+                    + "so that the analysis threads don't wait on IO. Zero, the default, disables reading ahead.",
+            defaultValue = "0")
+    public void setReaderThreads(final int readerThreads) {
+        if (readerThreads < 0) {
+            throw new ParameterException(spec.commandLine(), "Reader thread count should be a positive number or zero, found " + readerThreads + " instead.");
+        }
+
+        this.readerThreads = readerThreads;
+    }
+
+    @Option(names = "--sort-by-file",
+            description = "Render the reports of files sorted by file, so that the report is the same on every run. "
+                    + "The reports are then kept in memory until the end of the analysis.")
+    public void setSortReportsByFile(final boolean sortReportsByFile) {
+        this.sortReportsByFile = sortReportsByFile;
+    }
+
     @Option(names = "--no-progress", negatable = true, defaultValue = "true",
             description = "Enables / disables progress bar indicator of live analysis progress.")
     public void setShowProgressBar(final boolean showProgressBar) {
@@ -269,6 +313,10 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand<PMDConfiguration>
         configuration.setShowSuppressedViolations(showSuppressed);
         configuration.setSuppressMarker(suppressMarker);
         configuration.setThreads(threads);
+        configuration.setFileSchedulingPolicy(fileSchedulingPolicy);
+        configuration.setUseVirtualThreads(virtualThreads);
+        configuration.setReaderThreads(readerThreads);
+        configuration.setSortReportsByFile(sortReportsByFile);
         configuration.setFailOnViolation(failOnViolation);
         configuration.setFailOnError(failOnError);
         configuration.setAnalysisCacheLocation(cacheLocation != null ? cacheLocation.toString() : null);
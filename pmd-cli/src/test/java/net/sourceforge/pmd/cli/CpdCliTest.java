@@ -177,6 +177,16 @@ class CpdCliTest extends BaseCliTest {
             )));
     }
 
+    @Test
+    void testBenchmark() throws Exception {
+        runCli(VIOLATIONS_FOUND, "--minimum-tokens", "7", "--dir", SRC_DIR, "--benchmark")
+            .verify(result -> {
+                result.checkStdErr(containsString("Copy Paste Detection"));
+                result.checkStdErr(containsString("Tokenize"));
+                result.checkStdErr(containsString("Render"));
+            });
+    }
+
     @Test
     void testExcludeFiles() throws Exception {
         runCliSuccessfully("--minimum-tokens", "7", "--dir", SRC_DIR,
@@ -6,13 +6,18 @@ package net.sourceforge.pmd.cli.commands.internal;
 
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
 import net.sourceforge.pmd.cpd.CPDConfiguration;
+import net.sourceforge.pmd.cpd.CpdMatchAlgorithm;
 import net.sourceforge.pmd.util.CollectionUtil;
 
 class CpdCommandTest extends BaseCommandTest<CpdCommand> {
@@ -54,6 +59,73 @@ class CpdCommandTest extends BaseCommandTest<CpdCommand> {
         assertError("-d", "-f", "text");
     }
 
+    @Test
+    void testThreads() {
+        final CpdCommand cmd = setupAndParse(
+            "-d", "a", "--threads", "4"
+        );
+        assertEquals(4, cmd.toConfiguration().getThreads());
+    }
+
+    @Test
+    void testNegativeThreads() {
+        assertError("-d", "a", "-t", "-1");
+    }
+
+    @Test
+    void testMatchAlgorithm() {
+        assertEquals(CpdMatchAlgorithm.ROLLING_HASH, setupAndParse("-d", "a").toConfiguration().getMatchAlgorithm());
+
+        final CpdCommand cmd = setupAndParse(
+            "-d", "a", "--match-algorithm", "suffix_array"
+        );
+        assertEquals(CpdMatchAlgorithm.SUFFIX_ARRAY, cmd.toConfiguration().getMatchAlgorithm());
+    }
+
+    @Test
+    void testMinimumSimilarity() {
+        assertEquals(0.8, setupAndParse("-d", "a").toConfiguration().getMinimumSimilarity());
+
+        final CPDConfiguration config = setupAndParse(
+            "-d", "a", "--match-algorithm", "near_miss", "--minimum-similarity", "0.9"
+        ).toConfiguration();
+        assertEquals(CpdMatchAlgorithm.NEAR_MISS, config.getMatchAlgorithm());
+        assertEquals(0.9, config.getMinimumSimilarity());
+    }
+
+    @Test
+    void testInvalidMinimumSimilarity() {
+        assertError("-d", "a", "--minimum-similarity", "0");
+        assertError("-d", "a", "--minimum-similarity", "1.5");
+    }
+
+    @Test
+    void testCache() {
+        final CPDConfiguration defaultConfig = setupAndParse("-d", "a").toConfiguration();
+        assertNull(defaultConfig.getCacheLocation());
+        assertFalse(defaultConfig.isReportOnlyChangedFiles());
+
+        final CPDConfiguration config = setupAndParse(
+            "-d", "a", "--cache", "cpd.cache", "--only-changed-files"
+        ).toConfiguration();
+        assertEquals(Paths.get("cpd.cache"), config.getCacheLocation());
+        assertTrue(config.isReportOnlyChangedFiles());
+    }
+
+    @Test
+    void testSpillDirectory() {
+        assertNull(setupAndParse("-d", "a").toConfiguration().getSpillDirectory());
+
+        final CPDConfiguration config = setupAndParse("-d", "a", "--spill-dir", "tmp").toConfiguration();
+        assertEquals(Paths.get("tmp"), config.getSpillDirectory());
+    }
+
+    @Test
+    void testStreamingReport() {
+        assertFalse(setupAndParse("-d", "a").toConfiguration().isStreamingReport());
+        assertTrue(setupAndParse("-d", "a", "--streaming-report").toConfiguration().isStreamingReport());
+    }
+
     private void assertMultipleDirs(final CpdCommand result) {
         final CPDConfiguration config = result.toConfiguration();
         assertEquals(listOf("a", "b"), CollectionUtil.map(config.getInputPathList(), Path::toString));
@@ -19,4 +19,9 @@ public class CocoCpdLexer extends AntlrCpdLexer {
     protected Lexer getLexerForSource(CharStream charStream) {
         return new CocoLexer(charStream);
     }
+
+    @Override
+    protected boolean isLexerReusable() {
+        return true; // the grammar has no lexer members
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.ListenerInitializer;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.Report.ConfigurationError;
+import net.sourceforge.pmd.reporting.Report.ProcessingError;
+import net.sourceforge.pmd.reporting.Report.ReportBuilderListener;
+import net.sourceforge.pmd.reporting.Report.SuppressedViolation;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Forwards the events of each file to another listener once the whole
+ * analysis is finished, sorted by file id. In a multithreaded analysis,
+ * files finish in an unpredictable order, this makes the output of
+ * renderers the same on every run. The events of all files are kept
+ * in memory until the end of the analysis.
+ *
+ * @see PMDConfiguration#setSortReportsByFile(boolean)
+ */
+final class FileSortingListener implements GlobalAnalysisListener {
+
+    private final GlobalAnalysisListener delegate;
+    private final Queue<FileEvents> files = new ConcurrentLinkedQueue<>();
+
+    FileSortingListener(GlobalAnalysisListener delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ListenerInitializer initializer() {
+        return delegate.initializer();
+    }
+
+    @Override
+    public void onConfigError(ConfigurationError error) {
+        delegate.onConfigError(error);
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextFile file) {
+        FileEvents events = new FileEvents(file);
+        files.add(events);
+        return events.builder;
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            List<FileEvents> sorted = new ArrayList<>(files);
+            files.clear();
+            sorted.sort(Comparator.comparing(events -> events.file.getFileId()));
+            for (FileEvents events : sorted) {
+                events.replay(delegate);
+            }
+        } finally {
+            delegate.close();
+        }
+    }
+
+    private static final class FileEvents {
+
+        private final TextFile file;
+        private final ReportBuilderListener builder = new ReportBuilderListener();
+
+        FileEvents(TextFile file) {
+            this.file = file;
+        }
+
+        void replay(GlobalAnalysisListener listener) throws Exception {
+            Report report = builder.getResult();
+            try (FileAnalysisListener fileListener = listener.startFileAnalysis(file)) {
+                for (RuleViolation violation : report.getViolations()) {
+                    fileListener.onRuleViolation(violation);
+                }
+                for (SuppressedViolation violation : report.getSuppressedViolations()) {
+                    fileListener.onSuppressedRuleViolation(violation);
+                }
+                for (ProcessingError error : report.getProcessingErrors()) {
+                    fileListener.onError(error);
+                }
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@ import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.PmdCapableLanguage;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.impl.FileSchedulingPolicy;
 import net.sourceforge.pmd.lang.rule.RulePriority;
 import net.sourceforge.pmd.lang.rule.RuleSetLoader;
 import net.sourceforge.pmd.renderers.Renderer;
@@ -86,6 +88,8 @@ import net.sourceforge.pmd.util.log.internal.SimpleMessageReporter;
  * <ul>
  * <li>Use {@link #setThreads(int)} to control the parallelism of the analysis. Defaults
  * one thread per available processor. {@link #getThreads()}</li>
+ * <li>Use {@link #setFileSchedulingPolicy(FileSchedulingPolicy)} to control the order
+ * in which files are submitted to the analysis threads.</li>
  * </ul>
  */
 public class PMDConfiguration extends AbstractConfiguration {
@@ -98,6 +102,10 @@ public class PMDConfiguration extends AbstractConfiguration {
     // General behavior options
     private String suppressMarker = DEFAULT_SUPPRESS_MARKER;
     private int threads = Runtime.getRuntime().availableProcessors();
+    private FileSchedulingPolicy fileSchedulingPolicy = FileSchedulingPolicy.INPUT_ORDER;
+    private boolean useVirtualThreads;
+    private int readerThreads;
+    private boolean sortReportsByFile;
     private ClassLoader classLoader = getClass().getClassLoader();
 
     // Rule and source file options
@@ -160,6 +168,118 @@ public class PMDConfiguration extends AbstractConfiguration {
         this.threads = threads;
     }
 
+    /**
+     * Returns the order in which files are submitted to the analysis
+     * threads. Defaults to {@link FileSchedulingPolicy#INPUT_ORDER}.
+     *
+     * @since 7.12.0
+     */
+    public @NonNull FileSchedulingPolicy getFileSchedulingPolicy() {
+        return fileSchedulingPolicy;
+    }
+
+    /**
+     * Sets the order in which files are submitted to the analysis threads.
+     * This only has an effect if the analysis is multi-threaded, see
+     * {@link #setThreads(int)}.
+     *
+     * @param policy The new policy
+     *
+     * @throws NullPointerException If the parameter is null
+     * @since 7.12.0
+     */
+    public void setFileSchedulingPolicy(@NonNull FileSchedulingPolicy policy) {
+        this.fileSchedulingPolicy = Objects.requireNonNull(policy, "policy");
+    }
+
+    /**
+     * Returns whether files are processed on virtual threads. Defaults
+     * to false.
+     *
+     * @see #setUseVirtualThreads(boolean)
+     * @since 7.12.0
+     */
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Sets whether files should be processed on virtual threads, instead
+     * of a pool of {@linkplain #getThreads() platform threads}. Each file
+     * then runs on its own virtual thread, so that threads blocked on IO
+     * (reading files, loading classes of the auxclasspath) don't keep
+     * other files from being processed. The thread count still bounds
+     * the number of files that are parsed and analysed at the same time.
+     * This requires Java 21 or later, on older JVMs this setting is ignored
+     * with a warning. It has no effect if the analysis is not multi-threaded.
+     *
+     * @param useVirtualThreads Whether to use virtual threads
+     *
+     * @since 7.12.0
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    /**
+     * Returns the number of threads used to read files ahead of their
+     * analysis. Defaults to zero, which means that files are read by
+     * the analysis threads.
+     *
+     * @see #setReaderThreads(int)
+     * @since 7.12.0
+     */
+    public int getReaderThreads() {
+        return readerThreads;
+    }
+
+    /**
+     * Sets the number of threads used to read files ahead of their analysis.
+     * If positive, files are read by these threads, and only submitted to
+     * the {@linkplain #getThreads() analysis threads} once their contents
+     * are in memory, so that the analysis threads don't wait on IO. This
+     * helps when sources are on a slow or network filesystem. The number
+     * of files read ahead is bounded, so that they don't all stay in memory
+     * if reading is faster than the analysis. It has no effect if the
+     * analysis is not multi-threaded.
+     *
+     * @param readerThreads Number of reader threads, zero disables reading ahead
+     *
+     * @since 7.12.0
+     */
+    public void setReaderThreads(int readerThreads) {
+        this.readerThreads = readerThreads;
+    }
+
+    /**
+     * Returns whether the renderers receive the reports of files sorted
+     * by file. Defaults to false.
+     *
+     * @see #setSortReportsByFile(boolean)
+     * @since 7.12.0
+     */
+    public boolean isSortReportsByFile() {
+        return sortReportsByFile;
+    }
+
+    /**
+     * Sets whether the renderers receive the reports of files sorted by
+     * file. By default, the report of a file is rendered as soon as it
+     * has been analysed, so with several threads, the order of files in
+     * the report changes from one run to the next. When this is enabled,
+     * the reports of all files are kept until the end of the analysis,
+     * and then rendered in the order of their {@link FileId}, so that the
+     * report is the same on every run. This takes more memory with large
+     * reports.
+     *
+     * @param sortReportsByFile Whether to sort the reports by file
+     *
+     * @since 7.12.0
+     */
+    public void setSortReportsByFile(boolean sortReportsByFile) {
+        this.sortReportsByFile = sortReportsByFile;
+    }
+
     /**
      * Get the ClassLoader being used by PMD when processing Rules.
      *
@@ -5,6 +5,10 @@
 package net.sourceforge.pmd;
 
 import static net.sourceforge.pmd.lang.document.InternalApiBridge.newCollector;
+import static net.sourceforge.pmd.lang.impl.InternalApiBridge.coreUtilisationListener;
+import static net.sourceforge.pmd.lang.impl.InternalApiBridge.newAnalysisExecutor;
+import static net.sourceforge.pmd.lang.impl.InternalApiBridge.newReadExecutor;
+import static net.sourceforge.pmd.lang.impl.InternalApiBridge.scheduleFiles;
 import static net.sourceforge.pmd.lang.rule.InternalApiBridge.loadRuleSetsWithoutException;
 import static net.sourceforge.pmd.lang.rule.InternalApiBridge.ruleSetApplies;
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
@@ -19,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -394,6 +399,10 @@ public final class PmdAnalysis implements AutoCloseable {
                                                          GlobalAnalysisListener.tee(listeners),
                                                          GlobalAnalysisListener.tee(extraListeners),
                                                          cacheListener));
+            if (configuration.getThreads() > 0) {
+                // the file processors report how long each file held a thread to this wrapper
+                listener = coreUtilisationListener(configuration.getThreads(), listener);
+            }
             
             // Initialize listeners
             try (ListenerInitializer initializer = listener.initializer()) {
@@ -422,14 +431,32 @@ public final class PmdAnalysis implements AutoCloseable {
                 langProperties,
                 reporter
             )) {
+                // A single executor is shared by all languages, so that
+                // the thread count is a cap on the concurrency of the
+                // whole analysis.
+                ExecutorService executor = configuration.getThreads() > 0
+                                           ? newAnalysisExecutor(configuration.getThreads(), configuration.isUseVirtualThreads(), reporter)
+                                           : null;
+                ExecutorService readExecutor = executor != null && configuration.getReaderThreads() > 0
+                                               ? newReadExecutor(configuration.getReaderThreads())
+                                               : null;
+
                 // Note the analysis task is shared: all processors see
                 // the same file list, which may contain files for other
                 // languages.
+                // The files are scheduled only after the cache has been
+                // loaded, as it may know how long each file took last time.
+                List<TextFile> scheduledFiles = executor != null
+                                                ? scheduleFiles(configuration.getFileSchedulingPolicy(), textFiles, configuration.getAnalysisCache())
+                                                : textFiles;
+
                 AnalysisTask analysisTask = InternalApiBridge.createAnalysisTask(
                     rulesets,
-                    textFiles,
+                    scheduledFiles,
                     listener,
                     configuration.getThreads(),
+                    executor,
+                    readExecutor,
                     configuration.getAnalysisCache(),
                     reporter,
                     lpRegistry
@@ -442,6 +469,12 @@ public final class PmdAnalysis implements AutoCloseable {
                     }
                 } finally {
                     Exception e = IOUtil.closeAll(analyses);
+                    if (executor != null) {
+                        executor.shutdownNow();
+                    }
+                    if (readExecutor != null) {
+                        readExecutor.shutdownNow();
+                    }
                     if (e != null) {
                         reporter.errorEx("Error while joining analysis", e);
                     }
@@ -480,7 +513,8 @@ public final class PmdAnalysis implements AutoCloseable {
                 throw AssertionUtil.shouldNotReachHere("ensureClosed should have thrown", ioe);
             }
         }
-        return GlobalAnalysisListener.tee(rendererListeners);
+        GlobalAnalysisListener composed = GlobalAnalysisListener.tee(rendererListeners);
+        return configuration.isSortReportsByFile() ? new FileSortingListener(composed) : composed;
     }
 
     private Set<Language> getApplicableLanguages(boolean quiet) {
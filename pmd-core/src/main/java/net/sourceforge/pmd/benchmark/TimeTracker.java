@@ -158,6 +158,31 @@ public final class TimeTracker {
         }
     }
 
+    /**
+     * Records a measurement that was not tracked with {@link #startOperation(TimedOperationCategory, String)},
+     * for instance because it was aggregated over several threads. The measurement
+     * is added to the results of the given category and label.
+     *
+     * @param category         The category under which to record the measurement.
+     * @param label            A label to be added to the category, or null.
+     * @param timeNanos        The measured time, counted both as total and self time.
+     * @param callCount        The number of calls the measurement accounts for.
+     * @param extraDataCounter An additional data counter, see {@link #finishOperation(long)}.
+     */
+    public static void addMeasurement(final TimedOperationCategory category, final String label,
+                                      final long timeNanos, final int callCount, final long extraDataCounter) {
+        if (!trackTime) {
+            return;
+        }
+
+        final TimedResult result = ACCUMULATED_RESULTS.computeIfAbsent(new TimedOperationKey(category, label),
+                                                                       k -> new TimedResult());
+        result.totalTimeNanos.getAndAdd(timeNanos);
+        result.selfTimeNanos.getAndAdd(timeNanos);
+        result.callCount.getAndAdd(callCount);
+        result.extraDataCounter.getAndAdd(extraDataCounter);
+    }
+
     public static void bench(String label, Runnable runnable) {
         try (TimedOperation ignored = startOperation(TimedOperationCategory.LANGUAGE_SPECIFIC_PROCESSING, label)) {
             runnable.run();
@@ -27,6 +27,22 @@ public enum TimedOperationCategory {
     REPORTING,
     FILE_PROCESSING,
     ANALYSIS_CACHE,
+    /**
+     * Subdivided into one label for each phase of CPD.
+     *
+     * @since 7.12.0
+     */
+    COPY_PASTE_DETECTION,
+    /**
+     * How busy the analysis threads were, only reported when running
+     * with several threads. The time is the sum of the time each file
+     * held a thread, the call count is the number of files, and the
+     * counter is the utilisation of the threads in percent. This time
+     * is already part of {@link #FILE_PROCESSING}.
+     *
+     * @since 7.12.0
+     */
+    CORE_UTILISATION,
     UNACCOUNTED;
 
     public String displayName() {
@@ -18,9 +18,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,10 +36,14 @@ import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.Report.ProcessingError;
 import net.sourceforge.pmd.reporting.RuleViolation;
@@ -49,9 +59,14 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
     protected final ConcurrentMap<FileId, AnalysisResult> fileResultsCache = new ConcurrentHashMap<>();
     protected final ConcurrentMap<FileId, AnalysisResult> updatedResultsCache = new ConcurrentHashMap<>();
     protected final CachedRuleMapper ruleMapper = new CachedRuleMapper();
-    protected long rulesetChecksum;
+    /** Checksums of the rules, by {@linkplain CachedRuleMapper#getRuleKey(Rule) rule key}. */
+    protected final Map<String, Long> ruleChecksums = new HashMap<>();
     protected long auxClassPathChecksum;
     protected long executionClassPathChecksum;
+    /** Keys of the configured rules whose cached violations can't be reused. */
+    private Set<String> outdatedRules = Collections.emptySet();
+    /** Whether some rules were added, changed or removed since the cache was written. */
+    private boolean rulesChanged;
 
     /**
      * Creates a new empty cache
@@ -73,8 +88,8 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
             if (upToDate) {
                 LOG.trace("Incremental Analysis cache HIT");
                 
-                // copy results over
-                updatedResult = cachedResult;
+                // copy results over, except those of the rules that changed
+                updatedResult = rulesChanged ? withReusableViolations(cachedResult) : cachedResult;
             } else {
                 LOG.trace("Incremental Analysis cache MISS - {}",
                           cachedResult != null ? "file changed" : "no previous result found");
@@ -98,7 +113,51 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
             return Collections.emptyList();
         }
 
-        return analysisResult.getViolations();
+        return rulesChanged ? reusableViolations(analysisResult) : analysisResult.getViolations();
+    }
+
+    @Override
+    public boolean isRuleUpToDate(Rule rule) {
+        return !outdatedRules.contains(CachedRuleMapper.getRuleKey(rule));
+    }
+
+    @Override
+    public boolean hasOutdatedRules() {
+        return !outdatedRules.isEmpty();
+    }
+
+    private AnalysisResult withReusableViolations(AnalysisResult cachedResult) {
+        final AnalysisResult result = new AnalysisResult(cachedResult.getFileChecksum(), reusableViolations(cachedResult));
+        result.setProcessingTimeNanos(cachedResult.getProcessingTimeNanos());
+        return result;
+    }
+
+    private List<RuleViolation> reusableViolations(AnalysisResult cachedResult) {
+        final List<RuleViolation> violations = new ArrayList<>();
+        for (final RuleViolation violation : cachedResult.getViolations()) {
+            // the rule is null if it was removed from the rulesets
+            final Rule rule = violation.getRule();
+            if (rule != null && isRuleUpToDate(rule)) {
+                violations.add(violation);
+            }
+        }
+        return violations;
+    }
+
+    @Override
+    public long getPreviousProcessingTime(FileId fileId) {
+        final AnalysisResult analysisResult = fileResultsCache.get(fileId);
+        return analysisResult == null ? -1 : analysisResult.getProcessingTimeNanos();
+    }
+
+    @Override
+    public void recordProcessingTime(final TextDocument document, final long nanos) {
+        final AnalysisResult result = updatedResultsCache.get(document.getFileId());
+        // Only record the time of fresh results, results copied
+        // over from the previous run keep their original time.
+        if (result != null && result.getProcessingTimeNanos() < 0) {
+            result.setProcessingTimeNanos(nanos);
+        }
     }
 
     @Override
@@ -119,11 +178,6 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "validity check")) {
             boolean cacheIsValid = cacheExists();
 
-            if (cacheIsValid && ruleSets.getChecksum() != rulesetChecksum) {
-                LOG.debug("Analysis cache invalidated, rulesets changed.");
-                cacheIsValid = false;
-            }
-
             final long currentAuxClassPathChecksum;
             if (auxclassPathClassLoader instanceof URLClassLoader) {
                 // we don't want to close our aux classpath loader - we still need it...
@@ -145,19 +199,103 @@ abstract class AbstractAnalysisCache implements AnalysisCache {
                 cacheIsValid = false;
             }
 
-            if (!cacheIsValid) {
+            final Map<String, Long> currentRuleChecksums = computeRuleChecksums(ruleSets);
+            if (cacheIsValid) {
+                checkRules(currentRuleChecksums);
+            } else {
                 // Clear the cache
                 fileResultsCache.clear();
+                outdatedRules = Collections.emptySet();
+                rulesChanged = false;
             }
 
             // Update the local checksums
-            rulesetChecksum = ruleSets.getChecksum();
+            ruleChecksums.clear();
+            ruleChecksums.putAll(currentRuleChecksums);
             auxClassPathChecksum = currentAuxClassPathChecksum;
             executionClassPathChecksum = currentExecutionClassPathChecksum;
             ruleMapper.initialize(ruleSets);
         }
     }
 
+    /**
+     * Finds the rules that were added or changed since the cache was
+     * written. Only their violations, and those of removed rules, are
+     * discarded from the cache.
+     */
+    private void checkRules(Map<String, Long> currentRuleChecksums) {
+        final Set<String> outdated = new HashSet<>();
+        for (final Map.Entry<String, Long> entry : currentRuleChecksums.entrySet()) {
+            if (!entry.getValue().equals(ruleChecksums.get(entry.getKey()))) {
+                outdated.add(entry.getKey());
+            }
+        }
+        outdatedRules = outdated;
+        rulesChanged = !currentRuleChecksums.equals(ruleChecksums);
+        if (rulesChanged) {
+            final int removed = (int) ruleChecksums.keySet().stream().filter(key -> !currentRuleChecksums.containsKey(key)).count();
+            LOG.debug("Analysis cache partially invalidated, {} rules added or changed, {} rules removed.",
+                      outdated.size(), removed);
+        }
+    }
+
+    private static Map<String, Long> computeRuleChecksums(RuleSets ruleSets) {
+        final Map<String, Long> checksums = new HashMap<>();
+        for (final Iterator<RuleSet> iterator = ruleSets.getRuleSetsIterator(); iterator.hasNext();) {
+            final RuleSet ruleSet = iterator.next();
+            for (final Rule rule : ruleSet.getRules()) {
+                // the same rule may be configured several times, with different properties
+                checksums.merge(CachedRuleMapper.getRuleKey(rule), computeRuleChecksum(ruleSet, rule),
+                                (a, b) -> a * 31 + b);
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Computes a checksum of everything that determines the violations of
+     * a rule: its class, its configuration, the language versions it applies
+     * to, and the files its ruleset applies to. Changes to the implementation
+     * of the rule are covered by the PMD version and classpath checksums.
+     */
+    private static long computeRuleChecksum(RuleSet ruleSet, Rule rule) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(rule.getRuleClass()).append('\n')
+          .append(rule.getName()).append('\n')
+          .append(rule.getLanguage().getId()).append('\n')
+          .append(versionString(rule.getMinimumLanguageVersion())).append('\n')
+          .append(versionString(rule.getMaximumLanguageVersion())).append('\n')
+          .append(rule.getMessage()).append('\n');
+        for (final PropertyDescriptor<?> descriptor : rule.getPropertyDescriptors()) {
+            sb.append(descriptor.name()).append('=').append(serializedValue(rule, descriptor)).append('\n');
+        }
+        for (final Pattern inclusion : ruleSet.getFileInclusions()) {
+            sb.append("include=").append(inclusion.pattern()).append('\n');
+        }
+        for (final Pattern exclusion : ruleSet.getFileExclusions()) {
+            sb.append("exclude=").append(exclusion.pattern()).append('\n');
+        }
+        return hash64(sb);
+    }
+
+    private static String versionString(LanguageVersion version) {
+        return version == null ? "" : version.getVersion();
+    }
+
+    private static <T> String serializedValue(Rule rule, PropertyDescriptor<T> descriptor) {
+        return descriptor.serializer().toString(rule.getProperty(descriptor));
+    }
+
+    /** 64-bit FNV-1a hash of the characters. */
+    static long hash64(CharSequence chars) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < chars.length(); i++) {
+            hash ^= chars.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
     private static boolean isClassPathWildcard(String entry) {
         return entry.endsWith("/*") || entry.endsWith("\\*");
     }
@@ -8,8 +8,10 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
+import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
@@ -40,11 +42,58 @@ public interface AnalysisCache {
 
     /**
      * Retrieves cached violations for the given file. Make sure to call {@link #isUpToDate(TextDocument)} first.
+     * Only the violations of rules that are {@linkplain #isRuleUpToDate(Rule) up to date} are returned.
      * @param sourceFile The file to check in the cache
      * @return The list of cached violations.
      */
     List<RuleViolation> getCachedViolations(TextDocument sourceFile);
 
+    /**
+     * Checks if the cached violations of the given rule can be reused. This
+     * is not the case for rules that were added to the rulesets, or whose
+     * configuration changed, since the cache was written. Such rules must
+     * still be applied to files that are {@linkplain #isUpToDate(TextDocument) up to date}.
+     * Make sure to call {@link #checkValidity(RuleSets, ClassLoader, Collection)} first.
+     *
+     * @param rule A rule of the configured rulesets
+     *
+     * @return True if the cached violations of the rule are valid
+     */
+    boolean isRuleUpToDate(Rule rule);
+
+    /**
+     * Returns true if some rules of the configured rulesets are not
+     * {@linkplain #isRuleUpToDate(Rule) up to date}. Make sure to call
+     * {@link #checkValidity(RuleSets, ClassLoader, Collection)} first.
+     */
+    boolean hasOutdatedRules();
+
+    /**
+     * Returns the time it took to process the given file during the run
+     * that produced the cache, in nanoseconds. This is only an estimate
+     * of the cost of processing the file in this run, which is used
+     * for scheduling. The file may have changed in the meantime.
+     * Make sure to call {@link #checkValidity(RuleSets, ClassLoader, Collection)} first.
+     *
+     * @param fileId The file to look up
+     *
+     * @return The processing time, or -1 if unknown
+     */
+    long getPreviousProcessingTime(FileId fileId);
+
+    /**
+     * Records the time it took to process the given file, to be
+     * returned by {@link #getPreviousProcessingTime(FileId)} in the next
+     * run. This should only count the time the file held an analysis
+     * thread, not the time it waited for one. Results copied over from
+     * the previous run keep their original time. Make sure to call
+     * {@link #isUpToDate(TextDocument)} first.
+     *
+     * @param document The file that was processed
+     * @param nanos    The processing time, in nanoseconds
+     */
+    void recordProcessingTime(TextDocument document, long nanos);
+
     /**
      * Notifies the cache that analysis of the given file has failed and should not be cached.
      * @param sourceFile The file whose analysis failed
@@ -17,6 +17,7 @@ public class AnalysisResult {
 
     private final long fileChecksum;
     private final List<RuleViolation> violations;
+    private long processingTimeNanos = -1;
 
     public AnalysisResult(final long fileChecksum, final List<RuleViolation> violations) {
         this.fileChecksum = fileChecksum;
@@ -35,6 +36,18 @@ public class AnalysisResult {
         return violations;
     }
 
+    /**
+     * Returns the time it took to parse the file and apply the rules
+     * when this result was computed, in nanoseconds. Returns -1 if unknown.
+     */
+    public long getProcessingTimeNanos() {
+        return processingTimeNanos;
+    }
+
+    public void setProcessingTimeNanos(long processingTimeNanos) {
+        this.processingTimeNanos = processingTimeNanos;
+    }
+
     public void addViolations(final List<RuleViolation> violations) {
         this.violations.addAll(violations);
     }
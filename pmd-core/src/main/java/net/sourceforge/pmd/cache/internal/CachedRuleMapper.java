@@ -34,11 +34,19 @@ class CachedRuleMapper {
      */
     public void initialize(final RuleSets rs) {
         for (final Rule r : rs.getAllRules()) {
-            cachedRulesInstances.put(getRuleKey(r.getRuleClass(), r.getName(), r.getLanguage().getId()), r);
+            cachedRulesInstances.put(getRuleKey(r), r);
         }
     }
 
-    private String getRuleKey(final String className, final String ruleName, final String languageName) {
+    /**
+     * Returns the key identifying the rule in the cache. Violations are
+     * stored with the parts of this key.
+     */
+    static String getRuleKey(final Rule rule) {
+        return getRuleKey(rule.getRuleClass(), rule.getName(), rule.getLanguage().getId());
+    }
+
+    private static String getRuleKey(final String className, final String ruleName, final String languageName) {
         return className + "$$" + ruleName + "$$" + languageName;
     }
 }
@@ -4,36 +4,88 @@
 
 package net.sourceforge.pmd.cache.internal;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.SystemUtils;
 
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 import net.sourceforge.pmd.reporting.RuleViolation;
+import net.sourceforge.pmd.util.CollectionUtil;
 
 /**
  * An analysis cache backed by a regular file.
+ *
+ * <p>The file starts with a header, followed by one record per file
+ * and an index of the records:
+ * <pre>
+ * header:  PMD version (UTF), format version (int), number of rules (int),
+ *          then for each rule: rule key (UTF), rule checksum (long),
+ *          auxclasspath and execution classpath checksums (long),
+ *          offset of the index (long)
+ * record:  length of the record (int), file URI (UTF), file checksum (long),
+ *          processing time (long), number of violations (int), violations
+ * index:   number of entries (int), then for each record, sorted by hash:
+ *          hash of the file URI (long), offset of the record (long)
+ * </pre>
+ *
+ * <p>The file is memory-mapped when it is loaded. Only the header is read
+ * eagerly. The records of the analysed files are looked up in the index by
+ * binary search, and their violations are only decoded if the file is up
+ * to date (see {@link MappedAnalysisResult}).
+ *
+ * <p>When the cache is persisted, records of files that are still up to
+ * date are kept in place. New records and a new index are appended to the
+ * file, and the offset of the index in the header is updated last, so
+ * that an interrupted update leaves a valid cache. Records that are not
+ * referenced by the index anymore are garbage. The file is compacted,
+ * by rewriting only the live records to a new file, when more than half
+ * of it would be garbage, or when the checksums in the header change.
  */
 public class FileAnalysisCache extends AbstractAnalysisCache {
 
+    /**
+     * Version of the layout of the cache file. This is written after
+     * the PMD version, and must be incremented whenever the layout
+     * changes, so that caches written by snapshot builds of the same
+     * PMD version are not misread.
+     */
+    private static final int CACHE_FORMAT_VERSION = 3;
+
+    private static final int INDEX_ENTRY_SIZE = 2 * Long.BYTES;
+
     private final File cacheFile;
 
+    /** The cache file that was loaded, null if there was none or it was not valid. */
+    private LoadedCacheFile loaded;
+
     /**
      * Creates a new cache backed by the given file.
      * @param cache The file on which to store analysis cache
@@ -51,58 +103,62 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
     }
 
     /**
-     * Loads cache data from the given file.
+     * Loads cache data from the given file. Only the records of the given
+     * files are read.
      *
      * @param cacheFile The file which backs the file analysis cache.
      */
     private void loadFromFile(final File cacheFile, Collection<? extends TextFile> files) {
-        Map<String, FileId> idMap =
-            files.stream().map(TextFile::getFileId)
-                 .collect(Collectors.toMap(FileId::getUriString, id -> id));
-
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "load")) {
             if (cacheExists()) {
-                try (
-                    DataInputStream inputStream = new DataInputStream(
-                        new BufferedInputStream(Files.newInputStream(cacheFile.toPath())));
-                ) {
-                    final String cacheVersion = inputStream.readUTF();
+                try {
+                    final ByteBuffer data = readCacheFile(cacheFile.toPath());
+                    final ByteBuffer headerBuffer = data.duplicate();
+                    @SuppressWarnings("PMD.CloseResource") // reads a buffer, there is nothing to close
+                    final DataInputStream header = new DataInputStream(IOUtil.fromByteBuffer(headerBuffer));
+                    final String cacheVersion = header.readUTF();
 
-                    if (PMDVersion.VERSION.equals(cacheVersion)) {
+                    if (PMDVersion.VERSION.equals(cacheVersion) && header.readInt() == CACHE_FORMAT_VERSION) {
                         // Cache seems valid, load the rest
 
                         // Get checksums
-                        rulesetChecksum = inputStream.readLong();
-                        auxClassPathChecksum = inputStream.readLong();
-                        executionClassPathChecksum = inputStream.readLong();
+                        final int ruleCount = header.readInt();
+                        for (int i = 0; i < ruleCount; i++) {
+                            ruleChecksums.put(header.readUTF(), header.readLong());
+                        }
+                        auxClassPathChecksum = header.readLong();
+                        executionClassPathChecksum = header.readLong();
+
+                        final int indexOffsetPosition = headerBuffer.position();
+                        final long indexOffset = header.readLong();
+                        final CacheIndex index = CacheIndex.read(data, headerBuffer.position(), indexOffset);
 
                         // Cached results
-                        while (inputStream.available() > 0) {
-                            final String filePathId = inputStream.readUTF();
-                            FileId fileId = idMap.get(filePathId);
-                            if (fileId == null) {
-                                LOG.debug("File {} is in the cache but is not part of the analysis",
-                                          filePathId);
-                                fileId = FileId.fromURI(filePathId);
+                        for (final FileId fileId : CollectionUtil.map(files, TextFile::getFileId)) {
+                            final int recordOffset = index.find(uriHash(fileId.getUriString()));
+                            if (recordOffset < 0) {
+                                continue;
                             }
-                            final long checksum = inputStream.readLong();
-
-                            final int countViolations = inputStream.readInt();
-                            final List<RuleViolation> violations = new ArrayList<>(countViolations);
-                            for (int i = 0; i < countViolations; i++) {
-                                violations.add(CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper));
+                            final MappedAnalysisResult result =
+                                MappedAnalysisResult.read(data, recordOffset, index.offset, fileId, ruleMapper);
+                            if (result != null) {
+                                fileResultsCache.put(fileId, result);
                             }
-
-                            fileResultsCache.put(fileId, new AnalysisResult(checksum, violations));
                         }
 
+                        loaded = new LoadedCacheFile(data, headerBuffer.position(), indexOffsetPosition,
+                                                     new HashMap<>(ruleChecksums), auxClassPathChecksum, executionClassPathChecksum);
                         LOG.debug("Analysis cache loaded from {}", cacheFile);
                     } else {
-                        LOG.debug("Analysis cache invalidated, PMD version changed.");
+                        LOG.debug("Analysis cache invalidated, PMD version or cache format changed.");
                     }
                 } catch (final EOFException e) {
+                    fileResultsCache.clear();
+                    ruleChecksums.clear();
                     LOG.warn("Cache file {} is malformed, will not be used for current analysis", cacheFile.getPath());
                 } catch (final IOException e) {
+                    fileResultsCache.clear();
+                    ruleChecksums.clear();
                     LOG.error("Could not load analysis cache from file: {}", e.getMessage());
                 }
             } else if (cacheFile.isDirectory()) {
@@ -111,6 +167,27 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
         }
     }
 
+    private static ByteBuffer readCacheFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Cache file is too large (" + size + " bytes)");
+            }
+            if (SystemUtils.IS_OS_WINDOWS) {
+                // A mapped file can't be replaced on Windows until the mapping is garbage collected,
+                // so the cache couldn't be compacted.
+                final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading
+                }
+                buffer.flip();
+                return buffer;
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(MapMode.READ_ONLY, 0, size);
+        }
+    }
+
     @Override
     public void persist() {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
@@ -127,33 +204,46 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                 if (parentFile != null && !parentFile.exists()) {
                     parentFile.mkdirs();
                 }
+            } else if (!cacheFile.canWrite()) {
+                LOG.error("Could not persist analysis cache to file: {} is not writable", cacheFile);
+                return;
             }
 
-            try (
-                DataOutputStream outputStream = new DataOutputStream(
-                    new BufferedOutputStream(Files.newOutputStream(cacheFile.toPath())))
-            ) {
-                outputStream.writeUTF(pmdVersion);
-
-                outputStream.writeLong(rulesetChecksum);
-                outputStream.writeLong(auxClassPathChecksum);
-                outputStream.writeLong(executionClassPathChecksum);
+            try {
+                final ByteBuffer loadedData = loaded != null && loaded.isCurrent(cacheFile, this) ? loaded.data : null;
 
+                // serialize the new results, and collect the records that can be kept
+                final List<byte[]> newRecords = new ArrayList<>();
+                final List<FileId> newRecordFiles = new ArrayList<>();
+                final List<MappedAnalysisResult> keptRecords = new ArrayList<>();
+                long keptBytes = 0;
+                long newBytes = 0;
                 for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
-                    final List<RuleViolation> violations = resultEntry.getValue().getViolations();
-
-                    outputStream.writeUTF(resultEntry.getKey().getUriString()); // the path id
-                    outputStream.writeLong(resultEntry.getValue().getFileChecksum());
-
-                    outputStream.writeInt(violations.size());
-                    for (final RuleViolation rv : violations) {
-                        CachedRuleViolation.storeToStream(outputStream, rv);
+                    final AnalysisResult result = resultEntry.getValue();
+                    if (result instanceof MappedAnalysisResult && ((MappedAnalysisResult) result).isStoredIn(loadedData)) {
+                        keptRecords.add((MappedAnalysisResult) result);
+                        keptBytes += ((MappedAnalysisResult) result).getRecordLength();
+                    } else {
+                        final byte[] record = serializeRecord(resultEntry.getKey(), result);
+                        newRecords.add(record);
+                        newRecordFiles.add(resultEntry.getKey());
+                        newBytes += record.length;
                     }
                 }
-                if (cacheFileShouldBeCreated) {
-                    LOG.debug("Analysis cache created");
-                } else {
+
+                // everything in the current file except the records we keep is garbage
+                final long garbageBytes = loadedData == null ? 0 : loadedData.limit() - loaded.dataOffset - keptBytes;
+                final long liveBytes = keptBytes + newBytes + 4 + (long) INDEX_ENTRY_SIZE * updatedResultsCache.size();
+                if (loadedData != null && garbageBytes <= liveBytes) {
+                    append(keptRecords, newRecords, newRecordFiles);
                     LOG.debug("Analysis cache updated");
+                } else {
+                    rewrite(keptRecords, newRecords, newRecordFiles);
+                    if (cacheFileShouldBeCreated) {
+                        LOG.debug("Analysis cache created");
+                    } else {
+                        LOG.debug("Analysis cache compacted");
+                    }
                 }
             } catch (final IOException e) {
                 LOG.error("Could not persist analysis cache to file: {}", e.getMessage());
@@ -161,8 +251,243 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
         }
     }
 
+    private static byte[] serializeRecord(FileId fileId, AnalysisResult result) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+            final List<RuleViolation> violations = result.getViolations();
+
+            outputStream.writeInt(0); // the length, filled in below
+            outputStream.writeUTF(fileId.getUriString()); // the path id
+            outputStream.writeLong(result.getFileChecksum());
+            outputStream.writeLong(result.getProcessingTimeNanos());
+
+            outputStream.writeInt(violations.size());
+            for (final RuleViolation rv : violations) {
+                CachedRuleViolation.storeToStream(outputStream, rv);
+            }
+        }
+        final byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length);
+        return record;
+    }
+
+    /**
+     * Appends the new records and a new index to the loaded file, then
+     * points the header to the new index.
+     */
+    private void append(List<MappedAnalysisResult> keptRecords, List<byte[]> newRecords, List<FileId> newRecordFiles) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.WRITE)) {
+            long position = loaded.data.limit();
+            final CacheIndex.Builder index = new CacheIndex.Builder(keptRecords.size() + newRecords.size());
+            for (MappedAnalysisResult kept : keptRecords) {
+                index.add(uriHash(kept), kept.getRecordOffset());
+            }
+            for (int i = 0; i < newRecords.size(); i++) {
+                index.add(uriHash(newRecordFiles.get(i).getUriString()), position);
+                position += writeFully(channel, ByteBuffer.wrap(newRecords.get(i)), position);
+            }
+            final long indexOffset = position;
+            writeFully(channel, ByteBuffer.wrap(index.toByteArray()), position);
+
+            final ByteBuffer indexOffsetBuffer = ByteBuffer.allocate(Long.BYTES);
+            indexOffsetBuffer.putLong(0, indexOffset);
+            writeFully(channel, indexOffsetBuffer, loaded.indexOffsetPosition);
+        }
+    }
+
+    /**
+     * Writes all live records to a new file, which then replaces the cache file.
+     */
+    private void rewrite(List<MappedAnalysisResult> keptRecords, List<byte[]> newRecords, List<FileId> newRecordFiles) throws IOException {
+        final Path target = cacheFile.toPath();
+        final Path tempFile = Files.createTempFile(cacheFile.getAbsoluteFile().getParentFile().toPath(), cacheFile.getName(), ".tmp");
+        try {
+            final int indexOffsetPosition;
+            final long indexOffset;
+            try (DataOutputStream outputStream = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                outputStream.writeUTF(pmdVersion);
+                outputStream.writeInt(CACHE_FORMAT_VERSION);
+
+                outputStream.writeInt(ruleChecksums.size());
+                for (final Map.Entry<String, Long> ruleChecksum : ruleChecksums.entrySet()) {
+                    outputStream.writeUTF(ruleChecksum.getKey());
+                    outputStream.writeLong(ruleChecksum.getValue());
+                }
+                outputStream.writeLong(auxClassPathChecksum);
+                outputStream.writeLong(executionClassPathChecksum);
+                indexOffsetPosition = outputStream.size();
+                outputStream.writeLong(0); // the index offset, filled in below
+
+                long position = outputStream.size();
+                final CacheIndex.Builder index = new CacheIndex.Builder(keptRecords.size() + newRecords.size());
+                for (MappedAnalysisResult kept : keptRecords) {
+                    index.add(uriHash(kept), position);
+                    kept.copyRecordTo(outputStream);
+                    position += kept.getRecordLength();
+                }
+                for (int i = 0; i < newRecords.size(); i++) {
+                    index.add(uriHash(newRecordFiles.get(i).getUriString()), position);
+                    outputStream.write(newRecords.get(i));
+                    position += newRecords.get(i).length;
+                }
+                indexOffset = position;
+                outputStream.write(index.toByteArray());
+            }
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                final ByteBuffer indexOffsetBuffer = ByteBuffer.allocate(Long.BYTES);
+                indexOffsetBuffer.putLong(0, indexOffset);
+                writeFully(channel, indexOffsetBuffer, indexOffsetPosition);
+            }
+            try {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        final int length = buffer.remaining();
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+        return length;
+    }
+
+    private static long uriHash(MappedAnalysisResult result) {
+        return uriHash(result.getFileId().getUriString());
+    }
+
+    /** 64-bit FNV-1a hash of the URI, the key of the index. */
+    static long uriHash(String uri) {
+        return hash64(uri);
+    }
+
     @Override
     protected boolean cacheExists() {
         return cacheFile.exists() && cacheFile.isFile() && cacheFile.length() > 0;
     }
+
+    /** The state of the cache file when it was loaded, needed to append to it. */
+    private static final class LoadedCacheFile {
+
+        private final ByteBuffer data;
+        /** Offset of the first record. */
+        private final int dataOffset;
+        /** Position of the offset of the index in the header. */
+        private final int indexOffsetPosition;
+        private final Map<String, Long> ruleChecksums;
+        private final long auxClassPathChecksum;
+        private final long executionClassPathChecksum;
+
+        LoadedCacheFile(ByteBuffer data, int dataOffset, int indexOffsetPosition,
+                        Map<String, Long> ruleChecksums, long auxClassPathChecksum, long executionClassPathChecksum) {
+            this.data = data;
+            this.dataOffset = dataOffset;
+            this.indexOffsetPosition = indexOffsetPosition;
+            this.ruleChecksums = ruleChecksums;
+            this.auxClassPathChecksum = auxClassPathChecksum;
+            this.executionClassPathChecksum = executionClassPathChecksum;
+        }
+
+        /**
+         * Whether the file can be appended to: it has not been changed
+         * since it was loaded, and the checksums in its header are still
+         * those of the cache.
+         */
+        boolean isCurrent(File file, FileAnalysisCache cache) {
+            return file.length() == data.limit()
+                && ruleChecksums.equals(cache.ruleChecksums)
+                && auxClassPathChecksum == cache.auxClassPathChecksum
+                && executionClassPathChecksum == cache.executionClassPathChecksum;
+        }
+    }
+
+    /** The index of the records, sorted by the hash of their URI. */
+    private static final class CacheIndex {
+
+        private final ByteBuffer data;
+        /** Offset of the index, which is also the end of the records. */
+        private final int offset;
+        private final int size;
+
+        private CacheIndex(ByteBuffer data, int offset, int size) {
+            this.data = data;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        static CacheIndex read(ByteBuffer data, int dataOffset, long indexOffset) throws IOException {
+            if (indexOffset < dataOffset || indexOffset > data.limit() - Integer.BYTES) {
+                throw new EOFException("Index offset " + indexOffset + " is out of bounds");
+            }
+            final int offset = (int) indexOffset;
+            final int size = data.getInt(offset);
+            if (size < 0 || size > (data.limit() - offset - Integer.BYTES) / INDEX_ENTRY_SIZE) {
+                throw new EOFException("Index size " + size + " is out of bounds");
+            }
+            return new CacheIndex(data, offset, size);
+        }
+
+        private long hashAt(int i) {
+            return data.getLong(offset + Integer.BYTES + i * INDEX_ENTRY_SIZE);
+        }
+
+        /** Returns the offset of the record with the given hash, or -1. */
+        int find(long hash) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final long midHash = hashAt(mid);
+                if (midHash < hash) {
+                    low = mid + 1;
+                } else if (midHash > hash) {
+                    high = mid - 1;
+                } else {
+                    final long recordOffset = data.getLong(offset + Integer.BYTES + mid * INDEX_ENTRY_SIZE + Long.BYTES);
+                    return recordOffset >= 0 && recordOffset < offset ? (int) recordOffset : -1;
+                }
+            }
+            return -1;
+        }
+
+        static final class Builder {
+
+            private final long[] hashes;
+            private final long[] offsets;
+            private int size;
+
+            Builder(int capacity) {
+                hashes = new long[capacity];
+                offsets = new long[capacity];
+            }
+
+            void add(long hash, long recordOffset) {
+                hashes[size] = hash;
+                offsets[size] = recordOffset;
+                size++;
+            }
+
+            byte[] toByteArray() {
+                final Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparingLong(i -> hashes[i]));
+
+                final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + size * INDEX_ENTRY_SIZE);
+                buffer.putInt(size);
+                for (int i : order) {
+                    buffer.putLong(hashes[i]);
+                    buffer.putLong(offsets[i]);
+                }
+                return buffer.array();
+            }
+        }
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * The result of the analysis of a file, as stored in a record of the
+ * cache file read by {@link FileAnalysisCache}. Only the checksum and
+ * processing time of the file are read eagerly. The violations are
+ * decoded the first time they are requested, which only happens if
+ * the file is up to date.
+ *
+ * <p>As long as no violation is added, the record can be copied as is
+ * when the cache is persisted again, see {@link #isStoredIn(ByteBuffer)}.
+ */
+final class MappedAnalysisResult extends AnalysisResult {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedAnalysisResult.class);
+
+    /** The contents of the cache file. Its position is never changed. */
+    private final ByteBuffer data;
+    private final int recordOffset;
+    private final int recordLength;
+    private final int violationsOffset;
+    private final FileId fileId;
+    private final CachedRuleMapper mapper;
+
+    private List<RuleViolation> violations;
+    private boolean modified;
+
+    private MappedAnalysisResult(long fileChecksum, ByteBuffer data, int recordOffset, int recordLength,
+                                 int violationsOffset, FileId fileId, CachedRuleMapper mapper) {
+        super(fileChecksum, Collections.emptyList());
+        this.data = data;
+        this.recordOffset = recordOffset;
+        this.recordLength = recordLength;
+        this.violationsOffset = violationsOffset;
+        this.fileId = fileId;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Reads the header of the record at the given offset. Returns null
+     * if the record is not the one of the given file, which happens if
+     * the hashes of their URIs collide.
+     *
+     * @throws IOException If the record is malformed
+     */
+    static @Nullable MappedAnalysisResult read(ByteBuffer data, int recordOffset, int recordsEnd,
+                                               FileId fileId, CachedRuleMapper mapper) throws IOException {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(recordOffset);
+        @SuppressWarnings("PMD.CloseResource") // reads a buffer, there is nothing to close
+        DataInputStream in = new DataInputStream(IOUtil.fromByteBuffer(buffer));
+        int recordLength = in.readInt();
+        if (recordLength < 0 || recordLength > recordsEnd - recordOffset) {
+            throw new IOException("Record of " + fileId.getUriString() + " overflows the data section");
+        }
+        if (!fileId.getUriString().equals(in.readUTF())) {
+            return null;
+        }
+        long checksum = in.readLong();
+        long processingTime = in.readLong();
+        MappedAnalysisResult result = new MappedAnalysisResult(checksum, data, recordOffset, recordLength,
+                                                               buffer.position(), fileId, mapper);
+        result.setProcessingTimeNanos(processingTime);
+        return result;
+    }
+
+    @Override
+    public synchronized List<RuleViolation> getViolations() {
+        if (violations == null) {
+            violations = decodeViolations();
+        }
+        return violations;
+    }
+
+    private List<RuleViolation> decodeViolations() {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(violationsOffset);
+        buffer.limit(recordOffset + recordLength);
+        @SuppressWarnings("PMD.CloseResource") // reads a buffer, there is nothing to close
+        DataInputStream in = new DataInputStream(IOUtil.fromByteBuffer(buffer));
+        try {
+            int count = in.readInt();
+            List<RuleViolation> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(CachedRuleViolation.loadFromStream(in, fileId, mapper));
+            }
+            return result;
+        } catch (IOException e) {
+            LOG.error("Cached violations of {} are malformed and will not be reported", fileId.getUriString(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public synchronized void addViolations(List<RuleViolation> violations) {
+        modified = true;
+        getViolations().addAll(violations);
+    }
+
+    @Override
+    public synchronized void addViolation(RuleViolation ruleViolation) {
+        modified = true;
+        getViolations().add(ruleViolation);
+    }
+
+    /**
+     * Returns true if this result is unchanged, and its record is in
+     * the given cache file contents.
+     */
+    synchronized boolean isStoredIn(ByteBuffer fileData) {
+        return !modified && data == fileData; // NOPMD CompareObjectsWithEquals
+    }
+
+    FileId getFileId() {
+        return fileId;
+    }
+
+    int getRecordOffset() {
+        return recordOffset;
+    }
+
+    int getRecordLength() {
+        return recordLength;
+    }
+
+    /** Copies the record without decoding it. */
+    void copyRecordTo(OutputStream out) throws IOException {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(recordOffset);
+        byte[] record = new byte[recordLength];
+        buffer.get(record);
+        out.write(record);
+    }
+}
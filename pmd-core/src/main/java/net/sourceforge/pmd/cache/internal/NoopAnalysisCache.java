@@ -8,8 +8,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.RuleViolation;
@@ -44,6 +46,26 @@ public class NoopAnalysisCache implements AnalysisCache {
         return Collections.emptyList();
     }
 
+    @Override
+    public boolean isRuleUpToDate(Rule rule) {
+        return false;
+    }
+
+    @Override
+    public boolean hasOutdatedRules() {
+        return false;
+    }
+
+    @Override
+    public long getPreviousProcessingTime(FileId fileId) {
+        return -1;
+    }
+
+    @Override
+    public void recordProcessingTime(TextDocument document, long nanos) {
+        // noop
+    }
+
     @Override
     public FileAnalysisListener startFileAnalysis(TextDocument filename) {
         return FileAnalysisListener.noop();
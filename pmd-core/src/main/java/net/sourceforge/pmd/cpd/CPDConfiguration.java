@@ -8,10 +8,12 @@ import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -76,6 +78,20 @@ public class CPDConfiguration extends AbstractConfiguration {
 
     private boolean help;
 
+    private int threads = 1;
+
+    private CpdMatchAlgorithm matchAlgorithm = CpdMatchAlgorithm.ROLLING_HASH;
+
+    private double minimumSimilarity = 0.8;
+
+    private @Nullable Path cacheLocation;
+
+    private boolean reportOnlyChangedFiles;
+
+    private @Nullable Path spillDirectory;
+
+    private boolean streamingReport;
+
 
     public CPDConfiguration() {
         this(LanguageRegistry.CPD);
@@ -247,6 +263,178 @@ public class CPDConfiguration extends AbstractConfiguration {
         this.skipLexicalErrors = skipLexicalErrors;
     }
 
+    /**
+     * Returns the number of threads used to tokenize files and to find
+     * duplications. Defaults to 1, like the {@code --threads} CLI option.
+     *
+     * @since 7.12.0
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used to tokenize files and to find
+     * duplications. With 0 or 1, all the work is done on the thread that
+     * runs the analysis. The report doesn't depend on the number of threads.
+     *
+     * @param threads The number of threads
+     *
+     * @since 7.12.0
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the algorithm used to find duplications. Defaults to
+     * {@link CpdMatchAlgorithm#ROLLING_HASH}.
+     *
+     * @since 7.12.0
+     */
+    public @NonNull CpdMatchAlgorithm getMatchAlgorithm() {
+        return matchAlgorithm;
+    }
+
+    /**
+     * Sets the algorithm used to find duplications.
+     *
+     * @param matchAlgorithm The algorithm
+     *
+     * @throws NullPointerException If the parameter is null
+     * @since 7.12.0
+     */
+    public void setMatchAlgorithm(@NonNull CpdMatchAlgorithm matchAlgorithm) {
+        this.matchAlgorithm = Objects.requireNonNull(matchAlgorithm);
+    }
+
+    /**
+     * Returns the minimal similarity of near-miss duplications. Defaults to 0.8.
+     * See {@link #setMinimumSimilarity(double)}.
+     *
+     * @since 7.12.0
+     */
+    public double getMinimumSimilarity() {
+        return minimumSimilarity;
+    }
+
+    /**
+     * Sets the minimal similarity of the duplications found by
+     * {@link CpdMatchAlgorithm#NEAR_MISS}. The similarity of two token
+     * sequences is one minus their edit distance divided by the length of
+     * the longest one. This has no effect with the other algorithms.
+     *
+     * @param minimumSimilarity The minimal similarity, greater than 0 and at most 1
+     *
+     * @throws IllegalArgumentException If the similarity is out of range
+     * @since 7.12.0
+     */
+    public void setMinimumSimilarity(double minimumSimilarity) {
+        if (!(minimumSimilarity > 0 && minimumSimilarity <= 1)) {
+            throw new IllegalArgumentException("Minimum similarity must be in ]0, 1], got " + minimumSimilarity);
+        }
+        this.minimumSimilarity = minimumSimilarity;
+    }
+
+    /**
+     * Returns the location of the file in which the tokens of each file
+     * are cached between runs, or null if there is no cache.
+     *
+     * @since 7.12.0
+     */
+    public @Nullable Path getCacheLocation() {
+        return cacheLocation;
+    }
+
+    /**
+     * Sets the location of the file in which the tokens of each file are
+     * cached between runs. Files whose content and lexer configuration
+     * did not change since the previous run are not lexed again. The file is
+     * created if it doesn't exist, and overwritten at the end of the run.
+     *
+     * @param cacheLocation The location of the cache file, null to disable the cache
+     *
+     * @since 7.12.0
+     */
+    public void setCacheLocation(@Nullable Path cacheLocation) {
+        this.cacheLocation = cacheLocation;
+    }
+
+    /**
+     * Returns whether only the duplications that involve at least one
+     * changed file are reported. See {@link #setReportOnlyChangedFiles(boolean)}.
+     *
+     * @since 7.12.0
+     */
+    public boolean isReportOnlyChangedFiles() {
+        return reportOnlyChangedFiles;
+    }
+
+    /**
+     * Sets whether only the duplications that involve at least one file
+     * that changed since the previous run are reported. A file is changed
+     * if its tokens could not be taken from the cache. This has no effect if
+     * there is no cache (see {@link #setCacheLocation(Path)}).
+     *
+     * @param reportOnlyChangedFiles Whether to only report duplications in changed files
+     *
+     * @since 7.12.0
+     */
+    public void setReportOnlyChangedFiles(boolean reportOnlyChangedFiles) {
+        this.reportOnlyChangedFiles = reportOnlyChangedFiles;
+    }
+
+    /**
+     * Returns the directory in which the tokens are stored during the
+     * analysis, or null if they are kept in memory.
+     *
+     * @since 7.12.0
+     */
+    public @Nullable Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets a directory in which the tokens and their hashes are stored
+     * during the analysis, instead of the heap. The memory used by CPD then
+     * doesn't grow with the number of tokens, which allows analysing code
+     * bases that don't fit in memory, at the cost of a slower analysis.
+     * The files are deleted at the end of the analysis. This always uses
+     * the {@linkplain CpdMatchAlgorithm#ROLLING_HASH rolling hash algorithm}.
+     *
+     * @param spillDirectory The directory, null to keep the tokens in memory
+     *
+     * @since 7.12.0
+     */
+    public void setSpillDirectory(@Nullable Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns whether the report is streamed, see {@link #setStreamingReport(boolean)}.
+     *
+     * @since 7.12.0
+     */
+    public boolean isStreamingReport() {
+        return streamingReport;
+    }
+
+    /**
+     * Sets whether the report is written one match at a time, if the renderer
+     * is a {@link CPDStreamingReportRenderer}. The code fragments of the
+     * report are then read file by file before the matches are written, and
+     * only the fragments are kept in memory, not the files. The matches are
+     * still all kept in memory. The XML renderer doesn't build the whole
+     * document first, but it indents its output differently.
+     *
+     * @param streamingReport Whether to stream the report
+     *
+     * @since 7.12.0
+     */
+    public void setStreamingReport(boolean streamingReport) {
+        this.streamingReport = streamingReport;
+    }
+
     public boolean isHelp() {
         return help;
     }
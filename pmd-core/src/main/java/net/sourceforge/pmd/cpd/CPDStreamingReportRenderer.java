@@ -0,0 +1,64 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A {@link CPDReportRenderer} that writes the matches one at a time,
+ * instead of building the whole report in memory first. The source code
+ * of a match should only be read while it is rendered, see
+ * {@link CPDConfiguration#setStreamingReport(boolean)}.
+ *
+ * <p>A rendering session is {@link #start(CPDReport, Writer) start},
+ * then {@link #renderMatch(Match) renderMatch} for each match in the
+ * order of the report, then {@link #end() end}. Implementations keep the
+ * state of the session, so a renderer must not be used for two reports
+ * at the same time.
+ *
+ * @since 7.12.0
+ */
+public interface CPDStreamingReportRenderer extends CPDReportRenderer {
+
+    /**
+     * Starts rendering a report. This only writes what comes before the
+     * first match, the matches of the report are not rendered.
+     *
+     * @param report The report, used for everything but its matches
+     * @param writer A writer for the report file
+     *
+     * @throws IOException If the writer throws
+     */
+    void start(CPDReport report, Writer writer) throws IOException;
+
+    /**
+     * Writes a match of the report given to {@link #start(CPDReport, Writer)}.
+     *
+     * @param match The match
+     *
+     * @throws IOException If the writer throws
+     */
+    void renderMatch(Match match) throws IOException;
+
+    /**
+     * Writes what comes after the last match and flushes the writer.
+     *
+     * @throws IOException If the writer throws
+     */
+    void end() throws IOException;
+
+    /**
+     * Renders all the matches of the report in a single session.
+     */
+    @Override
+    default void render(CPDReport report, Writer writer) throws IOException {
+        start(report, writer);
+        for (Match match : report.getMatches()) {
+            renderMatch(match);
+        }
+        end();
+    }
+}
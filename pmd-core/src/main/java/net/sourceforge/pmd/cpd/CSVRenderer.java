@@ -55,11 +55,14 @@ import net.sourceforge.pmd.lang.document.FileLocation;
  * <li>The second duplicate instance is in file {@code /var/file2}, starts at line 73, and is 12 lines long.</li>
  * </ul>
  */
-public class CSVRenderer implements CPDReportRenderer {
+public class CSVRenderer implements CPDStreamingReportRenderer {
 
     private final char separator;
     private final boolean lineCountPerFile;
 
+    private CPDReport report;
+    private Writer writer;
+
     public static final char DEFAULT_SEPARATOR = ',';
     public static final boolean DEFAULT_LINECOUNTPERFILE = false;
 
@@ -81,33 +84,42 @@ public class CSVRenderer implements CPDReportRenderer {
     }
 
     @Override
-    public void render(CPDReport report, Writer writer) throws IOException {
+    public void start(CPDReport report, Writer writer) throws IOException {
+        this.report = report;
+        this.writer = writer;
         if (!lineCountPerFile) {
             writer.append("lines").append(separator);
         }
         writer.append("tokens").append(separator).append("occurrences").append(System.lineSeparator());
+    }
 
-        for (Match match : report.getMatches()) {
-            if (!lineCountPerFile) {
-                writer.append(String.valueOf(match.getLineCount())).append(separator);
+    @Override
+    public void renderMatch(Match match) throws IOException {
+        if (!lineCountPerFile) {
+            writer.append(String.valueOf(match.getLineCount())).append(separator);
+        }
+        writer.append(String.valueOf(match.getTokenCount())).append(separator)
+              .append(String.valueOf(match.getMarkCount())).append(separator);
+        for (Iterator<Mark> marks = match.iterator(); marks.hasNext();) {
+            Mark mark = marks.next();
+            FileLocation loc = mark.getLocation();
+
+            writer.append(String.valueOf(loc.getStartLine())).append(separator);
+            if (lineCountPerFile) {
+                writer.append(String.valueOf(loc.getLineCount())).append(separator);
             }
-            writer.append(String.valueOf(match.getTokenCount())).append(separator)
-                  .append(String.valueOf(match.getMarkCount())).append(separator);
-            for (Iterator<Mark> marks = match.iterator(); marks.hasNext();) {
-                Mark mark = marks.next();
-                FileLocation loc = mark.getLocation();
-
-                writer.append(String.valueOf(loc.getStartLine())).append(separator);
-                if (lineCountPerFile) {
-                    writer.append(String.valueOf(loc.getLineCount())).append(separator);
-                }
-                writer.append(StringEscapeUtils.escapeCsv(report.getDisplayName(loc.getFileId())));
-                if (marks.hasNext()) {
-                    writer.append(separator);
-                }
+            writer.append(StringEscapeUtils.escapeCsv(report.getDisplayName(loc.getFileId())));
+            if (marks.hasNext()) {
+                writer.append(separator);
             }
-            writer.append(System.lineSeparator());
         }
+        writer.append(System.lineSeparator());
+    }
+
+    @Override
+    public void end() throws IOException {
         writer.flush();
+        report = null;
+        writer = null;
     }
 }
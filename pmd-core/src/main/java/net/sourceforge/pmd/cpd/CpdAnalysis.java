@@ -4,27 +4,39 @@
 
 package net.sourceforge.pmd.cpd;
 
+import static net.sourceforge.pmd.lang.impl.InternalApiBridge.newAnalysisExecutor;
+
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.internal.util.FileCollectionUtil;
 import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguagePropertyBundle;
 import net.sourceforge.pmd.lang.ast.FileAnalysisException;
-import net.sourceforge.pmd.lang.ast.LexException;
 import net.sourceforge.pmd.lang.document.FileCollector;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.InternalApiBridge;
@@ -75,6 +87,7 @@ public final class CpdAnalysis implements AutoCloseable {
     private final FileCollector files;
     private final PmdReporter reporter;
     private final @Nullable CPDReportRenderer renderer;
+    private final @Nullable CpdCache cache;
     private @NonNull CPDListener listener = new CPDNullListener();
 
 
@@ -87,6 +100,11 @@ public final class CpdAnalysis implements AutoCloseable {
         );
 
         this.renderer = config.getCPDReportRenderer();
+        if (config.isStreamingReport() && renderer != null && !(renderer instanceof CPDStreamingReportRenderer)) {
+            reporter.warn("The renderer {0} does not support streaming, the report will be rendered at once",
+                          renderer.getClass().getSimpleName());
+        }
+        this.cache = config.getCacheLocation() == null ? null : new CpdCache(config.getCacheLocation());
 
         FileCollectionUtil.collectFiles(config, files());
 
@@ -140,11 +158,126 @@ public final class CpdAnalysis implements AutoCloseable {
         this.listener = cpdListener;
     }
 
-    private int doTokenize(TextDocument document, CpdLexer cpdLexer, Tokens tokens) throws IOException, LexException {
-        LOGGER.trace("Tokenizing {}", document.getFileId().getAbsolutePath());
-        int lastTokenSize = tokens.size();
-        CpdLexer.tokenize(cpdLexer, document, tokens);
-        return tokens.size() - lastTokenSize - 1; /* EOF */
+    /**
+     * Tokenizes all files. Each file is lexed into its own {@link Tokens}
+     * instance, possibly on several threads, and these are appended to the
+     * result in the order of the files, so that the result does not depend
+     * on the number of threads.
+     */
+    @SuppressWarnings("PMD.CloseResource") // the files are closed by the source manager
+    private Tokens tokenize(SourceManager sourceManager,
+                            Map<FileId, Integer> numberOfTokensPerFile,
+                            Set<FileId> changedFiles,
+                            List<Report.ProcessingError> processingErrors,
+                            @Nullable TokenSpillFile spill) throws InterruptedException {
+        List<TextFile> textFiles = sourceManager.getTextFiles();
+        CpdLexerPool lexers = new CpdLexerPool(configuration);
+        Tokens tokens = new Tokens(spill);
+
+        int threads = Math.min(configuration.getThreads(), textFiles.size());
+        if (threads <= 1) {
+            for (TextFile textFile : textFiles) {
+                addFileTokens(tokens, tokenizeFile(sourceManager, textFile, lexers), numberOfTokensPerFile, changedFiles, processingErrors);
+            }
+            return tokens;
+        }
+
+        ExecutorService executor = newAnalysisExecutor(threads, false, reporter);
+        try {
+            List<Future<FileTokens>> results = new ArrayList<>(textFiles.size());
+            for (TextFile textFile : textFiles) {
+                results.add(executor.submit(() -> tokenizeFile(sourceManager, textFile, lexers)));
+            }
+            for (Future<FileTokens> result : results) {
+                addFileTokens(tokens, getResult(result), numberOfTokensPerFile, changedFiles, processingErrors);
+            }
+            return tokens;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static FileTokens getResult(Future<FileTokens> result) throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private FileTokens tokenizeFile(SourceManager sourceManager, TextFile textFile, CpdLexerPool lexers) {
+        TextDocument textDocument = sourceManager.get(textFile);
+        Language language = textFile.getLanguageVersion().getLanguage();
+        long lexerChecksum = 0;
+        if (cache != null) {
+            lexerChecksum = lexers.getLexerChecksum(language);
+            Tokens cached = cache.getTokens(textFile.getFileId(), textDocument.getCheckSum(), lexerChecksum);
+            if (cached != null) {
+                LOGGER.trace("Using cached tokens of {}", textDocument.getFileId().getAbsolutePath());
+                return new FileTokens(textFile, cached, null, false);
+            }
+        }
+        CpdLexer cpdLexer = lexers.acquire(language);
+        try {
+            LOGGER.trace("Tokenizing {}", textDocument.getFileId().getAbsolutePath());
+            Tokens fileTokens = CpdLexer.tokenize(cpdLexer, textDocument);
+            if (cache != null) {
+                cache.putTokens(textFile.getFileId(), textDocument.getCheckSum(), lexerChecksum, fileTokens);
+            }
+            return new FileTokens(textFile, fileTokens, null, true);
+        } catch (IOException | FileAnalysisException e) {
+            if (e instanceof FileAnalysisException) { // NOPMD
+                ((FileAnalysisException) e).setFileId(textFile.getFileId());
+            }
+            return new FileTokens(textFile, null, e, true);
+        } finally {
+            lexers.release(language, cpdLexer);
+        }
+    }
+
+    private void addFileTokens(Tokens tokens, FileTokens fileTokens,
+                               Map<FileId, Integer> numberOfTokensPerFile,
+                               Set<FileId> changedFiles,
+                               List<Report.ProcessingError> processingErrors) {
+        FileId fileId = fileTokens.textFile.getFileId();
+        if (fileTokens.changed) {
+            changedFiles.add(fileId);
+        }
+        if (fileTokens.error == null) {
+            numberOfTokensPerFile.put(fileId, fileTokens.tokens.size() - 1 /* EOF */);
+            tokens.appendFile(fileTokens.tokens);
+            listener.addedFile(1);
+        } else {
+            String message = configuration.isSkipLexicalErrors() ? "Skipping file" : "Error while tokenizing";
+            reporter.errorEx(message, fileTokens.error);
+            processingErrors.add(new Report.ProcessingError(fileTokens.error, fileId));
+        }
+    }
+
+    private MatchAlgorithm newMatchAlgorithm(Tokens tokens) {
+        if (tokens.isSpilled()) {
+            if (configuration.getMatchAlgorithm() != CpdMatchAlgorithm.ROLLING_HASH) {
+                reporter.warn("The match algorithm {0} needs all tokens in memory, using {1} with the spill directory instead",
+                              configuration.getMatchAlgorithm(), CpdMatchAlgorithm.ROLLING_HASH);
+            }
+            return new ExternalMatchAlgorithm(tokens, configuration.getMinimumTileSize(), configuration.getThreads(),
+                                              configuration.getSpillDirectory());
+        }
+        switch (configuration.getMatchAlgorithm()) {
+        case SUFFIX_ARRAY:
+            return new SuffixArrayMatchAlgorithm(tokens, configuration.getMinimumTileSize());
+        case NEAR_MISS:
+            return new NearMissMatchAlgorithm(tokens, configuration.getMinimumTileSize(), configuration.getMinimumSimilarity());
+        case ROLLING_HASH:
+        default:
+            return new MatchAlgorithm(tokens, configuration.getMinimumTileSize(), configuration.getThreads());
+        }
     }
 
     public void performAnalysis() {
@@ -153,59 +286,90 @@ public final class CpdAnalysis implements AutoCloseable {
 
     @SuppressWarnings("PMD.CloseResource")
     public void performAnalysis(Consumer<CPDReport> consumer) {
-        try (SourceManager sourceManager = new SourceManager(files.getCollectedFiles())) {
-            Map<Language, CpdLexer> tokenizers =
-                sourceManager.getTextFiles().stream()
-                             .map(it -> it.getLanguageVersion().getLanguage())
-                             .distinct()
-                             .filter(it -> it instanceof CpdCapableLanguage)
-                             .collect(Collectors.toMap(lang -> lang, lang -> ((CpdCapableLanguage) lang).createCpdLexer(configuration.getLanguageProperties(lang))));
-
+        Path spillDirectory = configuration.getSpillDirectory();
+        try (SourceManager sourceManager = new SourceManager(files.getCollectedFiles(), spillDirectory == null);
+             TokenSpillFile spill = spillDirectory == null ? null : new TokenSpillFile(spillDirectory)) {
             Map<FileId, Integer> numberOfTokensPerFile = new HashMap<>();
-
+            Set<FileId> changedFiles = new HashSet<>();
             List<Report.ProcessingError> processingErrors = new ArrayList<>();
-            Tokens tokens = new Tokens();
-            for (TextFile textFile : sourceManager.getTextFiles()) {
-                TextDocument textDocument = sourceManager.get(textFile);
-                Tokens.State savedState = tokens.savePoint();
-                try {
-                    int newTokens = doTokenize(textDocument, tokenizers.get(textFile.getLanguageVersion().getLanguage()), tokens);
-                    numberOfTokensPerFile.put(textDocument.getFileId(), newTokens);
-                    listener.addedFile(1);
-                } catch (IOException | FileAnalysisException e) {
-                    if (e instanceof FileAnalysisException) { // NOPMD
-                        ((FileAnalysisException) e).setFileId(textFile.getFileId());
-                    }
-                    String message = configuration.isSkipLexicalErrors() ? "Skipping file" : "Error while tokenizing";
-                    reporter.errorEx(message, e);
-                    processingErrors.add(new Report.ProcessingError(e, textFile.getFileId()));
-                    savedState.restore(tokens);
+            if (cache != null) {
+                cache.load();
+            }
+            Tokens tokens;
+            try (TimedOperation op = TimeTracker.startOperation(TimedOperationCategory.COPY_PASTE_DETECTION, "Tokenize")) {
+                tokens = tokenize(sourceManager, numberOfTokensPerFile, changedFiles, processingErrors, spill);
+                if (spill != null) {
+                    spill.finishWriting();
                 }
+                op.close(tokens.size());
+            }
+            if (cache != null) {
+                cache.persist();
+                LOGGER.debug("{} of {} files were not in the cache", changedFiles.size(), sourceManager.getTextFiles().size());
             }
             if (!processingErrors.isEmpty() && !configuration.isSkipLexicalErrors()) {
                 // will be caught by CPD command
                 throw new IllegalStateException("Errors were detected while lexing source, exiting because --skip-lexical-errors is unset.");
             }
 
-            LOGGER.debug("Running match algorithm on {} files...", sourceManager.size());
-            MatchAlgorithm matchAlgorithm = new MatchAlgorithm(tokens, configuration.getMinimumTileSize());
-            List<Match> matches = matchAlgorithm.findMatches(listener, sourceManager);
+            LOGGER.debug("Running match algorithm on {} files...", sourceManager.getTextFiles().size());
+            MatchAlgorithm matchAlgorithm = newMatchAlgorithm(tokens);
+            List<Match> matches;
+            try (TimedPhasesListener timedListener = new TimedPhasesListener(listener)) {
+                matches = matchAlgorithm.findMatches(timedListener, sourceManager);
+            }
             tokens = null; // NOPMD null it out before rendering
+            if (cache != null && configuration.isReportOnlyChangedFiles()) {
+                matches.removeIf(match -> match.getMarkSet().stream()
+                                               .noneMatch(mark -> changedFiles.contains(mark.getLocation().getFileId())));
+            }
             LOGGER.debug("Finished: {} duplicates found", matches.size());
 
             CPDReport cpdReport = new CPDReport(sourceManager, matches, numberOfTokensPerFile, processingErrors);
 
             if (renderer != null) {
-                try (Writer writer = IOUtil.createWriter(Charset.defaultCharset(), null)) {
-                    renderer.render(cpdReport, writer);
+                try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.COPY_PASTE_DETECTION, "Render");
+                     Writer writer = IOUtil.createWriter(Charset.defaultCharset(), null)) {
+                    if (configuration.isStreamingReport() && renderer instanceof CPDStreamingReportRenderer) {
+                        renderStreaming((CPDStreamingReportRenderer) renderer, cpdReport, sourceManager, writer);
+                    } else {
+                        renderer.render(cpdReport, writer);
+                    }
                 }
             }
 
             consumer.accept(cpdReport);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reporter.errorEx("Interrupted while running CPD", e);
         } catch (Exception e) {
             reporter.errorEx("Exception while running CPD", e);
         }
-        // source manager is closed and closes all text files now.
+        // source manager is closed and closes all text files now, and the spill file is deleted.
+    }
+
+
+    /**
+     * Writes the matches one at a time, in the order of the report. The
+     * renderers only write the source code of the first mark of a match.
+     * As the matches are not ordered by file, these slices are read
+     * first, file by file, so that each file is read once. Only the
+     * slices stay in memory, and a few documents for the other marks.
+     */
+    private void renderStreaming(CPDStreamingReportRenderer renderer, CPDReport report,
+                                 SourceManager sourceManager, Writer writer) throws IOException {
+        sourceManager.retainRecentDocumentsOnly();
+        List<Mark> firstMarks = new ArrayList<>(report.getMatches().size());
+        for (Match match : report.getMatches()) {
+            firstMarks.add(match.getFirstMark());
+        }
+        sourceManager.preloadSlices(firstMarks);
+        // not CPDReportRenderer#render, which some renderers override to build the whole report first
+        renderer.start(report, writer);
+        for (Match match : report.getMatches()) {
+            renderer.renderMatch(match);
+        }
+        renderer.end();
     }
 
 
@@ -214,4 +378,107 @@ public final class CpdAnalysis implements AutoCloseable {
         // nothing for now
     }
 
+    /**
+     * Times the phases that the match algorithm reports to the listener
+     * with the {@link TimeTracker}. Phases are reported on the thread that
+     * calls {@link MatchAlgorithm#findMatches(CPDListener, SourceManager)}.
+     */
+    private static final class TimedPhasesListener implements CPDListener, AutoCloseable {
+
+        private final CPDListener delegate;
+        private @Nullable TimedOperation phase;
+
+        TimedPhasesListener(CPDListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void addedFile(int fileCount) {
+            delegate.addedFile(fileCount);
+        }
+
+        @Override
+        public void phaseUpdate(int phase) {
+            close();
+            String label = phaseLabel(phase);
+            if (label != null) {
+                this.phase = TimeTracker.startOperation(TimedOperationCategory.COPY_PASTE_DETECTION, label);
+            }
+            delegate.phaseUpdate(phase);
+        }
+
+        private static @Nullable String phaseLabel(int phase) {
+            switch (phase) {
+            case HASH:
+                return "Hash";
+            case MATCH:
+                return "Match";
+            case GROUPING:
+                return "Group matches";
+            default:
+                return null;
+            }
+        }
+
+        /** Ends the current phase, if the algorithm failed before reporting the next one. */
+        @Override
+        public void close() {
+            if (phase != null) {
+                phase.close();
+                phase = null;
+            }
+        }
+    }
+
+    /**
+     * The tokens of a file, or the error that prevented lexing it. The
+     * file is changed if its tokens were not taken from the cache.
+     */
+    private static final class FileTokens {
+
+        private final TextFile textFile;
+        private final Tokens tokens;
+        private final Exception error;
+        private final boolean changed;
+
+        FileTokens(TextFile textFile, @Nullable Tokens tokens, @Nullable Exception error, boolean changed) {
+            this.textFile = textFile;
+            this.tokens = tokens;
+            this.error = error;
+            this.changed = changed;
+        }
+    }
+
+    /**
+     * Lexers of each language. A lexer is only used by one thread at a
+     * time, and is reused for other files afterwards.
+     */
+    private static final class CpdLexerPool {
+
+        private final Map<Language, Queue<CpdLexer>> idleLexers = new ConcurrentHashMap<>();
+        private final Map<Language, Long> lexerChecksums = new ConcurrentHashMap<>();
+        private final CPDConfiguration configuration;
+
+        CpdLexerPool(CPDConfiguration configuration) {
+            this.configuration = configuration;
+        }
+
+        CpdLexer acquire(Language language) {
+            CpdLexer lexer = idleLexers.computeIfAbsent(language, lang -> new ConcurrentLinkedQueue<>()).poll();
+            if (lexer == null) {
+                lexer = ((CpdCapableLanguage) language).createCpdLexer(configuration.getLanguageProperties(language));
+            }
+            return lexer;
+        }
+
+        void release(Language language, CpdLexer lexer) {
+            idleLexers.get(language).add(lexer);
+        }
+
+        long getLexerChecksum(Language language) {
+            return lexerChecksums.computeIfAbsent(
+                language, lang -> CpdCache.lexerChecksum(lang, configuration.getLanguageProperties(lang)));
+        }
+    }
+
 }
@@ -0,0 +1,243 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguagePropertyBundle;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+
+/**
+ * Stores the tokens of each file between CPD runs, so that files that
+ * did not change are not lexed again. See {@link CPDConfiguration#setCacheLocation(Path)}.
+ *
+ * <p>The tokens of a file are reused if the checksum of its content and
+ * the checksum of the lexer configuration are unchanged. The lexer
+ * configuration is made of the language and the values of all its
+ * properties, which include the {@link CpdLanguageProperties}.
+ *
+ * <p>The file starts with a header, followed by one record per file:
+ * <pre>
+ * header:  PMD version (UTF), format version (int), number of records (int)
+ * record:  file URI (UTF), file checksum (long), lexer checksum (long),
+ *          length of the tokens (int), tokens (see {@link Tokens#writeFileTokens})
+ * </pre>
+ *
+ * <p>The tokens of a record are only decoded when they are used. The
+ * cache only keeps the records of the files of the current run: when it
+ * is persisted, the whole file is rewritten.
+ */
+final class CpdCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CpdCache.class);
+
+    /**
+     * Version of the layout of the cache file. This must be incremented
+     * whenever the layout changes.
+     */
+    private static final int CACHE_FORMAT_VERSION = 1;
+
+    private final Path cacheFile;
+    private final Map<String, Record> loadedRecords = new HashMap<>();
+    private final Map<FileId, Record> updatedRecords = new ConcurrentHashMap<>();
+
+    CpdCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Loads the records of the cache file, if it exists. If the file
+     * is not valid, the cache starts empty.
+     */
+    void load() {
+        if (!Files.isRegularFile(cacheFile)) {
+            if (Files.isDirectory(cacheFile)) {
+                LOG.error("The configured cache location must be the path to a file, but is a directory.");
+            }
+            return;
+        }
+        try {
+            byte[] data = Files.readAllBytes(cacheFile);
+            @SuppressWarnings("PMD.CloseResource") // reads a byte array, there is nothing to close
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (!PMDVersion.VERSION.equals(in.readUTF()) || in.readInt() != CACHE_FORMAT_VERSION) {
+                LOG.debug("CPD cache invalidated, PMD version or cache format changed.");
+                return;
+            }
+            int numRecords = in.readInt();
+            for (int i = 0; i < numRecords; i++) {
+                String uri = in.readUTF();
+                long fileChecksum = in.readLong();
+                long lexerChecksum = in.readLong();
+                int length = in.readInt();
+                int offset = data.length - in.available();
+                if (length < 0 || length > in.available()) {
+                    throw new EOFException("Record length " + length + " is out of bounds");
+                }
+                in.skipBytes(length);
+                loadedRecords.put(uri, new Record(fileChecksum, lexerChecksum, data, offset, length));
+            }
+            LOG.debug("CPD cache loaded from {}", cacheFile);
+        } catch (EOFException e) {
+            loadedRecords.clear();
+            LOG.warn("Cache file {} is malformed, will not be used for current analysis", cacheFile);
+        } catch (IOException e) {
+            loadedRecords.clear();
+            LOG.error("Could not load CPD cache from file: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the cached tokens of the file, or null if the file or the
+     * lexer configuration changed since they were cached. This may be
+     * called concurrently for different files.
+     *
+     * @param fileId        Id of the file
+     * @param fileChecksum  Checksum of the content of the file
+     * @param lexerChecksum Checksum of the lexer configuration, see {@link #lexerChecksum(Language, LanguagePropertyBundle)}
+     */
+    @SuppressWarnings("PMD.CloseResource") // reads a byte array, there is nothing to close
+    @Nullable Tokens getTokens(FileId fileId, long fileChecksum, long lexerChecksum) {
+        Record record = loadedRecords.get(fileId.getUriString());
+        if (record == null || record.fileChecksum != fileChecksum || record.lexerChecksum != lexerChecksum) {
+            return null;
+        }
+        try {
+            Tokens tokens = Tokens.readFileTokens(record.input(), fileId);
+            updatedRecords.put(fileId, record);
+            return tokens;
+        } catch (IOException e) {
+            LOG.warn("Cached tokens of {} are malformed, the file is tokenized again", fileId.getAbsolutePath());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the tokens of a file that was tokenized in this run. This
+     * may be called concurrently for different files.
+     *
+     * @param fileId        Id of the file
+     * @param fileChecksum  Checksum of the content of the file
+     * @param lexerChecksum Checksum of the lexer configuration
+     * @param tokens        Tokens of the file only
+     */
+    void putTokens(FileId fileId, long fileChecksum, long lexerChecksum, Tokens tokens) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            tokens.writeFileTokens(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot happen when writing to memory", e);
+        }
+        byte[] data = bytes.toByteArray();
+        updatedRecords.put(fileId, new Record(fileChecksum, lexerChecksum, data, 0, data.length));
+    }
+
+    /**
+     * Writes the records of the files of this run to the cache file.
+     */
+    void persist() {
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tempFile = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    out.writeUTF(PMDVersion.VERSION);
+                    out.writeInt(CACHE_FORMAT_VERSION);
+                    out.writeInt(updatedRecords.size());
+                    for (Map.Entry<FileId, Record> entry : updatedRecords.entrySet()) {
+                        Record record = entry.getValue();
+                        out.writeUTF(entry.getKey().getUriString());
+                        out.writeLong(record.fileChecksum);
+                        out.writeLong(record.lexerChecksum);
+                        out.writeInt(record.length);
+                        out.write(record.data, record.offset, record.length);
+                    }
+                }
+                try {
+                    Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+            LOG.debug("CPD cache written to {}", cacheFile);
+        } catch (IOException e) {
+            LOG.error("Could not persist CPD cache to file: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Computes a checksum of the configuration of the lexer of a language:
+     * the language id and the values of all language properties.
+     */
+    static long lexerChecksum(Language language, LanguagePropertyBundle properties) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(language.getId()).append('\n');
+        for (PropertyDescriptor<?> descriptor : properties.getPropertyDescriptors()) {
+            sb.append(descriptor.name()).append('=').append(serializedValue(properties, descriptor)).append('\n');
+        }
+        return hash64(sb);
+    }
+
+    private static <T> String serializedValue(LanguagePropertyBundle properties, PropertyDescriptor<T> descriptor) {
+        return descriptor.serializer().toString(properties.getProperty(descriptor));
+    }
+
+    /** 64-bit FNV-1a hash of the characters. */
+    private static long hash64(CharSequence chars) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < chars.length(); i++) {
+            hash ^= chars.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** The serialized tokens of a file, see {@link Tokens#writeFileTokens}. */
+    private static final class Record {
+
+        private final long fileChecksum;
+        private final long lexerChecksum;
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+
+        Record(long fileChecksum, long lexerChecksum, byte[] data, int offset, int length) {
+            this.fileChecksum = fileChecksum;
+            this.lexerChecksum = lexerChecksum;
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        DataInputStream input() {
+            return new DataInputStream(new ByteArrayInputStream(data, offset, length));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+/**
+ * Algorithm used by CPD to find duplicated token sequences, see
+ * {@link CPDConfiguration#setMatchAlgorithm(CpdMatchAlgorithm)}.
+ *
+ * @since 7.12.0
+ */
+public enum CpdMatchAlgorithm {
+    /**
+     * Token sequences of the minimum tile size are bucketed by a rolling
+     * hash, and the occurrences in each bucket are compared pairwise. This
+     * may take a long time when the same sequence is repeated very often,
+     * eg in generated code.
+     */
+    ROLLING_HASH,
+    /**
+     * Duplicated token sequences are found with a suffix array of all
+     * tokens. The time taken does not depend on how often a sequence is
+     * repeated. The same duplications are reported as with {@link #ROLLING_HASH},
+     * but a match that is embedded in a longer match may have more marks.
+     */
+    SUFFIX_ARRAY,
+    /**
+     * Also finds near-miss duplications, where some tokens were inserted,
+     * removed or changed, see {@link CPDConfiguration#setMinimumSimilarity(double)}.
+     * Windows of the minimum tile size are compared by their MinHash sketch,
+     * and similar candidates are verified with an edit distance. Each match
+     * has two marks, which may have a different number of tokens, see
+     * {@link Match#getSimilarity()}.
+     */
+    NEAR_MISS
+}
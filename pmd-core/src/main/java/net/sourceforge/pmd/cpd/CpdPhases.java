@@ -0,0 +1,127 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.cpd.MatchAlgorithm.MarkGroups;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+/**
+ * Runs the phases of a CPD analysis one at a time, on documents that
+ * are kept in memory. This is used by the benchmarks of the module
+ * pmd-benchmark, which measure each phase separately.
+ *
+ * <p>The phases are those of {@link CpdAnalysis} with the default
+ * {@linkplain CpdMatchAlgorithm#ROLLING_HASH match algorithm}: tokenize,
+ * hash, match, and rendering of the report.
+ *
+ * <p><b>None of this is published API, and compatibility can be broken anytime!</b>
+ *
+ * @apiNote Internal API
+ */
+@InternalApi
+public final class CpdPhases implements AutoCloseable {
+
+    private final CpdLexer cpdLexer;
+    private final SourceManager sourceManager;
+    private final List<TextDocument> documents;
+
+    /**
+     * Reads the files, which are kept in memory until this is closed.
+     *
+     * @param cpdLexer Lexer used to tokenize all the files
+     * @param files    Files to analyse
+     */
+    public CpdPhases(CpdLexer cpdLexer, List<? extends TextFile> files) {
+        this.cpdLexer = cpdLexer;
+        this.sourceManager = new SourceManager(files, true);
+        this.documents = new ArrayList<>(files.size());
+        for (TextFile file : files) {
+            documents.add(sourceManager.get(file));
+        }
+    }
+
+    /** Tokenizes all the documents. */
+    public Tokenized tokenize() throws IOException {
+        Tokens tokens = new Tokens();
+        Map<FileId, Integer> numberOfTokensPerFile = new HashMap<>();
+        for (TextDocument document : documents) {
+            Tokens fileTokens = CpdLexer.tokenize(cpdLexer, document);
+            numberOfTokensPerFile.put(document.getFileId(), fileTokens.size() - 1 /* EOF */);
+            tokens.appendFile(fileTokens);
+        }
+        return new Tokenized(tokens, numberOfTokensPerFile);
+    }
+
+    /**
+     * Groups the tokens by the hash of the tokens that follow them.
+     *
+     * @param tokenized       Result of {@link #tokenize()}
+     * @param minimumTileSize Minimum number of tokens of a duplication
+     * @param threads         Number of threads of the match phase
+     */
+    public Hashed hash(Tokenized tokenized, int minimumTileSize, int threads) {
+        MatchAlgorithm algorithm = new MatchAlgorithm(tokenized.tokens, minimumTileSize, threads);
+        return new Hashed(algorithm, algorithm.hash());
+    }
+
+    /**
+     * Finds the matches in the hash groups, and sorts them. The hash
+     * groups are only read, so this may be called several times.
+     */
+    public List<Match> match(Hashed hashed) {
+        MatchAlgorithm algorithm = hashed.algorithm;
+        List<Match> matches = algorithm.collectMatches(hashed.markGroups).getMatches();
+        return algorithm.finishMatches(new CPDNullListener(), matches);
+    }
+
+    /** Returns the report of the given matches, which may be rendered several times. */
+    public CPDReport report(Tokenized tokenized, List<Match> matches) {
+        return new CPDReport(sourceManager, matches, tokenized.numberOfTokensPerFile, Collections.emptyList());
+    }
+
+    @Override
+    public void close() throws Exception {
+        sourceManager.close();
+    }
+
+    /** The tokens of all documents, see {@link #tokenize()}. */
+    public static final class Tokenized {
+
+        private final Tokens tokens;
+        private final Map<FileId, Integer> numberOfTokensPerFile;
+
+        private Tokenized(Tokens tokens, Map<FileId, Integer> numberOfTokensPerFile) {
+            this.tokens = tokens;
+            this.numberOfTokensPerFile = numberOfTokensPerFile;
+        }
+
+        /** Returns the number of tokens, including one EOF token per file. */
+        public int size() {
+            return tokens.size();
+        }
+    }
+
+    /** The hash groups of the tokens, see {@link #hash(Tokenized, int, int)}. */
+    public static final class Hashed {
+
+        private final MatchAlgorithm algorithm;
+        private final MarkGroups markGroups;
+
+        private Hashed(MatchAlgorithm algorithm, MarkGroups markGroups) {
+            this.algorithm = algorithm;
+            this.markGroups = markGroups;
+        }
+    }
+}
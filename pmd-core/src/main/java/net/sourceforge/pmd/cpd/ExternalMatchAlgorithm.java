@@ -0,0 +1,225 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import net.sourceforge.pmd.internal.util.IOUtil;
+
+/**
+ * A {@link MatchAlgorithm} for tokens that are stored on disk (see
+ * {@link Tokens#isSpilled()}), which does not need memory proportional
+ * to the number of tokens.
+ *
+ * <p>Instead of grouping tokens by hash in a table, the pairs of hash and
+ * token index are written to partition files, chosen by hash. Each
+ * partition is then sorted in memory, and its groups of tokens with the
+ * same hash are processed by a {@link MatchCollector} like with the parent
+ * class. Groups are independent, so the matches are the same, and only the
+ * tokens of the compared windows and the marks are read back from disk.
+ */
+class ExternalMatchAlgorithm extends MatchAlgorithm {
+
+    /** Default target size of a partition. Each pair of hash and token index takes 8 bytes. */
+    private static final long PARTITION_BYTES = 64L << 20;
+    /** The partitions are written at the same time, this bounds the number of open files. */
+    private static final int MAX_PARTITIONS = 1024;
+
+    private final Tokens tokens;
+    private final Path directory;
+    private final long partitionBytes;
+
+    /**
+     * @param directory Directory in which the partition files are created
+     */
+    ExternalMatchAlgorithm(Tokens tokens, int minTileSize, int threads, Path directory) {
+        this(tokens, minTileSize, threads, directory, PARTITION_BYTES);
+    }
+
+    ExternalMatchAlgorithm(Tokens tokens, int minTileSize, int threads, Path directory, long partitionBytes) {
+        super(tokens, minTileSize, threads);
+        this.tokens = tokens;
+        this.directory = directory;
+        this.partitionBytes = partitionBytes;
+    }
+
+    @Override
+    int identifierAt(int index) {
+        return tokens.identifierAt(index);
+    }
+
+    @Override
+    boolean isEof(int index) {
+        return tokens.identifierAt(index) == TokenEntry.EOF;
+    }
+
+    @Override
+    public List<Match> findMatches(@NonNull CPDListener cpdListener, SourceManager sourceManager) {
+        List<Path> partitions = new ArrayList<>();
+        try {
+            cpdListener.phaseUpdate(CPDListener.HASH);
+            partition(partitions);
+
+            cpdListener.phaseUpdate(CPDListener.MATCH);
+            return finishMatches(cpdListener, collectPartitions(partitions).getMatches());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Path partition : partitions) {
+                try {
+                    Files.deleteIfExists(partition);
+                } catch (IOException ignored) {
+                    partition.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the hash and index of each token to the partition files,
+     * which are added to the list as they are created.
+     */
+    private void partition(List<Path> partitions) throws IOException {
+        final int numPartitions = numPartitions(size(), partitionBytes);
+        final List<DataOutputStream> outs = new ArrayList<>(numPartitions);
+        Exception pending = null;
+        try {
+            for (int p = 0; p < numPartitions; p++) {
+                Path partition = Files.createTempFile(directory, "cpd-hashes", ".bin");
+                partitions.add(partition);
+                outs.add(new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partition))));
+            }
+            final int mask = numPartitions - 1;
+            computeHashes((token, hash) -> {
+                DataOutputStream out = outs.get(mix(hash) & mask);
+                try {
+                    out.writeInt(hash);
+                    out.writeInt(token);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            pending = e.getCause();
+        } catch (IOException e) {
+            pending = e;
+        }
+        try {
+            IOUtil.ensureClosed(outs, pending);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int numPartitions(int numTokens, long partitionBytes) {
+        long wanted = (long) numTokens * 2 * Integer.BYTES / partitionBytes;
+        int partitions = 1; // a power of two
+        while (partitions < wanted && partitions < MAX_PARTITIONS) {
+            partitions <<= 1;
+        }
+        return partitions;
+    }
+
+    /**
+     * Collects the matches of all partitions. With several threads,
+     * partitions are processed concurrently, so at most as many partitions
+     * as threads are loaded at the same time.
+     */
+    private MatchCollector collectPartitions(List<Path> partitions) throws IOException {
+        MatchCollector result = new MatchCollector(this);
+        if (threads <= 1 || partitions.size() == 1) {
+            for (Path partition : partitions) {
+                result.addAll(collectPartition(partition));
+            }
+            return result;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Callable<MatchCollector>> tasks = new ArrayList<>(partitions.size());
+            for (Path partition : partitions) {
+                tasks.add(() -> collectPartition(partition));
+            }
+            for (Future<MatchCollector> future : pool.invokeAll(tasks)) {
+                result.addAll(future.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while collecting matches", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads a partition, sorts it by hash then token index, and collects
+     * the matches of each group of tokens with the same hash.
+     */
+    private MatchCollector collectPartition(Path partition) throws IOException {
+        // each entry is the hash in the high bits and the token index in the low bits,
+        // so that sorting the entries groups them by hash, with ascending token indices
+        long[] entries = new long[(int) (Files.size(partition) / (2 * Integer.BYTES))];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(partition)))) {
+            for (int i = 0; i < entries.length; i++) {
+                int hash = in.readInt();
+                int token = in.readInt();
+                entries[i] = (long) hash << 32 | token;
+            }
+        }
+        Arrays.sort(entries);
+
+        MatchCollector matchCollector = new MatchCollector(this);
+        int[] marks = new int[2];
+        int start = 0;
+        while (start < entries.length) {
+            int hash = (int) (entries[start] >> 32);
+            int end = start + 1;
+            while (end < entries.length && (int) (entries[end] >> 32) == hash) {
+                end++;
+            }
+            int count = end - start;
+            if (count >= 2) {
+                if (count > marks.length) {
+                    marks = new int[Math.max(count, marks.length * 2)];
+                }
+                for (int i = 0; i < count; i++) {
+                    marks[i] = (int) entries[start + i];
+                }
+                matchCollector.collect(marks, count);
+            }
+            start = end;
+        }
+        return matchCollector;
+    }
+}
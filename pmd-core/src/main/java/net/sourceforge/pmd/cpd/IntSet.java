@@ -0,0 +1,97 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative ints, stored in an open addressing table, to
+ * avoid boxing token indices.
+ */
+final class IntSet {
+
+    private static final int EMPTY = -1;
+
+    private int[] table;
+    private int size;
+    private int min = Integer.MAX_VALUE;
+
+    IntSet() {
+        table = newTable(8);
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value A non-negative value
+     *
+     * @return True if the value was not already in the set
+     */
+    boolean add(int value) {
+        assert value >= 0 : "Negative value " + value;
+        if (insert(table, value)) {
+            size++;
+            min = Math.min(min, value);
+            if (size * 3 > table.length * 2) {
+                rehash();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    boolean contains(int value) {
+        final int mask = table.length - 1;
+        for (int slot = mix(value) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (table[slot] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the smallest value of the set, or {@link Integer#MAX_VALUE} if it is empty. */
+    int min() {
+        return min;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        int[] newTable = newTable(table.length * 2);
+        for (int value : table) {
+            if (value != EMPTY) {
+                insert(newTable, value);
+            }
+        }
+        table = newTable;
+    }
+
+    private static boolean insert(int[] table, int value) {
+        final int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        return true;
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
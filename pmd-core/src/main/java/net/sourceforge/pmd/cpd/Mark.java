@@ -58,6 +58,10 @@ public final class Mark implements Comparable<Mark> {
         return getEndToken().getIndex();
     }
 
+    boolean hasEndToken() {
+        return endToken != null;
+    }
+
     void setEndToken(@NonNull TokenEntry endToken) {
         assert endToken.getFileId().equals(token.getFileId())
             : "Tokens are not from the same file";
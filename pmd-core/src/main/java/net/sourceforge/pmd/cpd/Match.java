@@ -16,6 +16,7 @@ import net.sourceforge.pmd.util.IteratorUtil;
 public class Match implements Comparable<Match>, Iterable<Mark> {
 
     private final int tokenCount;
+    private final double similarity;
     private final Set<Mark> markSet = new TreeSet<>();
 
     public static final Comparator<Match> MATCHES_COMPARATOR = (ma, mb) -> mb.getMarkCount() - ma.getMarkCount();
@@ -24,9 +25,14 @@ public class Match implements Comparable<Match>, Iterable<Mark> {
 
 
     Match(int tokenCount, Mark first, Mark second) {
+        this(tokenCount, first, second, 1);
+    }
+
+    Match(int tokenCount, Mark first, Mark second, double similarity) {
         markSet.add(first);
         markSet.add(second);
         this.tokenCount = tokenCount;
+        this.similarity = similarity;
     }
 
     Match(int tokenCount, TokenEntry first, TokenEntry second) {
@@ -50,6 +56,19 @@ public class Match implements Comparable<Match>, Iterable<Mark> {
     }
 
 
+    /**
+     * Returns the similarity of the marks of this match, between 0 and 1.
+     * This is 1 if the marks are exact duplicates, which is always the case
+     * except with {@link CpdMatchAlgorithm#NEAR_MISS}. Near-miss marks may
+     * have a different number of tokens, in which case the token count of
+     * this match is the one of the first mark.
+     *
+     * @since 7.12.0
+     */
+    public double getSimilarity() {
+        return similarity;
+    }
+
     public Set<Mark> getMarkSet() {
         return Collections.unmodifiableSet(markSet);
     }
@@ -4,36 +4,71 @@
 
 package net.sourceforge.pmd.cpd;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+/**
+ * Finds duplicated token sequences. This implementation buckets the
+ * token windows of {@link #getMinimumTileSize()} tokens by their
+ * Karp-Rabin rolling hash, and compares the tokens of each bucket
+ * pairwise using a {@link MatchCollector}. Buckets are independent,
+ * so they may be processed on several threads.
+ *
+ * @see SuffixArrayMatchAlgorithm
+ */
 class MatchAlgorithm {
 
     private static final int MOD = 37;
+    /** Maximal number of buckets processed by a single task of the match phase. */
+    private static final int BUCKETS_PER_TASK = 256;
     private int lastMod = 1;
 
     private final Tokens tokens;
-    private final List<TokenEntry> code;
+    /** Identifiers of the tokens, null if they are stored on disk, see {@link ExternalMatchAlgorithm}. */
+    final int[] identifiers;
     private final int minTileSize;
+    final int threads;
 
     MatchAlgorithm(Tokens tokens, int minTileSize) {
+        this(tokens, minTileSize, 1);
+    }
+
+    /**
+     * @param threads Number of threads used to process the buckets,
+     *                with 0 or 1 they are processed on the current thread
+     */
+    MatchAlgorithm(Tokens tokens, int minTileSize, int threads) {
         this.tokens = tokens;
-        this.code = tokens.getTokens();
+        this.identifiers = tokens.isSpilled() ? null : tokens.getIdentifiers();
         this.minTileSize = minTileSize;
+        this.threads = threads;
         for (int i = 0; i < minTileSize; i++) {
             lastMod *= MOD;
         }
     }
 
 
-    public TokenEntry tokenAt(int offset, TokenEntry m) {
-        return code.get(offset + m.getIndex());
+    /** Returns the image identifier of the token at the given index. */
+    int identifierAt(int index) {
+        return identifiers[index];
+    }
+
+    boolean isEof(int index) {
+        return identifiers[index] == TokenEntry.EOF;
+    }
+
+    /** Returns the number of tokens, including EOF tokens. */
+    int size() {
+        return tokens.size();
+    }
+
+    TokenEntry tokenAt(int index) {
+        return tokens.getToken(index);
     }
 
     public int getMinimumTileSize() {
@@ -41,78 +76,207 @@ class MatchAlgorithm {
     }
 
     public List<Match> findMatches(@NonNull CPDListener cpdListener, SourceManager sourceManager) {
-        MatchCollector matchCollector = new MatchCollector(this);
+        MatchCollector matchCollector;
         {
             cpdListener.phaseUpdate(CPDListener.HASH);
-            Map<TokenEntry, Object> markGroups = hash();
+            MarkGroups markGroups = hash();
 
             cpdListener.phaseUpdate(CPDListener.MATCH);
-            markGroups.values()
-                      .stream()
-                      .filter(it -> it instanceof List)
-                      .forEach(it -> {
-                          @SuppressWarnings("unchecked")
-                          List<TokenEntry> l = (List<TokenEntry>) it;
-                          Collections.reverse(l);
-                          matchCollector.collect(l);
-                      });
+            matchCollector = collectMatches(markGroups);
             // put markGroups out of scope
         }
 
+        return finishMatches(cpdListener, matchCollector.getMatches());
+    }
+
+    /**
+     * Collects the matches of all the groups of tokens with the same hash,
+     * on {@link #threads} threads. This is the match phase of {@link #findMatches(CPDListener, SourceManager)}.
+     */
+    MatchCollector collectMatches(MarkGroups markGroups) {
+        int numBuckets = markGroups.heads.length;
+        if (threads <= 1 || numBuckets <= BUCKETS_PER_TASK) {
+            return collect(markGroups, 0, numBuckets);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new CollectTask(markGroups, 0, numBuckets));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Collects the matches of the buckets whose index in {@link MarkGroups#heads}
+     * is in {@code [from, to)} into a new collector.
+     */
+    private MatchCollector collect(MarkGroups markGroups, int from, int to) {
+        MatchCollector matchCollector = new MatchCollector(this);
+        int[] marks = new int[2];
+        for (int h = from; h < to; h++) {
+            int count = 0;
+            for (int mark = markGroups.heads[h]; mark >= 0; mark = markGroups.next[mark]) {
+                if (count == marks.length) {
+                    marks = Arrays.copyOf(marks, count * 2);
+                }
+                marks[count++] = mark;
+            }
+            matchCollector.collect(marks, count);
+        }
+        return matchCollector;
+    }
+
+    /**
+     * Sorts the matches and sets the end token of their marks, unless it
+     * is already set. This is the last phase of {@link #findMatches(CPDListener, SourceManager)}.
+     */
+    final List<Match> finishMatches(@NonNull CPDListener cpdListener, List<Match> matches) {
         cpdListener.phaseUpdate(CPDListener.GROUPING);
-        List<Match> matches = matchCollector.getMatches();
         matches.sort(Comparator.naturalOrder());
 
         for (Match match : matches) {
             for (Mark mark : match) {
-                TokenEntry token = mark.getToken();
-                TokenEntry endToken = tokens.getEndToken(token, match);
-
-                mark.setEndToken(endToken);
+                if (!mark.hasEndToken()) {
+                    mark.setEndToken(tokenAt(mark.getBeginTokenIndex() + match.getTokenCount() - 1));
+                }
             }
         }
         cpdListener.phaseUpdate(CPDListener.DONE);
         return matches;
     }
 
+    /**
+     * Computes the rolling hash of the window of {@link #minTileSize} tokens
+     * starting at each token that is followed by at least {@link #minTileSize}
+     * tokens in its file. Tokens are visited in descending order.
+     */
     @SuppressWarnings("PMD.JumbledIncrementer")
-    private Map<TokenEntry, Object> hash() {
+    final void computeHashes(HashConsumer consumer) {
         int lastHash = 0;
-        Map<TokenEntry, Object> markGroups = new HashMap<>(tokens.size());
-        for (int i = code.size() - 1; i >= 0; i--) {
-            TokenEntry token = code.get(i);
-            if (!token.isEof()) {
-                int last = tokenAt(minTileSize, token).getIdentifier();
-                lastHash = MOD * lastHash + token.getIdentifier() - lastMod * last;
-                token.setHashCode(lastHash);
-                Object o = markGroups.get(token);
-
-                // Note that this insertion method is worthwhile since the vast
-                // majority
-                // markGroup keys will have only one value.
-                if (o == null) {
-                    markGroups.put(token, token);
-                } else if (o instanceof TokenEntry) {
-                    List<TokenEntry> l = new ArrayList<>();
-                    l.add((TokenEntry) o);
-                    l.add(token);
-                    markGroups.put(token, l);
-                } else {
-                    @SuppressWarnings("unchecked")
-                    List<TokenEntry> l = (List<TokenEntry>) o;
-                    l.add(token);
-                }
+        for (int i = size() - 1; i >= 0; i--) {
+            if (!isEof(i)) {
+                int last = identifierAt(i + minTileSize);
+                lastHash = MOD * lastHash + identifierAt(i) - lastMod * last;
+                consumer.accept(i, lastHash);
             } else {
                 lastHash = 0;
                 for (int end = Math.max(0, i - minTileSize + 1); i > end; i--) {
-                    token = code.get(i - 1);
-                    lastHash = MOD * lastHash + token.getIdentifier();
-                    if (token.isEof()) {
+                    lastHash = MOD * lastHash + identifierAt(i - 1);
+                    if (isEof(i - 1)) {
                         break;
                     }
                 }
             }
         }
-        return markGroups;
+    }
+
+    /**
+     * Computes the hash of each token with {@link #computeHashes(HashConsumer)},
+     * and groups tokens with the same hash. Groups are linked lists threaded
+     * through an array indexed by token, so that no object is allocated per token.
+     * This is the hash phase of {@link #findMatches(CPDListener, SourceManager)}.
+     */
+    MarkGroups hash() {
+        final int size = tokens.size();
+        final int[] hashes = new int[size];
+        // next[i] is the next token with the same hash as token i, in ascending order, or -1
+        final int[] next = new int[size];
+        // open addressing table of the first token of each group (+1, 0 means empty)
+        final int[] table = new int[tableSizeFor(size)];
+        final int mask = table.length - 1;
+        final int[] numHeads = {0};
+
+        computeHashes((i, hash) -> {
+            hashes[i] = hash;
+
+            int slot = mix(hash) & mask;
+            while (table[slot] != 0 && hashes[table[slot] - 1] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            int head = table[slot] - 1;
+            if (head >= 0 && next[head] < 0) {
+                numHeads[0]++; // the group now has two tokens
+            }
+            // tokens are visited in descending order, so prepending keeps the list sorted
+            next[i] = head;
+            table[slot] = i + 1;
+        });
+
+        // only groups with at least two tokens are interesting,
+        // process them in the order of their first token
+        int[] heads = new int[numHeads[0]];
+        int h = 0;
+        for (int entry : table) {
+            if (entry != 0 && next[entry - 1] >= 0) {
+                heads[h++] = entry - 1;
+            }
+        }
+        Arrays.sort(heads);
+        return new MarkGroups(heads, next);
+    }
+
+    private static int tableSizeFor(int numTokens) {
+        // keep the load factor under 2/3
+        int min = Math.max(16, numTokens + (numTokens >> 1));
+        return Integer.highestOneBit(min - 1) << 1;
+    }
+
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Receives the hash of each token, see {@link #computeHashes(HashConsumer)}. */
+    @FunctionalInterface
+    interface HashConsumer {
+
+        void accept(int token, int hash);
+    }
+
+    /**
+     * Collects the matches of a range of buckets, splitting it until it
+     * is small enough. The work per bucket is very uneven, as it grows
+     * with the square of the number of tokens of the bucket, so ranges are
+     * split finely to let idle threads steal the remaining work.
+     */
+    private final class CollectTask extends RecursiveTask<MatchCollector> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient MarkGroups markGroups;
+        private final int from;
+        private final int to;
+
+        CollectTask(MarkGroups markGroups, int from, int to) {
+            this.markGroups = markGroups;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected MatchCollector compute() {
+            if (to - from <= BUCKETS_PER_TASK) {
+                return collect(markGroups, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            CollectTask left = new CollectTask(markGroups, from, mid);
+            left.fork();
+            MatchCollector result = new CollectTask(markGroups, mid, to).compute();
+            result.addAll(left.join());
+            return result;
+        }
+    }
+
+    /** Groups of tokens with the same hash, see {@link #hash()}. */
+    static final class MarkGroups {
+
+        /** First token of each group that has at least two tokens, ascending. */
+        final int[] heads;
+        final int[] next;
+
+        MarkGroups(int[] heads, int[] next) {
+            this.heads = heads;
+            this.next = next;
+        }
     }
 }
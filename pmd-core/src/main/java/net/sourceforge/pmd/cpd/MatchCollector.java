@@ -5,19 +5,29 @@
 package net.sourceforge.pmd.cpd;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 
+/**
+ * Collects the matches between the tokens of groups of tokens with the
+ * same hash. The marks of the matches of a group are all tokens of that
+ * group, and groups are disjoint, so the matches of each group only
+ * depend on that group. This lets several collectors process different
+ * groups concurrently, and be merged afterwards with {@link #addAll(MatchCollector)}.
+ */
 class MatchCollector {
 
+    /** Matches by the lowest index of their marks. */
     private final Map<Integer, List<Match>> matchTree = new TreeMap<>();
 
-    private final Map<Integer, Set<Integer>> tokenMatchSets = new HashMap<>();
+    // the group being collected, and the indices of the tokens
+    // each token of the group was matched with, indexed like marks
+    private int[] marks;
+    private int count;
+    private IntSet[] tokenMatchSets = new IntSet[16];
 
     private final MatchAlgorithm ma;
 
@@ -25,15 +35,29 @@ class MatchCollector {
         this.ma = ma;
     }
 
-    public void collect(List<TokenEntry> marks) {
+    /**
+     * Collects the matches between tokens that have the same hash.
+     *
+     * @param marks Indices of the tokens, in ascending order
+     * @param count Number of valid elements of the array
+     */
+    public void collect(int[] marks, int count) {
+        this.marks = marks;
+        this.count = count;
+        if (tokenMatchSets.length < count) {
+            tokenMatchSets = new IntSet[Math.max(count, tokenMatchSets.length * 2)];
+        } else {
+            Arrays.fill(tokenMatchSets, 0, count, null);
+        }
+
         // first get a pairwise collection of all maximal matches
         int skipped;
-        for (int i = 0; i < marks.size() - 1; i += skipped + 1) {
+        for (int i = 0; i < count - 1; i += skipped + 1) {
             skipped = 0;
-            TokenEntry mark1 = marks.get(i);
-            for (int j = i + 1; j < marks.size(); j++) {
-                TokenEntry mark2 = marks.get(j);
-                int diff = mark1.getIndex() - mark2.getIndex();
+            int mark1 = marks[i];
+            for (int j = i + 1; j < count; j++) {
+                int mark2 = marks[j];
+                int diff = mark1 - mark2;
                 if (-diff < ma.getMinimumTileSize()) {
                     // self-repeating sequence such as ABBABBABB with min 6,
                     // will match 2 against any other occurrence of ABBABB
@@ -59,7 +83,7 @@ class MatchCollector {
         }
     }
 
-    private void reportMatch(TokenEntry mark1, TokenEntry mark2, int dupes) {
+    private void reportMatch(int mark1, int mark2, int dupes) {
         /*
          * Check if the match is previously know. This can happen when a snippet is duplicated more than once.
          * If A, B and C are identical snippets, MatchAlgorithm will find the matching pairs:
@@ -68,13 +92,14 @@ class MatchCollector {
          *  - BC
          * It should be reduced to a single match with 3 marks
          */
-        if (tokenMatchSets.computeIfAbsent(mark1.getIndex(), (i) -> new HashSet<>()).contains(mark2.getIndex())) {
+        IntSet mark1Matches = tokenMatchSet(mark1);
+        if (mark1Matches.contains(mark2)) {
             return;
         }
 
         // This may not be a "new match", but actually a sub-match of a larger one.
         // always rely on the lowest mark index, as that's the order in which process them
-        final int lowestKey = tokenMatchSets.get(mark1.getIndex()).stream().reduce(mark1.getIndex(), Math::min);
+        final int lowestKey = Math.min(mark1, mark1Matches.min());
 
         List<Match> matches = matchTree.computeIfAbsent(lowestKey, (i) -> new ArrayList<>());
         Iterator<Match> matchIterator = matches.iterator();
@@ -83,16 +108,16 @@ class MatchCollector {
 
             // Check all other marks
             for (Mark otherMark : m.getMarkSet()) {
-                TokenEntry otherEnd = otherMark.getToken();
-                if (otherEnd.getIndex() == mark1.getIndex()) {
+                int otherEnd = otherMark.getBeginTokenIndex();
+                if (otherEnd == mark1) {
                     continue;
                 }
 
                 // does the new match supersedes this one?
-                if (otherEnd.getIndex() < mark2.getIndex() && otherEnd.getIndex() + m.getTokenCount() >= mark2.getIndex() + dupes) {
+                if (otherEnd < mark2 && otherEnd + m.getTokenCount() >= mark2 + dupes) {
                     // this match is embedded in the previous one… ignore it.
                     return;
-                } else if (mark2.getIndex() < otherEnd.getIndex() && mark2.getIndex() + dupes >= otherEnd.getIndex() + m.getTokenCount()) {
+                } else if (mark2 < otherEnd && mark2 + dupes >= otherEnd + m.getTokenCount()) {
                     // the new match is longer and overlaps with the old one - replace it
                     matchIterator.remove();
                     break;
@@ -100,24 +125,42 @@ class MatchCollector {
                     // we found yet another exact match of the same snippet. Roll it together
 
                     // Add this adjacency to all combinations
-                    m.iterator().forEachRemaining(other -> registerTokenMatch(other.getToken(), mark2));
+                    m.iterator().forEachRemaining(other -> registerTokenMatch(other.getBeginTokenIndex(), mark2));
 
-                    m.addMark(mark2);
+                    m.addMark(ma.tokenAt(mark2));
                     return;
                 }
             }
         }
 
         // this is a new match, add it
-        matches.add(new Match(dupes, mark1, mark2));
+        matches.add(new Match(dupes, ma.tokenAt(mark1), ma.tokenAt(mark2)));
 
         // add matches in both directions
         registerTokenMatch(mark1, mark2);
     }
 
-    private void registerTokenMatch(TokenEntry mark1, TokenEntry mark2) {
-        tokenMatchSets.computeIfAbsent(mark1.getIndex(), (i) -> new HashSet<>()).add(mark2.getIndex());
-        tokenMatchSets.computeIfAbsent(mark2.getIndex(), (i) -> new HashSet<>()).add(mark1.getIndex());
+    private void registerTokenMatch(int mark1, int mark2) {
+        tokenMatchSet(mark1).add(mark2);
+        tokenMatchSet(mark2).add(mark1);
+    }
+
+    private IntSet tokenMatchSet(int mark) {
+        int i = Arrays.binarySearch(marks, 0, count, mark);
+        assert i >= 0 : "Token " + mark + " is not in the current group";
+        if (tokenMatchSets[i] == null) {
+            tokenMatchSets[i] = new IntSet();
+        }
+        return tokenMatchSets[i];
+    }
+
+    /**
+     * Adds the matches of another collector, which collected other
+     * groups. The result doesn't depend on the order in which collectors
+     * are merged.
+     */
+    void addAll(MatchCollector other) {
+        matchTree.putAll(other.matchTree);
     }
 
     List<Match> getMatches() {
@@ -127,21 +170,21 @@ class MatchCollector {
         });
     }
 
-    private boolean hasPreviousDupe(TokenEntry mark1, TokenEntry mark2) {
-        return mark1.getIndex() != 0 && !matchEnded(ma.tokenAt(-1, mark1), ma.tokenAt(-1, mark2));
+    private boolean hasPreviousDupe(int mark1, int mark2) {
+        return mark1 != 0 && !matchEnded(mark1 - 1, mark2 - 1);
     }
 
-    private int countDuplicateTokens(TokenEntry mark1, TokenEntry mark2) {
+    private int countDuplicateTokens(int mark1, int mark2) {
         int index = 0;
-        while (!matchEnded(ma.tokenAt(index, mark1), ma.tokenAt(index, mark2))) {
+        while (!matchEnded(mark1 + index, mark2 + index)) {
             index++;
         }
         return index;
     }
 
-    private boolean matchEnded(TokenEntry token1, TokenEntry token2) {
-        return token1.getIdentifier() != token2.getIdentifier()
-                || token1.isEof()
-                || token2.isEof();
+    private boolean matchEnded(int token1, int token2) {
+        return ma.identifierAt(token1) != ma.identifierAt(token2)
+                || ma.isEof(token1)
+                || ma.isEof(token2);
     }
 }
@@ -0,0 +1,415 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Finds near-miss duplications, ie sequences of tokens that are similar
+ * but not identical, because some tokens were inserted, removed or changed.
+ *
+ * <p>The tokens are split into windows of {@link #getMinimumTileSize()}
+ * tokens, which overlap and don't cross file boundaries. Each window is
+ * summarized by a MinHash sketch of the set of its shingles (sequences of
+ * {@value #SHINGLE_SIZE} tokens). The sketch is split into {@value #BANDS}
+ * bands, and windows whose sketches are equal in at least {@value #MIN_BAND_COLLISIONS}
+ * bands are candidates (locality sensitive hashing). Only candidates are
+ * compared, with a bounded edit distance, so the running time is roughly
+ * linear in the number of tokens. The overlapping windows of a duplication
+ * are then merged, and the resulting regions are compared again.
+ *
+ * <p>Each match has two marks, which may have different lengths, and a
+ * {@linkplain Match#getSimilarity() similarity} of at least the minimum similarity.
+ *
+ * @see CpdMatchAlgorithm#NEAR_MISS
+ */
+class NearMissMatchAlgorithm extends MatchAlgorithm {
+
+    private static final int SHINGLE_SIZE = 3;
+    private static final int BANDS = 16;
+    private static final int ROWS = 2;
+    /** Minimal number of bands in which two windows must collide to be compared. */
+    private static final int MIN_BAND_COLLISIONS = 2;
+    /** In each bucket of a band, a window is paired with at most this many following windows. */
+    private static final int MAX_PAIRS_PER_WINDOW = 8;
+    /** Returned by {@link #fit} when no sequence is close enough. */
+    private static final int NO_FIT = -1;
+
+    private final double minimumSimilarity;
+    private final int windowSize;
+    private final int stride;
+
+    // reusable rows of the edit distance, with the column at which each path started
+    private int[] previousRow = new int[16];
+    private int[] currentRow = new int[16];
+    private int[] previousOrigin = new int[16];
+    private int[] currentOrigin = new int[16];
+    // sequence found by the last call to fit
+    private int fitStart;
+    private int fitEnd;
+
+    /**
+     * @param minimumSimilarity Minimal similarity of the reported matches, in {@code ]0, 1]}
+     */
+    NearMissMatchAlgorithm(Tokens tokens, int minTileSize, double minimumSimilarity) {
+        super(tokens, minTileSize);
+        this.minimumSimilarity = minimumSimilarity;
+        this.windowSize = Math.max(minTileSize, SHINGLE_SIZE);
+        this.stride = Math.max(1, windowSize / 4);
+    }
+
+    @Override
+    public List<Match> findMatches(@NonNull CPDListener cpdListener, SourceManager sourceManager) {
+        List<Match> matches = new ArrayList<>();
+        {
+            cpdListener.phaseUpdate(CPDListener.HASH);
+            final int[] windows = windowStarts();
+            final int[][] bandKeys = sketch(windows);
+
+            cpdListener.phaseUpdate(CPDListener.MATCH);
+            final long[] candidates = candidatePairs(windows, bandKeys);
+            mergeAndReport(verify(windows, candidates), matches);
+        }
+        return finishMatches(cpdListener, matches);
+    }
+
+    /** Returns the index of the first token of each window, in ascending order. */
+    private int[] windowStarts() {
+        int[] windows = new int[16];
+        int numWindows = 0;
+        int fileStart = 0;
+        for (int i = 0; i < size(); i++) {
+            if (isEof(i)) {
+                for (int start = fileStart; start + windowSize <= i; start += stride) {
+                    if (numWindows == windows.length) {
+                        windows = Arrays.copyOf(windows, numWindows * 2);
+                    }
+                    windows[numWindows++] = start;
+                }
+                fileStart = i + 1;
+            }
+        }
+        return Arrays.copyOf(windows, numWindows);
+    }
+
+    /**
+     * Computes the MinHash sketch of each window, and combines the
+     * {@value #ROWS} values of each band into a single key. The result
+     * is indexed by band, then window.
+     */
+    private int[][] sketch(int[] windows) {
+        // the hash of the shingle starting at each token, only valid if
+        // the shingle doesn't cross the end of a file, which is the case
+        // for the shingles of windows
+        final int[] shingles = new int[size()];
+        for (int i = 0; i + SHINGLE_SIZE <= size(); i++) {
+            int hash = 0;
+            for (int k = 0; k < SHINGLE_SIZE; k++) {
+                hash = 31 * hash + identifierAt(i + k);
+            }
+            shingles[i] = hash;
+        }
+
+        final int shinglesPerWindow = windowSize - SHINGLE_SIZE + 1;
+        final int[] hashed = new int[size()];
+        final int[] rowMins = new int[windows.length];
+        final int[][] bandKeys = new int[BANDS][windows.length];
+        for (int band = 0; band < BANDS; band++) {
+            for (int row = 0; row < ROWS; row++) {
+                // each row uses its own hash function of the shingles
+                final int seed = fmix(band * ROWS + row + 1);
+                for (int i = 0; i < shingles.length; i++) {
+                    hashed[i] = fmix(shingles[i] ^ seed);
+                }
+                for (int w = 0; w < windows.length; w++) {
+                    int min = Integer.MAX_VALUE;
+                    for (int i = windows[w], end = windows[w] + shinglesPerWindow; i < end; i++) {
+                        min = Math.min(min, hashed[i]);
+                    }
+                    rowMins[w] = min;
+                }
+                int[] keys = bandKeys[band];
+                for (int w = 0; w < windows.length; w++) {
+                    keys[w] = 31 * keys[w] + rowMins[w];
+                }
+            }
+        }
+        return bandKeys;
+    }
+
+    /**
+     * Returns the pairs of windows that collide in at least {@value #MIN_BAND_COLLISIONS}
+     * bands and don't overlap, encoded as {@code first << 32 | second}, in ascending order.
+     */
+    private long[] candidatePairs(int[] windows, int[][] bandKeys) {
+        long[] pairs = new long[16];
+        int numPairs = 0;
+        final long[] entries = new long[windows.length];
+        for (int[] keys : bandKeys) {
+            for (int w = 0; w < windows.length; w++) {
+                entries[w] = (long) keys[w] << 32 | w;
+            }
+            Arrays.sort(entries);
+            for (int i = 0; i < entries.length; i++) {
+                int key = (int) (entries[i] >> 32);
+                int first = (int) entries[i];
+                int added = 0;
+                for (int j = i + 1; j < entries.length && (int) (entries[j] >> 32) == key && added < MAX_PAIRS_PER_WINDOW; j++) {
+                    int second = (int) entries[j];
+                    if (windows[second] - windows[first] >= windowSize) {
+                        if (numPairs == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, numPairs * 2);
+                        }
+                        pairs[numPairs++] = (long) first << 32 | second;
+                        added++;
+                    }
+                }
+            }
+        }
+        Arrays.sort(pairs, 0, numPairs);
+
+        // keep the pairs that occur in enough bands
+        int numCandidates = 0;
+        for (int i = 0; i < numPairs;) {
+            int j = i + 1;
+            while (j < numPairs && pairs[j] == pairs[i]) {
+                j++;
+            }
+            if (j - i >= MIN_BAND_COLLISIONS) {
+                pairs[numCandidates++] = pairs[i];
+            }
+            i = j;
+        }
+        return Arrays.copyOf(pairs, numCandidates);
+    }
+
+    /**
+     * Compares the windows of each candidate pair, and returns the pairs
+     * that are similar enough, as pairs of token indices, in ascending order.
+     * Windows start every {@link #stride} tokens, so the second window may
+     * be shifted relative to the first one. It is searched for around the
+     * second window instead of being compared as is.
+     */
+    private long[] verify(int[] windows, long[] candidates) {
+        final int bound = maxDistance(windowSize);
+        long[] verified = new long[candidates.length];
+        int numVerified = 0;
+        for (long candidate : candidates) {
+            int first = windows[(int) (candidate >>> 32)];
+            int second = windows[(int) candidate];
+            if (fit(first, windowSize, second, second + windowSize, bound) != NO_FIT) {
+                verified[numVerified++] = (long) first << 32 | fitStart;
+            }
+        }
+        return Arrays.copyOf(verified, numVerified);
+    }
+
+    /**
+     * Merges the overlapping pairs of windows into pairs of regions, and
+     * reports a match for each pair of regions.
+     */
+    private void mergeAndReport(long[] verified, List<Match> matches) {
+        List<Region> active = new ArrayList<>();
+        for (long pair : verified) {
+            int first = (int) (pair >>> 32);
+            int second = (int) pair;
+
+            // pairs are sorted by their first window, so regions that end
+            // before that window cannot be extended anymore
+            Region extended = null;
+            boolean covered = false;
+            for (Iterator<Region> it = active.iterator(); it.hasNext();) {
+                Region region = it.next();
+                if (region.firstEnd <= first) {
+                    report(region, matches);
+                    it.remove();
+                } else if (extended == null && !covered && second < region.secondEnd && second + windowSize > region.secondStart) {
+                    if (first + windowSize <= region.firstEnd && second >= region.secondStart && second + windowSize <= region.secondEnd) {
+                        covered = true;
+                    } else if (Math.max(region.firstEnd, first + windowSize) <= Math.min(region.secondStart, second)) {
+                        // only extend regions that don't overlap afterwards, eg in repetitive code
+                        extended = region;
+                    }
+                }
+            }
+            if (extended != null) {
+                extended.firstEnd = Math.max(extended.firstEnd, first + windowSize);
+                extended.secondStart = Math.min(extended.secondStart, second);
+                extended.secondEnd = Math.max(extended.secondEnd, second + windowSize);
+            } else if (!covered) {
+                active.add(new Region(first, second, windowSize));
+            }
+        }
+        for (Region region : active) {
+            report(region, matches);
+        }
+    }
+
+    private void report(Region region, List<Match> matches) {
+        int firstLength = region.firstEnd - region.firstStart;
+        // the bound is capped so that the comparison stays linear in the length,
+        // it is at most maxDistance(firstLength) so any fit is similar enough
+        int distance = fit(region.firstStart, firstLength, region.secondStart, region.secondEnd,
+                           Math.min(maxDistance(firstLength), windowSize));
+        if (distance == NO_FIT) {
+            // the merged regions are not similar enough, only report the first pair of windows
+            firstLength = windowSize;
+            distance = fit(region.firstStart, windowSize, region.firstSecondStart, region.firstSecondStart + windowSize,
+                           maxDistance(windowSize));
+            if (distance == NO_FIT) {
+                return;
+            }
+        }
+        if (fitStart < region.firstStart + firstLength) {
+            return; // the regions overlap, eg in a repetitive sequence
+        }
+        int secondLength = fitEnd - fitStart;
+        Mark first = new Mark(tokenAt(region.firstStart));
+        first.setEndToken(tokenAt(region.firstStart + firstLength - 1));
+        Mark second = new Mark(tokenAt(fitStart));
+        second.setEndToken(tokenAt(fitEnd - 1));
+        double similarity = 1 - (double) distance / Math.max(firstLength, secondLength);
+        matches.add(new Match(firstLength, first, second, similarity));
+    }
+
+    private int maxDistance(int length) {
+        return (int) ((1 - minimumSimilarity) * length);
+    }
+
+    /**
+     * Finds the sequence of tokens closest to the first sequence, among
+     * the sequences around {@code [secondStart, secondEnd)}, ie that start
+     * and end at most {@link #stride} tokens from there, in the same file.
+     * Returns its edit distance to the first sequence if it is at most
+     * {@code bound}, otherwise returns {@link #NO_FIT}. The found sequence
+     * is stored in {@link #fitStart} and {@link #fitEnd}, they are only
+     * meaningful if a distance is returned.
+     *
+     * <p>Only a diagonal band of the distance matrix is computed (Ukkonen),
+     * so this takes a time proportional to the length times the bound.
+     */
+    private int fit(int first, int firstLength, int secondStart, int secondEnd, int bound) {
+        // extend the second sequence, without crossing the boundaries of its file
+        int from = secondStart;
+        while (from > 0 && secondStart - from < stride && !isEof(from - 1)) {
+            from--;
+        }
+        int to = secondEnd;
+        while (to < size() && to - secondEnd < stride && !isEof(to)) {
+            to++;
+        }
+        final int length = to - from;
+        final int tooFar = bound + 1;
+        final int slack = Math.max(0, length - firstLength);
+        if (previousRow.length <= length) {
+            previousRow = new int[length + 1];
+            currentRow = new int[length + 1];
+            previousOrigin = new int[length + 1];
+            currentOrigin = new int[length + 1];
+        }
+        int[] prev = previousRow;
+        int[] cur = currentRow;
+        int[] prevOrigin = previousOrigin;
+        int[] curOrigin = currentOrigin;
+
+        // the matched sequence may start anywhere, so the first row is zero
+        for (int j = 0; j <= length; j++) {
+            prev[j] = j <= slack + bound ? 0 : tooFar;
+            prevOrigin[j] = j;
+        }
+        for (int i = 1; i <= firstLength; i++) {
+            int lo = Math.max(0, i - bound);
+            int hi = Math.min(length, i + slack + bound);
+            if (lo > 0) {
+                cur[lo - 1] = tooFar;
+            }
+            int rowMin = tooFar;
+            int id = identifierAt(first + i - 1);
+            for (int j = lo; j <= hi; j++) {
+                int value;
+                int origin;
+                if (j == 0) {
+                    value = Math.min(i, tooFar);
+                    origin = 0;
+                } else {
+                    value = prev[j - 1] + (id == identifierAt(from + j - 1) ? 0 : 1);
+                    origin = prevOrigin[j - 1];
+                    if (prev[j] + 1 < value) {
+                        value = prev[j] + 1;
+                        origin = prevOrigin[j];
+                    }
+                    if (cur[j - 1] + 1 < value) {
+                        value = cur[j - 1] + 1;
+                        origin = curOrigin[j - 1];
+                    }
+                }
+                cur[j] = Math.min(value, tooFar);
+                curOrigin[j] = origin;
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (hi < length) {
+                cur[hi + 1] = tooFar;
+            }
+            if (rowMin > bound) {
+                return NO_FIT;
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+            swap = prevOrigin;
+            prevOrigin = curOrigin;
+            curOrigin = swap;
+        }
+
+        // the matched sequence may end anywhere, prefer the one whose length is the closest
+        int best = -1;
+        for (int j = Math.max(0, firstLength - bound); j <= Math.min(length, firstLength + slack + bound); j++) {
+            if (prev[j] <= bound && (best < 0 || prev[j] < prev[best]
+                || prev[j] == prev[best] && Math.abs(j - prevOrigin[j] - firstLength) < Math.abs(best - prevOrigin[best] - firstLength))) {
+                best = j;
+            }
+        }
+        if (best < 0) {
+            return NO_FIT;
+        }
+        fitStart = from + prevOrigin[best];
+        fitEnd = from + best;
+        return prev[best];
+    }
+
+    /** Finalization mix of MurmurHash3. */
+    private static int fmix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** Two similar ranges of tokens, being built by merging pairs of windows. */
+    private static final class Region {
+
+        final int firstStart;
+        int firstEnd;
+        int secondStart;
+        int secondEnd;
+        /** Start of the second window of the first pair. */
+        final int firstSecondStart;
+
+        Region(int first, int second, int windowSize) {
+            this.firstStart = first;
+            this.firstEnd = first + windowSize;
+            this.secondStart = second;
+            this.secondEnd = second + windowSize;
+            this.firstSecondStart = second;
+        }
+    }
+}
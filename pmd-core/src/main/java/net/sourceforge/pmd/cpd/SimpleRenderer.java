@@ -7,17 +7,20 @@ package net.sourceforge.pmd.cpd;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Writer;
-import java.util.Iterator;
 
 import net.sourceforge.pmd.lang.document.Chars;
 import net.sourceforge.pmd.lang.document.FileLocation;
 import net.sourceforge.pmd.util.StringUtil;
 
-public class SimpleRenderer implements CPDReportRenderer {
+public class SimpleRenderer implements CPDStreamingReportRenderer {
 
     private String separator;
     private boolean trimLeadingWhitespace;
 
+    private CPDReport report;
+    private PrintWriter writer;
+    private boolean firstMatch;
+
     public static final String DEFAULT_SEPARATOR = "=====================================================================";
 
     public SimpleRenderer() {
@@ -34,25 +37,37 @@ public class SimpleRenderer implements CPDReportRenderer {
     }
 
     @Override
-    public void render(CPDReport report, Writer writer0) throws IOException {
-        PrintWriter writer = new PrintWriter(writer0);
-        Iterator<Match> matches = report.getMatches().iterator();
-        if (matches.hasNext()) {
-            renderOn(report, writer, matches.next());
-        }
+    public void start(CPDReport report, Writer writer) {
+        this.report = report;
+        this.writer = new PrintWriter(writer);
+        this.firstMatch = true;
+    }
 
-        while (matches.hasNext()) {
-            Match match = matches.next();
+    @Override
+    public void renderMatch(Match match) throws IOException {
+        if (!firstMatch) {
             writer.println(separator);
-            renderOn(report, writer, match);
         }
+        firstMatch = false;
+        renderOn(report, writer, match);
+    }
+
+    @Override
+    public void end() {
         writer.flush();
+        report = null;
+        writer = null;
     }
 
     private void renderOn(CPDReport report, PrintWriter writer, Match match) throws IOException {
 
         writer.append("Found a ").append(String.valueOf(match.getLineCount())).append(" line (").append(String.valueOf(match.getTokenCount()))
-              .append(" tokens) duplication in the following files: ").println();
+              .append(" tokens");
+        if (match.getSimilarity() < 1) {
+            // near-miss duplication, see CpdMatchAlgorithm.NEAR_MISS
+            writer.append(", ").append(String.valueOf((int) (match.getSimilarity() * 100))).append("% similar");
+        }
+        writer.append(") duplication in the following files: ").println();
 
         for (Mark mark : match) {
             FileLocation loc = mark.getLocation();
@@ -8,7 +8,9 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -28,13 +30,31 @@ import net.sourceforge.pmd.reporting.FileNameRenderer;
  */
 class SourceManager implements AutoCloseable {
 
+    /** Number of documents kept by {@link #retainRecentDocumentsOnly()}. */
+    private static final int RECENT_DOCUMENTS = 8;
+
     private final Map<TextFile, SoftReference<TextDocument>> files = new ConcurrentHashMap<>();
     private final Map<FileId, TextFile> fileByPathId = new HashMap<>();
     private final List<TextFile> textFiles;
+    private final boolean retainDocuments;
     private FileNameRenderer fileNameRenderer = FileId::getAbsolutePath;
+    /** Only set after {@link #retainRecentDocumentsOnly()}. */
+    private Map<TextFile, TextDocument> recentDocuments;
+    /** Copies of the slices read by {@link #preloadSlices(Collection)}. */
+    private final Map<Mark, Chars> preloadedSlices = new HashMap<>();
 
     SourceManager(List<? extends TextFile> files) {
+        this(files, true);
+    }
+
+    /**
+     * @param retainDocuments If false, documents are read again every time
+     *                        they are needed, which avoids keeping the content
+     *                        of all files in memory until it is collected
+     */
+    SourceManager(List<? extends TextFile> files, boolean retainDocuments) {
         textFiles = new ArrayList<>(files);
+        this.retainDocuments = retainDocuments;
         files.forEach(f -> fileByPathId.put(f.getFileId(), f));
     }
 
@@ -51,17 +71,73 @@ class SourceManager implements AutoCloseable {
         }
     }
 
+    /**
+     * Returns the document for the file. This may be called concurrently
+     * for different files.
+     */
     TextDocument get(TextFile file) {
-        TextDocument textDocument = files.computeIfAbsent(file, f -> new SoftReference<>(load(f))).get();
+        if (recentDocuments != null) {
+            return recentDocuments.computeIfAbsent(file, this::load);
+        }
+        SoftReference<TextDocument> ref = files.get(file);
+        TextDocument textDocument = ref == null ? null : ref.get();
         if (textDocument == null) {
-            // SoftReference was freed up already, recreate it
-            TextDocument doc = load(file);
-            files.put(file, new SoftReference<>(doc));
-            return doc;
+            // Not loaded yet, or the SoftReference was freed up already.
+            // The file is read outside of computeIfAbsent, so that loading
+            // files on several threads doesn't block on the map.
+            textDocument = load(file);
+            if (retainDocuments) {
+                files.put(file, new SoftReference<>(textDocument));
+            }
         }
         return textDocument;
     }
 
+    /**
+     * Forgets the documents read so far, and from now on only keeps the
+     * few documents that were used last. This bounds the memory used to
+     * render a streaming report, whose matches are not ordered by file.
+     * After this, documents must only be requested by a single thread.
+     */
+    void retainRecentDocumentsOnly() {
+        files.clear();
+        recentDocuments = new LinkedHashMap<TextFile, TextDocument>(RECENT_DOCUMENTS * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TextFile, TextDocument> eldest) {
+                return size() > RECENT_DOCUMENTS;
+            }
+        };
+    }
+
+    /**
+     * Reads the slices of the given marks ahead of {@link #getSlice(Mark)},
+     * grouped by file, so that each file is read only once. Only a copy
+     * of the slices is kept, not the documents. This avoids reading the
+     * same files over and over when rendering a streaming report, whose
+     * matches are not ordered by file, while only a few
+     * {@linkplain #retainRecentDocumentsOnly() recent documents} are kept.
+     * This must not be called concurrently with {@link #getSlice(Mark)}.
+     */
+    @SuppressWarnings("PMD.CloseResource")
+    void preloadSlices(Collection<Mark> marks) {
+        Map<FileId, List<Mark>> marksByFile = new HashMap<>();
+        for (Mark mark : marks) {
+            marksByFile.computeIfAbsent(mark.getToken().getFileId(), k -> new ArrayList<>()).add(mark);
+        }
+        for (TextFile textFile : textFiles) {
+            List<Mark> fileMarks = marksByFile.get(textFile.getFileId());
+            if (fileMarks == null) {
+                continue;
+            }
+            // not get(textFile), the document must not replace a recent one
+            TextDocument doc = load(textFile);
+            for (Mark mark : fileMarks) {
+                // a slice shares the text of the whole document
+                preloadedSlices.put(mark, Chars.wrap(slice(doc, mark).toString()));
+            }
+        }
+    }
+
     public int size() {
         return files.size();
     }
@@ -77,10 +153,18 @@ class SourceManager implements AutoCloseable {
 
     @SuppressWarnings("PMD.CloseResource")
     public Chars getSlice(Mark mark) {
+        Chars preloaded = preloadedSlices.get(mark);
+        if (preloaded != null) {
+            return preloaded;
+        }
         TextFile textFile = fileByPathId.get(mark.getToken().getFileId());
         assert textFile != null : "No such file " + mark.getToken().getFileId();
         TextDocument doc = get(textFile);
         assert doc != null;
+        return slice(doc, mark);
+    }
+
+    private static Chars slice(TextDocument doc, Mark mark) {
         FileLocation loc = mark.getLocation();
         TextRegion lineRange = doc.createLineRange(loc.getStartLine(), loc.getEndLine());
         return doc.sliceOriginalText(lineRange);
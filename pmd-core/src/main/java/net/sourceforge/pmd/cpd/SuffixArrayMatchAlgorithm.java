@@ -0,0 +1,351 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Finds duplicated token sequences using a suffix array of the token
+ * identifiers and its longest common prefix (LCP) array.
+ *
+ * <p>Each LCP interval, ie range of the suffix array whose suffixes
+ * share a prefix of {@code L} tokens, for some {@code L} at least as
+ * large as the minimum tile size, is a set of occurrences of a
+ * duplicated sequence of {@code L} tokens. An occurrence is reported if
+ * the match with another occurrence of the interval can neither be
+ * extended to the left nor to the right, ie, it is a maximal repeat.
+ * Unlike in {@link MatchAlgorithm}, occurrences are never compared
+ * pairwise, so that the running time does not depend on how often a
+ * sequence is repeated. The suffix array is built by prefix doubling in
+ * {@code O(n log n)}.
+ *
+ * <p>Matches are reported for the same duplications as with {@link MatchAlgorithm},
+ * but there are differences in the reported marks when a sequence is
+ * embedded in a longer duplicated sequence: here, the shorter match
+ * reports all its occurrences, including those within the longer match.
+ * Like with {@link MatchAlgorithm}, the marks of a match may overlap,
+ * but a match is only reported if at least two of them don't.
+ *
+ * @see CpdMatchAlgorithm#SUFFIX_ARRAY
+ */
+class SuffixArrayMatchAlgorithm extends MatchAlgorithm {
+
+    /** Left context of the suffix at each index of the suffix array. */
+    private int[] leftContext;
+    /** Index of the next entry of the suffix array with a different left context. */
+    private int[] nextLeftChange;
+
+    // reusable buffers for processInterval
+    private int[] childFirst = new int[16];
+    private boolean[] childMulti = new boolean[16];
+    private int[] singleValues = new int[16];
+    private int[] occurrences = new int[16];
+
+    SuffixArrayMatchAlgorithm(Tokens tokens, int minTileSize) {
+        super(tokens, minTileSize);
+    }
+
+    @Override
+    public List<Match> findMatches(@NonNull CPDListener cpdListener, SourceManager sourceManager) {
+        List<Match> matches = new ArrayList<>();
+        {
+            cpdListener.phaseUpdate(CPDListener.HASH);
+            final int[] text = alphabet();
+            final int[] sa = suffixArray(text);
+            final int[] lcp = lcpArray(text, sa);
+
+            cpdListener.phaseUpdate(CPDListener.MATCH);
+            computeLeftContexts(sa);
+            collectIntervals(sa, lcp, matches);
+            // put the arrays out of scope
+            leftContext = null;
+            nextLeftChange = null;
+        }
+        return finishMatches(cpdListener, matches);
+    }
+
+    /**
+     * Returns the token identifiers, where each EOF token is replaced
+     * with a unique value, so that no common prefix spans the end of a file.
+     */
+    private int[] alphabet() {
+        final int n = size();
+        int maxId = 0;
+        for (int i = 0; i < n; i++) {
+            maxId = Math.max(maxId, identifiers[i]);
+        }
+        int[] text = new int[n];
+        int nextEof = maxId + 1;
+        for (int i = 0; i < n; i++) {
+            text[i] = isEof(i) ? nextEof++ : identifiers[i];
+        }
+        return text;
+    }
+
+    /**
+     * Builds the suffix array by prefix doubling, with a radix sort in
+     * each round. After the round for {@code k}, suffixes are sorted by their
+     * first {@code 2k} tokens. Since EOF tokens are unique, the number of
+     * rounds is logarithmic in the length of the longest repeated sequence.
+     */
+    private static int[] suffixArray(int[] text) {
+        final int n = text.length;
+        int[] sa = new int[n];
+        int[] rank = new int[n];
+        int[] tmp = new int[n];
+        int alphabetSize = 0;
+        for (int c : text) {
+            alphabetSize = Math.max(alphabetSize, c + 1);
+        }
+        int[] count = new int[Math.max(alphabetSize, n) + 1];
+
+        // sort by the first token
+        for (int c : text) {
+            count[c + 1]++;
+        }
+        for (int c = 1; c < count.length; c++) {
+            count[c] += count[c - 1];
+        }
+        for (int i = 0; i < n; i++) {
+            sa[count[text[i]]++] = i;
+        }
+        int classes = 0;
+        for (int j = 0; j < n; j++) {
+            if (j > 0 && text[sa[j]] != text[sa[j - 1]]) {
+                classes++;
+            }
+            rank[sa[j]] = classes;
+        }
+        classes++;
+
+        for (int k = 1; classes < n; k <<= 1) {
+            // order by the second key: suffixes shorter than k first
+            int p = 0;
+            for (int i = n - k; i < n; i++) {
+                tmp[p++] = i;
+            }
+            for (int j = 0; j < n; j++) {
+                if (sa[j] >= k) {
+                    tmp[p++] = sa[j] - k;
+                }
+            }
+            // stable counting sort by the first key
+            Arrays.fill(count, 0, classes + 1, 0);
+            for (int i = 0; i < n; i++) {
+                count[rank[i] + 1]++;
+            }
+            for (int c = 1; c <= classes; c++) {
+                count[c] += count[c - 1];
+            }
+            for (int j = 0; j < n; j++) {
+                sa[count[rank[tmp[j]]]++] = tmp[j];
+            }
+            // compute the new ranks into tmp
+            classes = 0;
+            tmp[sa[0]] = 0;
+            for (int j = 1; j < n; j++) {
+                int a = sa[j - 1];
+                int b = sa[j];
+                if (rank[a] != rank[b] || secondRank(rank, a + k) != secondRank(rank, b + k)) {
+                    classes++;
+                }
+                tmp[b] = classes;
+            }
+            classes++;
+            int[] swap = rank;
+            rank = tmp;
+            tmp = swap;
+        }
+        return sa;
+    }
+
+    private static int secondRank(int[] rank, int i) {
+        return i < rank.length ? rank[i] : -1;
+    }
+
+    /**
+     * Computes the LCP array with Kasai's algorithm: {@code lcp[j]} is the
+     * length of the common prefix of the suffixes {@code sa[j - 1]} and
+     * {@code sa[j]}, and {@code lcp[0]} is 0.
+     */
+    private static int[] lcpArray(int[] text, int[] sa) {
+        final int n = text.length;
+        int[] rank = new int[n];
+        for (int j = 0; j < n; j++) {
+            rank[sa[j]] = j;
+        }
+        int[] lcp = new int[n];
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            if (rank[i] > 0) {
+                int j = sa[rank[i] - 1];
+                while (i + h < n && j + h < n && text[i + h] == text[j + h]) {
+                    h++;
+                }
+                lcp[rank[i]] = h;
+                if (h > 0) {
+                    h--;
+                }
+            } else {
+                h = 0;
+            }
+        }
+        return lcp;
+    }
+
+    /**
+     * The left context of a suffix is the identifier of the token before
+     * it. Suffixes at the start of a file get a unique negative value, as
+     * a match can never be extended to the left there.
+     */
+    private void computeLeftContexts(int[] sa) {
+        final int n = sa.length;
+        leftContext = new int[n];
+        for (int j = 0; j < n; j++) {
+            int i = sa[j];
+            leftContext[j] = i == 0 || isEof(i - 1) ? -i - 1 : identifiers[i - 1];
+        }
+        nextLeftChange = new int[n];
+        for (int j = n - 1; j >= 0; j--) {
+            nextLeftChange[j] = j + 1 < n && leftContext[j + 1] == leftContext[j] ? nextLeftChange[j + 1] : j + 1;
+        }
+    }
+
+    /**
+     * Enumerates the LCP intervals bottom-up with a stack. LCP values
+     * lower than the minimum tile size are treated as 0, so that only
+     * the intervals that may produce a match are considered.
+     */
+    private void collectIntervals(int[] sa, int[] lcp, List<Match> matches) {
+        final int n = sa.length;
+        final int minTileSize = getMinimumTileSize();
+        int[] stackLcp = new int[16];
+        int[] stackLb = new int[16];
+        int top = 0; // the root interval, with an lcp of 0
+
+        for (int j = 1; j <= n; j++) {
+            int cur = j < n && lcp[j] >= minTileSize ? lcp[j] : 0;
+            int lb = j - 1;
+            while (cur < stackLcp[top]) {
+                lb = stackLb[top];
+                processInterval(sa, lcp, stackLcp[top], lb, j - 1, matches);
+                top--;
+            }
+            if (cur > stackLcp[top]) {
+                top++;
+                if (top == stackLcp.length) {
+                    stackLcp = Arrays.copyOf(stackLcp, top * 2);
+                    stackLb = Arrays.copyOf(stackLb, top * 2);
+                }
+                stackLcp[top] = cur;
+                stackLb[top] = lb;
+            }
+        }
+    }
+
+    /**
+     * Reports the occurrences of the interval {@code [lb, rb]} of the
+     * suffix array, whose suffixes share a prefix of {@code length} tokens.
+     * The children of the interval are the sub-ranges separated by the
+     * indices {@code j} where {@code lcp[j] == length}: suffixes of
+     * different children share exactly {@code length} tokens, those of a
+     * same child share more, and are reported with the child interval.
+     * An occurrence is reported if some occurrence of another child has
+     * a different left context.
+     */
+    private void processInterval(int[] sa, int[] lcp, int length, int lb, int rb, List<Match> matches) {
+        if (nextLeftChange[lb] > rb) {
+            return; // all occurrences have the same left context, the match is not maximal
+        }
+
+        // summarize the left contexts of each child: the first value, and whether there are others
+        int numChildren = 0;
+        for (int j = lb; j <= rb; j++) {
+            if (j == lb || lcp[j] == length) {
+                ensureChildCapacity(numChildren + 1);
+                childFirst[numChildren] = leftContext[j];
+                childMulti[numChildren] = false;
+                numChildren++;
+            } else if (leftContext[j] != childFirst[numChildren - 1]) {
+                childMulti[numChildren - 1] = true;
+            }
+        }
+        int numSingle = 0;
+        for (int c = 0; c < numChildren; c++) {
+            if (!childMulti[c]) {
+                singleValues[numSingle++] = childFirst[c];
+            }
+        }
+        Arrays.sort(singleValues, 0, numSingle);
+
+        ensureOccurrenceCapacity(rb - lb + 1);
+        int numOccurrences = 0;
+        int child = -1;
+        for (int j = lb; j <= rb; j++) {
+            if (j == lb || lcp[j] == length) {
+                child++;
+            }
+            int left = leftContext[j];
+            // other children whose only left context is the same as this one
+            int sameLeft = countSingle(left, numSingle) - (childMulti[child] ? 0 : 1);
+            if (numChildren - 1 - sameLeft > 0) {
+                occurrences[numOccurrences++] = sa[j];
+            }
+        }
+        if (numOccurrences < 2) {
+            return;
+        }
+
+        Arrays.sort(occurrences, 0, numOccurrences);
+        if (occurrences[numOccurrences - 1] - occurrences[0] < length) {
+            return; // all occurrences overlap
+        }
+
+        Match match = new Match(length, tokenAt(occurrences[0]), tokenAt(occurrences[1]));
+        for (int k = 2; k < numOccurrences; k++) {
+            match.addMark(tokenAt(occurrences[k]));
+        }
+        matches.add(match);
+    }
+
+    private int countSingle(int value, int numSingle) {
+        int from = lowerBound(singleValues, numSingle, value);
+        int to = lowerBound(singleValues, numSingle, value + 1);
+        return to - from;
+    }
+
+    private static int lowerBound(int[] sorted, int size, int value) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void ensureChildCapacity(int capacity) {
+        if (capacity > childFirst.length) {
+            int newCapacity = Math.max(capacity, childFirst.length * 2);
+            childFirst = Arrays.copyOf(childFirst, newCapacity);
+            childMulti = Arrays.copyOf(childMulti, newCapacity);
+            singleValues = Arrays.copyOf(singleValues, newCapacity);
+        }
+    }
+
+    private void ensureOccurrenceCapacity(int capacity) {
+        if (capacity > occurrences.length) {
+            occurrences = Arrays.copyOf(occurrences, Math.max(capacity, occurrences.length * 2));
+        }
+    }
+}
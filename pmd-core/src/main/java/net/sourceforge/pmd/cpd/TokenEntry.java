@@ -6,33 +6,25 @@ package net.sourceforge.pmd.cpd;
 
 import net.sourceforge.pmd.lang.document.FileId;
 
+/**
+ * A snapshot of a single token recorded by CPD. Tokens are stored
+ * compactly by {@link Tokens}, instances of this class are only created
+ * when a token is accessed individually.
+ */
 public class TokenEntry implements Comparable<TokenEntry> {
 
-    private static final int EOF = 0;
+    static final int EOF = 0;
 
     private final FileId fileId;
     private final int beginLine;
     private final int beginColumn;
     private final int endColumn;
     private final int endLine;
-    private int index;
+    private final int index;
     private int identifier;
-    private int hashCode;
-
-    /** constructor for EOF entries. */
-    TokenEntry(FileId fileId, int line, int column) {
-        assert isOk(line) && isOk(column) : "Coordinates are 1-based";
-        this.identifier = EOF;
-        this.fileId = fileId;
-        this.beginLine = line;
-        this.beginColumn = column;
-        this.endLine = line;
-        this.endColumn = column;
-    }
 
     TokenEntry(int imageId, FileId fileId, int beginLine, int beginColumn, int endLine, int endColumn, int index) {
         assert isOk(beginLine) && isOk(beginColumn) && isOk(endLine) && isOk(endColumn) : "Coordinates are 1-based";
-        assert imageId != EOF;
         this.fileId = fileId;
         this.beginLine = beginLine;
         this.beginColumn = beginColumn;
@@ -86,11 +78,7 @@ public class TokenEntry implements Comparable<TokenEntry> {
 
     @Override
     public int hashCode() {
-        return hashCode;
-    }
-
-    void setHashCode(int hashCode) {
-        this.hashCode = hashCode;
+        return index;
     }
 
     @SuppressWarnings("PMD.CompareObjectsWithEquals")
@@ -102,17 +90,14 @@ public class TokenEntry implements Comparable<TokenEntry> {
             return false;
         }
         TokenEntry other = (TokenEntry) o;
-        if (other.isEof() != this.isEof()) {
-            return false;
-        } else if (this.isEof()) {
-            return other.getFileId().equals(this.getFileId());
-        }
-        return other.hashCode == hashCode;
+        return other.index == index
+            && other.identifier == identifier
+            && other.getFileId().equals(this.getFileId());
     }
 
     @Override
     public int compareTo(TokenEntry other) {
-        return getIndex() - other.getIndex();
+        return Integer.compare(getIndex(), other.getIndex());
     }
 
     final void setImageIdentifier(int identifier) {
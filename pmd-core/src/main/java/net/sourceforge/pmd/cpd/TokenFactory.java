@@ -43,6 +43,38 @@ public interface TokenFactory extends AutoCloseable {
         recordToken(image, location.getStartLine(), location.getStartColumn(), location.getEndLine(), location.getEndColumn());
     }
 
+    /**
+     * Record a token given its coordinates, like {@link #recordToken(String, int, int, int, int)}.
+     * The image may be a slice of the document (see {@link net.sourceforge.pmd.lang.document.Chars}),
+     * which is only copied if no token with the same image has been recorded before.
+     *
+     * @param image     Image of the token. This will be taken into account
+     *                  to determine the hash value of the token.
+     * @param startLine Start line of the token
+     * @param startCol  Start column of the token
+     * @param endLine   End line of the token
+     * @param endCol    End column of the token
+     *
+     * @since 7.12.0
+     */
+    default void recordToken(@NonNull CharSequence image, int startLine, int startCol, int endLine, int endCol) {
+        recordToken(image.toString(), startLine, startCol, endLine, endCol);
+    }
+
+    /**
+     * Record a token given its location, like {@link #recordToken(String, FileLocation)}.
+     * The image may be a slice of the document, see {@link #recordToken(CharSequence, int, int, int, int)}.
+     *
+     * @param image    Image of the token. This will be taken into account
+     *                 to determine the hash value of the token.
+     * @param location Location of the token.
+     *
+     * @since 7.12.0
+     */
+    default void recordToken(@NonNull CharSequence image, @NonNull FileLocation location) {
+        recordToken(image, location.getStartLine(), location.getStartColumn(), location.getEndLine(), location.getEndColumn());
+    }
+
     LexException makeLexException(int line, int column, String message, @Nullable Throwable cause);
 
     /**
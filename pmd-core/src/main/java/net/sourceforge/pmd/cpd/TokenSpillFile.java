@@ -0,0 +1,122 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores the tokens of a {@link Tokens} instance in a temporary file
+ * instead of the heap, see {@link CPDConfiguration#setSpillDirectory(Path)}.
+ * Tokens are appended to the file while files are tokenized, then the
+ * file is memory-mapped to be read by the match algorithm.
+ *
+ * <p>Each token is stored as 6 ints: image id, file index, begin line,
+ * begin column, end line, end column. A mapped buffer is limited to 2 GB,
+ * so the file is mapped in chunks of a fixed number of tokens.
+ */
+final class TokenSpillFile implements Closeable {
+
+    static final int IDENTIFIER = 0;
+    static final int FILE_INDEX = 1;
+    static final int BEGIN_LINE = 2;
+    static final int BEGIN_COLUMN = 3;
+    static final int END_LINE = 4;
+    static final int END_COLUMN = 5;
+
+    private static final int INTS_PER_TOKEN = 6;
+    /** Each chunk has 2^24 tokens, ie 384 MB. */
+    private static final int TOKENS_PER_CHUNK_SHIFT = 24;
+    private static final int TOKENS_PER_CHUNK_MASK = (1 << TOKENS_PER_CHUNK_SHIFT) - 1;
+
+    private final Path file;
+    private DataOutputStream out;
+    private int size;
+    private IntBuffer[] chunks;
+
+    /**
+     * Creates a new temporary file in the directory.
+     *
+     * @throws IOException If the file cannot be created
+     */
+    TokenSpillFile(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.file = Files.createTempFile(directory, "cpd-tokens", ".bin");
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    void append(int imageId, int fileIndex, int beginLine, int beginColumn, int endLine, int endColumn) throws IOException {
+        if (out == null) {
+            throw new IllegalStateException("Cannot append tokens after finishWriting()");
+        }
+        out.writeInt(imageId);
+        out.writeInt(fileIndex);
+        out.writeInt(beginLine);
+        out.writeInt(beginColumn);
+        out.writeInt(endLine);
+        out.writeInt(endColumn);
+        size++;
+    }
+
+    /**
+     * Closes the file for writing, and maps it to be read with {@link #get(int, int)}.
+     */
+    void finishWriting() throws IOException {
+        out.close();
+        out = null;
+        int numChunks = (size + TOKENS_PER_CHUNK_MASK) >>> TOKENS_PER_CHUNK_SHIFT;
+        chunks = new IntBuffer[numChunks];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long chunkBytes = (long) Integer.BYTES * INTS_PER_TOKEN << TOKENS_PER_CHUNK_SHIFT;
+            for (int c = 0; c < numChunks; c++) {
+                long start = c * chunkBytes;
+                long length = Math.min(chunkBytes, channel.size() - start);
+                // the mapping remains valid after the channel is closed
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, length).asIntBuffer();
+            }
+        }
+    }
+
+    /**
+     * Returns a field of a token.
+     *
+     * @param index Index of the token
+     * @param field One of the field constants of this class, eg {@link #IDENTIFIER}
+     */
+    int get(int index, int field) {
+        return chunks[index >>> TOKENS_PER_CHUNK_SHIFT].get((index & TOKENS_PER_CHUNK_MASK) * INTS_PER_TOKEN + field);
+    }
+
+    /** Returns the number of tokens written to the file. */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Deletes the file. The mapped buffers are only released by the
+     * garbage collector, so on some platforms the file may only be deleted
+     * when the JVM exits.
+     */
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        chunks = null;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+}
@@ -4,11 +4,17 @@
 
 package net.sourceforge.pmd.cpd;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -20,14 +26,37 @@ import net.sourceforge.pmd.lang.document.TextDocument;
 /**
  * Global token collector for CPD. This is populated by lexing all files,
  * after which the match algorithm proceeds.
+ *
+ * <p>Tokens are not stored as objects, but in parallel primitive arrays
+ * indexed by the token index, which keeps the memory per token small and
+ * lets the match algorithm scan them sequentially. {@link TokenEntry}
+ * instances are only created on demand, as a snapshot of a single token.
+ * The tokens of all files may also be stored in a {@link TokenSpillFile}
+ * instead of the heap.
  */
 public class Tokens {
 
-    // This stores all the token entries recorded during the run.
-    private final List<TokenEntry> tokens = new ArrayList<>();
-    private final Map<String, Integer> images = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 256;
+
     // the first ID is 1, 0 is the ID of the EOF token.
-    private int curImageId = 1;
+    private final List<String> imagesById = new ArrayList<>();
+    // open addressing table of image IDs, see getImageId. 0 marks an empty slot
+    private int[] imageTable = new int[INITIAL_CAPACITY];
+
+    private final Map<FileId, Integer> fileIndices = new HashMap<>();
+    private final List<FileId> files = new ArrayList<>();
+
+    // These store all the tokens recorded during the run, see addToken.
+    private int size;
+    private int[] identifiers = new int[INITIAL_CAPACITY];
+    private int[] fileIds = new int[INITIAL_CAPACITY];
+    private int[] beginLines = new int[INITIAL_CAPACITY];
+    private int[] beginColumns = new int[INITIAL_CAPACITY];
+    private int[] endLines = new int[INITIAL_CAPACITY];
+    private int[] endColumns = new int[INITIAL_CAPACITY];
+
+    // if not null, the tokens are stored there instead of in the arrays
+    private final @Nullable TokenSpillFile spill;
 
     /**
      * Create a new instance.
@@ -35,58 +64,310 @@ public class Tokens {
      * @apiNote  Internal API
      */
     Tokens() {
-        // constructor is package private
+        this(null);
     }
 
-    private void add(TokenEntry tokenEntry) {
-        this.tokens.add(tokenEntry);
+    /**
+     * Create a new instance that stores its tokens in the given file.
+     * Tokens can then only be added with {@link #appendFile(Tokens)}, and
+     * can only be read after {@link TokenSpillFile#finishWriting()}.
+     *
+     * @apiNote  Internal API
+     */
+    Tokens(@Nullable TokenSpillFile spill) {
+        this.spill = spill;
+        imagesById.add(null); // EOF
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= identifiers.length) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, identifiers.length + (identifiers.length >> 1));
+        identifiers = Arrays.copyOf(identifiers, newCapacity);
+        fileIds = Arrays.copyOf(fileIds, newCapacity);
+        beginLines = Arrays.copyOf(beginLines, newCapacity);
+        beginColumns = Arrays.copyOf(beginColumns, newCapacity);
+        endLines = Arrays.copyOf(endLines, newCapacity);
+        endColumns = Arrays.copyOf(endColumns, newCapacity);
     }
 
-    private void addEof(FileId filePathId, int line, int column) {
-        add(new TokenEntry(filePathId, line, column));
+    private int add(int imageId, int fileIndex, int beginLine, int beginColumn, int endLine, int endColumn) {
+        if (spill != null) {
+            throw new IllegalStateException("Tokens stored on disk can only be added with appendFile");
+        }
+        assert beginLine >= 1 && beginColumn >= 1 && endLine >= 1 && endColumn >= 1 : "Coordinates are 1-based";
+        ensureCapacity(size + 1);
+        int index = size++;
+        identifiers[index] = imageId;
+        fileIds[index] = fileIndex;
+        beginLines[index] = beginLine;
+        beginColumns[index] = beginColumn;
+        endLines[index] = endLine;
+        endColumns[index] = endColumn;
+        return index;
+    }
+
+    private void addEof(int fileIndex, int line, int column) {
+        add(TokenEntry.EOF, fileIndex, line, column, line, column);
+    }
+
+    private int getFileIndex(FileId fileId) {
+        return fileIndices.computeIfAbsent(fileId, k -> {
+            files.add(k);
+            return files.size() - 1;
+        });
     }
 
     private void setImage(TokenEntry entry, String newImage) {
         int i = getImageId(newImage);
+        identifiers[entry.getIndex()] = i;
         entry.setImageIdentifier(i);
     }
 
-    private int getImageId(String newImage) {
-        return images.computeIfAbsent(newImage, k -> curImageId++);
+    /**
+     * Returns the ID of an image, creating it if needed. Images are looked
+     * up by content, so that the lexer may pass a slice of the document,
+     * which is only copied to a string the first time the image is seen.
+     */
+    private int getImageId(CharSequence image) {
+        final int hash = hash(image);
+        final int mask = imageTable.length - 1;
+        int slot = MatchAlgorithm.mix(hash) & mask;
+        while (imageTable[slot] != 0) {
+            String existing = imagesById.get(imageTable[slot]);
+            if (existing.hashCode() == hash && existing.contentEquals(image)) {
+                return imageTable[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        imagesById.add(image.toString());
+        int id = imagesById.size() - 1;
+        imageTable[slot] = id;
+        if (id * 3 > imageTable.length * 2) {
+            rehashImages();
+        }
+        return id;
+    }
+
+    private void rehashImages() {
+        int[] newTable = new int[imageTable.length * 2];
+        final int mask = newTable.length - 1;
+        for (int id = 1; id < imagesById.size(); id++) {
+            int slot = MatchAlgorithm.mix(imagesById.get(id).hashCode()) & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = id;
+        }
+        imageTable = newTable;
+    }
+
+    /** Same as {@link String#hashCode()}, without creating a string. */
+    private static int hash(CharSequence image) {
+        if (image instanceof String) {
+            return image.hashCode(); // cached
+        }
+        int h = 0;
+        for (int i = 0, len = image.length(); i < len; i++) {
+            h = 31 * h + image.charAt(i);
+        }
+        return h;
     }
 
     String imageFromId(int i) {
-        return images.entrySet().stream().filter(it -> it.getValue() == i).findFirst().map(Entry::getKey).orElse(null);
+        return i > 0 && i < imagesById.size() ? imagesById.get(i) : null;
     }
 
     private TokenEntry peekLastToken() {
-        return tokens.isEmpty() ? null : getToken(size() - 1);
+        return size == 0 ? null : getToken(size - 1);
     }
 
-    private TokenEntry getToken(int index) {
-        return tokens.get(index);
+    /**
+     * Returns a snapshot of the token at the given index.
+     */
+    TokenEntry getToken(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        if (spill != null) {
+            return new TokenEntry(spill.get(index, TokenSpillFile.IDENTIFIER),
+                                  files.get(spill.get(index, TokenSpillFile.FILE_INDEX)),
+                                  spill.get(index, TokenSpillFile.BEGIN_LINE), spill.get(index, TokenSpillFile.BEGIN_COLUMN),
+                                  spill.get(index, TokenSpillFile.END_LINE), spill.get(index, TokenSpillFile.END_COLUMN),
+                                  index);
+        }
+        return new TokenEntry(identifiers[index], files.get(fileIds[index]),
+                              beginLines[index], beginColumns[index],
+                              endLines[index], endColumns[index], index);
     }
 
-    public int size() {
-        return tokens.size();
+    /**
+     * Returns the image identifiers of all tokens, indexed by token index.
+     * The array is not copied and may be longer than {@link #size()}.
+     * EOF tokens have the identifier 0.
+     *
+     * @throws IllegalStateException If the tokens are stored on disk, see {@link #isSpilled()}
+     */
+    int[] getIdentifiers() {
+        if (spill != null) {
+            throw new IllegalStateException("Tokens are stored on disk, use identifierAt");
+        }
+        return identifiers;
+    }
+
+    /**
+     * Returns the image identifier of the token at the given index.
+     * Prefer {@link #getIdentifiers()} if the tokens are not spilled.
+     */
+    int identifierAt(int index) {
+        return spill != null ? spill.get(index, TokenSpillFile.IDENTIFIER) : identifiers[index];
+    }
+
+    /** Whether the tokens are stored in a {@link TokenSpillFile}. */
+    boolean isSpilled() {
+        return spill != null;
     }
 
-    TokenEntry getEndToken(TokenEntry mark, Match match) {
-        return getToken(mark.getIndex() + match.getTokenCount() - 1);
+    public int size() {
+        return size;
     }
 
+    /**
+     * Returns a view of the tokens of this instance. Every access to
+     * the list creates a new {@link TokenEntry}, so prefer using the
+     * index-based methods where possible.
+     */
     public List<TokenEntry> getTokens() {
-        return tokens;
+        return new AbstractList<TokenEntry>() {
+            @Override
+            public TokenEntry get(int index) {
+                return getToken(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 
     TokenEntry addToken(String image, FileId fileName, int startLine, int startCol, int endLine, int endCol) {
-        TokenEntry newToken = new TokenEntry(getImageId(image), fileName, startLine, startCol, endLine, endCol, tokens.size());
-        add(newToken);
-        return newToken;
+        return getToken(add(getImageId(image), getFileIndex(fileName), startLine, startCol, endLine, endCol));
+    }
+
+    /**
+     * Appends the tokens of another instance, into which a single file
+     * was lexed independently, e.g. on another thread. The image ids of the
+     * other instance are mapped to ids of this instance in the order they
+     * were allocated, so that the result is exactly the same as if the file
+     * had been lexed into this instance directly. The other instance must
+     * not be used anymore afterwards.
+     *
+     * @param fileTokens Tokens of a single file
+     */
+    void appendFile(Tokens fileTokens) {
+        final int[] newIds = new int[fileTokens.imagesById.size()]; // the EOF id 0 is mapped to itself
+        for (int id = 1; id < newIds.length; id++) {
+            newIds[id] = getImageId(fileTokens.imagesById.get(id));
+        }
+        final int[] newFileIndices = new int[fileTokens.files.size()];
+        for (int i = 0; i < newFileIndices.length; i++) {
+            newFileIndices[i] = getFileIndex(fileTokens.files.get(i));
+        }
+
+        final int offset = size;
+        final int count = fileTokens.size;
+        if (spill != null) {
+            try {
+                for (int i = 0; i < count; i++) {
+                    spill.append(newIds[fileTokens.identifiers[i]], newFileIndices[fileTokens.fileIds[i]],
+                                 fileTokens.beginLines[i], fileTokens.beginColumns[i],
+                                 fileTokens.endLines[i], fileTokens.endColumns[i]);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            size += count;
+            return;
+        }
+        ensureCapacity(offset + count);
+        for (int i = 0; i < count; i++) {
+            identifiers[offset + i] = newIds[fileTokens.identifiers[i]];
+            fileIds[offset + i] = newFileIndices[fileTokens.fileIds[i]];
+        }
+        System.arraycopy(fileTokens.beginLines, 0, beginLines, offset, count);
+        System.arraycopy(fileTokens.beginColumns, 0, beginColumns, offset, count);
+        System.arraycopy(fileTokens.endLines, 0, endLines, offset, count);
+        System.arraycopy(fileTokens.endColumns, 0, endColumns, offset, count);
+        size += count;
+    }
+
+    /**
+     * Writes the tokens of this instance, into which a single file was
+     * lexed, to be read back with {@link #readFileTokens(DataInput, FileId)}.
+     * The layout is: number of images (int), then each image as UTF-8
+     * bytes prefixed with their length (int), then number of tokens (int),
+     * then for each token: image id, begin line, begin column, end line,
+     * end column (int).
+     */
+    void writeFileTokens(DataOutput out) throws IOException {
+        out.writeInt(imagesById.size() - 1);
+        for (int id = 1; id < imagesById.size(); id++) {
+            byte[] image = imagesById.get(id).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(image.length);
+            out.write(image);
+        }
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(identifiers[i]);
+            out.writeInt(beginLines[i]);
+            out.writeInt(beginColumns[i]);
+            out.writeInt(endLines[i]);
+            out.writeInt(endColumns[i]);
+        }
     }
 
-    State savePoint() {
-        return new State(this);
+    /**
+     * Reads the tokens of a single file written by {@link #writeFileTokens(DataOutput)}.
+     *
+     * @param in     Input
+     * @param fileId Id of the file
+     *
+     * @throws IOException If the data is malformed
+     */
+    static Tokens readFileTokens(DataInput in, FileId fileId) throws IOException {
+        Tokens tokens = new Tokens();
+        int numImages = in.readInt();
+        for (int id = 1; id <= numImages; id++) {
+            byte[] image = new byte[in.readInt()];
+            in.readFully(image);
+            tokens.getImageId(new String(image, StandardCharsets.UTF_8));
+        }
+        if (tokens.imagesById.size() != numImages + 1) {
+            throw new IOException("Duplicate token images");
+        }
+        int numTokens = in.readInt();
+        if (numTokens < 0) {
+            throw new IOException("Negative token count " + numTokens);
+        }
+        int fileIndex = tokens.getFileIndex(fileId);
+        tokens.ensureCapacity(numTokens);
+        for (int i = 0; i < numTokens; i++) {
+            int imageId = in.readInt();
+            if (imageId < 0 || imageId > numImages) {
+                throw new IOException("Image id " + imageId + " is out of bounds");
+            }
+            int beginLine = in.readInt();
+            int beginColumn = in.readInt();
+            int endLine = in.readInt();
+            int endColumn = in.readInt();
+            if (beginLine < 1 || beginColumn < 1 || endLine < 1 || endColumn < 1) {
+                throw new IOException("Invalid token coordinates");
+            }
+            tokens.add(imageId, fileIndex, beginLine, beginColumn, endLine, endColumn);
+        }
+        return tokens;
     }
 
     /**
@@ -102,11 +383,17 @@ public class Tokens {
     static TokenFactory factoryForFile(TextDocument file, Tokens tokens) {
         return new TokenFactory() {
             final FileId fileId = file.getFileId();
+            final int fileIndex = tokens.getFileIndex(fileId);
             final int firstToken = tokens.size();
 
             @Override
             public void recordToken(@NonNull String image, int startLine, int startCol, int endLine, int endCol) {
-                tokens.addToken(image, fileId, startLine, startCol, endLine, endCol);
+                tokens.add(tokens.getImageId(image), fileIndex, startLine, startCol, endLine, endCol);
+            }
+
+            @Override
+            public void recordToken(@NonNull CharSequence image, int startLine, int startCol, int endLine, int endCol) {
+                tokens.add(tokens.getImageId(image), fileIndex, startLine, startCol, endLine, endCol);
             }
 
             @Override
@@ -129,37 +416,14 @@ public class Tokens {
 
             @Override
             public void close() {
-                TokenEntry tok = peekLastToken();
-                if (tok == null) {
-                    tokens.addEof(fileId, 1, 1);
+                if (tokens.size() <= firstToken) {
+                    tokens.addEof(fileIndex, 1, 1);
                 } else {
-                    tokens.addEof(fileId, tok.getEndLine(), tok.getEndColumn());
+                    int last = tokens.size() - 1;
+                    tokens.addEof(fileIndex, tokens.endLines[last], tokens.endColumns[last]);
                 }
             }
         };
     }
 
-    /**
-     * Helper class to preserve and restore the current state of the token
-     * entries.
-     */
-    static final class State {
-
-        private final int tokenCount;
-        private final int curImageId;
-
-        State(Tokens tokens) {
-            this.tokenCount = tokens.tokens.size();
-            this.curImageId = tokens.curImageId;
-        }
-
-        public void restore(Tokens tokens) {
-            tokens.images.entrySet().removeIf(e -> e.getValue() >= curImageId);
-            tokens.curImageId = this.curImageId;
-
-            final List<TokenEntry> entries = tokens.getTokens();
-            entries.subList(tokenCount, entries.size()).clear();
-        }
-    }
-
 }
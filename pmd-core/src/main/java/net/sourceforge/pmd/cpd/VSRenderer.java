@@ -9,20 +9,33 @@ import java.io.Writer;
 
 import net.sourceforge.pmd.lang.document.FileLocation;
 
-public class VSRenderer implements CPDReportRenderer {
+public class VSRenderer implements CPDStreamingReportRenderer {
+
+    private CPDReport report;
+    private Writer writer;
+
+    @Override
+    public void start(CPDReport report, Writer writer) {
+        this.report = report;
+        this.writer = writer;
+    }
 
     @Override
-    public void render(CPDReport report, Writer writer) throws IOException {
-        for (Match match: report.getMatches()) {
-            for (Mark mark : match) {
-                FileLocation loc = mark.getLocation();
-                writer.append(report.getDisplayName(loc.getFileId()))
-                      .append('(').append(String.valueOf(loc.getStartLine())).append("):")
-                      .append(" Between lines ").append(String.valueOf(loc.getStartLine()))
-                      .append(" and ").append(String.valueOf(loc.getEndLine()))
-                      .append(System.lineSeparator());
-            }
+    public void renderMatch(Match match) throws IOException {
+        for (Mark mark : match) {
+            FileLocation loc = mark.getLocation();
+            writer.append(report.getDisplayName(loc.getFileId()))
+                  .append('(').append(String.valueOf(loc.getStartLine())).append("):")
+                  .append(" Between lines ").append(String.valueOf(loc.getStartLine()))
+                  .append(" and ").append(String.valueOf(loc.getEndLine()))
+                  .append(System.lineSeparator());
         }
+    }
+
+    @Override
+    public void end() throws IOException {
         writer.flush();
+        report = null;
+        writer = null;
     }
 }
@@ -13,6 +13,9 @@ import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -34,8 +37,12 @@ import net.sourceforge.pmd.util.StringUtil;
  * @author Philippe T'Seyen - original implementation
  * @author Romain Pelisse - javax.xml implementation
  *
+ * <p>{@link #render(CPDReport, Writer)} builds the whole document before
+ * writing it, whereas a {@linkplain CPDStreamingReportRenderer streaming session}
+ * writes each duplication as soon as it is rendered. Both produce the same
+ * elements, but they may be indented differently.
  */
-public final class XMLRenderer implements CPDReportRenderer {
+public final class XMLRenderer implements CPDStreamingReportRenderer {
     private static final String NAMESPACE_URI = "https://pmd-code.org/schema/cpd-report";
     private static final String NAMESPACE_LOCATION = "https://pmd.github.io/schema/cpd-report_1_0_0.xsd";
     private static final String SCHEMA_VERSION = "1.0.0";
@@ -44,6 +51,11 @@ public final class XMLRenderer implements CPDReportRenderer {
 
     private final boolean newFormat;
 
+    /** Only set during a streaming session. */
+    private CPDReport report;
+    private Writer writer;
+    private XMLStreamWriter xmlWriter;
+
     /**
      * Creates a XML Renderer with the default (platform dependent) encoding.
      */
@@ -152,6 +164,119 @@ public final class XMLRenderer implements CPDReportRenderer {
         writer.flush();
     }
 
+    @Override
+    public void start(CPDReport report, Writer writer) throws IOException {
+        this.report = report;
+        this.writer = writer;
+        try {
+            // the declaration is written directly, as XMLStreamWriter#writeStartDocument
+            // rejects an encoding that differs from the one of an OutputStreamWriter
+            writer.write("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>");
+            xmlWriter = XMLOutputFactory.newFactory().createXMLStreamWriter(writer);
+            writeNewLine(0);
+            if (newFormat) {
+                xmlWriter.setDefaultNamespace(NAMESPACE_URI);
+                xmlWriter.writeStartElement(NAMESPACE_URI, "pmd-cpd");
+                xmlWriter.writeDefaultNamespace(NAMESPACE_URI);
+                xmlWriter.writeNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+                xmlWriter.writeAttribute("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation", NAMESPACE_URI + " " + NAMESPACE_LOCATION);
+                xmlWriter.writeAttribute("version", SCHEMA_VERSION);
+                xmlWriter.writeAttribute("pmdVersion", PMDVersion.VERSION);
+                xmlWriter.writeAttribute("timestamp", OffsetDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+            } else {
+                xmlWriter.writeStartElement("pmd-cpd");
+            }
+
+            for (final Map.Entry<FileId, Integer> pair : report.getNumberOfTokensPerFile().entrySet()) {
+                writeNewLine(1);
+                xmlWriter.writeEmptyElement("file");
+                xmlWriter.writeAttribute("path", report.getDisplayName(pair.getKey()));
+                xmlWriter.writeAttribute("totalNumberOfTokens", String.valueOf(pair.getValue()));
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void renderMatch(Match match) throws IOException {
+        try {
+            writeNewLine(1);
+            xmlWriter.writeStartElement("duplication");
+            xmlWriter.writeAttribute("lines", String.valueOf(match.getLineCount()));
+            xmlWriter.writeAttribute("tokens", String.valueOf(match.getTokenCount()));
+            for (Mark mark : match) {
+                FileLocation loc = mark.getLocation();
+                writeNewLine(2);
+                xmlWriter.writeEmptyElement("file");
+                xmlWriter.writeAttribute("line", String.valueOf(loc.getStartLine()));
+                xmlWriter.writeAttribute("path", StringUtil.removedInvalidXml10Characters(report.getDisplayName(loc.getFileId())));
+                xmlWriter.writeAttribute("endline", String.valueOf(loc.getEndLine()));
+                xmlWriter.writeAttribute("column", String.valueOf(loc.getStartColumn()));
+                xmlWriter.writeAttribute("endcolumn", String.valueOf(loc.getEndColumn()));
+                xmlWriter.writeAttribute("begintoken", String.valueOf(mark.getBeginTokenIndex()));
+                xmlWriter.writeAttribute("endtoken", String.valueOf(mark.getEndTokenIndex()));
+            }
+            // the source is read only now, and not referenced after the match is written
+            Chars codeSnippet = report.getSourceCodeSlice(match.getFirstMark());
+            if (codeSnippet != null) {
+                String platformSpecific = codeSnippet.toString().replace("\n", System.lineSeparator());
+                writeNewLine(2);
+                xmlWriter.writeStartElement("codefragment");
+                // split "]]>" into "]]" and ">" into two cdata sections
+                xmlWriter.writeCData(StringUtil.removedInvalidXml10Characters(platformSpecific).replace("]]>", "]]]]><![CDATA[>"));
+                xmlWriter.writeEndElement();
+            }
+            writeNewLine(1);
+            xmlWriter.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void end() throws IOException {
+        try {
+            if (newFormat) {
+                for (Report.ProcessingError error : report.getProcessingErrors()) {
+                    writeNewLine(1);
+                    xmlWriter.writeStartElement("error");
+                    xmlWriter.writeAttribute("filename", report.getDisplayName(error.getFileId()));
+                    xmlWriter.writeAttribute("msg", error.getMsg());
+                    xmlWriter.writeCharacters(error.getDetail());
+                    xmlWriter.writeEndElement();
+                }
+            }
+            writeNewLine(0);
+            xmlWriter.writeEndElement(); // </pmd-cpd>
+            writeNewLine(0);
+            xmlWriter.writeEndDocument();
+            xmlWriter.flush();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            report = null;
+            writer = null;
+            xmlWriter = null;
+        }
+    }
+
+    /**
+     * Writes a line separator and indents the next line. This is written
+     * to the underlying writer, as some implementations of {@link XMLStreamWriter}
+     * escape {@code \r}, see {@link net.sourceforge.pmd.renderers.XMLRenderer}.
+     */
+    private void writeNewLine(int indent) throws XMLStreamException, IOException {
+        // close any open tag, and write what is buffered before the raw text
+        xmlWriter.writeCharacters("");
+        xmlWriter.flush();
+        writer.write(System.lineSeparator());
+        for (int i = 0; i < indent; i++) {
+            writer.write("   ");
+        }
+    }
+
     private void addFilesToDuplicationElement(Document doc, Element duplication, Match match, CPDReport report) {
         for (Mark mark : match) {
             final Element file = createElement(doc, "file");
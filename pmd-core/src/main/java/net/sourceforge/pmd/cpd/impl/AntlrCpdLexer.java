@@ -5,6 +5,7 @@
 package net.sourceforge.pmd.cpd.impl;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
@@ -14,18 +15,74 @@ import net.sourceforge.pmd.cpd.CpdLexer;
 import net.sourceforge.pmd.lang.TokenManager;
 import net.sourceforge.pmd.lang.ast.impl.antlr4.AntlrToken;
 import net.sourceforge.pmd.lang.ast.impl.antlr4.AntlrTokenManager;
+import net.sourceforge.pmd.lang.ast.impl.antlr4.CharsCharStream;
 import net.sourceforge.pmd.lang.document.TextDocument;
 
 /**
  * Generic implementation of a {@link CpdLexer} useful to any Antlr grammar.
+ *
+ * <p>The text of the document is read in place if possible (see {@link CharsCharStream}).
+ * If {@link #isLexerReusable()}, the Antlr lexer of the previous document is
+ * reset and reused, unless it is used by another thread.
  */
 public abstract class AntlrCpdLexer extends CpdLexerBase<AntlrToken> {
+
+    /** A lexer that can be reused, or null. */
+    private final AtomicReference<Lexer> idleLexer = new AtomicReference<>();
+
     @Override
     protected final TokenManager<AntlrToken> makeLexerImpl(TextDocument doc) throws IOException {
-        CharStream charStream = CharStreams.fromReader(doc.newReader(), doc.getFileId().getAbsolutePath());
-        return new AntlrTokenManager(getLexerForSource(charStream), doc);
+        final CharStream charStream;
+        if (CharsCharStream.isSupported(doc.getText())) {
+            charStream = new CharsCharStream(doc);
+        } else {
+            charStream = CharStreams.fromReader(doc.newReader(), doc.getFileId().getAbsolutePath());
+        }
+
+        Lexer lexer = isLexerReusable() ? idleLexer.getAndSet(null) : null;
+        if (lexer != null) {
+            lexer.setInputStream(charStream);
+        } else {
+            lexer = getLexerForSource(charStream);
+            lexer.setTokenFactory(CharsCharStream.TOKEN_FACTORY);
+        }
+        return new ReusableTokenManager(lexer, doc, charStream);
+    }
+
+    @Override
+    protected final void releaseLexerImpl(TokenManager<AntlrToken> tokenManager) {
+        ReusableTokenManager manager = (ReusableTokenManager) tokenManager;
+        // the lexer must read the stream directly, otherwise getLexerForSource
+        // wrapped it, and the wrapper would be lost by setInputStream
+        if (isLexerReusable() && manager.lexer.getInputStream() == manager.charStream) {
+            idleLexer.set(manager.lexer);
+        }
     }
 
     protected abstract Lexer getLexerForSource(CharStream charStream);
 
+    /**
+     * Returns true if the lexers created by {@link #getLexerForSource(CharStream)}
+     * may be reused for another document after {@link Lexer#setInputStream(org.antlr.v4.runtime.IntStream)}.
+     * This is the case if all the state of the lexer is reset by {@link Lexer#reset()},
+     * which is not the case if the grammar declares fields, eg with {@code @lexer::members}.
+     * Returns false by default.
+     *
+     * @since 7.12.0
+     */
+    protected boolean isLexerReusable() {
+        return false;
+    }
+
+    private static final class ReusableTokenManager extends AntlrTokenManager {
+
+        final Lexer lexer;
+        final CharStream charStream;
+
+        ReusableTokenManager(Lexer lexer, TextDocument doc, CharStream charStream) {
+            super(lexer, doc);
+            this.lexer = lexer;
+            this.charStream = charStream;
+        }
+    }
 }
@@ -19,6 +19,20 @@ public abstract class CpdLexerBase<T extends GenericToken<T>> implements CpdLexe
 
     protected abstract TokenManager<T> makeLexerImpl(TextDocument doc) throws IOException;
 
+    /**
+     * Called when all the tokens of the token manager returned by
+     * {@link #makeLexerImpl(TextDocument)} have been processed, so that
+     * its resources may be reused for the next document. Does nothing
+     * by default.
+     *
+     * @param tokenManager The token manager, before {@link #filterTokenStream(TokenManager)}
+     *
+     * @since 7.12.0
+     */
+    protected void releaseLexerImpl(TokenManager<T> tokenManager) {
+        // nothing to do
+    }
+
     protected TokenManager<T> filterTokenStream(TokenManager<T> tokenManager) {
         return new BaseTokenFilter<>(tokenManager);
     }
@@ -27,17 +41,25 @@ public abstract class CpdLexerBase<T extends GenericToken<T>> implements CpdLexe
         tokenEntries.recordToken(getImage(currentToken), currentToken.getReportLocation());
     }
 
-    protected String getImage(T token) {
-        return token.getImage();
+    /**
+     * Returns the image of the token recorded by {@link #processToken(TokenFactory, GenericToken)}.
+     * By default, this is {@link GenericToken#getImageCs()}, which is usually a slice
+     * of the document, and is not copied unless it is a new image. Overrides may
+     * narrow the return type to {@link String}.
+     */
+    protected CharSequence getImage(T token) {
+        return token.getImageCs();
     }
 
     @Override
     public final void tokenize(TextDocument document, TokenFactory tokens) throws IOException {
-        TokenManager<T> tokenManager = filterTokenStream(makeLexerImpl(document));
+        TokenManager<T> lexer = makeLexerImpl(document);
+        TokenManager<T> tokenManager = filterTokenStream(lexer);
         T currentToken = tokenManager.getNextToken();
         while (currentToken != null) {
             processToken(tokens, currentToken);
             currentToken = tokenManager.getNextToken();
         }
+        releaseLexerImpl(lexer);
     }
 }
@@ -223,30 +223,9 @@ public class ClasspathClassLoader extends URLClassLoader {
         // always first search in jrt-fs, if available
         // note: we can't override just getResource(String) and return a jrt:/-URL, because the URL itself
         // won't be connected to the correct JrtFileSystem and would just load using the system classloader.
-        if (fileSystem != null) {
-            String moduleName = extractModuleName(name);
-            if (moduleName != null) {
-                LOG.trace("Trying to load module-info.class for module {} in jrt-fs", moduleName);
-                Path candidate = fileSystem.getPath("modules", moduleName, MODULE_INFO_SUFFIX);
-                if (Files.exists(candidate)) {
-                    return newInputStreamFromJrtFilesystem(candidate);
-                }
-            }
-
-            int lastSlash = name.lastIndexOf('/');
-            String packageName = name.substring(0, Math.max(lastSlash, 0));
-            Set<String> moduleNames = packagesDirsToModules.get(packageName);
-            if (moduleNames != null) {
-                LOG.trace("Trying to find {} in jrt-fs with packageName={} and modules={}",
-                        name, packageName, moduleNames);
-
-                for (String moduleCandidate : moduleNames) {
-                    Path candidate = fileSystem.getPath("modules", moduleCandidate, name);
-                    if (Files.exists(candidate)) {
-                        return newInputStreamFromJrtFilesystem(candidate);
-                    }
-                }
-            }
+        Path inJrtFilesystem = findInJrtFilesystem(name);
+        if (inJrtFilesystem != null) {
+            return newInputStreamFromJrtFilesystem(inJrtFilesystem);
         }
 
         // search in the other jars of the aux classpath.
@@ -254,6 +233,50 @@ public class ClasspathClassLoader extends URLClassLoader {
         return super.getResourceAsStream(name);
     }
 
+    /**
+     * Returns the java home of the runtime image from which {@link #getResourceAsStream(String)}
+     * loads the given resource, if the classpath contains the {@code lib/jrt-fs.jar} of
+     * a runtime image, and the resource is in that image. Otherwise returns null,
+     * and the resource is loaded from the URL returned by {@link #getResource(String)}.
+     *
+     * @param name Resource path
+     *
+     * @since 7.12.0
+     */
+    public @Nullable String getJrtJavaHome(String name) {
+        return findInJrtFilesystem(name) != null ? javaHome : null;
+    }
+
+    private @Nullable Path findInJrtFilesystem(String name) {
+        if (fileSystem == null) {
+            return null;
+        }
+        String moduleName = extractModuleName(name);
+        if (moduleName != null) {
+            LOG.trace("Trying to load module-info.class for module {} in jrt-fs", moduleName);
+            Path candidate = fileSystem.getPath("modules", moduleName, MODULE_INFO_SUFFIX);
+            if (Files.exists(candidate)) {
+                return candidate;
+            }
+        }
+
+        int lastSlash = name.lastIndexOf('/');
+        String packageName = name.substring(0, Math.max(lastSlash, 0));
+        Set<String> moduleNames = packagesDirsToModules.get(packageName);
+        if (moduleNames != null) {
+            LOG.trace("Trying to find {} in jrt-fs with packageName={} and modules={}",
+                    name, packageName, moduleNames);
+
+            for (String moduleCandidate : moduleNames) {
+                Path candidate = fileSystem.getPath("modules", moduleCandidate, name);
+                if (Files.exists(candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
     private static InputStream newInputStreamFromJrtFilesystem(Path path) {
         LOG.trace("Found {}", path);
         try {
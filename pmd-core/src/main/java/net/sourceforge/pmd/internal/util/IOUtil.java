@@ -369,6 +369,43 @@ public final class IOUtil {
         return new ReaderInputStream(reader);
     }
 
+    /**
+     * Returns a stream that reads the remaining bytes of the buffer,
+     * advancing its position.
+     */
+    public static InputStream fromByteBuffer(ByteBuffer buffer) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : EOF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                } else if (!buffer.hasRemaining()) {
+                    return EOF;
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.get(b, off, count);
+                return count;
+            }
+
+            @Override
+            public long skip(long n) {
+                int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+                buffer.position(buffer.position() + count);
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
     public static OutputStream fromWriter(Writer writer, String encoding) throws UnsupportedCharsetException {
         class WriterOutputStream extends OutputStream {
             private final Writer writer;
@@ -5,6 +5,7 @@
 package net.sourceforge.pmd.lang;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.cache.internal.AnalysisCache;
@@ -35,7 +36,19 @@ public final class InternalApiBridge {
                                                                     AnalysisCache analysisCache,
                                                                     PmdReporter messageReporter,
                                                                     LanguageProcessorRegistry lpRegistry) {
-        return new LanguageProcessor.AnalysisTask(rulesets, files, listener, threadCount, analysisCache, messageReporter, lpRegistry);
+        return createAnalysisTask(rulesets, files, listener, threadCount, null, null, analysisCache, messageReporter, lpRegistry);
+    }
+
+    public static LanguageProcessor.AnalysisTask createAnalysisTask(RuleSets rulesets,
+                                                                    List<TextFile> files,
+                                                                    GlobalAnalysisListener listener,
+                                                                    int threadCount,
+                                                                    ExecutorService executor,
+                                                                    ExecutorService readExecutor,
+                                                                    AnalysisCache analysisCache,
+                                                                    PmdReporter messageReporter,
+                                                                    LanguageProcessorRegistry lpRegistry) {
+        return new LanguageProcessor.AnalysisTask(rulesets, files, listener, threadCount, executor, readExecutor, analysisCache, messageReporter, lpRegistry);
     }
 
     public static LanguageProcessor.AnalysisTask taskWithFiles(LanguageProcessor.AnalysisTask originalTask, List<TextFile> newFiles) {
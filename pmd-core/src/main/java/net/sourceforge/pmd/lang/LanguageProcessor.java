@@ -6,8 +6,10 @@ package net.sourceforge.pmd.lang;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.cache.internal.AnalysisCache;
 import net.sourceforge.pmd.lang.document.TextFile;
@@ -63,6 +65,8 @@ public interface LanguageProcessor extends AutoCloseable {
         private final List<TextFile> files;
         private final GlobalAnalysisListener listener;
         private final int threadCount;
+        private final ExecutorService executor;
+        private final ExecutorService readExecutor;
         private final AnalysisCache analysisCache;
         private final PmdReporter messageReporter;
         private final LanguageProcessorRegistry lpRegistry;
@@ -78,6 +82,8 @@ public interface LanguageProcessor extends AutoCloseable {
                             List<TextFile> files,
                             GlobalAnalysisListener listener,
                             int threadCount,
+                            ExecutorService executor,
+                            ExecutorService readExecutor,
                             AnalysisCache analysisCache,
                             PmdReporter messageReporter,
                             LanguageProcessorRegistry lpRegistry) {
@@ -85,6 +91,8 @@ public interface LanguageProcessor extends AutoCloseable {
             this.files = files;
             this.listener = listener;
             this.threadCount = threadCount;
+            this.executor = executor;
+            this.readExecutor = readExecutor;
             this.analysisCache = analysisCache;
             this.messageReporter = messageReporter;
             this.lpRegistry = lpRegistry;
@@ -106,6 +114,38 @@ public interface LanguageProcessor extends AutoCloseable {
             return threadCount;
         }
 
+        /**
+         * Returns the executor shared by all language processors of
+         * this analysis. File tasks of every language should be submitted
+         * to this executor, so that the configured {@linkplain #getThreadCount() thread count}
+         * caps the concurrency of the whole analysis, and not that of each
+         * language separately. The executor is owned by the caller of
+         * {@link LanguageProcessor#launchAnalysis(AnalysisTask)}: processors must not shut it down.
+         *
+         * @return The shared executor, or null if the analysis is
+         *     not multi-threaded, or the caller did not provide one
+         *     (in which case processors may create their own).
+         */
+        public @Nullable ExecutorService getExecutor() {
+            return executor;
+        }
+
+        /**
+         * Returns the executor used to read files ahead of their analysis,
+         * shared by all language processors of this analysis. Processors
+         * may use it to read the contents of a file before submitting its
+         * analysis to the {@linkplain #getExecutor() analysis executor}, so
+         * that the analysis threads don't wait on IO. It is owned by the caller of
+         * {@link LanguageProcessor#launchAnalysis(AnalysisTask)}: processors must not shut it down.
+         *
+         * @return The read executor, or null if files should not be read ahead
+         *
+         * @since 7.12.0
+         */
+        public @Nullable ExecutorService getReadExecutor() {
+            return readExecutor;
+        }
+
         public AnalysisCache getAnalysisCache() {
             return analysisCache;
         }
@@ -129,6 +169,8 @@ public interface LanguageProcessor extends AutoCloseable {
                 newFiles,
                 listener,
                 threadCount,
+                executor,
+                readExecutor,
                 analysisCache,
                 messageReporter,
                 lpRegistry
@@ -19,7 +19,7 @@ public class AntlrToken implements GenericToken<AntlrToken> {
 
     private final AntlrToken previousComment;
     private final TextDocument textDoc;
-    private final String image;
+    private final CharSequence image;
     private final int endOffset;
     private final int startOffset;
     private final int channel;
@@ -40,7 +40,10 @@ public class AntlrToken implements GenericToken<AntlrToken> {
     public AntlrToken(final Token token, final AntlrToken previousComment, TextDocument textDoc) {
         this.previousComment = previousComment;
         this.textDoc = textDoc;
-        this.image = token.getText();
+        // don't copy the image if it can be read from the document
+        this.image = token instanceof CharsCharStream.CharsToken
+                     ? ((CharsCharStream.CharsToken) token).getImageCs()
+                     : token.getText();
         this.startOffset = token.getStartIndex();
         this.endOffset = token.getStopIndex() + 1; // exclusive
         this.channel = token.getChannel();
@@ -0,0 +1,186 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.ast.impl.antlr4;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.document.Chars;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
+/**
+ * A {@link CharStream} that reads the text of a document in place,
+ * whereas {@link org.antlr.v4.runtime.CharStreams} copy it. Lexers
+ * should use {@link #TOKEN_FACTORY}, whose tokens have an image that
+ * is a slice of the document (see {@link AntlrToken#getImageCs()})
+ * instead of a new string.
+ *
+ * <p>The stream is indexed by UTF-16 code unit, like the document, and
+ * not by code point like the streams of {@link org.antlr.v4.runtime.CharStreams}.
+ * Both are the same if the text has no supplementary characters,
+ * see {@link #isSupported(Chars)}.
+ *
+ * @since 7.12.0
+ */
+@InternalApi
+public final class CharsCharStream implements CharStream {
+
+    /**
+     * Creates tokens that read their image from the text of a {@link CharsCharStream}
+     * when needed. Tokens of other streams are the same as with {@link org.antlr.v4.runtime.CommonTokenFactory}.
+     */
+    public static final TokenFactory<CommonToken> TOKEN_FACTORY = new CharsTokenFactory();
+
+    private final Chars text;
+    private final String sourceName;
+    private int index;
+
+    /**
+     * Creates a stream over the text of the document.
+     *
+     * @throws IllegalArgumentException If the text is not {@linkplain #isSupported(Chars) supported}
+     */
+    public CharsCharStream(TextDocument document) {
+        this.text = document.getText();
+        this.sourceName = document.getFileId().getAbsolutePath();
+        if (!isSupported(text)) {
+            throw new IllegalArgumentException("Text with supplementary characters is not supported");
+        }
+    }
+
+    /**
+     * Returns true if the text has no supplementary characters, so that
+     * a lexer reads the same characters from a {@link CharsCharStream}
+     * as from the streams of {@link org.antlr.v4.runtime.CharStreams}.
+     */
+    public static boolean isSupported(Chars text) {
+        for (int i = 0, len = text.length(); i < len; i++) {
+            if (Character.isSurrogate(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void consume() {
+        if (index >= text.length()) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        index++;
+    }
+
+    @Override
+    public int LA(int i) { // NOPMD - name defined by ANTLR
+        if (i == 0) {
+            return 0; // undefined
+        }
+        int offset = i > 0 ? index + i - 1 : index + i;
+        if (offset < 0 || offset >= text.length()) {
+            return EOF;
+        }
+        return text.charAt(offset);
+    }
+
+    @Override
+    public int mark() {
+        return -1; // the whole text is available, there is nothing to buffer
+    }
+
+    @Override
+    public void release(int marker) {
+        // nothing to do
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public void seek(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public int size() {
+        return text.length();
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName.isEmpty() ? UNKNOWN_SOURCE_NAME : sourceName;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        return slice(interval.a, interval.b).toString();
+    }
+
+    private Chars slice(int start, int stop) {
+        int from = Math.min(start, text.length());
+        int len = Math.max(0, Math.min(stop - start + 1, text.length() - from));
+        return text.slice(from, len);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    /** A token whose image is read from a {@link CharsCharStream} when needed. */
+    static final class CharsToken extends CommonToken {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient CharsCharStream chars;
+
+        CharsToken(Pair<TokenSource, CharStream> source, CharsCharStream chars, int type, int channel, int start, int stop) {
+            super(source, type, channel, start, stop);
+            this.chars = chars;
+        }
+
+        /**
+         * Returns the same as {@link #getText()}, but the image is a slice
+         * of the document, unless the lexer {@linkplain #setText(String) set a text}.
+         */
+        CharSequence getImageCs() {
+            if (text != null) {
+                return text;
+            }
+            int size = chars.size();
+            return start < size && stop < size ? chars.slice(start, stop) : "<EOF>";
+        }
+    }
+
+    private static final class CharsTokenFactory implements TokenFactory<CommonToken> {
+
+        @Override
+        public CommonToken create(Pair<TokenSource, CharStream> source, int type, String text, int channel,
+                                  int start, int stop, int line, int charPositionInLine) {
+            // streams wrapping a CharsCharStream, eg to change the case of
+            // characters, get the default tokens, whose text is read from the stream
+            CommonToken token = source.b instanceof CharsCharStream
+                                ? new CharsToken(source, (CharsCharStream) source.b, type, channel, start, stop)
+                                : new CommonToken(source, type, channel, start, stop);
+            token.setLine(line);
+            token.setCharPositionInLine(charPositionInLine);
+            if (text != null) {
+                token.setText(text);
+            }
+            return token;
+        }
+
+        @Override
+        public CommonToken create(int type, String text) {
+            return new CommonToken(type, text);
+        }
+    }
+}
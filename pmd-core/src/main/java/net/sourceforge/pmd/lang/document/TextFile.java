@@ -91,6 +91,19 @@ public interface TextFile extends Closeable {
     TextFileContent readContents() throws IOException;
 
 
+    /**
+     * Returns an estimate of the size of the contents of this file,
+     * in bytes, without reading them. This is only a hint, used for
+     * instance to start the analysis of the largest files first.
+     * Returns -1 if the size cannot be determined cheaply.
+     *
+     * @since 7.12.0
+     */
+    default long getSizeEstimate() {
+        return -1;
+    }
+
+
     /**
      * Release resources associated with this text file. Is a noop if
      * it is called several times.
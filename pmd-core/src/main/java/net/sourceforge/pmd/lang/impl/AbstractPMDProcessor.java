@@ -4,8 +4,13 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.util.log.PmdReporter;
 
 /**
  * This is internal API!
@@ -44,4 +49,44 @@ abstract class AbstractPMDProcessor implements AutoCloseable {
                : new MonoThreadProcessor(analysisTask);
     }
 
+    /**
+     * Returns a new executor to be shared by all the language processors
+     * of an analysis (see {@link AnalysisTask#getExecutor()}). This is
+     * a work-stealing pool, so that idle workers pick up files of whichever
+     * language still has a backlog, while the total number of workers is
+     * capped by the given thread count.
+     */
+    static ExecutorService newAnalysisExecutor(int threads) {
+        // asyncMode: tasks are never joined from within the pool, so FIFO is appropriate
+        return new ForkJoinPool(threads, new PmdThreadFactory(), null, true);
+    }
+
+    /**
+     * Returns a new executor to be shared by all the language processors
+     * of an analysis. If {@code virtualThreads} is true and the JVM supports
+     * them, each file is processed on its own virtual thread, and the thread
+     * count only bounds the number of files that are parsed and analysed
+     * at the same time. Otherwise this is {@link #newAnalysisExecutor(int)}.
+     */
+    static ExecutorService newAnalysisExecutor(int threads, boolean virtualThreads, PmdReporter reporter) {
+        if (virtualThreads) {
+            ExecutorService executor = VirtualThreadExecutor.create(threads);
+            if (executor != null) {
+                return executor;
+            }
+            reporter.warn("Virtual threads are not supported by this JVM (Java 21 or later is required), "
+                              + "using {0} platform threads instead", threads);
+        }
+        return newAnalysisExecutor(threads);
+    }
+
+    /**
+     * Returns a new executor to read files ahead of their analysis (see
+     * {@link AnalysisTask#getReadExecutor()}). Reads mostly wait on IO, so
+     * these threads come in addition to the analysis threads.
+     */
+    static ExecutorService newReadExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new PmdThreadFactory("PmdReader"));
+    }
+
 }
@@ -0,0 +1,100 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.ListenerInitializer;
+import net.sourceforge.pmd.reporting.Report.ConfigurationError;
+
+/**
+ * Measures how busy the analysis threads were, and reports it to the
+ * {@link TimeTracker} when closed. This wraps the listener of the
+ * analysis, so that each {@link PmdRunnable} can find it with
+ * {@link #of(GlobalAnalysisListener)}, and record the time its file held
+ * an analysis thread, from the moment it obtained its rulesets until it
+ * gave them back. Waiting for a thread and reading the file are not counted.
+ *
+ * <p>The utilisation is the sum of these times, divided by the time
+ * between the first start and the last end, times the number of threads.
+ */
+final class CoreUtilisationListener implements GlobalAnalysisListener {
+
+    private final GlobalAnalysisListener delegate;
+    private final int threads;
+    private final AtomicLong firstStart = new AtomicLong(Long.MAX_VALUE);
+    private final LongAccumulator lastEnd = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicInteger files = new AtomicInteger();
+    private boolean reported;
+
+    CoreUtilisationListener(int threads, GlobalAnalysisListener delegate) {
+        this.delegate = delegate;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the listener that measures the utilisation, or null if the
+     * given listener of an analysis task does not measure it.
+     */
+    static @Nullable CoreUtilisationListener of(GlobalAnalysisListener listener) {
+        return listener instanceof CoreUtilisationListener ? (CoreUtilisationListener) listener : null;
+    }
+
+    /**
+     * Records that a file held an analysis thread between the given
+     * times, as returned by {@link System#nanoTime()}.
+     */
+    void recordBusyTime(long start, long end) {
+        firstStart.accumulateAndGet(start, Math::min);
+        lastEnd.accumulate(end);
+        busyNanos.add(end - start);
+        files.incrementAndGet();
+    }
+
+    @Override
+    public ListenerInitializer initializer() {
+        return delegate.initializer();
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextFile file) {
+        return delegate.startFileAnalysis(file);
+    }
+
+    @Override
+    public void onConfigError(ConfigurationError error) {
+        delegate.onConfigError(error);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (!reported) {
+            reported = true;
+            report();
+        }
+        delegate.close();
+    }
+
+    private void report() {
+        long wallNanos = lastEnd.get() - firstStart.get();
+        if (files.get() == 0 || wallNanos <= 0) {
+            return;
+        }
+        long busy = busyNanos.sum();
+        long utilisation = Math.round(100.0 * busy / ((double) wallNanos * threads));
+        TimeTracker.addMeasurement(TimedOperationCategory.CORE_UTILISATION, null, busy, files.get(), utilisation);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+/**
+ * Orders files according to a {@link FileSchedulingPolicy}.
+ */
+final class FileScheduler {
+
+    private FileScheduler() {
+        // utility class
+    }
+
+    @SuppressWarnings("PMD.CloseResource") // files are not opened here
+    static List<TextFile> schedule(FileSchedulingPolicy policy, List<TextFile> files, AnalysisCache cache) {
+        if (policy != FileSchedulingPolicy.LARGEST_FIRST || files.size() < 2) {
+            return files;
+        }
+
+        List<ScheduledFile> scheduled = new ArrayList<>(files.size());
+        // Processing times and sizes are not in the same unit. Files
+        // for which both are known give us a conversion rate, which is
+        // used to estimate the time of files that are not in the cache.
+        double totalTime = 0;
+        double totalSize = 0;
+        for (TextFile file : files) {
+            ScheduledFile f = new ScheduledFile(file, cache.getPreviousProcessingTime(file.getFileId()), file.getSizeEstimate());
+            if (f.time > 0 && f.size > 0) {
+                totalTime += f.time;
+                totalSize += f.size;
+            }
+            scheduled.add(f);
+        }
+
+        double nanosPerByte = totalSize > 0 ? totalTime / totalSize : 1;
+        for (ScheduledFile f : scheduled) {
+            if (f.time > 0) {
+                f.cost = f.time;
+            } else if (f.size > 0) {
+                f.cost = f.size * nanosPerByte;
+            }
+        }
+
+        // the sort is stable, files with the same cost keep their original order
+        scheduled.sort(Comparator.comparingDouble((ScheduledFile f) -> f.cost).reversed());
+
+        List<TextFile> result = new ArrayList<>(scheduled.size());
+        for (ScheduledFile f : scheduled) {
+            result.add(f.file);
+        }
+        return result;
+    }
+
+    private static final class ScheduledFile {
+
+        final TextFile file;
+        final long time;
+        final long size;
+        double cost;
+
+        ScheduledFile(TextFile file, long time, long size) {
+            this.file = file;
+            this.time = time;
+            this.size = size;
+        }
+    }
+}
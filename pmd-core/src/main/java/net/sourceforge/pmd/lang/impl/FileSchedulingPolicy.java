@@ -0,0 +1,29 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import net.sourceforge.pmd.PMDConfiguration;
+
+/**
+ * Order in which files are submitted for analysis when the analysis is
+ * multi-threaded. See {@link PMDConfiguration#setFileSchedulingPolicy(FileSchedulingPolicy)}.
+ * The policy has no effect on single-threaded analyses.
+ *
+ * @since 7.12.0
+ */
+public enum FileSchedulingPolicy {
+    /**
+     * Files are submitted in the order in which they were collected.
+     */
+    INPUT_ORDER,
+    /**
+     * Files whose analysis is expected to take the longest are submitted
+     * first, so that the analysis does not end with a few large files
+     * keeping a single thread busy while the others are idle. The cost
+     * of a file is estimated from the time it took to process it in the
+     * previous run, if an analysis cache is used, and from its size otherwise.
+     */
+    LARGEST_FIRST
+}
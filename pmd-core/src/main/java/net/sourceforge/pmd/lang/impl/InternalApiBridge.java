@@ -0,0 +1,46 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.util.log.PmdReporter;
+
+/**
+ * Internal API.
+ *
+ * <p>Acts as a bridge between outer parts of PMD and the restricted access
+ * internal API of this package.
+ *
+ * <p><b>None of this is published API, and compatibility can be broken anytime!</b>
+ * Use this only at your own risk.
+ *
+ * @apiNote Internal API
+ */
+@InternalApi
+public final class InternalApiBridge {
+    private InternalApiBridge() {}
+
+    public static ExecutorService newAnalysisExecutor(int threads, boolean virtualThreads, PmdReporter reporter) {
+        return AbstractPMDProcessor.newAnalysisExecutor(threads, virtualThreads, reporter);
+    }
+
+    public static ExecutorService newReadExecutor(int threads) {
+        return AbstractPMDProcessor.newReadExecutor(threads);
+    }
+
+    public static List<TextFile> scheduleFiles(FileSchedulingPolicy policy, List<TextFile> files, AnalysisCache cache) {
+        return FileScheduler.schedule(policy, files, cache);
+    }
+
+    public static GlobalAnalysisListener coreUtilisationListener(int threads, GlobalAnalysisListener delegate) {
+        return new CoreUtilisationListener(threads, delegate);
+    }
+}
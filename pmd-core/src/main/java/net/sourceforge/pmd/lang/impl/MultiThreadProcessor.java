@@ -4,18 +4,21 @@
 
 package net.sourceforge.pmd.lang.impl;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
-import net.sourceforge.pmd.util.log.PmdReporter;
 
 
 /**
@@ -23,64 +26,172 @@ import net.sourceforge.pmd.util.log.PmdReporter;
  */
 final class MultiThreadProcessor extends AbstractPMDProcessor {
     private final ExecutorService executor;
+    /** Whether the executor was created by this instance and should be shut down on close. */
+    private final boolean ownsExecutor;
+
+    /** Reads files ahead of their analysis, null if disabled. */
+    private final @Nullable ReadAheadStage readAhead;
 
     private final List<Future<?>> futureList;
 
     MultiThreadProcessor(final AnalysisTask task) {
         super(task);
 
-        executor = Executors.newFixedThreadPool(task.getThreadCount(), new PmdThreadFactory());
-        futureList = new LinkedList<>();
+        ExecutorService shared = task.getExecutor();
+        ownsExecutor = shared == null;
+        executor = ownsExecutor ? newAnalysisExecutor(task.getThreadCount()) : shared;
+        ExecutorService readExecutor = task.getReadExecutor();
+        // Files being analysed, plus as many waiting for an analysis thread
+        readAhead = readExecutor != null
+                    ? new ReadAheadStage(readExecutor, task.getRulesets(), 2 * task.getThreadCount())
+                    : null;
+        futureList = new ArrayList<>();
     }
 
     @Override
     @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
     public void processFiles() {
-        // The thread-local is not static, but analysis-global
-        // This means we don't have to reset it manually, every analysis is isolated.
-        // The initial value makes a copy of the rulesets
-        final ThreadLocal<RuleSets> ruleSetCopy = ThreadLocal.withInitial(() -> {
-            RuleSets copy = new RuleSets(task.getRulesets());
-            // use a noop reporter because the copy should only contain rules that
-            // initialized properly
-            copy.initializeRules(task.getLpRegistry(), PmdReporter.quiet());
-            return copy;
-        });
+        if (executor instanceof VirtualThreadExecutor) {
+            processFilesOnVirtualThreads(((VirtualThreadExecutor) executor).getCpuPermits());
+            return;
+        }
+
+        // Copies are borrowed for each file rather than held per thread.
+        // As the executor runs at most getThreadCount() tasks at a time, the
+        // pool never blocks, and creates as many copies as there are busy threads.
+        final RuleSetsPool pool = new RuleSetsPool(task, task.getThreadCount());
 
         for (final TextFile textFile : task.getFiles()) {
-            futureList.add(executor.submit(new PmdRunnable(textFile, task) {
+            submit(new PmdRunnable(textFile, task) {
                 @Override
-                protected RuleSets getRulesets() {
-                    return ruleSetCopy.get();
+                protected RuleSets getRulesets() throws InterruptedException {
+                    return pool.borrow();
                 }
-            }));
+
+                @Override
+                protected void releaseRulesets(RuleSets ruleSets) {
+                    pool.release(ruleSets);
+                }
+            });
         }
     }
 
+    /**
+     * Each file runs on its own virtual thread. Copies of the rulesets
+     * are borrowed while holding one of the CPU permits. Reading the file
+     * happens before that, so that blocked reads don't hold a permit.
+     *
+     * <p>As files are read without a permit, the number of tasks that
+     * are submitted but not finished is bounded, otherwise all files
+     * would be read into memory at once. When the bound is reached, this
+     * method waits for some files to be analysed before submitting more.
+     */
+    @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
+    private void processFilesOnVirtualThreads(Semaphore cpuPermits) {
+        final RuleSetsPool pool = new RuleSetsPool(task, task.getThreadCount());
+        // Files being analysed, plus as many read and waiting for a permit
+        final Semaphore inFlight = new Semaphore(2 * task.getThreadCount());
+
+        for (final TextFile textFile : task.getFiles()) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                // the analysis is being cancelled, don't submit the remaining files
+                Thread.currentThread().interrupt();
+                return;
+            }
+            submit(new PmdRunnable(textFile, task) {
+                @Override
+                public void run() {
+                    try {
+                        super.run();
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+
+                @Override
+                protected RuleSets getRulesets() throws InterruptedException {
+                    cpuPermits.acquire();
+                    try {
+                        return pool.borrow();
+                    } catch (InterruptedException | RuntimeException | Error e) {
+                        cpuPermits.release();
+                        throw e;
+                    }
+                }
+
+                @Override
+                protected void releaseRulesets(RuleSets ruleSets) {
+                    pool.release(ruleSets);
+                    cpuPermits.release();
+                }
+            });
+        }
+    }
+
+    private void submit(PmdRunnable runnable) {
+        if (readAhead != null) {
+            futureList.add(readAhead.submit(runnable, executor));
+            return;
+        }
+        // Wrap the runnable in a FutureTask ourselves: a ForkJoinPool
+        // would otherwise rethrow a copy of the original exception.
+        FutureTask<?> future = new FutureTask<>(runnable, null);
+        executor.execute(future);
+        futureList.add(future);
+    }
+
     @Override
     public void close() {
         try {
-            try {
-                for (Future<?> task : futureList) {
-                    task.get();
-                }
-            } catch (ExecutionException e) {
-                task.getMessageReporter().error("Unknown error occurred while executing a PmdRunnable: {0}",
-                        e.getCause().toString(), e.getCause());
-                if (e.getCause() instanceof Error) {
-                    throw (Error) e.getCause();
+            boolean reported = false;
+            for (Future<?> future : futureList) {
+                try {
+                    future.get();
+                } catch (CancellationException ignored) {
+                    // the executor was shut down before the file could be analysed
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CancellationException) {
+                        // the analysis of the file was interrupted, this is not an error
+                        continue;
+                    }
+                    // only the first error is reported, the remaining
+                    // files are still awaited
+                    if (!reported) {
+                        reported = true;
+                        task.getMessageReporter().error("Unknown error occurred while executing a PmdRunnable: {0}",
+                                                        e.getCause().toString(), e.getCause());
+                        if (e.getCause() instanceof Error) {
+                            throw (Error) e.getCause();
+                        }
+                    }
                 }
             }
 
-            executor.shutdown();
-            while (!executor.awaitTermination(10, TimeUnit.HOURS)) {
-                // still waiting
-                Thread.yield();
+            if (readAhead != null) {
+                readAhead.reportMeasurements();
+            }
+
+            if (ownsExecutor) {
+                executor.shutdown();
+                while (!executor.awaitTermination(10, TimeUnit.HOURS)) {
+                    // still waiting
+                    Thread.yield();
+                }
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         } finally {
-            executor.shutdownNow();
+            if (ownsExecutor) {
+                executor.shutdownNow();
+            } else {
+                // Other languages may still be using the shared executor,
+                // only cancel our own pending tasks.
+                for (Future<?> future : futureList) {
+                    future.cancel(true);
+                }
+            }
         }
     }
 }
@@ -6,6 +6,10 @@ package net.sourceforge.pmd.lang.impl;
 
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 
+import java.util.concurrent.CancellationException;
+import java.util.function.Predicate;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +29,8 @@ import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
 import net.sourceforge.pmd.lang.ast.SemanticException;
 import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextFileContent;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.Report;
@@ -38,18 +44,48 @@ abstract class PmdRunnable implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(PmdRunnable.class);
     private final TextFile textFile;
     private final AnalysisTask task;
+    /** The file the document is read from, different from textFile if it was read ahead. */
+    private TextFile contentSource;
 
     PmdRunnable(TextFile textFile, AnalysisTask task) {
         this.textFile = textFile;
         this.task = task;
+        this.contentSource = textFile;
+    }
+
+    TextFile getTextFile() {
+        return textFile;
+    }
+
+    /**
+     * Sets the contents of the file, read ahead of time. They are used
+     * instead of reading the file when this task runs. This must be
+     * called before the task is submitted for execution.
+     */
+    void setPrefetchedContent(TextFileContent content) {
+        this.contentSource = new PrefetchedTextFile(textFile, content);
     }
 
     /**
      * This is only called within the run method (when we are on the actual carrier thread).
      * That way an implementation that uses a ThreadLocal will see the
-     * correct thread.
+     * correct thread. It is called right before the file is parsed, and
+     * the returned rulesets are given back with {@link #releaseRulesets(RuleSets)}
+     * once the rules have been applied.
+     *
+     * <p>If this is interrupted, the analysis is being cancelled: the
+     * file is not reported as failed, and {@link #run()} throws a
+     * {@link CancellationException}.
      */
-    protected abstract RuleSets getRulesets();
+    protected abstract RuleSets getRulesets() throws InterruptedException;
+
+    /**
+     * Called when the rulesets obtained with {@link #getRulesets()} are
+     * not used anymore by this task. Does nothing by default.
+     */
+    protected void releaseRulesets(RuleSets ruleSets) {
+        // do nothing
+    }
 
     @Override
     public void run() throws FileAnalysisException {
@@ -58,41 +94,37 @@ abstract class PmdRunnable implements Runnable {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PROCESSING);
              FileAnalysisListener listener = task.getListener().startFileAnalysis(textFile)) {
 
-            RuleSets ruleSets = getRulesets();
-
             // Coarse check to see if any RuleSet applies to file, will need to do a finer RuleSet specific check later
-            if (ruleSets.applies(textFile)) {
+            if (task.getRulesets().applies(textFile)) {
                 AnalysisCache analysisCache = task.getAnalysisCache();
-                try (TextDocument textDocument = TextDocument.create(textFile);
+                try (TextDocument textDocument = TextDocument.create(contentSource);
                      FileAnalysisListener cacheListener = analysisCache.startFileAnalysis(textDocument)) {
 
                     @SuppressWarnings("PMD.CloseResource")
                     FileAnalysisListener completeListener = FileAnalysisListener.tee(listOf(listener, cacheListener));
 
                     if (analysisCache.isUpToDate(textDocument)) {
-                        LOG.trace("Skipping file (lang: {}) because it was found in the cache: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
                         // note: no cache listener here
                         //                         vvvvvvvv
                         reportCachedRuleViolations(listener, textDocument);
+
+                        // rules that were added or changed since the cache was written still need to run
+                        Predicate<Rule> outdatedRules = rule -> !analysisCache.isRuleUpToDate(rule);
+                        if (analysisCache.hasOutdatedRules() && task.getRulesets().applies(textFile, outdatedRules)) {
+                            LOG.trace("Processing file (lang: {}) found in the cache with outdated rules: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                            processSourceSafely(completeListener, textDocument, outdatedRules);
+                        } else {
+                            LOG.trace("Skipping file (lang: {}) because it was found in the cache: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                        }
                     } else {
                         LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
-                        try {
-                            processSource(completeListener, textDocument, ruleSets);
-                        } catch (Exception | StackOverflowError | AssertionError e) {
-                            if (e instanceof Error && !SystemProps.isErrorRecoveryMode()) { // NOPMD:
-                                throw e;
-                            }
-
-                            // The listener handles logging if needed,
-                            // it may also rethrow the error, as a FileAnalysisException (which we let through below)
-                            completeListener.onError(new Report.ProcessingError(e, textFile.getFileId()));
-                        }
+                        processSourceSafely(completeListener, textDocument, null);
                     }
                 }
             } else {
                 LOG.trace("Skipping file (lang: {}) because no rule applies: {}", textFile.getLanguageVersion(), textFile.getFileId());
             }
-        } catch (FileAnalysisException e) {
+        } catch (FileAnalysisException | CancellationException e) {
             throw e; // bubble managed exceptions, they were already reported
         } catch (Exception e) {
             throw FileAnalysisException.wrap(textFile.getFileId(), "An unknown exception occurred", e);
@@ -101,6 +133,30 @@ abstract class PmdRunnable implements Runnable {
         TimeTracker.finishThread();
     }
 
+    private void processSourceSafely(FileAnalysisListener completeListener,
+                                     TextDocument textDocument,
+                                     @Nullable Predicate<Rule> ruleFilter) {
+        try {
+            processSource(completeListener, textDocument, ruleFilter);
+        } catch (InterruptedException e) {
+            // the analysis is being cancelled while waiting for rulesets,
+            // this is not an error of the file, but it must not be cached
+            Thread.currentThread().interrupt();
+            task.getAnalysisCache().analysisFailed(textDocument);
+            CancellationException cancellation = new CancellationException("Analysis of " + textFile.getFileId().getOriginalPath() + " was interrupted");
+            cancellation.initCause(e);
+            throw cancellation;
+        } catch (Exception | StackOverflowError | AssertionError e) {
+            if (e instanceof Error && !SystemProps.isErrorRecoveryMode()) { // NOPMD:
+                throw (Error) e;
+            }
+
+            // The listener handles logging if needed,
+            // it may also rethrow the error, as a FileAnalysisException (which we let through below)
+            completeListener.onError(new Report.ProcessingError(e, textFile.getFileId()));
+        }
+    }
+
     private void reportCachedRuleViolations(final FileAnalysisListener ctx, TextDocument file) {
         for (final RuleViolation rv : task.getAnalysisCache().getCachedViolations(file)) {
             ctx.onRuleViolation(rv);
@@ -116,7 +172,28 @@ abstract class PmdRunnable implements Runnable {
 
     private void processSource(FileAnalysisListener listener,
                                TextDocument textDocument,
-                               RuleSets ruleSets) throws FileAnalysisException {
+                               @Nullable Predicate<Rule> ruleFilter) throws InterruptedException {
+        RuleSets ruleSets = getRulesets();
+        // Only the time the rulesets are held is measured, not the time
+        // spent waiting for them, which may be waiting for a free thread.
+        long start = System.nanoTime();
+        try {
+            processSource(listener, textDocument, ruleSets, ruleFilter);
+            task.getAnalysisCache().recordProcessingTime(textDocument, System.nanoTime() - start);
+        } finally {
+            long end = System.nanoTime();
+            releaseRulesets(ruleSets);
+            CoreUtilisationListener utilisation = CoreUtilisationListener.of(task.getListener());
+            if (utilisation != null) {
+                utilisation.recordBusyTime(start, end);
+            }
+        }
+    }
+
+    private void processSource(FileAnalysisListener listener,
+                               TextDocument textDocument,
+                               RuleSets ruleSets,
+                               @Nullable Predicate<Rule> ruleFilter) throws FileAnalysisException {
 
         SemanticErrorReporter reporter = SemanticErrorReporter.reportToLogger(task.getMessageReporter());
         @SuppressWarnings("PMD.CloseResource")
@@ -137,7 +214,7 @@ abstract class PmdRunnable implements Runnable {
             throw semanticError;
         }
 
-        ruleSets.apply(rootNode, listener);
+        ruleSets.apply(rootNode, listener, ruleFilter);
     }
 
 }
@@ -4,16 +4,39 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
-class PmdThreadFactory implements ThreadFactory {
+class PmdThreadFactory implements ThreadFactory, ForkJoinWorkerThreadFactory {
 
     private final AtomicInteger counter = new AtomicInteger();
+    private final String namePrefix;
+
+    PmdThreadFactory() {
+        this("PmdThread");
+    }
+
+    PmdThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
 
     @Override
     public Thread newThread(Runnable r) {
-        return new Thread(r, "PmdThread " + counter.incrementAndGet());
+        return new Thread(r, nextName());
+    }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) { };
+        thread.setName(nextName());
+        return thread;
+    }
+
+    private String nextName() {
+        return namePrefix + " " + counter.incrementAndGet();
     }
 
 }
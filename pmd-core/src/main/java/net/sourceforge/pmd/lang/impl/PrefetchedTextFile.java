@@ -0,0 +1,70 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.io.IOException;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextFileContent;
+
+/**
+ * A text file whose contents were read ahead of time by a {@link ReadAheadStage}.
+ * Reading the contents returns the prefetched content, everything else
+ * is delegated to the original file.
+ */
+final class PrefetchedTextFile implements TextFile {
+
+    private final TextFile delegate;
+    private final TextFileContent content;
+
+    PrefetchedTextFile(TextFile delegate, TextFileContent content) {
+        this.delegate = delegate;
+        this.content = content;
+    }
+
+    @Override
+    public @NonNull LanguageVersion getLanguageVersion() {
+        return delegate.getLanguageVersion();
+    }
+
+    @Override
+    public FileId getFileId() {
+        return delegate.getFileId();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return delegate.isReadOnly();
+    }
+
+    @Override
+    public void writeContents(TextFileContent content) throws IOException {
+        delegate.writeContents(content);
+    }
+
+    @Override
+    public TextFileContent readContents() {
+        return content;
+    }
+
+    @Override
+    public long getSizeEstimate() {
+        return delegate.getSizeEstimate();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public String toString() {
+        return "Prefetched[" + delegate + "]";
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+
+/**
+ * First stage of the analysis pipeline: files are read on dedicated
+ * reader threads, and their analysis is only submitted to the analysis
+ * executor once their contents are in memory. This way the analysis
+ * threads, which parse the files and apply the rules, don't stall on IO.
+ *
+ * <p>The number of files that have been read but whose analysis is not
+ * finished is bounded. When the bound is reached, readers wait for the
+ * analysis threads to catch up. The time they spend waiting, and the
+ * maximum number of files that were waiting for an analysis thread,
+ * are reported to the {@link TimeTracker}.
+ */
+final class ReadAheadStage {
+
+    static final String READ_LABEL = "Read-ahead (max queued files)";
+    static final String STALL_LABEL = "Read-ahead stalls (queue full)";
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadAheadStage.class);
+
+    private final ExecutorService readers;
+    private final RuleSets ruleSets;
+    private final Semaphore capacity;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAccumulator maxQueued = new LongAccumulator(Math::max, 0);
+    private final LongAdder readNanos = new LongAdder();
+    private final AtomicInteger readFiles = new AtomicInteger();
+    private final LongAdder stallNanos = new LongAdder();
+    private final AtomicInteger stalls = new AtomicInteger();
+
+    /**
+     * @param readers  Executor running the reads, shared by all languages
+     * @param ruleSets Rulesets of the analysis, files to which no rule applies are not read
+     * @param capacity Maximum number of files read ahead whose analysis is not finished
+     */
+    ReadAheadStage(ExecutorService readers, RuleSets ruleSets, int capacity) {
+        this.readers = readers;
+        this.ruleSets = ruleSets;
+        this.capacity = new Semaphore(capacity);
+    }
+
+    /**
+     * Reads the file of the runnable on a reader thread, then executes
+     * the runnable on the analysis executor. Returns the future of the
+     * analysis.
+     */
+    Future<?> submit(PmdRunnable runnable, Executor analysisExecutor) {
+        ReadTask readTask = new ReadTask(runnable, analysisExecutor);
+        readers.execute(readTask);
+        return readTask.analysis;
+    }
+
+    /** Adds the measurements of this stage to the {@link TimeTracker}. */
+    void reportMeasurements() {
+        if (readFiles.get() > 0) {
+            TimeTracker.addMeasurement(TimedOperationCategory.FILE_PROCESSING, READ_LABEL,
+                                       readNanos.sum(), readFiles.get(), maxQueued.get());
+        }
+        if (stalls.get() > 0) {
+            TimeTracker.addMeasurement(TimedOperationCategory.FILE_PROCESSING, STALL_LABEL,
+                                       stallNanos.sum(), stalls.get(), 0);
+        }
+    }
+
+    private final class ReadTask implements Runnable {
+
+        private final PmdRunnable runnable;
+        private final Executor analysisExecutor;
+        private final FutureTask<?> analysis;
+        /** Whether this task holds a permit of the capacity, written before the analysis is executed. */
+        private boolean prefetched;
+
+        ReadTask(PmdRunnable runnable, Executor analysisExecutor) {
+            this.runnable = runnable;
+            this.analysisExecutor = analysisExecutor;
+            this.analysis = new FutureTask<>(this::analyse, null);
+        }
+
+        @Override
+        public void run() {
+            try {
+                readAhead();
+            } finally {
+                // whatever happened, the analysis must run, or its future
+                // would never complete
+                try {
+                    analysisExecutor.execute(analysis);
+                } catch (RejectedExecutionException e) {
+                    // the analysis is being cancelled
+                    analysis.cancel(false);
+                }
+            }
+        }
+
+        @SuppressWarnings("PMD.CloseResource") // closed by the PmdRunnable
+        private void readAhead() {
+            TextFile file = runnable.getTextFile();
+            // files to which no rule applies are skipped by the runnable without being read
+            if (!ruleSets.applies(file) || !acquire()) {
+                return;
+            }
+            // from here on the analysis releases the permit
+            prefetched = true;
+            maxQueued.accumulate(queued.incrementAndGet());
+
+            long start = System.nanoTime();
+            try {
+                runnable.setPrefetchedContent(file.readContents());
+            } catch (IOException | RuntimeException e) {
+                // the runnable will read the file again, and report the error
+                LOG.trace("Could not read file ahead of analysis: {}", file.getFileId(), e);
+                return;
+            }
+            readNanos.add(System.nanoTime() - start);
+            readFiles.incrementAndGet();
+        }
+
+        private boolean acquire() {
+            if (capacity.tryAcquire()) {
+                return true;
+            }
+            long start = System.nanoTime();
+            try {
+                capacity.acquire();
+                return true;
+            } catch (InterruptedException e) {
+                // don't read ahead, the analysis will read the file itself
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                stallNanos.add(System.nanoTime() - start);
+                stalls.incrementAndGet();
+            }
+        }
+
+        private void analyse() {
+            if (prefetched) {
+                queued.decrementAndGet();
+            }
+            try {
+                runnable.run();
+            } finally {
+                if (prefetched) {
+                    capacity.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.rule.InternalApiBridge;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.ThreadSafeRule;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.util.log.PmdReporter;
+
+/**
+ * A bounded pool of initialized copies of the rulesets of an analysis.
+ * Rules are generally not thread-safe, so each file being processed
+ * concurrently needs its own copy. Copies are borrowed for the processing
+ * of a single file, and returned afterwards, so that they are not tied to
+ * a thread. This makes the pool usable with virtual threads, where a
+ * thread-local copy would be created for each file.
+ *
+ * <p>Copies are created lazily, so that an analysis that never runs more
+ * than a few files at the same time only pays for a few copies. At most
+ * {@code maxCopies} copies are created. If all of them are in use,
+ * {@link #borrow()} blocks until one is returned.
+ *
+ * <p>Rules annotated with {@link ThreadSafeRule} are not copied, all copies
+ * share the instance of the original rulesets.
+ */
+final class RuleSetsPool {
+
+    private final AnalysisTask task;
+    private final Queue<RuleSets> idle = new ConcurrentLinkedQueue<>();
+    private final Semaphore available;
+
+    RuleSetsPool(AnalysisTask task, int maxCopies) {
+        this.task = task;
+        this.available = new Semaphore(maxCopies);
+
+        // Shared rules compute their target selector lazily. Do it now, before
+        // they are used by several threads.
+        for (Rule rule : task.getRulesets().getAllRules()) {
+            if (InternalApiBridge.isThreadSafe(rule)) {
+                rule.getTargetSelector();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the rulesets that is not used by any other
+     * thread. It must be given back with {@link #release(RuleSets)}.
+     */
+    RuleSets borrow() throws InterruptedException {
+        available.acquire();
+        RuleSets copy = idle.poll();
+        if (copy == null) {
+            try {
+                copy = newCopy();
+            } catch (RuntimeException | Error e) {
+                available.release();
+                throw e;
+            }
+        }
+        return copy;
+    }
+
+    void release(RuleSets copy) {
+        idle.add(copy);
+        available.release();
+    }
+
+    private RuleSets newCopy() {
+        RuleSets copy = RuleSets.copyForConcurrentUse(task.getRulesets());
+        // use a noop reporter because the copy should only contain rules that
+        // initialized properly. Shared rules are not initialized again.
+        copy.initializeRules(task.getLpRegistry(), PmdReporter.quiet());
+        return copy;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An executor that runs each task on a new virtual thread. This is
+ * suited for tasks that spend a lot of their time blocked on IO, eg when
+ * reading files or loading classes from the auxclasspath. The CPU-heavy
+ * phases of file processing (parsing and applying rules) must acquire
+ * a permit from {@link #getCpuPermits()}, so that at most as many files
+ * as the configured thread count are processed at the same time.
+ *
+ * <p>Virtual threads exist since Java 21, while PMD runs on Java 8.
+ * The JDK API is therefore accessed reflectively, see {@link #create(int)}.
+ */
+final class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final Semaphore cpuPermits;
+
+    private VirtualThreadExecutor(ExecutorService delegate, int threads) {
+        this.delegate = delegate;
+        this.cpuPermits = new Semaphore(threads);
+    }
+
+    /**
+     * Returns a new executor, or null if virtual threads are not
+     * supported by the running JVM.
+     *
+     * @param threads Maximum number of files that are processed at the same time
+     */
+    static @Nullable VirtualThreadExecutor create(int threads) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "PmdVirtualThread ", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                                                                        .invoke(null, factory);
+            return new VirtualThreadExecutor(executor, threads);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the running JVM supports virtual threads.
+     */
+    static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    Semaphore getCpuPermits() {
+        return cpuPermits;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        delegate.execute(command);
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public @NonNull List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -36,6 +36,14 @@ public final class InternalApiBridge {
         return ruleSet.applies(fileId);
     }
 
+    public static boolean isThreadSafe(Rule rule) {
+        return RuleSet.isThreadSafe(rule);
+    }
+
+    public static RuleSet copyRuleSet(RuleSet ruleSet, boolean shareThreadSafeRules) {
+        return new RuleSet(ruleSet, shareThreadSafeRules);
+    }
+
     public static List<RuleSet> loadRuleSetsWithoutException(RuleSetLoader ruleSetLoader, List<String> rulesetPaths) {
         return ruleSetLoader.loadRuleSetsWithoutException(rulesetPaths);
     }
@@ -77,6 +77,15 @@ public class RuleSet implements ChecksumAware {
     }
 
     public RuleSet(final RuleSet rs) {
+        this(rs, false);
+    }
+
+    /**
+     * Copy constructor. If {@code shareThreadSafeRules} is true, rules
+     * that are {@linkplain #isThreadSafe(Rule) thread-safe} are shared
+     * with the original ruleset instead of being copied.
+     */
+    RuleSet(final RuleSet rs, boolean shareThreadSafeRules) {
         checksum = rs.checksum;
         fileName = rs.fileName;
         name = rs.name;
@@ -84,7 +93,7 @@ public class RuleSet implements ChecksumAware {
 
         rules = new ArrayList<>(rs.rules.size());
         for (final Rule rule : rs.rules) {
-            rules.add(rule.deepCopy());
+            rules.add(shareThreadSafeRules && isThreadSafe(rule) ? rule : rule.deepCopy());
         }
 
         excludePatterns = rs.excludePatterns; // we can share immutable lists of immutable elements
@@ -612,6 +621,18 @@ public class RuleSet implements ChecksumAware {
         return filter.test(qualFileName.getAbsolutePath());
     }
 
+    /**
+     * Returns true if the rule, or the rule it references, is annotated
+     * with {@link ThreadSafeRule}.
+     */
+    static boolean isThreadSafe(Rule rule) {
+        Rule target = rule;
+        while (target instanceof RuleReference) {
+            target = ((RuleReference) target).getRule();
+        }
+        return target.getClass().isAnnotationPresent(ThreadSafeRule.class);
+    }
+
     /**
      * Does the given Rule apply to the given LanguageVersion? If so, the
      * Language must be the same and be between the minimum and maximums
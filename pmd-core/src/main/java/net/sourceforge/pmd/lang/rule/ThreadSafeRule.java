@@ -0,0 +1,39 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import net.sourceforge.pmd.annotation.Experimental;
+
+/**
+ * Declares that a rule class is stateless or otherwise thread-safe:
+ * a single instance may analyse several files concurrently. When PMD
+ * runs with several threads, every thread normally works on its own
+ * {@linkplain Rule#deepCopy() copy} of each rule. Rules with this
+ * annotation are not copied, the instance that was initialized before
+ * the analysis is shared by all threads instead.
+ *
+ * <p>A rule may only use this annotation if {@link Rule#apply(net.sourceforge.pmd.lang.ast.Node, net.sourceforge.pmd.reporting.RuleContext) apply}
+ * and {@link Rule#end(net.sourceforge.pmd.reporting.RuleContext) end}
+ * neither modify instance fields nor rely on state left behind by a previous
+ * file. Property values may be read, as they are not changed during the analysis.
+ *
+ * <p>The annotation is not inherited: subclasses of a thread-safe rule
+ * must declare it again. For a {@link RuleReference}, the annotation of
+ * the referenced rule class is considered.
+ *
+ * @since 7.12.0
+ */
+@Experimental
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ThreadSafeRule {
+}
@@ -7,7 +7,9 @@ package net.sourceforge.pmd.lang.rule.internal;
 import static net.sourceforge.pmd.lang.rule.InternalApiBridge.ruleSetApplies;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.commons.lang3.exception.ExceptionContext;
 import org.slf4j.Logger;
@@ -21,6 +23,7 @@ import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.InternalApiBridge;
 import net.sourceforge.pmd.reporting.Report.ProcessingError;
@@ -54,16 +57,26 @@ public class RuleApplicator {
     }
 
     public void apply(Collection<? extends Rule> rules, FileAnalysisListener listener) {
-        applyOnIndex(idx, rules, listener);
+        apply(rules, listener, Collections.emptyMap());
     }
 
-    private void applyOnIndex(TreeIndex idx, Collection<? extends Rule> rules, FileAnalysisListener listener) {
+    /**
+     * Applies the rules, suppressing violations with the given compiled
+     * violationSuppressXPath expressions of the rules. Rules that are not
+     * in the map have their expression compiled once per file.
+     */
+    public void apply(Collection<? extends Rule> rules, FileAnalysisListener listener, Map<Rule, SaxonXPathRuleQuery> suppressionQueries) {
+        applyOnIndex(idx, rules, listener, suppressionQueries);
+    }
+
+    private void applyOnIndex(TreeIndex idx, Collection<? extends Rule> rules, FileAnalysisListener listener,
+                              Map<Rule, SaxonXPathRuleQuery> suppressionQueries) {
         for (Rule rule : rules) {
             if (!ruleSetApplies(rule, currentLangVer)) {
                 continue; // No point in even trying to apply the rule
             }
             
-            RuleContext ctx = InternalApiBridge.createRuleContext(listener, rule);
+            RuleContext ctx = InternalApiBridge.createRuleContext(listener, rule, suppressionQueries.get(rule));
             rule.start(ctx);
             try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULE, rule.getName())) {
 
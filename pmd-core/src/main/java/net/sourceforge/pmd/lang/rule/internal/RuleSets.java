@@ -4,23 +4,33 @@
 
 package net.sourceforge.pmd.lang.rule.internal;
 
+import static net.sourceforge.pmd.reporting.InternalApiBridge.compileViolationSuppressXPath;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
 import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.InternalApiBridge;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.util.log.PmdReporter;
 
@@ -33,6 +43,12 @@ public class RuleSets {
 
     private final List<RuleSet> ruleSets;
 
+    /** Rules shared with the RuleSets this was copied from, they are already initialized. */
+    private final Set<Rule> sharedRules;
+
+    /** Compiled violationSuppressXPath of the rules that have one, by identity. */
+    private final Map<Rule, SaxonXPathRuleQuery> suppressionQueries = new IdentityHashMap<>();
+
     private RuleApplicator ruleApplicator;
 
     /**
@@ -41,15 +57,28 @@ public class RuleSets {
      * @param ruleSets The RuleSets to copy.
      */
     public RuleSets(final RuleSets ruleSets) {
+        this(ruleSets, false);
+    }
+
+    private RuleSets(final RuleSets ruleSets, boolean shareThreadSafeRules) {
         List<RuleSet> rsets = new ArrayList<>();
+        Set<Rule> shared = Collections.newSetFromMap(new IdentityHashMap<>());
         for (final RuleSet rs : ruleSets.ruleSets) {
-            rsets.add(new RuleSet(rs));
+            RuleSet copy = InternalApiBridge.copyRuleSet(rs, shareThreadSafeRules);
+            for (Rule rule : copy.getRules()) {
+                if (shareThreadSafeRules && InternalApiBridge.isThreadSafe(rule)) {
+                    shared.add(rule);
+                }
+            }
+            rsets.add(copy);
         }
         this.ruleSets = Collections.unmodifiableList(rsets);
+        this.sharedRules = shared;
     }
 
     public RuleSets(Collection<? extends RuleSet> ruleSets) {
         this.ruleSets = Collections.unmodifiableList(new ArrayList<>(ruleSets));
+        this.sharedRules = Collections.emptySet();
     }
 
     /**
@@ -59,15 +88,42 @@ public class RuleSets {
      */
     public RuleSets(RuleSet ruleSet) {
         this.ruleSets = Collections.singletonList(ruleSet);
+        this.sharedRules = Collections.emptySet();
+    }
+
+    /**
+     * Returns a copy of the given rulesets that may be used concurrently
+     * with the original. Rules annotated with {@link net.sourceforge.pmd.lang.rule.ThreadSafeRule}
+     * are shared with the original, the other ones are deep copied. The
+     * original must have been {@linkplain #initializeRules(LanguageProcessorRegistry, PmdReporter) initialized}
+     * already, as shared rules are not initialized again on the copy.
+     *
+     * @param ruleSets The RuleSets to copy.
+     */
+    public static RuleSets copyForConcurrentUse(RuleSets ruleSets) {
+        return new RuleSets(ruleSets, true);
     }
 
+    /**
+     * Initializes the rules for the given language processors. This also
+     * compiles the violationSuppressXPath expression of the rules, so that
+     * it is parsed only once per rule, instead of once per violation.
+     * Rules that fail to initialize, including those with an invalid
+     * violationSuppressXPath expression, are reported and removed.
+     */
     public void initializeRules(LanguageProcessorRegistry lpReg, PmdReporter reporter) {
         // this is abusing the mutability of RuleSet, will go away eventually.
         for (RuleSet rset : ruleSets) {
             for (Iterator<Rule> iterator = rset.getRules().iterator(); iterator.hasNext();) {
                 Rule rule = iterator.next();
                 try {
-                    rule.initialize(lpReg.getProcessor(rule.getLanguage()));
+                    @SuppressWarnings("PMD.CloseResource") // owned by the registry
+                    LanguageProcessor processor = lpReg.getProcessor(rule.getLanguage());
+                    if (!sharedRules.contains(rule)) {
+                        rule.initialize(processor);
+                    }
+                    // shared rules are compiled again, as each copy is used by a single thread
+                    compileSuppressionQuery(rule, processor);
                 } catch (Exception e) {
                     reporter.errorEx(
                         "Exception while initializing rule " + rule.getName() + ", the rule will not be run", e);
@@ -77,6 +133,16 @@ public class RuleSets {
         }
     }
 
+    private void compileSuppressionQuery(Rule rule, LanguageProcessor processor) {
+        if (suppressionQueries.containsKey(rule)) {
+            return;
+        }
+        SaxonXPathRuleQuery query = compileViolationSuppressXPath(rule, processor.services().getXPathHandler());
+        if (query != null) {
+            suppressionQueries.put(rule, query);
+        }
+    }
+
     private RuleApplicator prepareApplicator() {
         return RuleApplicator.build(ruleSets.stream().flatMap(it -> it.getRules().stream())::iterator);
     }
@@ -129,6 +195,30 @@ public class RuleSets {
         return false;
     }
 
+    /**
+     * Check if a rule accepted by the filter should be applied to the
+     * given source file. This is finer than {@link #applies(TextFile)},
+     * as the language version of the file is checked too.
+     *
+     * @param file   the source file to check
+     * @param filter selects the rules to consider
+     *
+     * @return <code>true</code> if the file should be checked by one of
+     *         the selected rules, <code>false</code> otherwise
+     */
+    public boolean applies(TextFile file, Predicate<? super Rule> filter) {
+        for (RuleSet ruleSet : ruleSets) {
+            if (InternalApiBridge.ruleSetApplies(ruleSet, file.getFileId())) {
+                for (Rule rule : ruleSet.getRules()) {
+                    if (filter.test(rule) && InternalApiBridge.ruleSetApplies(rule, file.getLanguageVersion())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Apply all applicable rules to the compilation units. Applicable means the
      * language of the rules must match the language of the source (@see
@@ -139,6 +229,19 @@ public class RuleSets {
      * @param listener Listener that will handle events while analysing.
      */
     public void apply(RootNode root, FileAnalysisListener listener) {
+        apply(root, listener, null);
+    }
+
+    /**
+     * Apply the applicable rules accepted by the filter to the compilation
+     * units. This is used to only run the rules whose cached results can't
+     * be reused on a file.
+     *
+     * @param root     the root node of the file
+     * @param listener Listener that will handle events while analysing.
+     * @param filter   selects the rules to apply, null to apply all of them
+     */
+    public void apply(RootNode root, FileAnalysisListener listener, @Nullable Predicate<? super Rule> filter) {
         if (ruleApplicator == null) {
             // initialize here instead of ctor, because some rules properties
             // are set after creating the ruleset, and jaxen xpath queries
@@ -152,7 +255,11 @@ public class RuleSets {
 
         for (RuleSet ruleSet : ruleSets) {
             if (InternalApiBridge.ruleSetApplies(ruleSet, root.getTextDocument().getFileId())) {
-                ruleApplicator.apply(ruleSet.getRules(), listener);
+                Collection<Rule> rules = ruleSet.getRules();
+                if (filter != null) {
+                    rules = rules.stream().filter(filter).collect(Collectors.toList());
+                }
+                ruleApplicator.apply(rules, listener, suppressionQueries);
             }
         }
     }
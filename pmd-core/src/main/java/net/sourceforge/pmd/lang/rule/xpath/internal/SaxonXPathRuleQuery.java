@@ -29,6 +29,7 @@ import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.expr.Expression;
 import net.sf.saxon.expr.LocalVariableReference;
+import net.sf.saxon.expr.StaticProperty;
 import net.sf.saxon.lib.ExtensionFunctionDefinition;
 import net.sf.saxon.om.AtomicSequence;
 import net.sf.saxon.om.Item;
@@ -111,6 +112,17 @@ public class SaxonXPathRuleQuery {
     }
 
 
+    /**
+     * Returns whether the result of the query depends on the node it is
+     * evaluated on, other than through the document that contains it.
+     * If not, the query yields the same result for all the nodes of a
+     * file whose name is not one of the {@linkplain #getRuleChainVisits() rule chain visits}.
+     */
+    public boolean dependsOnContextNode() {
+        return (xpathExpression.getInternalExpression().getDependencies() & StaticProperty.DEPENDS_ON_NON_DOCUMENT_FOCUS) != 0;
+    }
+
+
     public List<Node> evaluate(final Node node) {
         final AstTreeInfo documentNode = getDocumentNodeForRootNode(node);
         documentNode.setAttrCtx(attrCtx);
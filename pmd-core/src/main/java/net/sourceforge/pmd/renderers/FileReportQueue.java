@@ -0,0 +1,114 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.reporting.Report;
+
+/**
+ * Hands the reports of single files over to a renderer, without making
+ * analysis threads wait for each other. Renderers are not thread-safe,
+ * so {@link Renderer#renderFileReport(Report)} must not be called
+ * concurrently.
+ *
+ * <p>Threads that finish a file add its report to a lock-free queue.
+ * The first thread that finds the renderer idle becomes the writer: it
+ * renders all queued reports, including those that other threads add
+ * in the meantime, and then gives up the role. The other threads return
+ * immediately instead of blocking on a monitor. Reports are rendered
+ * one at a time, in the order in which they were queued, so the output
+ * is the same as if each thread rendered its report while holding a lock.
+ * In particular, a single-threaded analysis renders each report right away.
+ *
+ * <p>The number of queued reports is bounded. When the renderer can't
+ * keep up, threads that finish a file wait until the writer has rendered
+ * some reports, so that reports don't pile up in memory.
+ *
+ * <p>The order of files is that in which they finish. For a report that
+ * is the same on every run, see {@link net.sourceforge.pmd.PMDConfiguration#setSortReportsByFile(boolean)}.
+ */
+final class FileReportQueue {
+
+    /** Max number of reports waiting to be rendered. */
+    static final int MAX_PENDING = 256;
+    /** How long a thread waits for room in the queue before checking whether there is still a writer. */
+    private static final long WAIT_MILLIS = 10;
+
+    private final Renderer renderer;
+    private final Queue<Report> pending = new ConcurrentLinkedQueue<>();
+    /** Permits for the reports in the queue, released once a report is rendered. */
+    private final Semaphore capacity;
+    /** Whether a thread is currently rendering reports, the writer role. */
+    private final AtomicBoolean rendering = new AtomicBoolean();
+
+    FileReportQueue(Renderer renderer) {
+        this(renderer, MAX_PENDING);
+    }
+
+    FileReportQueue(Renderer renderer, int maxPending) {
+        this.renderer = renderer;
+        this.capacity = new Semaphore(maxPending);
+    }
+
+    /**
+     * Queues the report and renders it, unless another thread is
+     * currently rendering, in which case that thread will render it.
+     * If the queue is full, waits until there is room for the report.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    void render(Report report) throws IOException {
+        awaitCapacity();
+        pending.add(report);
+        drain();
+    }
+
+    private void awaitCapacity() throws IOException {
+        try {
+            // If there is no writer anymore, eg because rendering failed,
+            // waiting would never end. Try to become the writer instead.
+            while (!capacity.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                drain();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to render a file report");
+        }
+    }
+
+    /**
+     * Renders all queued reports, unless another thread is currently
+     * rendering. Once all threads are done, this renders the reports that
+     * may have been left over because rendering failed.
+     */
+    void drain() throws IOException {
+        // Re-check after giving up the writer role: another thread may have
+        // queued a report after our last poll, but before we gave up the role.
+        while (!pending.isEmpty() && rendering.compareAndSet(false, true)) {
+            try {
+                Report report;
+                while ((report = pending.poll()) != null) {
+                    try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
+                        renderer.renderFileReport(report);
+                    } finally {
+                        capacity.release();
+                    }
+                }
+            } finally {
+                rendering.set(false);
+            }
+        }
+    }
+}
@@ -201,8 +201,8 @@ public interface Renderer extends PropertySource {
 
         return new GlobalAnalysisListener() {
 
-            // guard for the close routine
-            final Object reportMergeLock = new Object();
+            // renders the reports of files one at a time, without blocking the analysis threads
+            final FileReportQueue fileReports = new FileReportQueue(Renderer.this);
 
             final GlobalReportBuilderListener configErrorReport = new GlobalReportBuilderListener();
 
@@ -247,12 +247,7 @@ public interface Renderer extends PropertySource {
                     @Override
                     public void close() throws Exception {
                         reportBuilder.close();
-                        synchronized (reportMergeLock) {
-                            // TODO renderFileReport should be thread-safe instead
-                            try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
-                                renderer.renderFileReport(reportBuilder.getResult());
-                            }
-                        }
+                        fileReports.render(reportBuilder.getResult());
                     }
 
                     @Override
@@ -264,6 +259,7 @@ public interface Renderer extends PropertySource {
 
             @Override
             public void close() throws Exception {
+                fileReports.drain();
                 configErrorReport.close();
                 Renderer.this.renderFileReport(configErrorReport.getResult());
                 try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
@@ -9,13 +9,19 @@ import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 
 import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+import net.sourceforge.pmd.properties.PropertyFactory;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Invocation;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Result;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Tool;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLogBuilder;
 import net.sourceforge.pmd.reporting.Report;
 import net.sourceforge.pmd.reporting.RuleViolation;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
 public class SarifRenderer extends AbstractIncrementingRenderer {
     public static final String NAME = "sarif";
@@ -27,10 +33,28 @@ public class SarifRenderer extends AbstractIncrementingRenderer {
             .setPrettyPrinting()
             .create();
 
+    /**
+     * Whether results are written as files are processed, instead of
+     * building the whole log in memory. The "tool" section of the run,
+     * which lists the rules referenced by the results, is then written
+     * after the results.
+     *
+     * @since 7.12.0
+     */
+    public static final PropertyDescriptor<Boolean> STREAMING =
+        PropertyFactory.booleanProperty("streaming")
+                       .desc("Write results as files are processed, instead of keeping all of them in memory "
+                                 + "until the end of the analysis.")
+                       .defaultValue(false)
+                       .build();
+
     private SarifLogBuilder sarifLogBuilder;
+    /** Only set in streaming mode. */
+    private JsonWriter jsonWriter;
 
     public SarifRenderer() {
         super(NAME, DEFAULT_DESCRIPTION);
+        definePropertyDescriptor(STREAMING);
     }
 
     @Override
@@ -40,21 +64,65 @@ public class SarifRenderer extends AbstractIncrementingRenderer {
 
     @Override
     public void start() throws IOException {
-        sarifLogBuilder = SarifLogBuilder.sarifLogBuilder();
+        jsonWriter = null;
+        if (getProperty(STREAMING)) {
+            sarifLogBuilder = SarifLogBuilder.streamingSarifLogBuilder();
+            startStreaming();
+        } else {
+            sarifLogBuilder = SarifLogBuilder.sarifLogBuilder();
+        }
     }
 
     @Override
     public void renderFileViolations(Iterator<RuleViolation> violations) throws IOException {
         while (violations.hasNext()) {
             final RuleViolation violation = violations.next();
-            sarifLogBuilder.add(violation);
+            if (jsonWriter != null) {
+                gson.toJson(sarifLogBuilder.toResult(violation), Result.class, jsonWriter);
+            } else {
+                sarifLogBuilder.add(violation);
+            }
         }
     }
 
     @Override
     public void end() throws IOException {
         addErrors();
-        writeLog();
+        if (jsonWriter != null) {
+            endStreaming();
+        } else {
+            writeLog();
+        }
+    }
+
+    private void startStreaming() throws IOException {
+        // same layout as the log written by gson, except that the
+        // results come first, as they are not kept in memory
+        final SarifLog emptyLog = SarifLog.builder().build();
+        jsonWriter = new JsonWriter(writer);
+        jsonWriter.setIndent("  ");
+        jsonWriter.beginObject();
+        jsonWriter.name("$schema").value(emptyLog.getSchema());
+        jsonWriter.name("version").value(emptyLog.getVersion());
+        jsonWriter.name("runs").beginArray();
+        jsonWriter.beginObject();
+        jsonWriter.name("results").beginArray();
+    }
+
+    private void endStreaming() throws IOException {
+        jsonWriter.endArray(); // results
+        jsonWriter.name("tool");
+        gson.toJson(sarifLogBuilder.buildTool(), Tool.class, jsonWriter);
+        jsonWriter.name("invocations").beginArray();
+        for (Invocation invocation : sarifLogBuilder.buildInvocations()) {
+            gson.toJson(invocation, Invocation.class, jsonWriter);
+        }
+        jsonWriter.endArray();
+        jsonWriter.endObject(); // run
+        jsonWriter.endArray(); // runs
+        jsonWriter.endObject();
+        jsonWriter.flush();
+        writer.println();
     }
 
     private void addErrors() {
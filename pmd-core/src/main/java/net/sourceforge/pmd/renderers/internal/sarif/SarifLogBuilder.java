@@ -7,10 +7,13 @@ package net.sourceforge.pmd.renderers.internal.sarif;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ArtifactLocation;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.AssociatedRule;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Component;
@@ -33,27 +36,66 @@ import net.sourceforge.pmd.reporting.RuleViolation;
 
 public class SarifLogBuilder {
     private final List<ReportingDescriptor> rules = new ArrayList<>();
+    /**
+     * Index of each rule in {@link #rules}, to avoid scanning the list for each result.
+     * The keys are descriptors, or language id and rule name if {@link #describeRulesOnce}.
+     */
+    private final Map<Object, Integer> ruleIndices = new HashMap<>();
+    private final boolean describeRulesOnce;
     private final List<Result> results = new ArrayList<>();
     private final List<ToolConfigurationNotification> toolConfigurationNotifications = new ArrayList<>();
     private final List<ToolExecutionNotification> toolExecutionNotifications = new ArrayList<>();
 
+    private SarifLogBuilder(boolean describeRulesOnce) {
+        this.describeRulesOnce = describeRulesOnce;
+    }
+
     public static SarifLogBuilder sarifLogBuilder() {
-        return new SarifLogBuilder();
+        return new SarifLogBuilder(false);
+    }
+
+    /**
+     * Returns a builder that describes each rule once, whatever the
+     * messages of its violations, so that the rules of the log don't grow
+     * with the number of violations. The short description of a rule is
+     * then the description of the rule, and the message of each violation
+     * is the message of its result. This is used when the results are
+     * written as they come, see {@link #toResult(RuleViolation)}.
+     */
+    public static SarifLogBuilder streamingSarifLogBuilder() {
+        return new SarifLogBuilder(true);
     }
 
     public SarifLogBuilder add(RuleViolation violation) {
-        final ReportingDescriptor ruleDescriptor = getReportingDescriptor(violation);
-        int ruleIndex = rules.indexOf(ruleDescriptor);
-        if (ruleIndex == -1) {
-            rules.add(ruleDescriptor);
-            ruleIndex = rules.size() - 1;
+        results.add(toResult(violation));
+        return this;
+    }
+
+    /**
+     * Returns the result for the given violation, without adding it to
+     * the results of the log. The rule of the violation is added to the
+     * rules of the log, as the result refers to it by index. This allows
+     * writing results as they come, see {@link #buildTool()}.
+     */
+    public Result toResult(RuleViolation violation) {
+        final Rule rule = violation.getRule();
+        final ReportingDescriptor ruleDescriptor;
+        final Object key;
+        if (describeRulesOnce) {
+            // rules of different languages may have the same name
+            key = rule.getLanguage().getId() + ":" + rule.getName();
+            ruleDescriptor = null;
+        } else {
+            ruleDescriptor = getReportingDescriptor(violation);
+            key = ruleDescriptor;
         }
+        final int ruleIndex = ruleIndices.computeIfAbsent(key, k -> {
+            rules.add(ruleDescriptor != null ? ruleDescriptor : getReportingDescriptor(violation));
+            return rules.size() - 1;
+        });
 
         final Location location = getRuleViolationLocation(violation);
-        final Result result = resultFrom(ruleDescriptor, ruleIndex, location);
-        results.add(result);
-
-        return this;
+        return resultFrom(violation, ruleIndex, location);
     }
 
     public SarifLogBuilder addRunTimeError(Report.ProcessingError error) {
@@ -107,17 +149,10 @@ public class SarifLogBuilder {
     }
 
     public SarifLog build() {
-        final Component driver = getDriverComponent().toBuilder().rules(rules).build();
-        final Tool tool = Tool.builder().driver(driver).build();
-        final Invocation invocation = Invocation.builder()
-                .toolExecutionNotifications(toolExecutionNotifications)
-                .toolConfigurationNotifications(toolConfigurationNotifications)
-                .executionSuccessful(isExecutionSuccessful())
-                .build();
         final Run run = Run.builder()
-                .tool(tool)
+                .tool(buildTool())
                 .results(results)
-                .invocations(Collections.singletonList(invocation))
+                .invocations(buildInvocations())
                 .build();
 
         List<Run> runs = Collections.singletonList(run);
@@ -125,18 +160,40 @@ public class SarifLogBuilder {
         return SarifLog.builder().runs(runs).build();
     }
 
+    /**
+     * Returns the tool section of the run, with the rules of all the
+     * results seen so far.
+     */
+    public Tool buildTool() {
+        final Component driver = getDriverComponent().toBuilder().rules(rules).build();
+        return Tool.builder().driver(driver).build();
+    }
+
+    /**
+     * Returns the invocations section of the run, with the errors
+     * added so far.
+     */
+    public List<Invocation> buildInvocations() {
+        final Invocation invocation = Invocation.builder()
+                .toolExecutionNotifications(toolExecutionNotifications)
+                .toolConfigurationNotifications(toolConfigurationNotifications)
+                .executionSuccessful(isExecutionSuccessful())
+                .build();
+        return Collections.singletonList(invocation);
+    }
+
     private boolean isExecutionSuccessful() {
         return toolExecutionNotifications.isEmpty() && toolConfigurationNotifications.isEmpty();
     }
 
-    private Result resultFrom(ReportingDescriptor rule, Integer ruleIndex, Location location) {
+    private Result resultFrom(RuleViolation violation, Integer ruleIndex, Location location) {
         final Result result = Result.builder()
-                .ruleId(rule.getId())
+                .ruleId(violation.getRule().getName())
                 .ruleIndex(ruleIndex)
                 .build();
 
         final Message message = Message.builder()
-                .text(rule.getShortDescription().getText())
+                .text(violation.getDescription())
                 .build();
 
         result.setMessage(message);
@@ -170,7 +227,7 @@ public class SarifLogBuilder {
     private ReportingDescriptor getReportingDescriptor(RuleViolation rv) {
         return ReportingDescriptor.builder()
             .id(rv.getRule().getName())
-            .shortDescription(new MultiformatMessage(rv.getDescription()))
+            .shortDescription(new MultiformatMessage(describeRulesOnce ? rv.getRule().getDescription() : rv.getDescription()))
             .fullDescription(new MultiformatMessage(rv.getRule().getDescription()))
             .helpUri(rv.getRule().getExternalInfoUrl())
             .help(new MultiformatMessage(rv.getRule().getDescription()))
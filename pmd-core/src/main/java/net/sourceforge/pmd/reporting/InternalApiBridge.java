@@ -6,9 +6,13 @@ package net.sourceforge.pmd.reporting;
 
 import java.util.Map;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.lang.document.FileLocation;
 import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
 
 /**
  * Internal API.
@@ -38,6 +42,26 @@ public final class InternalApiBridge {
         return new RuleContext(listener, rule);
     }
 
+    /**
+     * Create a new RuleContext, which suppresses violations using the
+     * given compiled violationSuppressXPath of the rule.
+     *
+     * The listener must be closed by its creator.
+     */
+    public static RuleContext createRuleContext(FileAnalysisListener listener, Rule rule, @Nullable SaxonXPathRuleQuery suppressionQuery) {
+        return new RuleContext(listener, rule, suppressionQuery);
+    }
+
+    /**
+     * Compiles the violationSuppressXPath property of the rule, returns
+     * null if it is not set.
+     *
+     * @throws net.sourceforge.pmd.lang.rule.xpath.PmdXPathException If the expression is invalid
+     */
+    public static @Nullable SaxonXPathRuleQuery compileViolationSuppressXPath(Rule rule, XPathHandler xPathHandler) {
+        return XPathSuppressor.compile(rule, xPathHandler);
+    }
+
     public static ParametricRuleViolation createRuleViolation(Rule theRule, FileLocation location, String message, Map<String, String> additionalInfo) {
         return new ParametricRuleViolation(theRule, location, message, additionalInfo);
     }
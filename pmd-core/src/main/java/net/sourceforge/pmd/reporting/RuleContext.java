@@ -26,6 +26,7 @@ import net.sourceforge.pmd.lang.document.FileLocation;
 import net.sourceforge.pmd.lang.document.TextRange2d;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
 import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.reporting.Report.SuppressedViolation;
 
@@ -44,21 +45,35 @@ public final class RuleContext {
     // they are stack-local
 
     private static final Object[] NO_ARGS = new Object[0];
+    // the violationSuppressXPath property is handled by the XPathSuppressor of the context
     private static final List<ViolationSuppressor> DEFAULT_SUPPRESSORS = listOf(ViolationSuppressor.NOPMD_COMMENT_SUPPRESSOR,
-                                                                                ViolationSuppressor.REGEX_SUPPRESSOR,
-                                                                                ViolationSuppressor.XPATH_SUPPRESSOR);
+                                                                                ViolationSuppressor.REGEX_SUPPRESSOR);
 
     private final FileAnalysisListener listener;
     private final Rule rule;
+    private final @Nullable SaxonXPathRuleQuery suppressionQuery;
+    private @Nullable XPathSuppressor xpathSuppressor;
+    private boolean xpathSuppressorInitialized;
 
     /**
      * @apiNote Internal API
      */
     RuleContext(FileAnalysisListener listener, Rule rule) {
+        this(listener, rule, null);
+    }
+
+    /**
+     * @param suppressionQuery The compiled violationSuppressXPath of the rule,
+     *                         if null it is compiled when the first violation is reported
+     *
+     * @apiNote Internal API
+     */
+    RuleContext(FileAnalysisListener listener, Rule rule, @Nullable SaxonXPathRuleQuery suppressionQuery) {
         Objects.requireNonNull(listener, "Listener was null");
         Objects.requireNonNull(rule, "Rule was null");
         this.listener = listener;
         this.rule = rule;
+        this.suppressionQuery = suppressionQuery;
     }
 
     /**
@@ -203,14 +218,31 @@ public final class RuleContext {
         return astInfo.getTextDocument().offsetAtLineColumn(loc.getStartPos());
     }
 
-    private static @Nullable SuppressedViolation suppressOrNull(Node location, RuleViolation rv, LanguageVersionHandler handler) {
+    private @Nullable SuppressedViolation suppressOrNull(Node location, RuleViolation rv, LanguageVersionHandler handler) {
         SuppressedViolation suppressed = ViolationSuppressor.suppressOrNull(handler.getExtraViolationSuppressors(), rv, location);
         if (suppressed == null) {
             suppressed = ViolationSuppressor.suppressOrNull(DEFAULT_SUPPRESSORS, rv, location);
         }
+        if (suppressed == null) {
+            XPathSuppressor suppressor = getXPathSuppressor(handler);
+            if (suppressor != null) {
+                suppressed = suppressor.suppressOrNull(rv, location);
+            }
+        }
         return suppressed;
     }
 
+    private @Nullable XPathSuppressor getXPathSuppressor(LanguageVersionHandler handler) {
+        if (!xpathSuppressorInitialized) {
+            xpathSuppressorInitialized = true;
+            SaxonXPathRuleQuery query = suppressionQuery != null
+                                        ? suppressionQuery
+                                        : XPathSuppressor.compile(rule, handler.getXPathHandler());
+            xpathSuppressor = query == null ? null : new XPathSuppressor(query);
+        }
+        return xpathSuppressor;
+    }
+
     private String makeMessage(@NonNull String message, Object[] args, Map<String, String> extraVars) {
         // Escape PMD specific variable message format, specifically the {
         // in the ${, so MessageFormat doesn't bitch.
@@ -15,8 +15,6 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import net.sourceforge.pmd.lang.ast.AstInfo;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.Rule;
-import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
-import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger;
 import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
 import net.sourceforge.pmd.reporting.Report.SuppressedViolation;
 
@@ -49,7 +47,9 @@ public interface ViolationSuppressor {
     };
 
     /**
-     * Suppressor for the violationSuppressXPath property.
+     * Suppressor for the violationSuppressXPath property. This compiles
+     * the expression every time it is called, the {@link RuleContext}
+     * instead uses an expression compiled once per rule.
      */
     ViolationSuppressor XPATH_SUPPRESSOR = new ViolationSuppressor() {
         @Override
@@ -59,24 +59,12 @@ public interface ViolationSuppressor {
 
         @Override
         public @Nullable SuppressedViolation suppressOrNull(RuleViolation rv, @NonNull Node node) {
-            // todo this should not be implemented via a rule property
-            //  because the parsed xpath expression should be stored, not a random string
-            //  this needs to be checked to be a valid xpath expression in the ruleset,
-            //  not at the time it is evaluated, and also parsed by the XPath parser only once
-            Rule rule = rv.getRule();
-            Optional<String> xpath = rule.getProperty(Rule.VIOLATION_SUPPRESS_XPATH_DESCRIPTOR);
-            if (!xpath.isPresent()) {
-                return null;
-            }
-            SaxonXPathRuleQuery rq = new SaxonXPathRuleQuery(
-                xpath.get(),
-                XPathVersion.DEFAULT,
-                rule.getPropertiesByPropertyDescriptor(),
-                node.getAstInfo().getLanguageProcessor().services().getXPathHandler(),
-                DeprecatedAttrLogger.createForSuppression(rv.getRule())
+            SaxonXPathRuleQuery rq = XPathSuppressor.compile(
+                rv.getRule(),
+                node.getAstInfo().getLanguageProcessor().services().getXPathHandler()
             );
-            if (!rq.evaluate(node).isEmpty()) {
-                return new SuppressedViolation(rv, this, xpath.get());
+            if (rq != null && !rq.evaluate(node).isEmpty()) {
+                return new SuppressedViolation(rv, this, rq.getXpathExpression());
             }
             return null;
         }
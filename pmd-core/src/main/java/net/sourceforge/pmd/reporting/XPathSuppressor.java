@@ -0,0 +1,96 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.reporting;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
+import net.sourceforge.pmd.reporting.Report.SuppressedViolation;
+
+/**
+ * Suppressor for the violationSuppressXPath property of a single rule.
+ * The expression is compiled once per rule, see {@link #compile(Rule, XPathHandler)}.
+ * An instance is used by the {@link RuleContext} of a rule for a file,
+ * and evaluates the expression lazily: at most once per node on which
+ * violations are reported, and at most once for the whole file if the
+ * result of the expression does not depend on the context node.
+ */
+final class XPathSuppressor implements ViolationSuppressor {
+
+    private final SaxonXPathRuleQuery query;
+    private final boolean dependsOnContextNode;
+
+    /** Root of the file the cached results belong to. */
+    private RootNode root;
+    private Boolean fileResult;
+    private final Map<Node, Boolean> nodeResults = new IdentityHashMap<>();
+
+    XPathSuppressor(SaxonXPathRuleQuery query) {
+        this.query = query;
+        this.dependsOnContextNode = query.dependsOnContextNode();
+    }
+
+    /**
+     * Compiles the violationSuppressXPath expression of the rule. Returns
+     * null if the rule does not define one.
+     *
+     * @throws net.sourceforge.pmd.lang.rule.xpath.PmdXPathException If the expression is invalid
+     */
+    static @Nullable SaxonXPathRuleQuery compile(Rule rule, XPathHandler xPathHandler) {
+        Optional<String> xpath = rule.getProperty(Rule.VIOLATION_SUPPRESS_XPATH_DESCRIPTOR);
+        if (!xpath.isPresent()) {
+            return null;
+        }
+        return new SaxonXPathRuleQuery(
+            xpath.get(),
+            XPathVersion.DEFAULT,
+            rule.getPropertiesByPropertyDescriptor(),
+            xPathHandler,
+            DeprecatedAttrLogger.createForSuppression(rule)
+        );
+    }
+
+    @Override
+    public String getId() {
+        return XPATH_SUPPRESSOR.getId();
+    }
+
+    @Override
+    public @Nullable SuppressedViolation suppressOrNull(RuleViolation rv, @NonNull Node node) {
+        if (isSuppressed(node)) {
+            return new SuppressedViolation(rv, this, query.getXpathExpression());
+        }
+        return null;
+    }
+
+    private boolean isSuppressed(Node node) {
+        RootNode nodeRoot = node.getRoot();
+        if (nodeRoot != root) { // NOPMD CompareObjectsWithEquals
+            root = nodeRoot;
+            fileResult = null;
+            nodeResults.clear();
+        }
+        // Nodes that are rule chain visits are evaluated with a different
+        // expression, which always depends on the node.
+        if (!dependsOnContextNode && !query.getRuleChainVisits().contains(node.getXPathNodeName())) {
+            if (fileResult == null) {
+                fileResult = !query.evaluate(node).isEmpty();
+            }
+            return fileResult;
+        }
+        return nodeResults.computeIfAbsent(node, n -> !query.evaluate(n).isEmpty());
+    }
+}
@@ -4,7 +4,10 @@
 
 package net.sourceforge.pmd;
 
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
@@ -16,9 +19,20 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
@@ -29,13 +43,18 @@ import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.SimpleTestTextFile;
+import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
 import net.sourceforge.pmd.lang.rule.MockRule;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.renderers.AbstractIncrementingRenderer;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.reporting.Report;
 import net.sourceforge.pmd.reporting.ReportStats;
 import net.sourceforge.pmd.reporting.RuleContext;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import net.sourceforge.pmd.util.CollectionUtil;
 import net.sourceforge.pmd.util.log.PmdReporter;
 
 /**
@@ -70,6 +89,42 @@ class PmdAnalysisTest {
         verify(renderer, times(1)).flush();
     }
 
+    @Test
+    void testReportsSortedByFile() {
+        PMDConfiguration config = new PMDConfiguration();
+        config.setThreads(4);
+        config.setSortReportsByFile(true);
+        List<String> expected = new ArrayList<>();
+        List<String> rendered = Collections.synchronizedList(new ArrayList<>());
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new MockRule()));
+            pmd.addRenderer(new AbstractIncrementingRenderer("recording", "Records the order of files") {
+                @Override
+                public String defaultFileExtension() {
+                    return "txt";
+                }
+
+                @Override
+                public void startFileAnalysis(TextFile dataSource) {
+                    rendered.add(dataSource.getFileId().getOriginalPath());
+                }
+
+                @Override
+                public void renderFileViolations(Iterator<RuleViolation> violations) {
+                    // nothing to do
+                }
+            });
+            for (int i = 30; i > 0; i--) {
+                String name = String.format("file%02d.dummy", i);
+                expected.add(0, name);
+                pmd.files().addSourceFile(FileId.fromPathLikeString(name), "some source");
+            }
+            pmd.performAnalysis();
+        }
+
+        assertEquals(expected, rendered);
+    }
+
     @Test
     void testRulesetLoading() {
         PMDConfiguration config = new PMDConfiguration();
@@ -170,6 +225,67 @@ class PmdAnalysisTest {
         }
     }
 
+    @Test
+    void testIncrementalAnalysisOnlyRunsOutdatedRules(@TempDir Path tempDir) throws IOException {
+        Path source = tempDir.resolve("foo.txt");
+        Files.write(source, listOf("test content foo"));
+        Path cacheFile = tempDir.resolve("pmd.cache");
+
+        Report report = runWithCache(cacheFile, source, new CountingRule("A", "a"), new CountingRule("B", "b"));
+        assertEquals(2, report.getViolations().size());
+        assertEquals(setOf("A", "B"), CountingRule.APPLIED.keySet());
+
+        // B changed and C was added, A is not run again
+        report = runWithCache(cacheFile, source, new CountingRule("A", "a"), new CountingRule("B", "changed"), new CountingRule("C", "c"));
+        assertEquals(3, report.getViolations().size());
+        assertEquals(setOf("B", "C"), CountingRule.APPLIED.keySet());
+        assertThat(CollectionUtil.map(report.getViolations(), RuleViolation::getDescription),
+                   containsInAnyOrder("a", "changed", "c"));
+
+        // nothing changed, the file is not parsed
+        report = runWithCache(cacheFile, source, new CountingRule("A", "a"), new CountingRule("B", "changed"), new CountingRule("C", "c"));
+        assertEquals(3, report.getViolations().size());
+        assertThat(CountingRule.APPLIED.keySet(), empty());
+
+        // C was removed
+        report = runWithCache(cacheFile, source, new CountingRule("A", "a"), new CountingRule("B", "changed"));
+        assertEquals(2, report.getViolations().size());
+        assertThat(CountingRule.APPLIED.keySet(), empty());
+    }
+
+    private static Report runWithCache(Path cacheFile, Path source, Rule... rules) {
+        CountingRule.APPLIED.clear();
+        PMDConfiguration config = new PMDConfiguration();
+        config.setAnalysisCacheLocation(cacheFile.toString());
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            pmd.addRuleSet(RuleSet.create("Test", "desc", null, Collections.emptyList(), Collections.emptyList(), Arrays.asList(rules)));
+            pmd.files().addFile(source, Dummy2LanguageModule.getInstance());
+            Report report = pmd.performAnalysisAndCollectReport();
+            assertThat(report.getProcessingErrors(), empty());
+            return report;
+        }
+    }
+
+    private static class CountingRule extends AbstractRule {
+        static final Map<String, AtomicInteger> APPLIED = new ConcurrentHashMap<>();
+
+        CountingRule() {
+            setLanguage(Dummy2LanguageModule.getInstance());
+        }
+
+        CountingRule(String name, String message) {
+            this();
+            setName(name);
+            setMessage(message);
+        }
+
+        @Override
+        public void apply(Node node, RuleContext ctx) {
+            APPLIED.computeIfAbsent(getName(), k -> new AtomicInteger()).incrementAndGet();
+            ctx.addViolation(node);
+        }
+    }
+
     private static class TestRule extends AbstractRule {
         TestRule() {
             setLanguage(Dummy2LanguageModule.getInstance());
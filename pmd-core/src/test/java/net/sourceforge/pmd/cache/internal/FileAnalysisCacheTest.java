@@ -14,6 +14,7 @@ import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
@@ -25,8 +26,11 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -44,7 +48,9 @@ import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.document.TextFileContent;
 import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.MockRule;
 import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
 import net.sourceforge.pmd.lang.rule.internal.RuleSets;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.InternalApiBridge;
@@ -117,7 +123,7 @@ class FileAnalysisCacheTest {
     @Test
     void testStorePersistsFilesWithViolations() throws IOException {
         final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
-        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        cache.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
         final FileAnalysisListener cacheListener = cache.startFileAnalysis(sourceFile);
         
         cache.isUpToDate(sourceFile);
@@ -133,7 +139,7 @@ class FileAnalysisCacheTest {
         cache.persist();
 
         final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
-        reloadedCache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        reloadedCache.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
         assertTrue(reloadedCache.isUpToDate(sourceFile),
                 "Cache believes unmodified file with violations is not up to date");
 
@@ -147,10 +153,34 @@ class FileAnalysisCacheTest {
         assertEquals(textLocation.getEndColumn(), cachedViolation.getEndColumn());
     }
 
+    @Test
+    void testStorePersistsProcessingTime() throws Exception {
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertEquals(-1, cache.getPreviousProcessingTime(sourceFile.getFileId()));
+
+        cache.isUpToDate(sourceFile);
+        cache.recordProcessingTime(sourceFile, 1_000_000);
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertEquals(1_000_000, reloadedCache.getPreviousProcessingTime(sourceFile.getFileId()));
+
+        // a cache hit keeps the time of the run that actually processed the file
+        assertTrue(reloadedCache.isUpToDate(sourceFile));
+        reloadedCache.recordProcessingTime(sourceFile, 42);
+        reloadedCache.persist();
+
+        final FileAnalysisCache reloadedTwice = new FileAnalysisCache(newCacheFile);
+        reloadedTwice.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertEquals(1_000_000, reloadedTwice.getPreviousProcessingTime(sourceFile.getFileId()));
+    }
+
     @Test
     void testStorePersistsFilesWithViolationsAndProcessingErrors() throws IOException {
         final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
-        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        cache.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
         final FileAnalysisListener cacheListener = cache.startFileAnalysis(sourceFile);
 
         cache.isUpToDate(sourceFile);
@@ -169,7 +199,7 @@ class FileAnalysisCacheTest {
         cache.persist();
 
         final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
-        reloadedCache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        reloadedCache.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
         assertFalse(reloadedCache.isUpToDate(sourceFile),
                 "Cache believes file is up to date although processing errors happened earlier");
 
@@ -195,7 +225,7 @@ class FileAnalysisCacheTest {
         when(mockFile.readContents()).thenReturn(TextFileContent.fromCharSeq("abc"));
 
         final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
-        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        cache.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
 
         try (TextDocument doc0 = TextDocument.create(mockFile)) {
             cache.isUpToDate(doc0);
@@ -213,7 +243,7 @@ class FileAnalysisCacheTest {
 
     private void reloadWithOneViolation(TextFile mockFile) throws IOException {
         final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
-        reloadedCache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(mockFile));
+        reloadedCache.checkValidity(noRules(), mock(ClassLoader.class), setOf(mockFile));
         try (TextDocument doc1 = TextDocument.create(mockFile)) {
             assertTrue(reloadedCache.isUpToDate(doc1),
                        "Cache believes unmodified file with violations is not up to date");
@@ -227,7 +257,7 @@ class FileAnalysisCacheTest {
 
     @Test
     void testCacheValidityWithNoChanges() throws IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = noRules();
         final ClassLoader cl = mock(ClassLoader.class);
 
         setupCacheWithFiles(newCacheFile, rs, cl);
@@ -240,7 +270,7 @@ class FileAnalysisCacheTest {
 
     @Test
     void testCacheValidityWithIrrelevantChanges() throws IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = noRules();
         final URLClassLoader cl = mock(URLClassLoader.class);
         when(cl.getURLs()).thenReturn(new URL[] {});
 
@@ -256,22 +286,70 @@ class FileAnalysisCacheTest {
     }
 
     @Test
-    void testRulesetChangeInvalidatesCache() throws IOException {
-        final RuleSets rs = mock(RuleSets.class);
-        final ClassLoader cl = mock(ClassLoader.class);
+    void testRuleChangeOnlyDiscardsItsViolations() throws Exception {
+        setupCacheWithViolations(mockRule("Unchanged", 1), mockRule("Changed", 1), mockRule("Removed", 1));
 
-        setupCacheWithFiles(newCacheFile, rs, cl);
+        final Rule unchanged = mockRule("Unchanged", 1);
+        final Rule changed = mockRule("Changed", 2);
+        final Rule added = mockRule("Added", 1);
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(rules(unchanged, changed, added), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is not up to date after some rules changed");
+        assertTrue(reloadedCache.hasOutdatedRules());
+        assertTrue(reloadedCache.isRuleUpToDate(unchanged));
+        assertFalse(reloadedCache.isRuleUpToDate(changed), "A rule whose properties changed is up to date");
+        assertFalse(reloadedCache.isRuleUpToDate(added), "A new rule is up to date");
+
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size(), "Only the violations of the unchanged rule should be reused");
+        assertSame(unchanged, cachedViolations.get(0).getRule());
+
+        // the outdated rules are run on the file, their violations are added to the cache
+        try (FileAnalysisListener listener = reloadedCache.startFileAnalysis(sourceFile)) {
+            listener.onRuleViolation(violation(changed));
+            listener.onRuleViolation(violation(added));
+        }
+        reloadedCache.persist();
+
+        final FileAnalysisCache reloadedTwice = new FileAnalysisCache(newCacheFile);
+        reloadedTwice.checkValidity(rules(unchanged, changed, added), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(reloadedTwice.isUpToDate(sourceFile));
+        assertFalse(reloadedTwice.hasOutdatedRules());
+        assertEquals(3, reloadedTwice.getCachedViolations(sourceFile).size());
+    }
+
+    @Test
+    void testRemovedRuleDoesNotInvalidateCache() throws Exception {
+        setupCacheWithViolations(mockRule("Kept", 1), mockRule("Removed", 1));
 
         final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
-        when(rs.getChecksum()).thenReturn(1L);
-        reloadedCache.checkValidity(rs, cl, Collections.emptySet());
-        assertFalse(reloadedCache.isUpToDate(sourceFile),
-                "Cache believes unmodified file is up to date after ruleset changed");
+        reloadedCache.checkValidity(rules(mockRule("Kept", 1)), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile),
+                "Cache believes unmodified file is not up to date after a rule was removed");
+        assertFalse(reloadedCache.hasOutdatedRules(), "No rule needs to be run after a rule was removed");
+
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size(), "The violations of the removed rule should be discarded");
+        assertEquals("Kept", cachedViolations.get(0).getRule().getName());
+    }
+
+    @Test
+    void testRuleSetExclusionChangeInvalidatesItsRules() throws Exception {
+        setupCacheWithViolations(mockRule("Rule", 1));
+
+        final Rule rule = mockRule("Rule", 1);
+        final RuleSets ruleSets = new RuleSets(RuleSet.create("Test", "desc", null, listOf(Pattern.compile(".*Source.*")),
+                                                              Collections.emptyList(), listOf(rule)));
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(ruleSets, mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertFalse(reloadedCache.isRuleUpToDate(rule), "A rule whose ruleset excludes other files is up to date");
+        assertTrue(reloadedCache.getCachedViolations(sourceFile).isEmpty());
     }
 
     @Test
     void testAuxClasspathNonExistingAuxclasspathEntriesIgnored() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = noRules();
         final URLClassLoader cl = mock(URLClassLoader.class);
         when(cl.getURLs()).thenReturn(new URL[] { tempFolder.resolve("non-existing-dir").toFile().toURI().toURL(), });
 
@@ -286,7 +364,7 @@ class FileAnalysisCacheTest {
 
     @Test
     void testAuxClasspathChangeWithoutDFAorTypeResolutionDoesNotInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = noRules();
         final URLClassLoader cl = mock(URLClassLoader.class);
         when(cl.getURLs()).thenReturn(new URL[] { });
 
@@ -301,7 +379,7 @@ class FileAnalysisCacheTest {
 
     @Test
     void testAuxClasspathChangeInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = spy(noRules());
         final URLClassLoader cl = mock(URLClassLoader.class);
         when(cl.getURLs()).thenReturn(new URL[] { });
 
@@ -324,7 +402,7 @@ class FileAnalysisCacheTest {
 
     @Test
     void testAuxClasspathJarContentsChangeInvalidatesCache() throws MalformedURLException, IOException {
-        final RuleSets rs = mock(RuleSets.class);
+        final RuleSets rs = spy(noRules());
         final URLClassLoader cl = mock(URLClassLoader.class);
 
         final File classpathFile = Files.createTempFile(tempFolder, null, "foo.class").toFile();
@@ -348,7 +426,7 @@ class FileAnalysisCacheTest {
     @Test
     void testClasspathNonExistingEntryIsIgnored() throws Exception {
         restoreSystemProperties(() -> {
-            final RuleSets rs = mock(RuleSets.class);
+            final RuleSets rs = noRules();
             final ClassLoader cl = mock(ClassLoader.class);
 
             System.setProperty("java.class.path", System.getProperty("java.class.path") + File.pathSeparator
@@ -366,7 +444,7 @@ class FileAnalysisCacheTest {
     @Test
     void testClasspathChangeInvalidatesCache() throws Exception {
         restoreSystemProperties(() -> {
-            final RuleSets rs = mock(RuleSets.class);
+            final RuleSets rs = noRules();
             final ClassLoader cl = mock(ClassLoader.class);
 
             final File classpathFile = Files.createTempFile(tempFolder, null, "foo.class").toFile();
@@ -387,7 +465,7 @@ class FileAnalysisCacheTest {
     @Test
     void testClasspathContentsChangeInvalidatesCache() throws Exception {
         restoreSystemProperties(() -> {
-            final RuleSets rs = mock(RuleSets.class);
+            final RuleSets rs = noRules();
             final ClassLoader cl = mock(ClassLoader.class);
 
             final File classpathFile = Files.createTempFile(tempFolder, null, "foo.class").toFile();
@@ -411,7 +489,7 @@ class FileAnalysisCacheTest {
     @Test
     void testWildcardClasspath() throws Exception {
         restoreSystemProperties(() -> {
-            final RuleSets rs = mock(RuleSets.class);
+            final RuleSets rs = noRules();
             final ClassLoader cl = mock(ClassLoader.class);
             setupCacheWithFiles(newCacheFile, rs, cl);
 
@@ -430,7 +508,7 @@ class FileAnalysisCacheTest {
     @Test
     void testWildcardClasspathContentsChangeInvalidatesCache() throws Exception {
         restoreSystemProperties(() -> {
-            final RuleSets rs = mock(RuleSets.class);
+            final RuleSets rs = noRules();
             final ClassLoader cl = mock(ClassLoader.class);
 
             // Prepare two jar files
@@ -461,17 +539,17 @@ class FileAnalysisCacheTest {
 
     @Test
     void testFileIsUpToDate() throws IOException {
-        setupCacheWithFiles(newCacheFile, mock(RuleSets.class), mock(ClassLoader.class));
+        setupCacheWithFiles(newCacheFile, noRules(), mock(ClassLoader.class));
 
         final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
-        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        cache.checkValidity(noRules(), mock(ClassLoader.class), setOf(sourceFileBackend));
         assertTrue(cache.isUpToDate(sourceFile),
                 "Cache believes a known, unchanged file is not up to date");
     }
 
     @Test
     void testFileIsNotUpToDateWhenEdited() throws IOException {
-        setupCacheWithFiles(newCacheFile, mock(RuleSets.class), mock(ClassLoader.class));
+        setupCacheWithFiles(newCacheFile, noRules(), mock(ClassLoader.class));
 
         // Edit the file
         TextFileContent text = TextFileContent.fromCharSeq("some text");
@@ -484,6 +562,136 @@ class FileAnalysisCacheTest {
                 "Cache believes a known, changed file is up to date");
     }
 
+    @Test
+    void testUnchangedRecordsAreKeptWhenAppending() throws IOException {
+        final Path sourcePath = tempFolder.resolve("Source.java");
+        runWithOneViolation(sourcePath);
+        final byte[] initialContents = Files.readAllBytes(newCacheFile.toPath());
+
+        // a new file is appended, the record of the unchanged file is kept in place
+        final Path otherPath = tempFolder.resolve("Other.java");
+        Files.write(otherPath, listOf("other text"));
+        runWithOneViolation(sourcePath, otherPath);
+
+        final byte[] updatedContents = Files.readAllBytes(newCacheFile.toPath());
+        assertTrue(updatedContents.length > initialContents.length, "The cache should have been appended to");
+        // only the index offset in the header differs
+        int differences = 0;
+        for (int i = 0; i < initialContents.length; i++) {
+            if (initialContents[i] != updatedContents[i]) {
+                differences++;
+            }
+        }
+        assertTrue(differences <= Long.BYTES, "Records were rewritten, " + differences + " bytes differ");
+
+        reloadWithOneViolation(textFile(sourcePath));
+        reloadWithOneViolation(textFile(otherPath));
+    }
+
+    @Test
+    void testCacheIsCompactedWhenMostlyGarbage() throws IOException {
+        final Path sourcePath = tempFolder.resolve("Source.java");
+        runWithOneViolation(sourcePath);
+        final long initialSize = newCacheFile.length();
+
+        // the file changes, its previous record becomes garbage
+        Files.write(sourcePath, listOf("some text"));
+        runWithOneViolation(sourcePath);
+        assertTrue(newCacheFile.length() > initialSize, "The cache should have been appended to");
+
+        // the file changes again, there is more garbage than live records
+        Files.write(sourcePath, listOf("other text"));
+        runWithOneViolation(sourcePath);
+        assertEquals(initialSize, newCacheFile.length(), "The cache should have been compacted");
+
+        reloadWithOneViolation(textFile(sourcePath));
+    }
+
+    @Test
+    void testTruncatedCacheIsNotUsed() throws IOException {
+        final Path sourcePath = tempFolder.resolve("Source.java");
+        runWithOneViolation(sourcePath);
+        final byte[] contents = Files.readAllBytes(newCacheFile.toPath());
+        Files.write(newCacheFile.toPath(), Arrays.copyOf(contents, contents.length - 3));
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(noRules(), mock(ClassLoader.class), setOf(textFile(sourcePath)));
+        try (TextDocument doc = TextDocument.create(textFile(sourcePath))) {
+            assertFalse(reloadedCache.isUpToDate(doc), "A truncated cache should not be used");
+        }
+
+        // the cache is rewritten
+        runWithOneViolation(sourcePath);
+        reloadWithOneViolation(textFile(sourcePath));
+    }
+
+    @Test
+    void testUriHashIsStable() {
+        // the hash is persisted in the index
+        assertEquals(0xcbf29ce484222325L, FileAnalysisCache.uriHash(""));
+        assertEquals(0xaf63dc4c8601ec8cL, FileAnalysisCache.uriHash("a"));
+    }
+
+    private TextFile textFile(Path path) {
+        return TextFile.forPath(path, Charset.defaultCharset(), dummyVersion);
+    }
+
+    /** Analyses the files with the cache, reporting one violation on those that are not up to date. */
+    private void runWithOneViolation(Path... paths) throws IOException {
+        final Rule rule = mock(Rule.class, Mockito.RETURNS_SMART_NULLS);
+        when(rule.getLanguage()).thenReturn(mock(Language.class));
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        final List<TextFile> files = Arrays.stream(paths).map(this::textFile).collect(Collectors.toList());
+        cache.checkValidity(noRules(), mock(ClassLoader.class), files);
+        for (TextFile file : files) {
+            try (TextDocument doc = TextDocument.create(file);
+                 FileAnalysisListener listener = cache.startFileAnalysis(doc)) {
+                if (!cache.isUpToDate(doc)) {
+                    listener.onRuleViolation(InternalApiBridge.createRuleViolation(
+                        rule, FileLocation.range(doc.getFileId(), TextRange2d.range2d(1, 2, 3, 4)),
+                        "message", Collections.emptyMap()));
+                }
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+        cache.persist();
+    }
+
+    private void setupCacheWithViolations(Rule... rules) throws Exception {
+        // Setup a cache file with one violation per rule on Source.java
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(rules(rules), mock(ClassLoader.class), setOf(sourceFileBackend));
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            cache.isUpToDate(sourceFile);
+            for (Rule rule : rules) {
+                listener.onRuleViolation(violation(rule));
+            }
+        }
+        cache.persist();
+    }
+
+    private RuleViolation violation(Rule rule) {
+        return InternalApiBridge.createRuleViolation(rule, FileLocation.range(sourceFile.getFileId(), TextRange2d.range2d(1, 2, 3, 4)),
+                                                     "message", Collections.emptyMap());
+    }
+
+    private static Rule mockRule(String name, int propertyValue) {
+        final Rule rule = new MockRule(name, "description", "message", "Test");
+        rule.setProperty(MockRule.PROP, propertyValue);
+        return rule;
+    }
+
+    private static RuleSets rules(Rule... rules) {
+        return new RuleSets(RuleSet.create("Test", "desc", null, Collections.emptyList(),
+                                           Collections.emptyList(), Arrays.asList(rules)));
+    }
+
+    private static RuleSets noRules() {
+        return new RuleSets(Collections.emptyList());
+    }
+
     private void setupCacheWithFiles(final File cacheFile,
                                      final RuleSets ruleSets,
                                      final ClassLoader classLoader) throws IOException {
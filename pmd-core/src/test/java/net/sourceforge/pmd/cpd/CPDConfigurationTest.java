@@ -38,6 +38,12 @@ class CPDConfigurationTest {
         }
     }
 
+    @Test
+    void testDefaultThreads() {
+        // same default as the --threads CLI option
+        assertEquals(1, new CPDConfiguration().getThreads());
+    }
+
     @Test
     void testRendererEncoding() {
         CPDConfiguration conf = new CPDConfiguration();
@@ -19,12 +19,15 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -261,6 +264,81 @@ class CpdAnalysisTest {
         verifyNoMoreInteractions(reporter);
     }
 
+    @Test
+    void parallelTokenizationShouldProduceSameReport() throws IOException {
+        // files that share random blocks of lines, one of them can't be lexed
+        Random random = new Random(42);
+        String[] words = { "foo", "bar", "baz", "qux", "(", ")", "{", "}", ";", "1", "\"s\"" };
+        List<String> blocks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            StringBuilder block = new StringBuilder();
+            for (int line = 0; line < 5 + random.nextInt(10); line++) {
+                for (int word = 0; word < 1 + random.nextInt(6); word++) {
+                    block.append(words[random.nextInt(words.length)]).append(' ');
+                }
+                block.append('\n');
+            }
+            blocks.add(block.toString());
+        }
+        for (int i = 0; i < 40; i++) {
+            StringBuilder file = new StringBuilder();
+            for (int block = 0; block < 3 + random.nextInt(5); block++) {
+                file.append(blocks.get(random.nextInt(blocks.size())));
+                if (i == 17 && block == 2) {
+                    file.append(DummyLanguageModule.CPD_THROW_LEX_EXCEPTION).append('\n');
+                }
+            }
+            Files.write(tempDir.resolve("file" + i + ".dummy"), file.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        config.setInputPathList(Arrays.asList(tempDir));
+        config.setReporter(mock(PmdReporter.class));
+
+        config.setThreads(0);
+        CPDReport serialReport = runCpd();
+        config.setThreads(4);
+        CPDReport parallelReport = runCpd();
+
+        assertFalse(serialReport.getMatches().isEmpty());
+        assertEquals(1, serialReport.getProcessingErrors().size());
+        assertEquals(serialReport.getNumberOfTokensPerFile(), parallelReport.getNumberOfTokensPerFile());
+        assertEquals(serialReport.getProcessingErrors().get(0).getFileId(), parallelReport.getProcessingErrors().get(0).getFileId());
+        assertEquals(render(serialReport), render(parallelReport));
+    }
+
+    @Test
+    void interruptShouldBeRestored() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            Files.write(tempDir.resolve("file" + i + ".dummy"), "foo bar baz\n".getBytes(StandardCharsets.UTF_8));
+        }
+        config.setInputPathList(Arrays.asList(tempDir));
+        PmdReporter reporter = mock(PmdReporter.class);
+        config.setReporter(reporter);
+        config.setThreads(2);
+
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            // the main thread is interrupted while waiting for the tokens
+            Thread.currentThread().interrupt();
+            cpd.performAnalysis();
+            assertTrue(Thread.interrupted(), "The interrupt flag should be restored");
+        }
+        verify(reporter).errorEx(eq("Interrupted while running CPD"), any(InterruptedException.class));
+    }
+
+    private CPDReport runCpd() throws IOException {
+        AtomicReference<CPDReport> report = new AtomicReference<>();
+        try (CpdAnalysis cpd = CpdAnalysis.create(config)) {
+            cpd.performAnalysis(report::set);
+        }
+        assertNotNull(report.get(), "CPD aborted early without producing a report");
+        return report.get();
+    }
+
+    private static String render(CPDReport report) throws IOException {
+        StringWriter writer = new StringWriter();
+        new SimpleRenderer().render(report, writer);
+        return writer.toString();
+    }
+
     @Test
     void duplicatedFilesShouldBeSkipped() throws IOException {
         String filename = "file1.dummy";
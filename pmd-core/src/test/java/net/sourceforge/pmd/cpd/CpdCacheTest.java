@@ -0,0 +1,106 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguagePropertyBundle;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
+class CpdCacheTest {
+
+    private static final FileId FILE = FileId.fromPathLikeString("Foo.dummy");
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void testTokensAreReadBack() {
+        Path cacheFile = tempDir.resolve("cpd.cache");
+        Tokens tokens = lex("foo", "bar", "foo", "\u00e9t\u00e9");
+
+        CpdCache cache = new CpdCache(cacheFile);
+        cache.load();
+        assertNull(cache.getTokens(FILE, 1, 2));
+        cache.putTokens(FILE, 1, 2, tokens);
+        cache.persist();
+
+        CpdCache reloaded = new CpdCache(cacheFile);
+        reloaded.load();
+        Tokens cached = reloaded.getTokens(FILE, 1, 2);
+        assertNotNull(cached);
+        assertEquals(tokens.size(), cached.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenEntry expected = tokens.getToken(i);
+            TokenEntry actual = cached.getToken(i);
+            assertEquals(tokens.imageFromId(expected.getIdentifier()), cached.imageFromId(actual.getIdentifier()));
+            assertEquals(expected.getFileId(), actual.getFileId());
+            assertEquals(expected.getBeginLine(), actual.getBeginLine());
+            assertEquals(expected.getBeginColumn(), actual.getBeginColumn());
+            assertEquals(expected.getEndLine(), actual.getEndLine());
+            assertEquals(expected.getEndColumn(), actual.getEndColumn());
+        }
+    }
+
+    @Test
+    void testChangedChecksumsAreMisses() {
+        Path cacheFile = tempDir.resolve("cpd.cache");
+        CpdCache cache = new CpdCache(cacheFile);
+        cache.putTokens(FILE, 1, 2, lex("foo"));
+        cache.persist();
+
+        CpdCache reloaded = new CpdCache(cacheFile);
+        reloaded.load();
+        assertNull(reloaded.getTokens(FILE, 3, 2), "file changed");
+        assertNull(reloaded.getTokens(FILE, 1, 3), "lexer configuration changed");
+        assertNull(reloaded.getTokens(FileId.fromPathLikeString("Bar.dummy"), 1, 2), "other file");
+    }
+
+    @Test
+    void testMalformedCacheIsIgnored() throws IOException {
+        Path cacheFile = tempDir.resolve("cpd.cache");
+        Files.write(cacheFile, new byte[] { 0, 3, 'f', 'o' });
+
+        CpdCache cache = new CpdCache(cacheFile);
+        cache.load();
+        assertNull(cache.getTokens(FILE, 1, 2));
+    }
+
+    @Test
+    void testLexerChecksumDependsOnProperties() {
+        DummyLanguageModule language = DummyLanguageModule.getInstance();
+        LanguagePropertyBundle properties = language.newPropertyBundle();
+        long checksum = CpdCache.lexerChecksum(language, properties);
+        assertEquals(checksum, CpdCache.lexerChecksum(language, language.newPropertyBundle()));
+
+        properties.setProperty(CpdLanguageProperties.CPD_ANONYMIZE_LITERALS, true);
+        assertNotEquals(checksum, CpdCache.lexerChecksum(language, properties));
+    }
+
+    private static Tokens lex(String... images) {
+        Tokens tokens = new Tokens();
+        TextDocument doc = TextDocument.readOnlyString("", FILE, DummyLanguageModule.getInstance().getDefaultVersion());
+        try (TokenFactory tf = Tokens.factoryForFile(doc, tokens)) {
+            int line = 1;
+            for (String image : images) {
+                tf.recordToken(image, line, 1, line, 1 + image.length());
+                line++;
+            }
+        }
+        return tokens;
+    }
+}
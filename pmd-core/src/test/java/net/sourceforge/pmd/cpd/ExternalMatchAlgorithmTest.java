@@ -0,0 +1,96 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
+/**
+ * Compares the matches of {@link ExternalMatchAlgorithm} with those
+ * of {@link MatchAlgorithm}.
+ */
+class ExternalMatchAlgorithmTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void testSameMatchesAsInMemory() throws IOException {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 20; iteration++) {
+            int minTileSize = 3 + random.nextInt(10);
+            int alphabet = 2 + random.nextInt(200);
+            List<int[]> files = new ArrayList<>();
+            int numFiles = 1 + random.nextInt(20);
+            for (int f = 0; f < numFiles; f++) {
+                int[] file = new int[random.nextInt(1000)];
+                for (int i = 0; i < file.length; i++) {
+                    file[i] = random.nextInt(alphabet);
+                }
+                files.add(file);
+            }
+
+            List<String> expected = describe(new MatchAlgorithm(tokensOf(files, new Tokens()), minTileSize)
+                                                 .findMatches(new CPDNullListener(), null));
+            try (TokenSpillFile spill = new TokenSpillFile(tempDir)) {
+                Tokens tokens = tokensOf(files, new Tokens(spill));
+                spill.finishWriting();
+                // small partitions, so that there are many of them
+                for (int threads : new int[] { 1, 4 }) {
+                    List<Match> matches = new ExternalMatchAlgorithm(tokens, minTileSize, threads, tempDir, 256)
+                        .findMatches(new CPDNullListener(), null);
+                    assertEquals(expected, describe(matches), "Minimum tile size " + minTileSize + ", threads " + threads);
+                }
+            }
+        }
+        try (Stream<Path> remaining = Files.list(tempDir)) {
+            assertEquals(0, remaining.count(), "Temporary files should be deleted");
+        }
+    }
+
+    private static Tokens tokensOf(List<int[]> files, Tokens tokens) {
+        for (int f = 0; f < files.size(); f++) {
+            TextDocument doc = TextDocument.readOnlyString("", FileId.fromPathLikeString("File" + f + ".dummy"),
+                                                           DummyLanguageModule.getInstance().getDefaultVersion());
+            // lex each file separately like CpdAnalysis, as spilled tokens can only be appended
+            Tokens fileTokens = new Tokens();
+            try (TokenFactory tf = Tokens.factoryForFile(doc, fileTokens)) {
+                int line = 1;
+                for (int token : files.get(f)) {
+                    tf.recordToken("t" + token, line, 1, line, 2);
+                    line++;
+                }
+            }
+            tokens.appendFile(fileTokens);
+        }
+        return tokens;
+    }
+
+    private static List<String> describe(List<Match> matches) {
+        List<String> result = new ArrayList<>();
+        for (Match match : matches) {
+            StringBuilder sb = new StringBuilder().append(match.getTokenCount()).append(':');
+            for (Mark mark : match) {
+                sb.append(' ').append(mark.getBeginTokenIndex()).append('-').append(mark.getEndTokenIndex());
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+}
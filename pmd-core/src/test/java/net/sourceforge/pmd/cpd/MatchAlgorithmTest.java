@@ -10,8 +10,12 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 
@@ -110,4 +114,102 @@ class MatchAlgorithmTest {
         assertEquals(6, mark3.getLocation().getStartLine());
         assertEquals(fileName, mark3.getLocation().getFileId());
     }
+
+    /**
+     * Buckets are processed by several threads: the matches must be the
+     * same, in the same order, as with a single thread.
+     */
+    @Test
+    void testParallelMatchesAreSameAsSequential() {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 20; iteration++) {
+            int minTileSize = 3 + random.nextInt(10);
+            int alphabet = 2 + random.nextInt(200);
+            List<int[]> files = new ArrayList<>();
+            int numFiles = 1 + random.nextInt(20);
+            for (int f = 0; f < numFiles; f++) {
+                int[] file = new int[random.nextInt(1000)];
+                for (int i = 0; i < file.length; i++) {
+                    file[i] = random.nextInt(alphabet);
+                }
+                files.add(file);
+            }
+
+            List<Match> sequential = new MatchAlgorithm(tokensOf(files), minTileSize, 1).findMatches(new CPDNullListener(), null);
+            List<Match> parallel = new MatchAlgorithm(tokensOf(files), minTileSize, 4).findMatches(new CPDNullListener(), null);
+            assertEquals(describe(sequential), describe(parallel), "Minimum tile size " + minTileSize);
+        }
+    }
+
+    /**
+     * The groups built with the open addressing table are the same as
+     * the groups of tokens with the same hash built with a map.
+     */
+    @Test
+    void testMarkGroupsAreGroupsOfEqualHashes() {
+        Random random = new Random(7);
+        for (int iteration = 0; iteration < 20; iteration++) {
+            int minTileSize = 1 + random.nextInt(5);
+            // small alphabets make many groups, large ones many collisions in the table
+            int alphabet = 2 + random.nextInt(iteration < 10 ? 5 : 5000);
+            List<int[]> files = new ArrayList<>();
+            for (int f = 0; f < 1 + random.nextInt(5); f++) {
+                int[] file = new int[random.nextInt(3000)];
+                for (int i = 0; i < file.length; i++) {
+                    file[i] = random.nextInt(alphabet);
+                }
+                files.add(file);
+            }
+            MatchAlgorithm algorithm = new MatchAlgorithm(tokensOf(files), minTileSize);
+
+            Map<Integer, List<Integer>> expected = new HashMap<>();
+            algorithm.computeHashes((token, hash) -> expected.computeIfAbsent(hash, h -> new ArrayList<>()).add(0, token));
+            List<List<Integer>> expectedGroups = new ArrayList<>();
+            for (List<Integer> group : expected.values()) {
+                if (group.size() >= 2) {
+                    expectedGroups.add(group);
+                }
+            }
+            expectedGroups.sort((a, b) -> Integer.compare(a.get(0), b.get(0)));
+
+            MatchAlgorithm.MarkGroups markGroups = algorithm.hash();
+            List<List<Integer>> actualGroups = new ArrayList<>();
+            for (int head : markGroups.heads) {
+                List<Integer> group = new ArrayList<>();
+                for (int mark = head; mark >= 0; mark = markGroups.next[mark]) {
+                    group.add(mark);
+                }
+                actualGroups.add(group);
+            }
+            assertEquals(expectedGroups, actualGroups, "Iteration " + iteration);
+        }
+    }
+
+    private static Tokens tokensOf(List<int[]> files) {
+        Tokens tokens = new Tokens();
+        for (int f = 0; f < files.size(); f++) {
+            TextDocument doc = TextDocument.readOnlyString("", FileId.fromPathLikeString("File" + f + ".dummy"),
+                                                           DummyLanguageModule.getInstance().getDefaultVersion());
+            try (TokenFactory tf = Tokens.factoryForFile(doc, tokens)) {
+                int line = 1;
+                for (int token : files.get(f)) {
+                    tf.recordToken("t" + token, line, 1, line, 2);
+                    line++;
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static List<String> describe(List<Match> matches) {
+        List<String> result = new ArrayList<>();
+        for (Match match : matches) {
+            StringBuilder sb = new StringBuilder().append(match.getTokenCount()).append(':');
+            for (Mark mark : match) {
+                sb.append(' ').append(mark.getBeginTokenIndex());
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,207 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
+class NearMissMatchAlgorithmTest {
+
+    private static final int MIN_TILE_SIZE = 30;
+
+    @Test
+    void testNearMissIsFound() {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 20; iteration++) {
+            List<Integer> block = randomTokens(random, 60 + random.nextInt(100), 0);
+            List<Integer> copy = new ArrayList<>(block);
+            // insert, remove or change a few tokens
+            for (int edit = 0; edit < 3; edit++) {
+                int index = random.nextInt(copy.size());
+                switch (edit) {
+                case 0:
+                    copy.add(index, 10_000);
+                    break;
+                case 1:
+                    copy.remove(index);
+                    break;
+                default:
+                    copy.set(index, 20_000);
+                }
+            }
+            List<Integer> first = randomTokens(random, random.nextInt(50), 1000);
+            first.addAll(block);
+
+            List<Match> matches = findMatches(0.8, first, copy, randomTokens(random, 300, 2000));
+            assertEquals(1, matches.size(), "Iteration " + iteration);
+            Match match = matches.get(0);
+            assertEquals("File0.dummy", match.getFirstMark().getLocation().getFileId().getOriginalPath());
+            assertEquals("File1.dummy", match.getSecondMark().getLocation().getFileId().getOriginalPath());
+            assertTrue(match.getTokenCount() >= block.size() / 2, "Most of the block should be matched");
+            assertTrue(match.getSimilarity() >= 0.8 && match.getSimilarity() < 1, "Similarity " + match.getSimilarity());
+        }
+    }
+
+    @Test
+    void testExactDuplicate() {
+        Random random = new Random(1);
+        List<Integer> block = randomTokens(random, 100, 0);
+
+        List<Match> matches = findMatches(0.9, block, block);
+        assertEquals(1, matches.size());
+        Match match = matches.get(0);
+        assertEquals(100, match.getTokenCount());
+        assertEquals(1.0, match.getSimilarity());
+        for (Mark mark : match) {
+            assertEquals(99, mark.getEndTokenIndex() - mark.getBeginTokenIndex());
+        }
+    }
+
+    @Test
+    void testMinimumSimilarity() {
+        Random random = new Random(2);
+        List<Integer> block = randomTokens(random, 100, 0);
+        List<Integer> copy = new ArrayList<>(block);
+        // change one token in 25
+        for (int i = 0; i < copy.size(); i += 25) {
+            copy.set(i, 10_000 + i);
+        }
+
+        assertFalse(findMatches(0.9, block, copy).isEmpty());
+        assertTrue(findMatches(0.99, block, copy).isEmpty());
+    }
+
+    @Test
+    void testUnrelatedFiles() {
+        Random random = new Random(3);
+        List<Integer> file = randomTokens(random, 500, 0);
+        List<Integer> other = randomTokens(random, 500, 0);
+
+        assertTrue(findMatches(0.8, file, other).isEmpty());
+    }
+
+    @Test
+    void testLongRegionsAreSimilarEnough() {
+        Random random = new Random(4);
+        for (double minimumSimilarity : new double[] {0.3, 0.5, 0.8}) {
+            List<Integer> block = randomTokens(random, 1000, 0);
+            List<Integer> copy = new ArrayList<>(block);
+            // the copy drifts away from the block, the merged regions are
+            // longer than the bound of the comparison
+            for (int i = 0; i < copy.size(); i += 10 - i / 200) {
+                copy.set(i, 10_000 + i);
+            }
+            List<List<Integer>> files = Arrays.asList(block, copy, randomTokens(random, 300, 2000));
+
+            List<Match> matches = findMatches(minimumSimilarity, files);
+            assertFalse(matches.isEmpty(), "Similarity " + minimumSimilarity);
+            for (Match match : matches) {
+                assertSimilarEnough(minimumSimilarity, files, match);
+            }
+        }
+    }
+
+    @Test
+    void testLowSimilarityWithPartialCopies() {
+        Random random = new Random(5);
+        for (int iteration = 0; iteration < 10; iteration++) {
+            List<Integer> block = randomTokens(random, 400, 0);
+            // only the start of the block is copied, with many changes, then unrelated tokens follow
+            List<Integer> copy = new ArrayList<>(block.subList(0, 100 + random.nextInt(200)));
+            for (int i = random.nextInt(4); i < copy.size(); i += 3 + random.nextInt(4)) {
+                copy.set(i, 10_000 + i);
+            }
+            copy.addAll(randomTokens(random, 300, 2000));
+            List<List<Integer>> files = Arrays.asList(block, copy);
+
+            for (Match match : findMatches(0.3, files)) {
+                assertSimilarEnough(0.3, files, match);
+            }
+        }
+    }
+
+    /**
+     * Checks the reported similarity, and that the tokens of the marks are
+     * indeed that similar.
+     */
+    private static void assertSimilarEnough(double minimumSimilarity, List<List<Integer>> files, Match match) {
+        assertTrue(match.getSimilarity() >= minimumSimilarity, "Similarity " + match.getSimilarity());
+        List<Integer> first = markedTokens(files, match.getFirstMark());
+        List<Integer> second = markedTokens(files, match.getSecondMark());
+        assertEquals(match.getTokenCount(), first.size());
+        double similarity = 1 - (double) editDistance(first, second) / Math.max(first.size(), second.size());
+        assertTrue(similarity >= minimumSimilarity, "Actual similarity " + similarity + " of " + match);
+    }
+
+    private static List<Integer> markedTokens(List<List<Integer>> files, Mark mark) {
+        FileLocation location = mark.getLocation();
+        String path = location.getFileId().getOriginalPath();
+        int file = Integer.parseInt(path.substring("File".length(), path.indexOf('.')));
+        // there is one token per line
+        return files.get(file).subList(location.getStartLine() - 1, location.getEndLine());
+    }
+
+    private static int editDistance(List<Integer> a, List<Integer> b) {
+        int[] prev = new int[b.size() + 1];
+        int[] cur = new int[b.size() + 1];
+        for (int j = 0; j <= b.size(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.size(); i++) {
+            cur[0] = i;
+            for (int j = 1; j <= b.size(); j++) {
+                int substitution = prev[j - 1] + (a.get(i - 1).equals(b.get(j - 1)) ? 0 : 1);
+                cur[j] = Math.min(substitution, Math.min(prev[j], cur[j - 1]) + 1);
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return prev[b.size()];
+    }
+
+    private static List<Integer> randomTokens(Random random, int length, int offset) {
+        List<Integer> tokens = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            tokens.add(offset + random.nextInt(500));
+        }
+        return tokens;
+    }
+
+    @SafeVarargs
+    private static List<Match> findMatches(double minimumSimilarity, List<Integer>... files) {
+        return findMatches(minimumSimilarity, Arrays.asList(files));
+    }
+
+    private static List<Match> findMatches(double minimumSimilarity, List<List<Integer>> files) {
+        Tokens tokens = new Tokens();
+        for (int f = 0; f < files.size(); f++) {
+            TextDocument doc = TextDocument.readOnlyString("", FileId.fromPathLikeString("File" + f + ".dummy"),
+                                                           DummyLanguageModule.getInstance().getDefaultVersion());
+            try (TokenFactory tf = Tokens.factoryForFile(doc, tokens)) {
+                int line = 1;
+                for (int token : files.get(f)) {
+                    tf.recordToken("t" + token, line, 1, line, 2);
+                    line++;
+                }
+            }
+        }
+        return new NearMissMatchAlgorithm(tokens, MIN_TILE_SIZE, minimumSimilarity)
+            .findMatches(new CPDNullListener(), null);
+    }
+}
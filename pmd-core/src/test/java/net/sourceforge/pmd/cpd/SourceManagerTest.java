@@ -0,0 +1,96 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextFileContent;
+
+class SourceManagerTest {
+
+    @Test
+    void testPreloadedSlicesReadEachFileOnce() throws Exception {
+        Tokens tokens = new Tokens();
+        List<Mark> marks = new ArrayList<>();
+        List<CountingTextFile> files = new ArrayList<>();
+        // more files than the recent documents, used in turn
+        for (int i = 0; i < 10; i++) {
+            files.add(new CountingTextFile(FileId.fromPathLikeString("file" + i)));
+        }
+        for (int line = 1; line <= 5; line++) {
+            for (CountingTextFile file : files) {
+                marks.add(new Mark(tokens.addToken("public", file.getFileId(), line, 1, line + 2, 1)));
+            }
+        }
+
+        List<TextFile> referenceFiles = new ArrayList<>();
+        for (CountingTextFile file : files) {
+            referenceFiles.add(TextFile.forCharSeq(CpdTestUtils.DUMMY_FILE_CONTENT, file.getFileId(), file.getLanguageVersion()));
+        }
+        List<String> expected = new ArrayList<>();
+        try (SourceManager reference = new SourceManager(referenceFiles)) {
+            for (Mark mark : marks) {
+                expected.add(reference.getSlice(mark).toString());
+            }
+        }
+
+        try (SourceManager sourceManager = new SourceManager(files)) {
+            sourceManager.retainRecentDocumentsOnly();
+            sourceManager.preloadSlices(marks);
+            List<String> actual = new ArrayList<>();
+            for (Mark mark : marks) {
+                actual.add(sourceManager.getSlice(mark).toString());
+            }
+            assertEquals(expected, actual);
+        }
+        for (CountingTextFile file : files) {
+            assertEquals(1, file.reads.get(), "Reads of " + file.getFileId());
+        }
+    }
+
+    /** Counts how many times the file is read. */
+    private static final class CountingTextFile implements TextFile {
+
+        private final TextFile delegate;
+        private final AtomicInteger reads = new AtomicInteger();
+
+        CountingTextFile(FileId fileId) {
+            LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+            this.delegate = TextFile.forCharSeq(CpdTestUtils.DUMMY_FILE_CONTENT, fileId, lv);
+        }
+
+        @Override
+        public LanguageVersion getLanguageVersion() {
+            return delegate.getLanguageVersion();
+        }
+
+        @Override
+        public FileId getFileId() {
+            return delegate.getFileId();
+        }
+
+        @Override
+        public TextFileContent readContents() throws IOException {
+            reads.incrementAndGet();
+            return delegate.readContents();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
+/**
+ * Compares the matches of {@link SuffixArrayMatchAlgorithm} with those
+ * of {@link MatchAlgorithm}.
+ */
+class SuffixArrayMatchAlgorithmTest {
+
+    private static final int ITERATIONS = 500;
+
+    /**
+     * Files made of unique tokens and copies of whole blocks: both
+     * algorithms must report exactly the same matches.
+     */
+    @Test
+    void testSameMatchesForCopiedBlocks() {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            int minTileSize = 3 + random.nextInt(6);
+            int nextToken = 0;
+            List<int[]> blocks = new ArrayList<>();
+            int numBlocks = 1 + random.nextInt(5);
+            for (int b = 0; b < numBlocks; b++) {
+                int[] block = new int[minTileSize + random.nextInt(20)];
+                for (int i = 0; i < block.length; i++) {
+                    block[i] = nextToken++;
+                }
+                blocks.add(block);
+            }
+
+            List<List<Integer>> files = new ArrayList<>();
+            int numFiles = 1 + random.nextInt(4);
+            for (int f = 0; f < numFiles; f++) {
+                List<Integer> file = new ArrayList<>();
+                int parts = 1 + random.nextInt(4);
+                for (int p = 0; p < parts; p++) {
+                    file.add(nextToken++);
+                    if (random.nextBoolean()) {
+                        for (int token : blocks.get(random.nextInt(numBlocks))) {
+                            file.add(token);
+                        }
+                    }
+                }
+                file.add(nextToken++);
+                files.add(file);
+            }
+
+            assertEquals(describe(findMatches(files, minTileSize, MatchAlgorithm::new)),
+                         describe(findMatches(files, minTileSize, SuffixArrayMatchAlgorithm::new)),
+                         "Files " + files + ", minimum tile size " + minTileSize);
+        }
+    }
+
+    /**
+     * Files of random tokens from a small alphabet, which have many
+     * overlapping and embedded duplications: for each match found by
+     * {@link MatchAlgorithm}, a match of the same length must be found
+     * with at least two of the same marks.
+     */
+    @Test
+    void testRollingHashMatchesAreFound() {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            int minTileSize = 3 + random.nextInt(6);
+            List<List<Integer>> files = new ArrayList<>();
+            int numFiles = 1 + random.nextInt(4);
+            for (int f = 0; f < numFiles; f++) {
+                List<Integer> file = new ArrayList<>();
+                int length = random.nextInt(80);
+                int alphabet = 2 + random.nextInt(5);
+                for (int i = 0; i < length; i++) {
+                    file.add(random.nextInt(alphabet));
+                }
+                files.add(file);
+            }
+
+            List<Match> suffixArrayMatches = findMatches(files, minTileSize, SuffixArrayMatchAlgorithm::new);
+            for (Match expected : findMatches(files, minTileSize, MatchAlgorithm::new)) {
+                Set<Integer> expectedMarks = beginIndices(expected);
+                boolean found = suffixArrayMatches.stream().anyMatch(
+                    actual -> actual.getTokenCount() == expected.getTokenCount()
+                        && beginIndices(actual).stream().filter(expectedMarks::contains).count() >= 2);
+                assertTrue(found, "Match " + describe(Collections.singletonList(expected)) + " not found in "
+                    + describe(suffixArrayMatches) + " for files " + files + ", minimum tile size " + minTileSize);
+            }
+        }
+    }
+
+    /**
+     * Many copies of the same sequence are reported as a single match.
+     */
+    @Test
+    void testManyRepetitions() {
+        List<List<Integer>> files = new ArrayList<>();
+        for (int f = 0; f < 1000; f++) {
+            List<Integer> file = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                file.add(i);
+            }
+            file.add(1000 + f);
+            files.add(file);
+        }
+        List<Match> matches = findMatches(files, 20, SuffixArrayMatchAlgorithm::new);
+        assertEquals(1, matches.size());
+        assertEquals(50, matches.get(0).getTokenCount());
+        assertEquals(1000, matches.get(0).getMarkCount());
+    }
+
+    private static List<Match> findMatches(List<List<Integer>> files, int minTileSize,
+                                           BiFunction<Tokens, Integer, MatchAlgorithm> algorithm) {
+        Tokens tokens = new Tokens();
+        for (int f = 0; f < files.size(); f++) {
+            TextDocument doc = TextDocument.readOnlyString("", FileId.fromPathLikeString("File" + f + ".dummy"),
+                                                           DummyLanguageModule.getInstance().getDefaultVersion());
+            try (TokenFactory tf = Tokens.factoryForFile(doc, tokens)) {
+                int line = 1;
+                for (int token : files.get(f)) {
+                    tf.recordToken("t" + token, line, 1, line, 2);
+                    line++;
+                }
+            }
+        }
+        return algorithm.apply(tokens, minTileSize).findMatches(new CPDNullListener(), null);
+    }
+
+    private static Set<Integer> beginIndices(Match match) {
+        Set<Integer> indices = new HashSet<>();
+        for (Mark mark : match) {
+            indices.add(mark.getBeginTokenIndex());
+        }
+        return indices;
+    }
+
+    private static List<String> describe(List<Match> matches) {
+        List<String> result = new ArrayList<>();
+        for (Match match : matches) {
+            List<Integer> marks = new ArrayList<>(beginIndices(match));
+            Collections.sort(marks);
+            result.add(match.getTokenCount() + ":" + marks);
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
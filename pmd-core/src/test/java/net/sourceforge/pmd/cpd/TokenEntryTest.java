@@ -5,9 +5,14 @@
 package net.sourceforge.pmd.cpd;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 
 import org.junit.jupiter.api.Test;
 
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
 class TokenEntryTest {
 
     @Test
@@ -21,4 +26,85 @@ class TokenEntryTest {
         assertEquals(4, mark.getEndColumn());
     }
 
+    @Test
+    void testImagesAreComparedByContent() {
+        Tokens tokens = new Tokens();
+        TokenEntry first = tokens.addToken("public", CpdTestUtils.FOO_FILE_ID, 1, 1, 1, 7);
+        TokenEntry second;
+        TextDocument doc = TextDocument.readOnlyString("public static", CpdTestUtils.BAR_FILE_ID,
+                                                       DummyLanguageModule.getInstance().getDefaultVersion());
+        try (TokenFactory tf = Tokens.factoryForFile(doc, tokens)) {
+            // slices of the document, as passed by lexers
+            tf.recordToken(doc.getText().subSequence(0, 6), 1, 1, 1, 7);
+            tf.recordToken(doc.getText().subSequence(7), 1, 8, 1, 14);
+            second = tf.peekLastToken();
+        }
+        assertEquals(first.getIdentifier(), tokens.getToken(1).getIdentifier());
+        assertEquals("static", second.getImage(tokens));
+        assertEquals(3, tokens.getTokens().stream().mapToInt(TokenEntry::getIdentifier).distinct().count());
+    }
+
+    @Test
+    void testStorageGrows() {
+        Tokens tokens = new Tokens();
+        // more tokens and more distinct images than the initial capacity
+        for (int i = 0; i < 2000; i++) {
+            tokens.addToken("img" + i % 700, CpdTestUtils.FOO_FILE_ID, i + 1, i % 80 + 1, i + 2, i % 80 + 5);
+        }
+        assertEquals(2000, tokens.size());
+        for (int i = 0; i < 2000; i++) {
+            TokenEntry token = tokens.getToken(i);
+            assertEquals(i, token.getIndex());
+            assertEquals("img" + i % 700, token.getImage(tokens));
+            assertEquals(tokens.getToken(i % 700).getIdentifier(), token.getIdentifier());
+            assertEquals(i + 1, token.getBeginLine());
+            assertEquals(i % 80 + 1, token.getBeginColumn());
+            assertEquals(i + 2, token.getEndLine());
+            assertEquals(i % 80 + 5, token.getEndColumn());
+        }
+        assertEquals(700, tokens.getTokens().stream().mapToInt(TokenEntry::getIdentifier).distinct().count());
+    }
+
+    @Test
+    void testImagesWithSameHashCode() {
+        // all these strings have the same hash code
+        String[] images = { "AaAa", "AaBB", "BBAa", "BBBB" };
+        Tokens tokens = new Tokens();
+        for (int round = 0; round < 2; round++) {
+            for (String image : images) {
+                tokens.addToken(image, CpdTestUtils.FOO_FILE_ID, 1, 1, 1, 5);
+            }
+        }
+        assertEquals(4, tokens.getTokens().stream().mapToInt(TokenEntry::getIdentifier).distinct().count());
+        for (int i = 0; i < images.length; i++) {
+            assertEquals(images[i], tokens.getToken(i).getImage(tokens));
+            assertEquals(tokens.getToken(i).getIdentifier(), tokens.getToken(i + images.length).getIdentifier());
+        }
+    }
+
+    @Test
+    void testEqualityIsByIndex() {
+        Tokens tokens = new Tokens();
+        tokens.addToken("public", CpdTestUtils.FOO_FILE_ID, 1, 1, 1, 7);
+        tokens.addToken("public", CpdTestUtils.FOO_FILE_ID, 1, 8, 1, 14);
+
+        // snapshots of the same token are equal
+        TokenEntry first = tokens.getToken(0);
+        TokenEntry snapshot = tokens.getToken(0);
+        assertNotSame(first, snapshot);
+        assertEquals(first, snapshot);
+        assertEquals(first.hashCode(), snapshot.hashCode());
+        assertEquals(0, first.compareTo(snapshot));
+
+        // tokens with the same image are different
+        TokenEntry second = tokens.getToken(1);
+        assertEquals(first.getIdentifier(), second.getIdentifier());
+        assertNotEquals(first, second);
+        assertEquals(1, tokens.getTokens().indexOf(second));
+
+        // the same index in another file is a different token
+        Tokens others = new Tokens();
+        TokenEntry other = others.addToken("public", CpdTestUtils.BAR_FILE_ID, 1, 1, 1, 7);
+        assertNotEquals(first, other);
+    }
 }
@@ -27,6 +27,7 @@ import javax.xml.validation.SchemaFactory;
 
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -341,6 +342,60 @@ class XMLRendererTest {
         assertDoesNotThrow(() -> documentBuilder.parse(new InputSource(new StringReader(report))));
     }
 
+    @Test
+    void testStreamingHasSameContentAsRender() throws Exception {
+        String codefragment = "code fragment" + FORM_FEED
+            + "\nline2\nline3\nno & escaping necessary in CDATA\nx=\"]]>\";";
+        CpdReportBuilder builder = new CpdReportBuilder();
+        FileId file1 = FileId.fromPathLikeString("file1");
+        FileId file2 = FileId.fromPathLikeString("file2");
+        builder.addMatch(new Match(75, builder.createMark("public", file1, 1, 5), builder.createMark("public", file2, 5, 5)));
+        builder.addMatch(new Match(60, builder.createMark("void", file2, 20, 3, 2, 6), builder.createMark("void", file2, 40, 3, 2, 6)));
+        builder.setFileContent(file1, codefragment);
+        builder.recordNumTokens(file1, 10).recordNumTokens(file2, 888);
+        CPDReport report = builder.build();
+
+        XMLRenderer renderer = new XMLRenderer();
+        StringWriter sw = new StringWriter();
+        renderer.start(report, sw);
+        for (Match match : report.getMatches()) {
+            renderer.renderMatch(match);
+        }
+        renderer.end();
+        String streamed = sw.toString();
+        assertReportIsValidSchema(streamed);
+        assertThat(streamed, not(containsString(FORM_FEED)));
+        assertThat(streamed, containsString("x=\"]]]]><![CDATA[>\";"));
+
+        assertEquals(describeElements(renderer.renderToString(report)), describeElements(streamed));
+    }
+
+    /** Lists the elements with their attributes and text, ignoring the whitespace between them. */
+    private static String describeElements(String report) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(new InputSource(new StringReader(report)));
+        StringBuilder sb = new StringBuilder();
+        NodeList elements = doc.getElementsByTagName("*");
+        for (int i = 0; i < elements.getLength(); i++) {
+            Node element = elements.item(i);
+            sb.append(element.getNamespaceURI()).append(':').append(element.getLocalName());
+            NamedNodeMap attributes = element.getAttributes();
+            for (int a = 0; a < attributes.getLength(); a++) {
+                Node attribute = attributes.item(a);
+                if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())
+                    && !"timestamp".equals(attribute.getLocalName())) {
+                    sb.append(' ').append(attribute.getLocalName()).append("=\"").append(attribute.getNodeValue()).append('"');
+                }
+            }
+            if (((Element) element).getElementsByTagName("*").getLength() == 0) {
+                sb.append(" [").append(element.getTextContent()).append(']');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
     private static void assertReportIsValidSchema(String report) throws SAXException, ParserConfigurationException, IOException {
         SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
         Schema schema = schemaFactory.newSchema(new StreamSource(XMLRenderer.class.getResourceAsStream("/cpd-report_1_0_0.xsd")));
@@ -0,0 +1,86 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.ast.impl.antlr4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.Chars;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+
+class CharsCharStreamTest {
+
+    private static final String TEXT = "class Foo { int bar = 1; }";
+
+    @Test
+    void testSameAsCodePointStream() {
+        CharStream expected = CharStreams.fromString(TEXT);
+        CharStream actual = new CharsCharStream(document(TEXT));
+
+        assertEquals(expected.size(), actual.size());
+        while (true) {
+            assertEquals(expected.index(), actual.index());
+            for (int i = -2; i <= 2; i++) {
+                assertEquals(expected.LA(i), actual.LA(i), "LA(" + i + ") at " + actual.index());
+            }
+            if (expected.LA(1) == CharStream.EOF) {
+                break;
+            }
+            expected.consume();
+            actual.consume();
+        }
+        assertThrows(IllegalStateException.class, actual::consume);
+
+        actual.seek(6);
+        assertEquals('F', actual.LA(1));
+        assertEquals("Foo", actual.getText(Interval.of(6, 8)));
+        assertEquals(expected.getText(Interval.of(20, 100)), actual.getText(Interval.of(20, 100)));
+    }
+
+    @Test
+    void testTokenImageIsSliceOfDocument() {
+        CharsCharStream stream = new CharsCharStream(document(TEXT));
+        Pair<TokenSource, CharStream> source = new Pair<>(null, stream);
+
+        CommonToken token = CharsCharStream.TOKEN_FACTORY.create(source, 1, null, Token.DEFAULT_CHANNEL, 6, 8, 1, 6);
+        assertEquals("Foo", token.getText());
+        assertInstanceOf(Chars.class, ((CharsCharStream.CharsToken) token).getImageCs());
+        assertEquals("Foo", ((CharsCharStream.CharsToken) token).getImageCs().toString());
+
+        CommonToken eof = CharsCharStream.TOKEN_FACTORY.create(source, Token.EOF, null, Token.DEFAULT_CHANNEL,
+                                                               TEXT.length(), TEXT.length() - 1, 1, TEXT.length());
+        assertEquals(eof.getText(), ((CharsCharStream.CharsToken) eof).getImageCs().toString());
+
+        CommonToken withText = CharsCharStream.TOKEN_FACTORY.create(source, 1, "text", Token.DEFAULT_CHANNEL, 6, 8, 1, 6);
+        assertEquals("text", ((CharsCharStream.CharsToken) withText).getImageCs());
+    }
+
+    @Test
+    void testSupplementaryCharacters() {
+        assertTrue(CharsCharStream.isSupported(Chars.wrap(TEXT)));
+        String text = "s = \"😀\"";
+        assertFalse(CharsCharStream.isSupported(Chars.wrap(text)));
+        assertThrows(IllegalArgumentException.class, () -> new CharsCharStream(document(text)));
+    }
+
+    private static TextDocument document(String text) {
+        return TextDocument.readOnlyString(text, FileId.fromPathLikeString("Foo.dummy"),
+                                           DummyLanguageModule.getInstance().getDefaultVersion());
+    }
+}
@@ -64,10 +64,15 @@ abstract class AbstractPMDProcessorTest {
         Mockito.verifyNoInteractions(reporter);
     }
 
+    protected void configure(PMDConfiguration configuration) {
+        // to be overridden
+    }
+
     protected PmdAnalysis createPmdAnalysis() {
         PMDConfiguration configuration = new PMDConfiguration();
         configuration.setThreads(getThreads());
         configuration.setIgnoreIncrementalAnalysis(true);
+        configure(configuration);
         reporter = Mockito.spy(configuration.getReporter());
         configuration.setReporter(reporter);
 
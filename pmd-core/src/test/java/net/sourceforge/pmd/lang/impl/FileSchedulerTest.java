@@ -0,0 +1,72 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.cache.internal.AnalysisCache;
+import net.sourceforge.pmd.cache.internal.NoopAnalysisCache;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+class FileSchedulerTest {
+
+    private final LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+
+    private TextFile file(String name, int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append('a');
+        }
+        return TextFile.forCharSeq(sb, FileId.fromPathLikeString(name), lv);
+    }
+
+    @Test
+    void testInputOrderKeepsOrder() {
+        List<TextFile> files = listOf(file("a", 1), file("b", 10));
+        assertSame(files, FileScheduler.schedule(FileSchedulingPolicy.INPUT_ORDER, files, new NoopAnalysisCache()));
+    }
+
+    @Test
+    void testLargestFirstUsesSize() {
+        TextFile a = file("a", 1);
+        TextFile b = file("b", 100);
+        TextFile c = file("c", 10);
+        TextFile d = file("d", 10);
+
+        List<TextFile> scheduled = FileScheduler.schedule(FileSchedulingPolicy.LARGEST_FIRST, listOf(a, b, c, d), new NoopAnalysisCache());
+        // c and d have the same size and keep their order
+        assertEquals(listOf(b, c, d, a), scheduled);
+    }
+
+    @Test
+    void testLargestFirstPrefersCachedTime() {
+        TextFile a = file("a", 10);
+        TextFile b = file("b", 100);
+        TextFile c = file("c", 50);
+
+        AnalysisCache cache = mock(AnalysisCache.class);
+        when(cache.getPreviousProcessingTime(any())).thenReturn(-1L);
+        // a is small but was slow, b is large and was fast
+        when(cache.getPreviousProcessingTime(a.getFileId())).thenReturn(10_000L);
+        when(cache.getPreviousProcessingTime(b.getFileId())).thenReturn(1_000L);
+
+        List<TextFile> scheduled = FileScheduler.schedule(FileSchedulingPolicy.LARGEST_FIRST, listOf(a, b, c), cache);
+        // c is not in the cache, its time is estimated from its size
+        // with the rate observed on a and b (11000ns / 110 bytes): 5000ns
+        assertEquals(listOf(a, c, b), scheduled);
+    }
+}
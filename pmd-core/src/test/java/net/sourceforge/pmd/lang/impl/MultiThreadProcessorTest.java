@@ -4,28 +4,46 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import static java.util.Collections.emptyList;
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.Dummy2LanguageModule;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
 import net.sourceforge.pmd.reporting.RuleContext;
 
 class MultiThreadProcessorTest extends AbstractPMDProcessorTest {
 
+    private boolean useVirtualThreads;
+
     @Override
     protected int getThreads() {
         return 2;
     }
 
+    @Override
+    protected void configure(PMDConfiguration configuration) {
+        configuration.setUseVirtualThreads(useVirtualThreads);
+    }
+
     @Override
     protected Class<? extends AbstractPMDProcessor> getExpectedImplementation() {
         return MultiThreadProcessor.class;
@@ -81,6 +99,7 @@ class MultiThreadProcessorTest extends AbstractPMDProcessorTest {
 
     @Test
     void testRulesThreadSafety() throws Exception {
+        NotThreadSafeRule.count.set(0);
         try (PmdAnalysis pmd = createPmdAnalysis("rulesets/MultiThreadProcessorTest/basic.xml")) {
             pmd.performAnalysis();
         }
@@ -93,6 +112,63 @@ class MultiThreadProcessorTest extends AbstractPMDProcessorTest {
         assertEquals(1, reportListener.violations.get(), "Missing violation");
     }
 
+    @Test
+    void virtualThreadsShouldFallBackOnOldJvms() {
+        assumeFalse(VirtualThreadExecutor.isSupported(), "Virtual threads are supported by this JVM");
+        useVirtualThreads = true;
+        try (PmdAnalysis pmd = createPmdAnalysis()) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatThrowsException()));
+            pmd.performAnalysis();
+        }
+
+        // the analysis still runs, on platform threads
+        assertEquals(2, reportListener.files.get());
+        assertEquals(2, reportListener.errors.get());
+        Mockito.verify(reporter).warn(Mockito.startsWith("Virtual threads are not supported by this JVM"), Mockito.eq(getThreads()));
+    }
+
+    @Test
+    void testThreadsAreSharedBetweenLanguages() {
+        ThreadRecordingRule.THREAD_NAMES.clear();
+        try (PmdAnalysis pmd = createPmdAnalysis()) {
+            for (int i = 0; i < 4; i++) {
+                pmd.files().addFile(TextFile.forCharSeq("abc", FileId.fromPathLikeString("other" + i + ".dummy2"),
+                                                        Dummy2LanguageModule.getInstance().getDefaultVersion()));
+            }
+            pmd.addRuleSet(RuleSet.create("threads", "", null, emptyList(), emptyList(), listOf(
+                ThreadRecordingRule.forLanguage(DummyLanguageModule.getInstance()),
+                ThreadRecordingRule.forLanguage(Dummy2LanguageModule.getInstance())
+            )));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(6, reportListener.files.get());
+        // a single pool is used for both languages
+        Set<String> threadNames = ThreadRecordingRule.THREAD_NAMES;
+        assertTrue(threadNames.size() <= getThreads(), "Too many threads used: " + threadNames);
+    }
+
+    public static class ThreadRecordingRule extends AbstractRule {
+        static final Set<String> THREAD_NAMES = ConcurrentHashMap.newKeySet();
+
+        static ThreadRecordingRule forLanguage(Language language) {
+            ThreadRecordingRule rule = new ThreadRecordingRule();
+            rule.setLanguage(language);
+            rule.setName("ThreadRecordingRule" + language.getId());
+            return rule;
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            THREAD_NAMES.add(Thread.currentThread().getName());
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     public static class NotThreadSafeRule extends AbstractRule {
         public static AtomicInteger count = new AtomicInteger(0);
         private boolean hasViolation; // this variable will be overridden
@@ -0,0 +1,136 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextFileContent;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+
+/**
+ * Runs the tests of the multithreaded processor with files read ahead
+ * by reader threads.
+ */
+class ReadAheadProcessorTest extends MultiThreadProcessorTest {
+
+    @Override
+    protected void configure(PMDConfiguration configuration) {
+        super.configure(configuration);
+        configuration.setReaderThreads(2);
+    }
+
+    @Test
+    void filesShouldBeReadByReaderThreads() {
+        Set<String> readingThreads = ConcurrentHashMap.newKeySet();
+        try (PmdAnalysis pmd = createPmdAnalysis()) {
+            for (int i = 0; i < 4; i++) {
+                pmd.files().addFile(new RecordingTextFile(FileId.fromPathLikeString("read" + i + ".dummy"), readingThreads));
+            }
+            pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatThrowsException()));
+            pmd.performAnalysis();
+        }
+
+        // the 2 files of the base class, and ours
+        assertEquals(6, reportListener.files.get());
+        assertEquals(6, reportListener.errors.get());
+        assertFalse(readingThreads.isEmpty());
+        assertTrue(readingThreads.stream().allMatch(it -> it.startsWith("PmdReader ")), readingThreads.toString());
+    }
+
+    @Test
+    void unexpectedReadErrorsShouldNotBlockTheAnalysis() {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (PmdAnalysis pmd = createPmdAnalysis()) {
+                for (int i = 0; i < 4; i++) {
+                    pmd.files().addFile(new FailingTextFile(FileId.fromPathLikeString("failing" + i + ".dummy")));
+                }
+                pmd.addRuleSet(RuleSet.forSingleRule(new RuleThatThrowsException()));
+                pmd.performAnalysis();
+            }
+        });
+
+        // the analysis of every file was started, even those that could not be read ahead
+        assertEquals(6, reportListener.files.get());
+    }
+
+    private static final class RecordingTextFile implements TextFile {
+
+        private final FileId fileId;
+        private final Set<String> readingThreads;
+
+        RecordingTextFile(FileId fileId, Set<String> readingThreads) {
+            this.fileId = fileId;
+            this.readingThreads = readingThreads;
+        }
+
+        @Override
+        public @NonNull LanguageVersion getLanguageVersion() {
+            return DummyLanguageModule.getInstance().getDefaultVersion();
+        }
+
+        @Override
+        public FileId getFileId() {
+            return fileId;
+        }
+
+        @Override
+        public TextFileContent readContents() {
+            readingThreads.add(Thread.currentThread().getName());
+            return TextFileContent.fromCharSeq("abc");
+        }
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+    }
+
+    private static final class FailingTextFile implements TextFile {
+
+        private final FileId fileId;
+
+        FailingTextFile(FileId fileId) {
+            this.fileId = fileId;
+        }
+
+        @Override
+        public @NonNull LanguageVersion getLanguageVersion() {
+            return DummyLanguageModule.getInstance().getDefaultVersion();
+        }
+
+        @Override
+        public FileId getFileId() {
+            return fileId;
+        }
+
+        @Override
+        public TextFileContent readContents() {
+            throw new UncheckedIOException(new IOException("cannot read " + fileId));
+        }
+
+        @Override
+        public void close() {
+            // nothing to do
+        }
+    }
+}
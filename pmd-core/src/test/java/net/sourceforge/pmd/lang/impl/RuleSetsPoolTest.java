@@ -0,0 +1,121 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.InternalApiBridge;
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.AbstractRule;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.ThreadSafeRule;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.reporting.RuleContext;
+import net.sourceforge.pmd.util.log.PmdReporter;
+
+class RuleSetsPoolTest {
+
+    @Test
+    void testCopiesAreReused() throws Exception {
+        try (LanguageProcessorRegistry registry = LanguageProcessorRegistry.singleton(
+            DummyLanguageModule.getInstance().createProcessor(DummyLanguageModule.getInstance().newPropertyBundle()))) {
+
+            RuleSets original = new RuleSets(RuleSet.forSingleRule(new DummyRule()));
+            AnalysisTask task = InternalApiBridge.createAnalysisTask(original, Collections.emptyList(), null, 2,
+                                                                     null, PmdReporter.quiet(), registry);
+            RuleSetsPool pool = new RuleSetsPool(task, 2);
+
+            RuleSets first = pool.borrow();
+            RuleSets second = pool.borrow();
+            assertNotSame(first, second);
+            assertNotSame(original, first);
+            // copies are deep
+            assertNotSame(original.getAllRules().iterator().next(), first.getAllRules().iterator().next());
+            assertEquals(listOf("DummyRule"), listOf(first.getAllRules().iterator().next().getName()));
+
+            pool.release(first);
+            assertSame(first, pool.borrow());
+        }
+    }
+
+    @Test
+    void testThreadSafeRulesAreShared() throws Exception {
+        try (LanguageProcessorRegistry registry = LanguageProcessorRegistry.singleton(
+            DummyLanguageModule.getInstance().createProcessor(DummyLanguageModule.getInstance().newPropertyBundle()))) {
+
+            Rule stateful = new DummyRule();
+            Rule shared = new SharedDummyRule();
+            RuleSets original = new RuleSets(RuleSet.create("Test", "desc", null, Collections.emptyList(),
+                                                            Collections.emptyList(), listOf(stateful, shared)));
+            original.initializeRules(registry, PmdReporter.quiet());
+            AnalysisTask task = InternalApiBridge.createAnalysisTask(original, Collections.emptyList(), null, 2,
+                                                                     null, PmdReporter.quiet(), registry);
+            RuleSetsPool pool = new RuleSetsPool(task, 2);
+
+            RuleSets first = pool.borrow();
+            RuleSets second = pool.borrow();
+            assertTrue(containsInstance(first, shared));
+            assertTrue(containsInstance(second, shared));
+            assertFalse(containsInstance(first, stateful));
+            assertEquals(2, first.getAllRules().size());
+            // shared rules are only initialized once, on the original
+            assertEquals(1, SharedDummyRule.INITIALIZED.get());
+        }
+    }
+
+    private static boolean containsInstance(RuleSets ruleSets, Rule rule) {
+        // rules implement equals, so compare by identity
+        return ruleSets.getAllRules().stream().anyMatch(it -> it == rule); // NOPMD CompareObjectsWithEquals
+    }
+
+    @ThreadSafeRule
+    public static class SharedDummyRule extends AbstractRule {
+
+        static final AtomicInteger INITIALIZED = new AtomicInteger();
+
+        SharedDummyRule() {
+            setName("SharedDummyRule");
+            setLanguage(DummyLanguageModule.getInstance());
+        }
+
+        @Override
+        public void initialize(LanguageProcessor languageProcessor) {
+            INITIALIZED.incrementAndGet();
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            // do nothing
+        }
+    }
+
+    public static class DummyRule extends AbstractRule {
+
+        DummyRule() {
+            setName("DummyRule");
+            setLanguage(DummyLanguageModule.getInstance());
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            // do nothing
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+/**
+ * Runs the tests of the multithreaded processor with virtual threads.
+ * This needs to run on Java 21 or later.
+ */
+class VirtualThreadProcessorTest extends MultiThreadProcessorTest {
+
+    @BeforeEach
+    void checkVirtualThreadsSupported() {
+        assumeTrue(VirtualThreadExecutor.isSupported(), "Virtual threads are not supported by this JVM");
+    }
+
+    @Override
+    protected void configure(PMDConfiguration configuration) {
+        configuration.setUseVirtualThreads(true);
+    }
+
+    @Test
+    void testFilesInFlightAreBounded() {
+        AtomicInteger open = new AtomicInteger();
+        LongAccumulator maxOpen = new LongAccumulator(Math::max, 0);
+        try (PmdAnalysis pmd = createPmdAnalysis()) {
+            LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+            for (int i = 0; i < 20; i++) {
+                pmd.files().addFile(TextFile.forCharSeq("abc", FileId.fromPathLikeString("other" + i + ".dummy"), lv));
+            }
+            pmd.addListener(new GlobalAnalysisListener() {
+                @Override
+                public FileAnalysisListener startFileAnalysis(TextFile file) {
+                    maxOpen.accumulate(open.incrementAndGet());
+                    return new FileAnalysisListener() {
+                        @Override
+                        public void onRuleViolation(RuleViolation violation) {
+                            // do nothing
+                        }
+
+                        @Override
+                        public void close() {
+                            open.decrementAndGet();
+                        }
+                    };
+                }
+
+                @Override
+                public void close() {
+                    // do nothing
+                }
+            });
+            pmd.addRuleSet(RuleSet.forSingleRule(ThreadRecordingRule.forLanguage(DummyLanguageModule.getInstance())));
+            pmd.performAnalysis();
+        }
+
+        assertEquals(22, reportListener.files.get());
+        // files being analysed, plus as many waiting for a CPU permit
+        assertTrue(maxOpen.get() <= 2 * getThreads(), "Too many files in flight: " + maxOpen.get());
+    }
+}
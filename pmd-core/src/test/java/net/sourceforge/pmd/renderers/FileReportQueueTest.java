@@ -0,0 +1,170 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+class FileReportQueueTest {
+
+    @Test
+    void testReportsAreRenderedOneAtATime() throws Exception {
+        CheckingRenderer renderer = new CheckingRenderer();
+        FileReportQueue queue = new FileReportQueue(renderer);
+
+        int threads = 8;
+        int reportsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < reportsPerThread; j++) {
+                        queue.render(emptyReport());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        queue.drain();
+
+        assertEquals(threads * reportsPerThread, renderer.rendered.get());
+        assertFalse(renderer.concurrentCall.get(), "renderFileReport was called concurrently");
+    }
+
+    @Test
+    void testReportsAreRenderedInOrderOnSingleThread() throws Exception {
+        List<Report> renderedReports = new ArrayList<>();
+        FileReportQueue queue = new FileReportQueue(new CheckingRenderer() {
+            @Override
+            public void renderFileReport(Report report) {
+                renderedReports.add(report);
+            }
+        });
+
+        Report first = emptyReport();
+        Report second = emptyReport();
+        queue.render(first);
+        assertEquals(1, renderedReports.size());
+        queue.render(second);
+        assertEquals(2, renderedReports.size());
+        assertSame(first, renderedReports.get(0));
+        assertSame(second, renderedReports.get(1));
+    }
+
+    @Test
+    void testThreadsWaitWhenTheQueueIsFull() throws Exception {
+        CountDownLatch rendererStarted = new CountDownLatch(1);
+        CountDownLatch unblockRenderer = new CountDownLatch(1);
+        CheckingRenderer renderer = new CheckingRenderer() {
+            @Override
+            public void renderFileReport(Report report) {
+                rendererStarted.countDown();
+                try {
+                    unblockRenderer.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.renderFileReport(report);
+            }
+        };
+        FileReportQueue queue = new FileReportQueue(renderer, 2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // becomes the writer, and blocks in the renderer
+            Future<?> writer = executor.submit(() -> {
+                queue.render(emptyReport());
+                return null;
+            });
+            rendererStarted.await();
+
+            // the first report fits in the queue, the second one doesn't
+            AtomicInteger queued = new AtomicInteger();
+            Future<?> producer = executor.submit(() -> {
+                for (int i = 0; i < 2; i++) {
+                    queue.render(emptyReport());
+                    queued.incrementAndGet();
+                }
+                return null;
+            });
+            assertThrows(TimeoutException.class, () -> producer.get(200, TimeUnit.MILLISECONDS));
+            assertEquals(1, queued.get());
+
+            unblockRenderer.countDown();
+            writer.get();
+            producer.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        queue.drain();
+
+        assertEquals(3, renderer.rendered.get());
+    }
+
+    private static Report emptyReport() throws Exception {
+        Report.ReportBuilderListener builder = new Report.ReportBuilderListener();
+        builder.close();
+        return builder.getResult();
+    }
+
+    private static class CheckingRenderer extends AbstractIncrementingRenderer {
+
+        private final AtomicInteger rendering = new AtomicInteger();
+        final AtomicInteger rendered = new AtomicInteger();
+        final AtomicBoolean concurrentCall = new AtomicBoolean();
+
+        CheckingRenderer() {
+            super("checking", "Checks that renderFileReport is not called concurrently");
+        }
+
+        @Override
+        public String defaultFileExtension() {
+            return "txt";
+        }
+
+        @Override
+        public void renderFileReport(Report report) {
+            if (rendering.incrementAndGet() > 1) {
+                concurrentCall.set(true);
+            }
+            Thread.yield();
+            rendered.incrementAndGet();
+            rendering.decrementAndGet();
+        }
+
+        @Override
+        public void renderFileViolations(Iterator<RuleViolation> violations) {
+            // not called
+        }
+    }
+}
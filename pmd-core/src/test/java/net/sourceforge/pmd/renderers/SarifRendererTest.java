@@ -11,6 +11,8 @@ import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
 
+import net.sourceforge.pmd.lang.Dummy2LanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.Report;
@@ -18,6 +20,7 @@ import net.sourceforge.pmd.reporting.Report;
 import com.github.stefanbirkner.systemlambda.SystemLambda;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 class SarifRendererTest extends AbstractRendererTest {
@@ -98,6 +101,97 @@ class SarifRendererTest extends AbstractRendererTest {
         assertEquals(filter(readFile("expected-multiple-locations.sarif.json")), filter(actual));
     }
 
+    @Test
+    void testStreamingRendererWritesSameLog() throws Exception {
+        Report.ProcessingError error = new Report.ProcessingError(new RuntimeException("Error"), FileId.fromPathLikeString("file"));
+        Consumer<FileAnalysisListener> effects = reportThreeViolationsTwoRules().andThen(it -> it.onError(error));
+
+        Gson gson = new Gson();
+        JsonObject buffered = gson.fromJson(renderReport(getRenderer(), effects), JsonObject.class);
+        JsonObject streamed = gson.fromJson(renderReport(newStreamingRenderer(), effects), JsonObject.class);
+
+        // when streaming, the short description of a rule is its description,
+        // otherwise it is the message of its violations.
+        // Only the order of the properties of the run differs otherwise.
+        for (JsonElement rule : getRules(buffered)) {
+            JsonObject descriptor = rule.getAsJsonObject();
+            descriptor.add("shortDescription", descriptor.get("fullDescription"));
+        }
+        assertEquals(buffered, streamed);
+    }
+
+    @Test
+    void testStreamingRendererEmpty() throws Exception {
+        SarifRenderer streamingRenderer = new SarifRenderer();
+        streamingRenderer.setProperty(SarifRenderer.STREAMING, true);
+        String streamed = renderReport(streamingRenderer, it -> { });
+
+        Gson gson = new Gson();
+        assertEquals(gson.fromJson(filter(getExpectedEmpty()), JsonObject.class),
+                     gson.fromJson(filter(streamed), JsonObject.class));
+    }
+
+    @Test
+    void testStreamingRendererDescribesRulesOnce() throws Exception {
+        Rule fooRule = createFooRule();
+        Consumer<FileAnalysisListener> effects = reportBuilder -> {
+            for (int i = 1; i <= 5; i++) {
+                reportBuilder.onRuleViolation(newRuleViolation(fooRule, createLocation(i, 1, i, 10), "message " + i));
+            }
+        };
+        Gson gson = new Gson();
+        // one descriptor per distinct message
+        assertEquals(5, getRules(gson.fromJson(renderReport(getRenderer(), effects), JsonObject.class)).size());
+
+        JsonObject streamed = gson.fromJson(renderReport(newStreamingRenderer(), effects), JsonObject.class);
+        JsonArray rules = getRules(streamed);
+        assertEquals(1, rules.size());
+        assertEquals(fooRule.getDescription(),
+                     rules.get(0).getAsJsonObject().getAsJsonObject("shortDescription").get("text").getAsString());
+
+        JsonArray results = streamed.getAsJsonArray("runs").get(0).getAsJsonObject().getAsJsonArray("results");
+        assertEquals(5, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            JsonObject result = results.get(i).getAsJsonObject();
+            assertEquals(0, result.get("ruleIndex").getAsInt());
+            assertEquals("message " + (i + 1), result.getAsJsonObject("message").get("text").getAsString());
+        }
+    }
+
+    @Test
+    void testStreamingRendererKeepsRulesOfDifferentLanguagesApart() throws Exception {
+        Rule fooRule = createFooRule();
+        Rule otherFooRule = createFooRule();
+        otherFooRule.setLanguage(Dummy2LanguageModule.getInstance());
+        otherFooRule.setDescription("other desc");
+        Consumer<FileAnalysisListener> effects = reportBuilder -> {
+            reportBuilder.onRuleViolation(newRuleViolation(1, 1, 1, 10, fooRule));
+            reportBuilder.onRuleViolation(newRuleViolation(2, 1, 2, 10, otherFooRule));
+            reportBuilder.onRuleViolation(newRuleViolation(3, 1, 3, 10, fooRule));
+        };
+
+        JsonObject streamed = new Gson().fromJson(renderReport(newStreamingRenderer(), effects), JsonObject.class);
+        JsonArray rules = getRules(streamed);
+        assertEquals(2, rules.size());
+        assertEquals("other desc", rules.get(1).getAsJsonObject().getAsJsonObject("shortDescription").get("text").getAsString());
+
+        JsonArray results = streamed.getAsJsonArray("runs").get(0).getAsJsonObject().getAsJsonArray("results");
+        assertEquals(0, results.get(0).getAsJsonObject().get("ruleIndex").getAsInt());
+        assertEquals(1, results.get(1).getAsJsonObject().get("ruleIndex").getAsInt());
+        assertEquals(0, results.get(2).getAsJsonObject().get("ruleIndex").getAsInt());
+    }
+
+    private static SarifRenderer newStreamingRenderer() {
+        SarifRenderer streamingRenderer = new SarifRenderer();
+        streamingRenderer.setProperty(SarifRenderer.STREAMING, true);
+        return streamingRenderer;
+    }
+
+    private static JsonArray getRules(JsonObject log) {
+        return log.getAsJsonArray("runs").get(0).getAsJsonObject()
+                  .getAsJsonObject("tool").getAsJsonObject("driver").getAsJsonArray("rules");
+    }
+
     private Consumer<FileAnalysisListener> reportThreeViolationsTwoRules() {
         Rule fooRule = createFooRule();
         Rule booRule = createBooRule();
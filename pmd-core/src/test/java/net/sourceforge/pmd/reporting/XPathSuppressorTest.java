@@ -0,0 +1,146 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.reporting;
+
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.node;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.root;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.tree;
+import static net.sourceforge.pmd.reporting.ReportTestUtil.getReport;
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import net.sourceforge.pmd.FooRule;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.TestMessageReporter;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.lang.rule.internal.RuleSets;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
+import net.sourceforge.pmd.reporting.Report.SuppressedViolation;
+import net.sourceforge.pmd.util.log.PmdReporter;
+
+class XPathSuppressorTest {
+
+    @Test
+    void testDependsOnContextNode() {
+        assertFalse(compile("//dummyNode[@Image = '1']").dependsOnContextNode());
+        assertFalse(compile("/dummyRootNode[dummyNode]").dependsOnContextNode());
+        assertTrue(compile("./ancestor-or-self::dummyNode[@Image = '0']").dependsOnContextNode());
+        assertTrue(compile(".[@Image = '0']").dependsOnContextNode());
+    }
+
+    @Test
+    void testSuppressionOnAncestor() {
+        Rule rule = ruleWithSuppression("./ancestor-or-self::dummyNode[@Image = '0']");
+        DummyRootNode root = newTree();
+        Report report = getReport(rule, (r, ctx) -> {
+            ctx.addViolation(root.getChild(0).getChild(0));
+            ctx.addViolation(root.getChild(0).getChild(1));
+            ctx.addViolation(root.getChild(1));
+            ctx.addViolation(root.getChild(0).getChild(0));
+        });
+
+        assertEquals(1, report.getViolations().size());
+        assertEquals(3, report.getSuppressedViolations().size());
+        for (SuppressedViolation suppressed : report.getSuppressedViolations()) {
+            assertEquals("XPath", suppressed.getSuppressor().getId());
+            assertEquals("./ancestor-or-self::dummyNode[@Image = '0']", suppressed.getUserMessage());
+        }
+    }
+
+    @Test
+    void testFileResultIsNotReusedForAnotherFile() {
+        Rule rule = ruleWithSuppression("/dummyRootNode[dummyNode/dummyNode]");
+        DummyRootNode deepRoot = newTree();
+        DummyRootNode flatRoot = tree(() -> root(node(), node()));
+        Report report = getReport(rule, (r, ctx) -> {
+            ctx.addViolation(deepRoot.getChild(1));
+            ctx.addViolation(flatRoot.getChild(1));
+            ctx.addViolation(deepRoot.getChild(0));
+        });
+
+        assertEquals(1, report.getViolations().size());
+        assertEquals(2, report.getSuppressedViolations().size());
+    }
+
+    /** The compiled suppressor must suppress the same violations as the uncompiled one. */
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "./ancestor-or-self::dummyNode[@Image = '0']",
+        ".[@Image = '01']",
+        "//dummyNode[@Image = '1']",
+        "/dummyRootNode[dummyNode/dummyNode]",
+        "//dummyNode[@Image = '0'] | ./self::dummyRootNode"
+    })
+    void testSameResultAsUncompiledSuppressor(String xpath) {
+        Rule rule = ruleWithSuppression(xpath);
+        DummyRootNode root = newTree();
+        XPathSuppressor suppressor = new XPathSuppressor(compile(xpath));
+
+        for (Node node : root.descendantsOrSelf()) {
+            RuleViolation rv = InternalApiBridge.createRuleViolation(rule, node.getReportLocation(), "message", Collections.emptyMap());
+            SuppressedViolation expected = ViolationSuppressor.XPATH_SUPPRESSOR.suppressOrNull(rv, node);
+            SuppressedViolation actual = suppressor.suppressOrNull(rv, node);
+            assertEquals(expected != null, actual != null, "on node " + node);
+        }
+    }
+
+    @Test
+    void testRuleWithInvalidSuppressionIsRemoved() {
+        Rule valid = ruleWithSuppression(".[@Image = '0']");
+        Rule invalid = ruleWithSuppression("./ancestor::[");
+        invalid.setName("Invalid");
+        RuleSets ruleSets = new RuleSets(RuleSet.create("Test", "desc", null, Collections.emptyList(),
+                                                        Collections.emptyList(), listOf(valid, invalid)));
+        PmdReporter reporter = new TestMessageReporter();
+        ruleSets.initializeRules(LanguageProcessorRegistry.singleton(newTree().getAstInfo().getLanguageProcessor()), reporter);
+
+        assertEquals(1, reporter.numErrors());
+        assertEquals(1, ruleSets.ruleCount());
+        assertNotNull(ruleSets.getRuleByName("Foo"));
+        assertNull(ruleSets.getRuleByName("Invalid"));
+    }
+
+    @Test
+    void testInitializedRulesetUsesSuppression() {
+        Rule rule = ruleWithSuppression("./ancestor-or-self::dummyNode[@Image = '0']");
+        DummyRootNode root = newTree();
+        // FooRule reports the nodes named Foo, once for each of their ancestors
+        root.getChild(0).getChild(0).setImage("Foo");
+        root.getChild(1).setImage("Foo");
+        Report report = ReportTestUtil.getReportForRuleSetApply(RuleSet.forSingleRule(rule), root);
+
+        assertEquals(2, report.getViolations().size());
+        assertEquals(3, report.getSuppressedViolations().size());
+    }
+
+    private static DummyRootNode newTree() {
+        return tree(() -> root(node(node(), node()), node()));
+    }
+
+    private static Rule ruleWithSuppression(String xpath) {
+        Rule rule = new FooRule();
+        rule.setProperty(Rule.VIOLATION_SUPPRESS_XPATH_DESCRIPTOR, Optional.of(xpath));
+        return rule;
+    }
+
+    private static SaxonXPathRuleQuery compile(String xpath) {
+        Rule rule = ruleWithSuppression(xpath);
+        return XPathSuppressor.compile(rule, newTree().getAstInfo().getLanguageProcessor().services().getXPathHandler());
+    }
+}
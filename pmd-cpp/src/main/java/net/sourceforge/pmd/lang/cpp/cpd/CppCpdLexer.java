@@ -81,7 +81,7 @@ public class CppCpdLexer extends JavaccCpdLexer {
     @Override
     protected void processToken(TokenFactory tokenEntries, JavaccToken currentToken) {
         int kind = currentToken.getKind();
-        String image = currentToken.getImage();
+        CharSequence image = currentToken.getImageCs();
 
         boolean isLiteral = kind == CppTokenKinds.STRING || kind == CppTokenKinds.RSTRING || kind == CppTokenKinds.CHARACTER || kind == CppTokenKinds.DECIMAL_INT_LITERAL || kind == CppTokenKinds.HEXADECIMAL_INT_LITERAL || kind == CppTokenKinds.OCTAL_INT_LITERAL || kind == CppTokenKinds.FLOAT_LITERAL || kind == CppTokenKinds.BINARY_INT_LITERAL || kind == CppTokenKinds.ZERO;
         if (ignoreLiterals && isLiteral) {
@@ -26,6 +26,11 @@ public class DartCpdLexer extends AntlrCpdLexer {
         return new DartLexer(charStream);
     }
 
+    @Override
+    protected boolean isLexerReusable() {
+        return true; // the grammar has no lexer members
+    }
+
     @Override
     protected TokenManager<AntlrToken> filterTokenStream(TokenManager<AntlrToken> tokenManager) {
         return new DartTokenFilter(tokenManager);
@@ -21,4 +21,9 @@ public class GherkinCpdLexer extends AntlrCpdLexer {
     protected Lexer getLexerForSource(CharStream charStream) {
         return new GherkinLexer(charStream);
     }
+
+    @Override
+    protected boolean isLexerReusable() {
+        return true; // the grammar has no lexer members
+    }
 }
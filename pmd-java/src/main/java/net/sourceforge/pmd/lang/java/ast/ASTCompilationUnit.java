@@ -49,6 +49,9 @@ public final class ASTCompilationUnit extends AbstractJavaNode implements RootNo
     private LazyTypeResolver lazyTypeResolver;
     private List<JavaComment> comments;
     private AstInfo<ASTCompilationUnit> astInfo;
+    /** Passes that were not run with the others, because no rule needed them. */
+    private @Nullable Runnable pendingUsageResolution;
+    private @Nullable Runnable pendingOverrideResolution;
 
     ASTCompilationUnit(int id) {
         super(id);
@@ -156,6 +159,32 @@ public final class ASTCompilationUnit extends AbstractJavaNode implements RootNo
         return lazyTypeResolver;
     }
 
+    void deferUsageResolution(Runnable pass) {
+        this.pendingUsageResolution = pass;
+    }
+
+    void deferOverrideResolution(Runnable pass) {
+        this.pendingOverrideResolution = pass;
+    }
+
+    /** Runs the usage resolution pass if it was deferred and has not run yet. */
+    void ensureUsagesResolved() {
+        Runnable pass = pendingUsageResolution;
+        if (pass != null) {
+            pendingUsageResolution = null;
+            pass.run();
+        }
+    }
+
+    /** Runs the override resolution pass if it was deferred and has not run yet. */
+    void ensureOverridesResolved() {
+        Runnable pass = pendingOverrideResolution;
+        if (pass != null) {
+            pendingOverrideResolution = null;
+            pass.run();
+        }
+    }
+
     @Experimental("Implicitly Declared Classes and Instance Main Methods is a Java 22 / Java 23 Preview feature")
     @NoAttribute
     public boolean isSimpleCompilationUnit() {
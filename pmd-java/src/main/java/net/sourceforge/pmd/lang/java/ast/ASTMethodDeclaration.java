@@ -59,6 +59,7 @@ public final class ASTMethodDeclaration extends AbstractExecutableDeclaration<JM
      * Returns true if this method is overridden.
      */
     public boolean isOverridden() {
+        getRoot().ensureOverridesResolved();
         return overriddenMethod != null;
     }
 
@@ -72,6 +73,7 @@ public final class ASTMethodDeclaration extends AbstractExecutableDeclaration<JM
      * {@link TypeSystem#UNRESOLVED_METHOD}.
      */
     public JMethodSig getOverriddenMethod() {
+        getRoot().ensureOverridesResolved();
         return overriddenMethod;
     }
 
@@ -68,6 +68,7 @@ public final class ASTVariableId extends AbstractTypedSymbolDeclarator<JVariable
      * (though this should be evident from the return type).
      */
     public List<ASTNamedReferenceExpr> getLocalUsages() {
+        getRoot().ensureUsagesResolved();
         return usages;
     }
 
@@ -116,6 +116,22 @@ public final class InternalApiBridge {
             .forEach(OverrideResolutionPass::resolveOverrides);
     }
 
+    /**
+     * Defers the usage resolution pass until the usages of a variable
+     * of the file are first queried.
+     */
+    public static void deferUsageResolution(ASTCompilationUnit root, Runnable pass) {
+        root.deferUsageResolution(pass);
+    }
+
+    /**
+     * Defers the override resolution pass until the overridden method
+     * of a method of the file is first queried.
+     */
+    public static void deferOverrideResolution(ASTCompilationUnit root, Runnable pass) {
+        root.deferOverrideResolution(pass);
+    }
+
     public static @Nullable JTypeMirror getTypeMirrorInternal(TypeNode node) {
         return ((AbstractJavaTypeNode) node).getTypeMirrorInternal();
     }
@@ -53,7 +53,7 @@ public class JavaCpdLexer extends JavaccCpdLexer {
 
     @Override
     protected void processToken(TokenFactory tokenEntries, JavaccToken javaToken) {
-        String image = javaToken.getImage();
+        CharSequence image = javaToken.getImageCs();
 
         constructorDetector.restoreConstructorToken(tokenEntries, javaToken);
 
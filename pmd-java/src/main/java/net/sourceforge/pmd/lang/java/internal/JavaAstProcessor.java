@@ -10,11 +10,13 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.ast.NodeStream;
 import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.InternalApiBridge;
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses.Pass;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JTypeDeclSymbol;
 import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
@@ -115,6 +117,14 @@ public final class JavaAstProcessor {
         return JavaLanguageProperties.getInternalJdkVersion(acu.getLanguageVersion());
     }
 
+    /**
+     * Returns the max number of reduction steps of the type inference
+     * of a call site, see {@link JavaLanguageProperties#TYPE_INFERENCE_BUDGET}.
+     */
+    public int getTypeInferenceBudget() {
+        return globalProc.getProperties().getProperty(JavaLanguageProperties.TYPE_INFERENCE_BUDGET);
+    }
+
     /**
      * Performs semantic analysis on the given source file.
      */
@@ -135,8 +145,28 @@ public final class JavaAstProcessor {
             TimeTracker.bench("Force type resolution", () -> InternalApiBridge.forceTypeResolutionPhase(this, acu));
         }
         TimeTracker.bench("Comment assignment", () -> InternalApiBridge.assignComments(acu));
-        TimeTracker.bench("Usage resolution", () -> InternalApiBridge.usageResolution(this, acu));
-        TimeTracker.bench("Override resolution", () -> InternalApiBridge.overrideResolution(this, acu));
+        if (globalProc.isEagerPass(Pass.USAGE_RESOLUTION)) {
+            TimeTracker.bench("Usage resolution", () -> InternalApiBridge.usageResolution(this, acu));
+        } else {
+            recordDeferred("Usage resolution");
+            InternalApiBridge.deferUsageResolution(
+                acu, () -> TimeTracker.bench("Usage resolution (on demand)", () -> InternalApiBridge.usageResolution(this, acu)));
+        }
+        if (globalProc.isEagerPass(Pass.OVERRIDE_RESOLUTION)) {
+            TimeTracker.bench("Override resolution", () -> InternalApiBridge.overrideResolution(this, acu));
+        } else {
+            recordDeferred("Override resolution");
+            InternalApiBridge.deferOverrideResolution(
+                acu, () -> TimeTracker.bench("Override resolution (on demand)", () -> InternalApiBridge.overrideResolution(this, acu)));
+        }
+    }
+
+    /**
+     * Counts the files on which a pass was not run with the others.
+     * The pass may still run later, it is then timed with the suffix "(on demand)".
+     */
+    private static void recordDeferred(String passLabel) {
+        TimeTracker.addMeasurement(TimedOperationCategory.LANGUAGE_SPECIFIC_PROCESSING, passLabel + " (deferred)", 0, 1, 0);
     }
 
     public TypeSystem getTypeSystem() {
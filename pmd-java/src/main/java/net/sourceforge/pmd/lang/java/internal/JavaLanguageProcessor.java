@@ -4,29 +4,49 @@
 
 package net.sourceforge.pmd.lang.java.internal;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
+import org.apache.commons.lang3.StringUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersionHandler;
 import net.sourceforge.pmd.lang.ast.Parser;
 import net.sourceforge.pmd.lang.impl.BatchLanguageProcessor;
 import net.sourceforge.pmd.lang.java.ast.JavaParser;
 import net.sourceforge.pmd.lang.java.internal.JavaLanguageProperties.InferenceLoggingVerbosity;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses.Pass;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.BaseContextNodeTestFun;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.GetCommentOnFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.GetModifiersFun;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.MatchesSignatureFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.MetricFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.NodeIsFunction;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.AsmSymbolResolver;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.ClassStubCache;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.Classpath;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.IndexedClasspath;
 import net.sourceforge.pmd.lang.java.types.TypeSystem;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger.SimpleLogger;
+import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger.SlowCallSitesLogger;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger.VerboseLogger;
 import net.sourceforge.pmd.lang.metrics.LanguageMetricsProvider;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
 import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
 import net.sourceforge.pmd.reporting.ViolationDecorator;
 import net.sourceforge.pmd.reporting.ViolationSuppressor;
@@ -39,12 +59,23 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     implements LanguageVersionHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(JavaLanguageProcessor.class);
+    private static final int MAX_REPORTED_CALL_SITES = 20;
 
     private final LanguageMetricsProvider myMetricsProvider = new JavaMetricsProvider();
     private final JavaParser parser;
     private final JavaParser parserWithoutProcessing;
     private final boolean firstClassLombok;
     private TypeSystem typeSystem;
+    private @Nullable ClassStubCache stubCache;
+    private @Nullable IndexedClasspath indexedClasspath;
+    /**
+     * Passes that are run on every file. The other passes are run when
+     * their results are first queried. Outside of an analysis (eg in the
+     * designer), all passes are run.
+     */
+    private volatile Set<Pass> eagerPasses = Collections.unmodifiableSet(EnumSet.allOf(Pass.class));
+    /** Shared by the loggers of all files, if the slowest call sites are reported. */
+    private final @Nullable SlowCallSitesLogger slowCallSites;
 
     public JavaLanguageProcessor(JavaLanguageProperties properties, TypeSystem typeSystem) {
         super(properties);
@@ -54,13 +85,89 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
         this.parser = new JavaParser(suppressMarker, this, true);
         this.parserWithoutProcessing = new JavaParser(suppressMarker, this, false);
         this.firstClassLombok = properties.getProperty(JavaLanguageProperties.FIRST_CLASS_LOMBOK);
+        InferenceLoggingVerbosity verbosity = properties.getProperty(JavaLanguageProperties.INTERNAL_INFERENCE_LOGGING_VERBOSITY);
+        this.slowCallSites = verbosity == InferenceLoggingVerbosity.SLOW_CALL_SITES
+                             ? new SlowCallSitesLogger(MAX_REPORTED_CALL_SITES)
+                             : null;
     }
 
     public JavaLanguageProcessor(JavaLanguageProperties properties) {
-        this(properties, TypeSystem.usingClassLoaderClasspath(properties.getAnalysisClassLoader()));
+        this(properties, getSymbolCacheDirectory(properties));
+    }
+
+    private JavaLanguageProcessor(JavaLanguageProperties properties, @Nullable Path symbolCacheDirectory) {
+        this(properties,
+             createClasspath(properties.getAnalysisClassLoader(), symbolCacheDirectory),
+             symbolCacheDirectory == null ? null : new ClassStubCache(symbolCacheDirectory));
+    }
+
+    private JavaLanguageProcessor(JavaLanguageProperties properties, Classpath classpath, @Nullable ClassStubCache stubCache) {
+        this(properties, new TypeSystem(ts -> new AsmSymbolResolver(ts, classpath, stubCache)));
+        this.stubCache = stubCache;
+        this.indexedClasspath = classpath instanceof IndexedClasspath ? (IndexedClasspath) classpath : null;
         LOG.debug("Using analysis classloader: {}", properties.getAnalysisClassLoader());
     }
 
+    private static @Nullable Path getSymbolCacheDirectory(JavaLanguageProperties properties) {
+        String directory = properties.getProperty(JavaLanguageProperties.SYMBOL_CACHE_DIRECTORY);
+        if (StringUtils.isBlank(directory)) {
+            return null;
+        }
+        LOG.debug("Using symbol cache directory: {}", directory);
+        return Paths.get(directory);
+    }
+
+    private static Classpath createClasspath(ClassLoader analysisClassLoader, @Nullable Path symbolCacheDirectory) {
+        if (analysisClassLoader instanceof ClasspathClassLoader) {
+            // the index of the jars is stored along with the class stubs
+            IndexedClasspath indexed = IndexedClasspath.create((ClasspathClassLoader) analysisClassLoader, symbolCacheDirectory);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
+        return Classpath.forClassLoader(analysisClassLoader);
+    }
+
+    @Override
+    public @NonNull AutoCloseable launchAnalysis(@NonNull AnalysisTask task) {
+        Set<Pass> passes = getNeededPasses(getLanguage(), task.getRulesets().getAllRules());
+        LOG.debug("Semantic passes needed by the rules: {}", passes);
+        this.eagerPasses = Collections.unmodifiableSet(passes);
+        return super.launchAnalysis(task);
+    }
+
+    /**
+     * Returns the passes needed by the rules of the given language,
+     * as declared by {@link SemanticPasses}.
+     */
+    static Set<Pass> getNeededPasses(Language language, Collection<? extends Rule> rules) {
+        Set<Pass> needed = EnumSet.noneOf(Pass.class);
+        for (Rule rule : rules) {
+            if (!language.equals(rule.getLanguage())) {
+                continue;
+            }
+            Rule target = rule;
+            while (target instanceof RuleReference) {
+                target = ((RuleReference) target).getRule();
+            }
+            SemanticPasses declared = target.getClass().getAnnotation(SemanticPasses.class);
+            if (declared == null) {
+                return EnumSet.allOf(Pass.class);
+            }
+            needed.addAll(Arrays.asList(declared.value()));
+        }
+        return needed;
+    }
+
+    /**
+     * Returns true if the given pass should be run on every file. Otherwise,
+     * no rule of the current analysis needs it, and it is only run when
+     * its results are queried.
+     */
+    boolean isEagerPass(Pass pass) {
+        return eagerPasses.contains(pass);
+    }
+
     @Override
     public @NonNull LanguageVersionHandler services() {
         return this;
@@ -89,6 +196,8 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
             return new VerboseLogger(System.err);
         } else if (verbosity == InferenceLoggingVerbosity.SIMPLE) {
             return new SimpleLogger(System.err);
+        } else if (slowCallSites != null) {
+            return slowCallSites.newInstance();
         } else {
             return TypeInferenceLogger.noop();
         }
@@ -139,6 +248,15 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     @Override
     public void close() throws Exception {
         this.typeSystem.logStats();
+        if (slowCallSites != null) {
+            slowCallSites.printReport(System.err);
+        }
+        if (stubCache != null) {
+            stubCache.persist();
+        }
+        if (indexedClasspath != null) {
+            indexedClasspath.close();
+        }
         super.close();
     }
 }
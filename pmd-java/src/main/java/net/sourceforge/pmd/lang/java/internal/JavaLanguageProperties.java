@@ -51,11 +51,38 @@ public class JavaLanguageProperties extends JvmLanguagePropertyBundle {
                        .defaultValue(true)
                        .build();
 
+    /**
+     * @since 7.12.0
+     */
+    public static final PropertyDescriptor<String> SYMBOL_CACHE_DIRECTORY =
+        PropertyFactory.stringProperty("symbolCacheDirectory")
+                       .desc("Directory where the classes of the auxclasspath are cached after they have been read, "
+                                 + "to make the type resolution of the next runs faster. Only the classes of jars and of "
+                                 + "the Java runtime are cached, and the cache is not used if their content changes. "
+                                 + "The directory may be deleted at any time. By default, there is no cache.")
+                       .defaultValue("")
+                       .build();
+
+    /**
+     * @since 7.12.0
+     */
+    public static final PropertyDescriptor<Integer> TYPE_INFERENCE_BUDGET =
+        PropertyFactory.intProperty("typeInferenceBudget")
+                       .desc("Maximum number of reduction steps spent on the type inference of a single call site, "
+                                 + "including the calls nested in its arguments. When it is exceeded, the call site "
+                                 + "is left unresolved instead, like a call to an unknown method. This bounds the time "
+                                 + "spent on pathological expressions, like deeply nested generic calls. "
+                                 + "Use 0 for no limit.")
+                       .defaultValue(1_000_000)
+                       .build();
+
     public JavaLanguageProperties() {
         super(JavaLanguageModule.getInstance());
         definePropertyDescriptor(INTERNAL_INFERENCE_LOGGING_VERBOSITY);
         definePropertyDescriptor(INTERNAL_DO_STRICT_TYPERES);
         definePropertyDescriptor(FIRST_CLASS_LOMBOK);
+        definePropertyDescriptor(SYMBOL_CACHE_DIRECTORY);
+        definePropertyDescriptor(TYPE_INFERENCE_BUDGET);
         definePropertyDescriptor(CpdLanguageProperties.CPD_IGNORE_METADATA);
         definePropertyDescriptor(CpdLanguageProperties.CPD_ANONYMIZE_IDENTIFIERS);
         definePropertyDescriptor(CpdLanguageProperties.CPD_ANONYMIZE_LITERALS);
@@ -79,6 +106,14 @@ public class JavaLanguageProperties extends JvmLanguagePropertyBundle {
     }
 
     public enum InferenceLoggingVerbosity {
-        DISABLED, SIMPLE, VERBOSE
+        DISABLED, SIMPLE, VERBOSE,
+        /**
+         * Only report the call sites whose inference took the longest,
+         * and those that exceeded the {@linkplain JavaLanguageProperties#TYPE_INFERENCE_BUDGET budget},
+         * at the end of the analysis.
+         *
+         * @since 7.12.0
+         */
+        SLOW_CALL_SITES
     }
 }
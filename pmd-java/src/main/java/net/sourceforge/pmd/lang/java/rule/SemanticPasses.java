@@ -0,0 +1,51 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.rule;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTVariableId;
+
+/**
+ * Declares which of the optional semantic passes of the Java analysis
+ * a rule class needs. Those passes are run on every file after the
+ * symbols and types are set up. When no rule of an analysis needs one
+ * of them, it is not run upfront, but only when a node first queries
+ * its results. A rule that declares too few passes is therefore still
+ * correct, just slower.
+ *
+ * <p>A rule class without this annotation is assumed to need all
+ * passes, like XPath rules. Use {@code @SemanticPasses({})} for a rule
+ * that needs none of them. The annotation is inherited by subclasses.
+ * For a {@link net.sourceforge.pmd.lang.rule.RuleReference RuleReference},
+ * the annotation of the referenced rule class is considered.
+ *
+ * @since 7.12.0
+ */
+@Experimental
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SemanticPasses {
+
+    /** The passes needed by the rule. */
+    Pass[] value();
+
+    /** An optional semantic pass. */
+    enum Pass {
+        /** Finds the usages of local variables and fields, see {@link ASTVariableId#getLocalUsages()}. */
+        USAGE_RESOLUTION,
+        /** Finds the methods that are overridden, see {@link ASTMethodDeclaration#getOverriddenMethod()}. */
+        OVERRIDE_RESOLUTION
+    }
+}
@@ -8,6 +8,7 @@ import java.util.regex.Pattern;
 
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses;
 import net.sourceforge.pmd.properties.PropertyBuilder.RegexPropertyBuilder;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.properties.PropertyFactory;
@@ -24,6 +25,7 @@ import net.sourceforge.pmd.util.StringUtil.CaseConvention;
  * @author Clément Fournier
  * @since 6.5.0
  */
+@SemanticPasses({})
 abstract class AbstractNamingConventionRule<T extends JavaNode> extends AbstractJavaRulechainRule {
 
     static final String CAMEL_CASE = "[a-z][a-zA-Z0-9]*";
@@ -10,11 +10,14 @@ import java.util.regex.Pattern;
 
 import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
 import net.sourceforge.pmd.lang.java.ast.JModifier;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses.Pass;
 import net.sourceforge.pmd.lang.java.rule.internal.TestFrameworksUtil;
 import net.sourceforge.pmd.properties.PropertyBuilder.RegexPropertyBuilder;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 
 
+@SemanticPasses(Pass.OVERRIDE_RESOLUTION)
 public class MethodNamingConventionsRule extends AbstractNamingConventionRule<ASTMethodDeclaration> {
 
     private final Map<String, String> descriptorToDisplayName = new HashMap<>();
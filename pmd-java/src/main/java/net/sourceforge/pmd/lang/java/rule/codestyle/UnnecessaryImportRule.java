@@ -28,6 +28,7 @@ import net.sourceforge.pmd.lang.java.ast.JavaNode;
 import net.sourceforge.pmd.lang.java.ast.JavadocComment;
 import net.sourceforge.pmd.lang.java.ast.internal.PrettyPrintingUtil;
 import net.sourceforge.pmd.lang.java.rule.AbstractJavaRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses;
 import net.sourceforge.pmd.lang.java.symbols.JAccessibleElementSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JExecutableSymbol;
@@ -56,6 +57,7 @@ import net.sourceforge.pmd.util.CollectionUtil;
  * import is used is hard though, mostly because the API to expose
  * is unclear (we wouldn't want symbol tables to expose a mutable API).
  */
+@SemanticPasses({})
 public class UnnecessaryImportRule extends AbstractJavaRule {
 
     private static final String UNUSED_IMPORT_MESSAGE = "Unused import ''{0}''";
@@ -34,6 +34,7 @@ public class AsmSymbolResolver implements SymbolResolver {
     private final TypeSystem ts;
     private final Classpath classLoader;
     private final SignatureParser typeLoader;
+    private final @Nullable ClassStubCache stubCache;
 
     private final ConcurrentMap<String, ClassStub> knownStubs = new ConcurrentHashMap<>();
 
@@ -44,8 +45,23 @@ public class AsmSymbolResolver implements SymbolResolver {
     private final ClassStub failed;
 
     public AsmSymbolResolver(TypeSystem ts, Classpath classLoader) {
+        this(ts, classLoader, null);
+    }
+
+    /**
+     * Create a resolver that reads the class files it has cached in
+     * a previous run from the given cache, instead of parsing them.
+     *
+     * @param ts          Type system
+     * @param classLoader Classpath where to find class files
+     * @param stubCache   Cache of parsed class files, or null to not use a cache
+     *
+     * @since 7.12.0
+     */
+    public AsmSymbolResolver(TypeSystem ts, Classpath classLoader, @Nullable ClassStubCache stubCache) {
         this.ts = ts;
         this.classLoader = classLoader;
+        this.stubCache = stubCache;
         this.typeLoader = new SignatureParser(this);
         this.failed = new ClassStub(this, "/*failed-lookup*/", FailedLoader.INSTANCE, 0);
     }
@@ -57,12 +73,12 @@ public class AsmSymbolResolver implements SymbolResolver {
         String internalName = getInternalName(binaryName);
 
         ClassStub found = knownStubs.computeIfAbsent(internalName, iname -> {
-            @Nullable InputStream inputStream = getStreamOfInternalName(iname);
-            if (inputStream == null) {
+            @Nullable Loader loader = getLoaderOfInternalName(iname);
+            if (loader == null) {
                 return failed;
             }
 
-            return new ClassStub(this, iname, new StreamLoader(binaryName, inputStream), ClassStub.UNKNOWN_ARITY);
+            return new ClassStub(this, iname, loader, ClassStub.UNKNOWN_ARITY);
         });
 
         if (!found.hasCanonicalName()) {
@@ -99,9 +115,19 @@ public class AsmSymbolResolver implements SymbolResolver {
         return binaryName.replace('.', '/');
     }
 
+    /**
+     * Returns a loader for the class file of the given class, or null
+     * if it is not on the classpath.
+     */
     @Nullable
-    InputStream getStreamOfInternalName(String internalName) {
-        return classLoader.findResource(internalName + ".class");
+    Loader getLoaderOfInternalName(String internalName) {
+        String resourcePath = internalName + ".class";
+        if (stubCache == null) {
+            InputStream inputStream = classLoader.findResource(resourcePath);
+            return inputStream == null ? null : new StreamLoader(internalName, inputStream);
+        }
+        Classpath.Resource resource = classLoader.findFingerprintedResource(resourcePath);
+        return resource == null ? null : stubCache.getLoader(internalName, resource);
     }
 
     /*
@@ -121,9 +147,8 @@ public class AsmSymbolResolver implements SymbolResolver {
             if (prev != failed && prev != null) {
                 return prev;
             }
-            @Nullable InputStream inputStream = getStreamOfInternalName(iname);
-            Loader loader = inputStream == null ? FailedLoader.INSTANCE : new StreamLoader(internalName, inputStream);
-            return new ClassStub(this, iname, loader, observedArity);
+            @Nullable Loader loader = getLoaderOfInternalName(iname);
+            return new ClassStub(this, iname, loader == null ? FailedLoader.INSTANCE : loader, observedArity);
         });
     }
 
@@ -0,0 +1,205 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+
+/**
+ * Classpath that finds resources with a class loader. Resources found
+ * in a jar or in a Java runtime image are fingerprinted. Resources in
+ * directories have no fingerprint, since computing it would mean reading
+ * the whole directory.
+ */
+final class ClassLoaderClasspath implements Classpath {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClassLoaderClasspath.class);
+
+    /** Value of {@link #fingerprints} when an entry cannot be fingerprinted. */
+    private static final String NO_FINGERPRINT = "";
+
+    private final ClassLoader classLoader;
+    /** Fingerprints of the jars and runtime images, by URL of the jar or java home. */
+    private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    ClassLoaderClasspath(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public @Nullable InputStream findResource(String resourcePath) {
+        return classLoader.getResourceAsStream(resourcePath);
+    }
+
+    @Override
+    public @Nullable Resource findFingerprintedResource(String resourcePath) {
+        if (classLoader instanceof ClasspathClassLoader) {
+            // those resources are not found by getResource
+            String javaHome = ((ClasspathClassLoader) classLoader).getJrtJavaHome(resourcePath);
+            if (javaHome != null) {
+                String fingerprint = fingerprints.computeIfAbsent("jrt:" + javaHome, k -> fingerprintJavaHome(javaHome));
+                return new Resource(nullIfNone(fingerprint)) {
+                    @Override
+                    public InputStream open() throws IOException {
+                        InputStream stream = classLoader.getResourceAsStream(resourcePath);
+                        if (stream == null) {
+                            throw new IOException("Resource disappeared: " + resourcePath);
+                        }
+                        return stream;
+                    }
+                };
+            }
+        }
+
+        URL url = classLoader.getResource(resourcePath);
+        if (url == null) {
+            return null;
+        }
+        return new Resource(getFingerprint(url, resourcePath)) {
+            @Override
+            public InputStream open() throws IOException {
+                return url.openStream();
+            }
+        };
+    }
+
+    private @Nullable String getFingerprint(URL url, String resourcePath) {
+        String fingerprint = NO_FINGERPRINT;
+        if ("jar".equals(url.getProtocol())) {
+            // eg jar:file:/home/me/.m2/foo.jar!/com/foo/Bar.class
+            String spec = url.toString();
+            int separator = spec.indexOf("!/");
+            // The entry of a multi-release jar or a nested jar depends on more
+            // than the content of the jar, don't cache it
+            if (separator >= 0 && spec.startsWith("jar:file:") && spec.substring(separator + 2).equals(resourcePath)) {
+                String jarUri = spec.substring("jar:".length(), separator);
+                fingerprint = fingerprints.computeIfAbsent(jarUri, ClassLoaderClasspath::fingerprintJar);
+            }
+        } else if ("jrt".equals(url.getProtocol())) {
+            // the runtime image of the running JVM
+            String javaHome = System.getProperty("java.home");
+            fingerprint = fingerprints.computeIfAbsent("jrt:" + javaHome, k -> fingerprintJavaHome(javaHome));
+        }
+        return nullIfNone(fingerprint);
+    }
+
+    private static @Nullable String nullIfNone(String fingerprint) {
+        return NO_FINGERPRINT.equals(fingerprint) ? null : fingerprint;
+    }
+
+    /**
+     * Fingerprint of a jar, from the names and CRCs of its class files,
+     * like {@link net.sourceforge.pmd.cache.internal.ZipFileFingerprinter}.
+     * This only reads the central directory of the jar.
+     */
+    private static String fingerprintJar(String jarUri) {
+        try (ZipFile zip = new ZipFile(Paths.get(URI.create(jarUri)).toFile())) {
+            return fingerprintJar(zip);
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.debug("Cannot fingerprint {}, its classes will not be cached", jarUri, e);
+            return NO_FINGERPRINT;
+        }
+    }
+
+    /**
+     * Fingerprint of an open jar. This must stay consistent for all
+     * classpath implementations, as it names the files of the {@link ClassStubCache}.
+     */
+    static String fingerprintJar(ZipFile zip) {
+        List<ZipEntry> classFiles = new ArrayList<>();
+        for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.getName().endsWith(".class")) {
+                classFiles.add(entry);
+            }
+        }
+        classFiles.sort((a, b) -> a.getName().compareTo(b.getName()));
+
+        Fingerprint fingerprint = new Fingerprint();
+        for (ZipEntry entry : classFiles) {
+            fingerprint.update(entry.getName());
+            fingerprint.update(entry.getCrc());
+        }
+        return fingerprint.toString("jar");
+    }
+
+    /**
+     * Fingerprint of a Java runtime image, from its release file and
+     * the size and modification time of its modules file.
+     */
+    private static String fingerprintJavaHome(String javaHome) {
+        try {
+            Path home = Paths.get(javaHome);
+            Path modules = home.resolve("lib").resolve("modules");
+            Path release = home.resolve("release");
+            if (!Files.isRegularFile(modules)) {
+                return NO_FINGERPRINT;
+            }
+
+            Fingerprint fingerprint = new Fingerprint();
+            fingerprint.update(home.toAbsolutePath().toString());
+            fingerprint.update(Files.size(modules));
+            fingerprint.update(Files.getLastModifiedTime(modules).toMillis());
+            if (Files.isRegularFile(release)) {
+                fingerprint.update(new String(Files.readAllBytes(release), StandardCharsets.UTF_8));
+            }
+            return fingerprint.toString("jrt");
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Cannot fingerprint the runtime image {}, its classes will not be cached", javaHome, e);
+            return NO_FINGERPRINT;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ClassLoaderClasspath[" + classLoader + "]";
+    }
+
+    static final class Fingerprint {
+        private final CRC32 crc = new CRC32();
+        private final Adler32 adler = new Adler32();
+
+        void update(String string) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            crc.update(bytes);
+            adler.update(bytes);
+            // separator, so that ("ab", "c") and ("a", "bc") differ
+            update(bytes.length);
+        }
+
+        void update(long value) {
+            for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+                int b = (int) (value >>> shift) & 0xFF;
+                crc.update(b);
+                adler.update(b);
+            }
+        }
+
+        String toString(String prefix) {
+            return String.format("%s-%08x%08x", prefix, crc.getValue(), adler.getValue());
+        }
+    }
+}
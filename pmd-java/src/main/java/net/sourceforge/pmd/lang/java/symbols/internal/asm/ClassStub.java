@@ -5,7 +5,6 @@
 package net.sourceforge.pmd.lang.java.symbols.internal.asm;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -14,7 +13,6 @@ import java.util.regex.Pattern;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Opcodes;
 import org.pcollections.HashTreePSet;
 import org.pcollections.PSet;
@@ -89,15 +87,8 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
         this.parseLock = new CheckedParseLock("ClassStub:" + internalName) {
             @Override
             protected boolean doParse() throws IOException {
-                try (InputStream instream = loader.getInputStream()) {
-                    if (instream != null) {
-                        ClassReader classReader = new ClassReader(instream);
-                        ClassStubBuilder builder = new ClassStubBuilder(ClassStub.this, resolver);
-                        classReader.accept(builder, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                        return true;
-                    } else {
-                        return false;
-                    }
+                try {
+                    return loader.accept(new ClassStubBuilder(ClassStub.this, resolver));
                 } catch (IOException e) {
                     // add a bit more info to the exception
                     throw new IOException("While loading class from " + loader, e);
@@ -22,6 +22,10 @@ import net.sourceforge.pmd.lang.java.symbols.internal.asm.ExecutableStub.MethodS
  * Populates a {@link ClassStub} by reading a class file. Some info is
  * known by the ClassStub without parsing (like its internal name), so
  * we defer parsing until later. The class should be parsed only once.
+ *
+ * <p>The events this visitor consumes are also replayed from the
+ * {@link ClassStubCache}. When this visitor handles a new kind of
+ * event, {@link ClassStubRecord} must record it too.
  */
 class ClassStubBuilder extends ClassVisitor {
 
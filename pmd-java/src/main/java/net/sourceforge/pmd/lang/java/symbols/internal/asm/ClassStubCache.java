@@ -0,0 +1,354 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.ClassVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.Classpath.Resource;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.Loader.ResourceLoader;
+
+/**
+ * A cache of the parsed class files of a classpath, which is persisted
+ * in a directory to be reused by the next runs. The classes of a classpath
+ * entry (a jar or a Java runtime image) are stored in one file, named
+ * after the {@linkplain Resource#getEntryFingerprint() fingerprint} of
+ * the entry and a generation. So a class is only read from the cache if its jar has not
+ * changed, and the cache files of jars that are not used anymore are
+ * just not read. Classes without a fingerprint, e.g. in directories,
+ * are not cached.
+ *
+ * <p>A cached class is a {@linkplain ClassStubRecord record} of what the
+ * symbol resolver reads from the class file, which is replayed when the
+ * symbol is first used. Cache files are memory-mapped and only read when
+ * a class of their entry is needed. New records are written by {@link #persist()},
+ * into a file of the next generation, as a mapped file cannot be replaced
+ * on all platforms (Windows). The previous generations are deleted when
+ * possible, and otherwise by a later call. The cache files are ignored if
+ * they were written by another version of PMD.
+ *
+ * <p>The cache may be shared by several {@link AsmSymbolResolver}s, but
+ * the directory should not be used by several processes at the same time.
+ *
+ * @since 7.12.0
+ */
+public final class ClassStubCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClassStubCache.class);
+
+    /** Incremented when the format of the cache files or of the {@link ClassStubRecord}s changes. */
+    static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x504d4453; // "PMDS"
+    private static final String EXTENSION = ".stubs";
+
+    private final Path directory;
+    /** Cache files that have been opened, by fingerprint. */
+    private final ConcurrentMap<String, CacheFile> files = new ConcurrentHashMap<>();
+    /** Records that are not persisted yet, by fingerprint and internal name. */
+    private final ConcurrentMap<String, ConcurrentMap<String, byte[]>> newRecords = new ConcurrentHashMap<>();
+
+    private final AtomicInteger numHits = new AtomicInteger();
+    private final AtomicInteger numMisses = new AtomicInteger();
+
+    /**
+     * Create a cache in the given directory. The directory is created
+     * by {@link #persist()} if it doesn't exist.
+     */
+    public ClassStubCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns a loader for the class with the given internal name, which is
+     * the given resource of the classpath. If the class is in the cache, the
+     * loader replays the cached record. Otherwise, it parses the class file,
+     * and records it to be persisted.
+     */
+    Loader getLoader(String internalName, Resource resource) {
+        String fingerprint = resource.getEntryFingerprint();
+        if (fingerprint == null) {
+            return new ResourceLoader(internalName, resource);
+        }
+        ByteBuffer record = files.computeIfAbsent(fingerprint, this::openFile).find(internalName);
+        if (record != null) {
+            numHits.incrementAndGet();
+            return new CachedLoader(internalName, record);
+        }
+        numMisses.incrementAndGet();
+        return new RecordingLoader(internalName, resource, fingerprint);
+    }
+
+    /**
+     * Writes the classes that were parsed since the last call to this
+     * method to the cache directory. Failures are logged and otherwise
+     * ignored, as the cache is only an optimization.
+     */
+    public void persist() {
+        LOG.debug("Class stub cache {}: {} classes read from the cache, {} parsed", directory, numHits, numMisses);
+        for (String fingerprint : newRecords.keySet()) {
+            Map<String, byte[]> records = newRecords.remove(fingerprint);
+            if (records == null || records.isEmpty()) {
+                continue;
+            }
+            try {
+                writeFile(fingerprint, records);
+            } catch (IOException e) {
+                LOG.warn("Cannot update the class stub cache {}: {}", directory, e.toString());
+            }
+        }
+    }
+
+    private Path getFile(String fingerprint, long generation) {
+        return directory.resolve(fingerprint + "." + generation + EXTENSION);
+    }
+
+    /** Returns the generations of the cache files of an entry, in ascending order. */
+    private List<Long> listGenerations(String fingerprint) throws IOException {
+        List<Long> generations = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return generations;
+        }
+        String prefix = fingerprint + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + EXTENSION)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - EXTENSION.length())));
+                } catch (NumberFormatException ignored) {
+                    // not a cache file
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /*
+     * The format of a file is:
+     *  - a header: MAGIC, FORMAT_VERSION, PMD version
+     *  - the number of records, then the index: the internal name, offset and length of each record
+     *  - the records, offsets are relative to the end of the index
+     * Numbers are big-endian ints, strings are a short length and their UTF-8 bytes.
+     */
+
+    private CacheFile openFile(String fingerprint) {
+        List<Long> generations;
+        try {
+            generations = listGenerations(fingerprint);
+        } catch (IOException e) {
+            LOG.debug("Cannot list the cache files of {}", fingerprint, e);
+            return CacheFile.EMPTY;
+        }
+        if (generations.isEmpty()) {
+            return CacheFile.EMPTY;
+        }
+        Path file = getFile(fingerprint, generations.get(generations.size() - 1));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC
+                || buffer.getInt() != FORMAT_VERSION
+                || !PMDVersion.VERSION.equals(readString(buffer))) {
+                LOG.debug("Ignoring the cache file {}, which was written by another version of PMD", file);
+                return CacheFile.EMPTY;
+            }
+            int count = buffer.getInt();
+            Map<String, long[]> index = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                index.put(readString(buffer), new long[] {buffer.getInt(), buffer.getInt()});
+            }
+            ByteBuffer records = buffer.slice();
+            for (long[] offsetAndLength : index.values()) {
+                if (offsetAndLength[0] < 0 || offsetAndLength[1] < 0 || offsetAndLength[0] + offsetAndLength[1] > records.capacity()) {
+                    throw new IllegalArgumentException("Record out of bounds");
+                }
+            }
+            return new CacheFile(records, index);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Ignoring the unreadable cache file {}", file, e);
+            return CacheFile.EMPTY;
+        }
+    }
+
+    private void writeFile(String fingerprint, Map<String, byte[]> records) throws IOException {
+        Map<String, byte[]> allRecords = new TreeMap<>();
+        CacheFile existing = files.get(fingerprint);
+        if (existing != null) {
+            existing.copyTo(allRecords);
+        }
+        allRecords.putAll(records);
+
+        Files.createDirectories(directory);
+        List<Long> generations = listGenerations(fingerprint);
+        long generation = generations.isEmpty() ? 0 : generations.get(generations.size() - 1) + 1;
+        Path target = getFile(fingerprint, generation);
+        Path temp = Files.createTempFile(directory, fingerprint, ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, PMDVersion.VERSION);
+                out.writeInt(allRecords.size());
+                int offset = 0;
+                for (Map.Entry<String, byte[]> entry : allRecords.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeInt(offset);
+                    out.writeInt(entry.getValue().length);
+                    offset += entry.getValue().length;
+                }
+                for (byte[] record : allRecords.values()) {
+                    out.write(record);
+                }
+            }
+            // a new file, the previous one may still be mapped
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        // so that the next call to persist doesn't drop those records
+        files.put(fingerprint, openFile(fingerprint));
+
+        for (long previous : generations) {
+            try {
+                Files.deleteIfExists(getFile(fingerprint, previous));
+            } catch (IOException e) {
+                // still mapped on Windows, deleted by a later call
+                LOG.debug("Cannot delete the previous cache file of {}: {}", fingerprint, e.toString());
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] utf8 = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    @Override
+    public String toString() {
+        return "ClassStubCache[" + directory + "]";
+    }
+
+    private static final class CacheFile {
+        static final CacheFile EMPTY = new CacheFile(ByteBuffer.allocate(0), Collections.emptyMap());
+
+        private final ByteBuffer records;
+        private final Map<String, long[]> index;
+
+        CacheFile(ByteBuffer records, Map<String, long[]> index) {
+            this.records = records;
+            this.index = index;
+        }
+
+        @Nullable ByteBuffer find(String internalName) {
+            long[] offsetAndLength = index.get(internalName);
+            if (offsetAndLength == null) {
+                return null;
+            }
+            // the position of a buffer is not thread-safe, each record gets its own
+            ByteBuffer record = records.duplicate();
+            record.position((int) offsetAndLength[0]);
+            record.limit((int) (offsetAndLength[0] + offsetAndLength[1]));
+            return record.slice();
+        }
+
+        void copyTo(Map<String, byte[]> map) {
+            for (String internalName : index.keySet()) {
+                ByteBuffer record = find(internalName);
+                byte[] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                map.put(internalName, bytes);
+            }
+        }
+    }
+
+    /** Populates the stub from a cached record. */
+    private static final class CachedLoader extends Loader {
+        private final String internalName;
+        private final ByteBuffer record;
+
+        CachedLoader(String internalName, ByteBuffer record) {
+            this.internalName = internalName;
+            this.record = record;
+        }
+
+        @Override
+        @Nullable InputStream getInputStream() {
+            // the class file is not needed
+            return null;
+        }
+
+        @Override
+        boolean accept(ClassVisitor visitor) {
+            ClassStubRecord.replay(record.duplicate(), visitor);
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "CachedLoader(for " + internalName + ")";
+        }
+    }
+
+    /** Parses the class file, and records it into the cache. */
+    private final class RecordingLoader extends ResourceLoader {
+        private final String internalName;
+        private final String fingerprint;
+
+        RecordingLoader(String internalName, Resource resource, String fingerprint) {
+            super(internalName, resource);
+            this.internalName = internalName;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        boolean accept(ClassVisitor visitor) throws IOException {
+            ClassStubRecord.Recorder recorder = new ClassStubRecord.Recorder(visitor);
+            boolean found = super.accept(recorder);
+            byte[] record = recorder.toByteArray();
+            if (found && record != null) {
+                newRecords.computeIfAbsent(fingerprint, k -> new ConcurrentHashMap<>()).put(internalName, record);
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,889 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+
+/**
+ * Compact binary record of the events of a class file that a {@link ClassStubBuilder}
+ * consumes. Replaying a record into a builder populates the stub like
+ * reading the class file would, without reading or parsing the class file.
+ *
+ * <p>Only the events that the visitors of the builder accept are recorded:
+ * when a builder returns a null visitor, e.g. for synthetic methods,
+ * nothing is recorded for that element. Events that the builder does not
+ * override (e.g. {@code visitSource}) are not recorded either. When
+ * {@link ClassStubBuilder} starts handling another event, this class must
+ * record it, and {@link ClassStubCache#FORMAT_VERSION} must be incremented.
+ *
+ * <p>A record is a sequence of tagged events, where nested visitors
+ * (annotations, fields, methods...) are followed by their own events
+ * and an {@link #END} tag. Strings are written once per record, and
+ * referenced by index after that.
+ */
+final class ClassStubRecord {
+
+    private static final int END = 0;
+
+    // class events
+    private static final int VISIT = 1;
+    private static final int ANNOTATION = 2;
+    private static final int RECORD_COMPONENT = 3;
+    private static final int OUTER_CLASS = 4;
+    private static final int FIELD = 5;
+    private static final int PERMITTED_SUBCLASS = 6;
+    private static final int INNER_CLASS = 7;
+    private static final int METHOD = 8;
+
+    // member events, and ANNOTATION
+    private static final int TYPE_ANNOTATION = 9;
+    private static final int ANNOTATION_DEFAULT = 10;
+    private static final int PARAMETER_ANNOTATION = 11;
+
+    // annotation events
+    private static final int VALUE = 12;
+    private static final int ENUM = 13;
+    private static final int NESTED_ANNOTATION = 14;
+    private static final int ARRAY = 15;
+
+    // string codes, other codes are 2 + the index of a string already read
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
+
+    // tags of annotation values and field constants
+    private static final int V_NULL = 0;
+    private static final int V_BOOLEAN = 1;
+    private static final int V_BYTE = 2;
+    private static final int V_CHAR = 3;
+    private static final int V_SHORT = 4;
+    private static final int V_INT = 5;
+    private static final int V_LONG = 6;
+    private static final int V_FLOAT = 7;
+    private static final int V_DOUBLE = 8;
+    private static final int V_STRING = 9;
+    private static final int V_TYPE = 10;
+    private static final int V_BOOLEAN_ARRAY = 11;
+    private static final int V_BYTE_ARRAY = 12;
+    private static final int V_CHAR_ARRAY = 13;
+    private static final int V_SHORT_ARRAY = 14;
+    private static final int V_INT_ARRAY = 15;
+    private static final int V_LONG_ARRAY = 16;
+    private static final int V_FLOAT_ARRAY = 17;
+    private static final int V_DOUBLE_ARRAY = 18;
+
+    private ClassStubRecord() {
+        // utility class
+    }
+
+    /**
+     * Replays a record into the given visitor. Throws an {@link IllegalArgumentException}
+     * if the record is malformed.
+     */
+    static void replay(ByteBuffer record, ClassVisitor visitor) {
+        Input in = new Input(record);
+        try {
+            replayClass(in, visitor);
+        } catch (RuntimeException e) {
+            if (e instanceof IllegalArgumentException) {
+                throw e;
+            }
+            // eg BufferUnderflowException
+            throw new IllegalArgumentException("Malformed class stub record", e);
+        }
+    }
+
+    private static void replayClass(Input in, ClassVisitor visitor) {
+        for (int tag = in.varint(); tag != END; tag = in.varint()) {
+            switch (tag) {
+            case VISIT: {
+                int version = in.varint();
+                int access = in.varint();
+                String name = in.string();
+                String signature = in.string();
+                String superName = in.string();
+                String[] interfaces = in.strings();
+                visitor.visit(version, access, name, signature, superName, interfaces);
+                break;
+            }
+            case ANNOTATION: {
+                String descriptor = in.string();
+                boolean visible = in.bool();
+                replayAnnotation(in, visitor.visitAnnotation(descriptor, visible));
+                break;
+            }
+            case RECORD_COMPONENT: {
+                String name = in.string();
+                String descriptor = in.string();
+                String signature = in.string();
+                RecordComponentVisitor rv = visitor.visitRecordComponent(name, descriptor, signature);
+                replayMember(in, rv == null ? new MemberVisitor() : new MemberVisitor(rv));
+                break;
+            }
+            case OUTER_CLASS: {
+                String owner = in.string();
+                String name = in.string();
+                String descriptor = in.string();
+                visitor.visitOuterClass(owner, name, descriptor);
+                break;
+            }
+            case FIELD: {
+                int access = in.varint();
+                String name = in.string();
+                String descriptor = in.string();
+                String signature = in.string();
+                Object value = in.value();
+                FieldVisitor fv = visitor.visitField(access, name, descriptor, signature, value);
+                replayMember(in, fv == null ? new MemberVisitor() : new MemberVisitor(fv));
+                break;
+            }
+            case PERMITTED_SUBCLASS:
+                visitor.visitPermittedSubclass(in.string());
+                break;
+            case INNER_CLASS: {
+                String name = in.string();
+                String outerName = in.string();
+                String innerName = in.string();
+                int access = in.varint();
+                visitor.visitInnerClass(name, outerName, innerName, access);
+                break;
+            }
+            case METHOD: {
+                int access = in.varint();
+                String name = in.string();
+                String descriptor = in.string();
+                String signature = in.string();
+                String[] exceptions = in.strings();
+                MethodVisitor mv = visitor.visitMethod(access, name, descriptor, signature, exceptions);
+                replayMember(in, mv == null ? new MemberVisitor() : new MemberVisitor(mv));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown class event " + tag);
+            }
+        }
+        visitor.visitEnd();
+    }
+
+    private static void replayMember(Input in, MemberVisitor visitor) {
+        for (int tag = in.varint(); tag != END; tag = in.varint()) {
+            switch (tag) {
+            case ANNOTATION: {
+                String descriptor = in.string();
+                boolean visible = in.bool();
+                replayAnnotation(in, visitor.visitAnnotation(descriptor, visible));
+                break;
+            }
+            case TYPE_ANNOTATION: {
+                int typeRef = in.buffer.getInt();
+                String typePath = in.string();
+                String descriptor = in.string();
+                boolean visible = in.bool();
+                replayAnnotation(in, visitor.visitTypeAnnotation(typeRef, typePath == null ? null : TypePath.fromString(typePath), descriptor, visible));
+                break;
+            }
+            case ANNOTATION_DEFAULT:
+                replayAnnotation(in, visitor.visitAnnotationDefault());
+                break;
+            case PARAMETER_ANNOTATION: {
+                int parameter = in.varint();
+                String descriptor = in.string();
+                boolean visible = in.bool();
+                replayAnnotation(in, visitor.visitParameterAnnotation(parameter, descriptor, visible));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown member event " + tag);
+            }
+        }
+        visitor.visitEnd();
+    }
+
+    private static void replayAnnotation(Input in, @Nullable AnnotationVisitor visitor) {
+        // the visitor is null only if it was null when recording, and then nothing was recorded
+        for (int tag = in.varint(); tag != END; tag = in.varint()) {
+            switch (tag) {
+            case VALUE: {
+                String name = in.string();
+                Object value = in.value();
+                if (visitor != null) {
+                    visitor.visit(name, value);
+                }
+                break;
+            }
+            case ENUM: {
+                String name = in.string();
+                String descriptor = in.string();
+                String value = in.string();
+                if (visitor != null) {
+                    visitor.visitEnum(name, descriptor, value);
+                }
+                break;
+            }
+            case NESTED_ANNOTATION: {
+                String name = in.string();
+                String descriptor = in.string();
+                replayAnnotation(in, visitor == null ? null : visitor.visitAnnotation(name, descriptor));
+                break;
+            }
+            case ARRAY:
+                replayAnnotation(in, visitor == null ? null : visitor.visitArray(in.string()));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown annotation event " + tag);
+            }
+        }
+        if (visitor != null) {
+            visitor.visitEnd();
+        }
+    }
+
+    /**
+     * Forwards the events of members (fields, record components and methods)
+     * to the right ASM visitor. Ignores them if there is no visitor.
+     */
+    private static final class MemberVisitor {
+        private final @Nullable FieldVisitor field;
+        private final @Nullable RecordComponentVisitor component;
+        private final @Nullable MethodVisitor method;
+
+        MemberVisitor() {
+            this(null, null, null);
+        }
+
+        MemberVisitor(FieldVisitor field) {
+            this(field, null, null);
+        }
+
+        MemberVisitor(RecordComponentVisitor component) {
+            this(null, component, null);
+        }
+
+        MemberVisitor(MethodVisitor method) {
+            this(null, null, method);
+        }
+
+        private MemberVisitor(@Nullable FieldVisitor field, @Nullable RecordComponentVisitor component, @Nullable MethodVisitor method) {
+            this.field = field;
+            this.component = component;
+            this.method = method;
+        }
+
+        @Nullable AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (field != null) {
+                return field.visitAnnotation(descriptor, visible);
+            } else if (component != null) {
+                return component.visitAnnotation(descriptor, visible);
+            } else if (method != null) {
+                return method.visitAnnotation(descriptor, visible);
+            }
+            return null;
+        }
+
+        @Nullable AnnotationVisitor visitTypeAnnotation(int typeRef, @Nullable TypePath typePath, String descriptor, boolean visible) {
+            if (field != null) {
+                return field.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+            } else if (component != null) {
+                return component.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+            } else if (method != null) {
+                return method.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+            }
+            return null;
+        }
+
+        @Nullable AnnotationVisitor visitAnnotationDefault() {
+            return method == null ? null : method.visitAnnotationDefault();
+        }
+
+        @Nullable AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+            return method == null ? null : method.visitParameterAnnotation(parameter, descriptor, visible);
+        }
+
+        void visitEnd() {
+            if (field != null) {
+                field.visitEnd();
+            } else if (component != null) {
+                component.visitEnd();
+            } else if (method != null) {
+                method.visitEnd();
+            }
+        }
+    }
+
+    /**
+     * A class visitor that forwards the events to a delegate, and records
+     * the events that the delegate accepts. The record is complete after
+     * {@link #visitEnd()}.
+     */
+    static final class Recorder extends ClassVisitor {
+
+        private final Output out = new Output();
+        private boolean complete;
+
+        Recorder(ClassVisitor delegate) {
+            super(AsmSymbolResolver.ASM_API_V, delegate);
+        }
+
+        /** Returns the record, or null if the class has not been visited completely. */
+        byte[] toByteArray() {
+            return complete ? out.toByteArray() : null;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, @Nullable String signature, @Nullable String superName, String[] interfaces) {
+            super.visit(version, access, name, signature, superName, interfaces);
+            out.varint(VISIT);
+            out.varint(version);
+            out.varint(access);
+            out.string(name);
+            out.string(signature);
+            out.string(superName);
+            out.strings(interfaces);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            AnnotationVisitor av = super.visitAnnotation(descriptor, visible);
+            if (av == null) {
+                return null;
+            }
+            out.varint(ANNOTATION);
+            out.string(descriptor);
+            out.bool(visible);
+            return new AnnotationRecorder(av, out);
+        }
+
+        @Override
+        public RecordComponentVisitor visitRecordComponent(String name, String descriptor, @Nullable String signature) {
+            RecordComponentVisitor rv = super.visitRecordComponent(name, descriptor, signature);
+            if (rv == null) {
+                return null;
+            }
+            out.varint(RECORD_COMPONENT);
+            out.string(name);
+            out.string(descriptor);
+            out.string(signature);
+            return new RecordComponentVisitor(api, rv) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                    return recordAnnotation(out, super.visitAnnotation(descriptor, visible), descriptor, visible);
+                }
+
+                @Override
+                public AnnotationVisitor visitTypeAnnotation(int typeRef, @Nullable TypePath typePath, String descriptor, boolean visible) {
+                    return recordTypeAnnotation(out, super.visitTypeAnnotation(typeRef, typePath, descriptor, visible), typeRef, typePath, descriptor, visible);
+                }
+
+                @Override
+                public void visitEnd() {
+                    super.visitEnd();
+                    out.varint(END);
+                }
+            };
+        }
+
+        @Override
+        public void visitOuterClass(String owner, @Nullable String name, @Nullable String descriptor) {
+            super.visitOuterClass(owner, name, descriptor);
+            out.varint(OUTER_CLASS);
+            out.string(owner);
+            out.string(name);
+            out.string(descriptor);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, @Nullable String signature, @Nullable Object value) {
+            FieldVisitor fv = super.visitField(access, name, descriptor, signature, value);
+            if (fv == null) {
+                return null;
+            }
+            out.varint(FIELD);
+            out.varint(access);
+            out.string(name);
+            out.string(descriptor);
+            out.string(signature);
+            out.value(value);
+            return new FieldVisitor(api, fv) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                    return recordAnnotation(out, super.visitAnnotation(descriptor, visible), descriptor, visible);
+                }
+
+                @Override
+                public AnnotationVisitor visitTypeAnnotation(int typeRef, @Nullable TypePath typePath, String descriptor, boolean visible) {
+                    return recordTypeAnnotation(out, super.visitTypeAnnotation(typeRef, typePath, descriptor, visible), typeRef, typePath, descriptor, visible);
+                }
+
+                @Override
+                public void visitEnd() {
+                    super.visitEnd();
+                    out.varint(END);
+                }
+            };
+        }
+
+        @Override
+        public void visitPermittedSubclass(String permittedSubclass) {
+            super.visitPermittedSubclass(permittedSubclass);
+            out.varint(PERMITTED_SUBCLASS);
+            out.string(permittedSubclass);
+        }
+
+        @Override
+        public void visitInnerClass(String name, @Nullable String outerName, @Nullable String innerName, int access) {
+            super.visitInnerClass(name, outerName, innerName, access);
+            out.varint(INNER_CLASS);
+            out.string(name);
+            out.string(outerName);
+            out.string(innerName);
+            out.varint(access);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, @Nullable String signature, String[] exceptions) {
+            MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if (mv == null) {
+                return null;
+            }
+            out.varint(METHOD);
+            out.varint(access);
+            out.string(name);
+            out.string(descriptor);
+            out.string(signature);
+            out.strings(exceptions);
+            return new MethodVisitor(api, mv) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                    return recordAnnotation(out, super.visitAnnotation(descriptor, visible), descriptor, visible);
+                }
+
+                @Override
+                public AnnotationVisitor visitTypeAnnotation(int typeRef, @Nullable TypePath typePath, String descriptor, boolean visible) {
+                    return recordTypeAnnotation(out, super.visitTypeAnnotation(typeRef, typePath, descriptor, visible), typeRef, typePath, descriptor, visible);
+                }
+
+                @Override
+                public AnnotationVisitor visitAnnotationDefault() {
+                    AnnotationVisitor av = super.visitAnnotationDefault();
+                    if (av == null) {
+                        return null;
+                    }
+                    out.varint(ANNOTATION_DEFAULT);
+                    return new AnnotationRecorder(av, out);
+                }
+
+                @Override
+                public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+                    AnnotationVisitor av = super.visitParameterAnnotation(parameter, descriptor, visible);
+                    if (av == null) {
+                        return null;
+                    }
+                    out.varint(PARAMETER_ANNOTATION);
+                    out.varint(parameter);
+                    out.string(descriptor);
+                    out.bool(visible);
+                    return new AnnotationRecorder(av, out);
+                }
+
+                @Override
+                public void visitEnd() {
+                    super.visitEnd();
+                    out.varint(END);
+                }
+            };
+        }
+
+        @Override
+        public void visitEnd() {
+            super.visitEnd();
+            out.varint(END);
+            complete = true;
+        }
+    }
+
+    private static @Nullable AnnotationVisitor recordAnnotation(Output out, @Nullable AnnotationVisitor av, String descriptor, boolean visible) {
+        if (av == null) {
+            return null;
+        }
+        out.varint(ANNOTATION);
+        out.string(descriptor);
+        out.bool(visible);
+        return new AnnotationRecorder(av, out);
+    }
+
+    private static @Nullable AnnotationVisitor recordTypeAnnotation(Output out, @Nullable AnnotationVisitor av, int typeRef, @Nullable TypePath typePath, String descriptor, boolean visible) {
+        if (av == null) {
+            return null;
+        }
+        out.varint(TYPE_ANNOTATION);
+        out.int32(typeRef);
+        out.string(typePath == null ? null : typePath.toString());
+        out.string(descriptor);
+        out.bool(visible);
+        return new AnnotationRecorder(av, out);
+    }
+
+    private static final class AnnotationRecorder extends AnnotationVisitor {
+        private final Output out;
+
+        AnnotationRecorder(AnnotationVisitor delegate, Output out) {
+            super(AsmSymbolResolver.ASM_API_V, delegate);
+            this.out = out;
+        }
+
+        @Override
+        public void visit(@Nullable String name, Object value) {
+            super.visit(name, value);
+            out.varint(VALUE);
+            out.string(name);
+            out.value(value);
+        }
+
+        @Override
+        public void visitEnum(@Nullable String name, String descriptor, String value) {
+            super.visitEnum(name, descriptor, value);
+            out.varint(ENUM);
+            out.string(name);
+            out.string(descriptor);
+            out.string(value);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(@Nullable String name, String descriptor) {
+            AnnotationVisitor av = super.visitAnnotation(name, descriptor);
+            if (av == null) {
+                return null;
+            }
+            out.varint(NESTED_ANNOTATION);
+            out.string(name);
+            out.string(descriptor);
+            return new AnnotationRecorder(av, out);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(@Nullable String name) {
+            AnnotationVisitor av = super.visitArray(name);
+            if (av == null) {
+                return null;
+            }
+            out.varint(ARRAY);
+            out.string(name);
+            return new AnnotationRecorder(av, out);
+        }
+
+        @Override
+        public void visitEnd() {
+            super.visitEnd();
+            out.varint(END);
+        }
+    }
+
+    private static final class Output {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        private final DataOutputStream data = new DataOutputStream(bytes);
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        void varint(int value) {
+            // unsigned LEB128
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                bytes.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes.write(v);
+        }
+
+        void int32(int value) {
+            try {
+                data.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // not thrown by a ByteArrayOutputStream
+            }
+        }
+
+        void bool(boolean value) {
+            bytes.write(value ? 1 : 0);
+        }
+
+        void string(@Nullable String string) {
+            if (string == null) {
+                varint(NULL_STRING);
+                return;
+            }
+            Integer index = stringIndices.get(string);
+            if (index != null) {
+                varint(index + 2);
+                return;
+            }
+            stringIndices.put(string, stringIndices.size());
+            varint(NEW_STRING);
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        void strings(String[] strings) {
+            if (strings == null) {
+                varint(0);
+                return;
+            }
+            varint(strings.length + 1);
+            for (String s : strings) {
+                string(s);
+            }
+        }
+
+        void value(@Nullable Object value) {
+            try {
+                writeValue(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // not thrown by a ByteArrayOutputStream
+            }
+        }
+
+        private void writeValue(@Nullable Object value) throws IOException {
+            if (value == null) {
+                varint(V_NULL);
+            } else if (value instanceof Boolean) {
+                varint(V_BOOLEAN);
+                bool((Boolean) value);
+            } else if (value instanceof Byte) {
+                varint(V_BYTE);
+                data.writeByte((Byte) value);
+            } else if (value instanceof Character) {
+                varint(V_CHAR);
+                data.writeChar((Character) value);
+            } else if (value instanceof Short) {
+                varint(V_SHORT);
+                data.writeShort((Short) value);
+            } else if (value instanceof Integer) {
+                varint(V_INT);
+                data.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                varint(V_LONG);
+                data.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                varint(V_FLOAT);
+                data.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                varint(V_DOUBLE);
+                data.writeDouble((Double) value);
+            } else if (value instanceof String) {
+                varint(V_STRING);
+                string((String) value);
+            } else if (value instanceof Type) {
+                varint(V_TYPE);
+                string(((Type) value).getDescriptor());
+            } else if (value instanceof boolean[]) {
+                boolean[] array = (boolean[]) value;
+                varint(V_BOOLEAN_ARRAY);
+                varint(array.length);
+                for (boolean b : array) {
+                    bool(b);
+                }
+            } else if (value instanceof byte[]) {
+                byte[] array = (byte[]) value;
+                varint(V_BYTE_ARRAY);
+                varint(array.length);
+                data.write(array);
+            } else if (value instanceof char[]) {
+                char[] array = (char[]) value;
+                varint(V_CHAR_ARRAY);
+                varint(array.length);
+                for (char c : array) {
+                    data.writeChar(c);
+                }
+            } else if (value instanceof short[]) {
+                short[] array = (short[]) value;
+                varint(V_SHORT_ARRAY);
+                varint(array.length);
+                for (short s : array) {
+                    data.writeShort(s);
+                }
+            } else if (value instanceof int[]) {
+                int[] array = (int[]) value;
+                varint(V_INT_ARRAY);
+                varint(array.length);
+                for (int i : array) {
+                    data.writeInt(i);
+                }
+            } else if (value instanceof long[]) {
+                long[] array = (long[]) value;
+                varint(V_LONG_ARRAY);
+                varint(array.length);
+                for (long l : array) {
+                    data.writeLong(l);
+                }
+            } else if (value instanceof float[]) {
+                float[] array = (float[]) value;
+                varint(V_FLOAT_ARRAY);
+                varint(array.length);
+                for (float f : array) {
+                    data.writeFloat(f);
+                }
+            } else if (value instanceof double[]) {
+                double[] array = (double[]) value;
+                varint(V_DOUBLE_ARRAY);
+                varint(array.length);
+                for (double d : array) {
+                    data.writeDouble(d);
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported constant " + value + " (" + value.getClass() + ")");
+            }
+        }
+    }
+
+    private static final class Input {
+        private final ByteBuffer buffer;
+        private final List<String> strings = new ArrayList<>();
+
+        Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int varint() {
+            int value = 0;
+            for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        boolean bool() {
+            return buffer.get() != 0;
+        }
+
+        @Nullable String string() {
+            int code = varint();
+            if (code == NULL_STRING) {
+                return null;
+            } else if (code == NEW_STRING) {
+                int length = varint();
+                byte[] utf8 = new byte[length];
+                buffer.get(utf8);
+                String string = new String(utf8, StandardCharsets.UTF_8);
+                strings.add(string);
+                return string;
+            }
+            return strings.get(code - 2);
+        }
+
+        String[] strings() {
+            int length = varint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String[] result = new String[length];
+            for (int i = 0; i < length; i++) {
+                result[i] = string();
+            }
+            return result;
+        }
+
+        @Nullable Object value() {
+            int tag = varint();
+            switch (tag) {
+            case V_NULL:
+                return null;
+            case V_BOOLEAN:
+                return bool();
+            case V_BYTE:
+                return buffer.get();
+            case V_CHAR:
+                return buffer.getChar();
+            case V_SHORT:
+                return buffer.getShort();
+            case V_INT:
+                return buffer.getInt();
+            case V_LONG:
+                return buffer.getLong();
+            case V_FLOAT:
+                return buffer.getFloat();
+            case V_DOUBLE:
+                return buffer.getDouble();
+            case V_STRING:
+                return string();
+            case V_TYPE:
+                return Type.getType(string());
+            case V_BOOLEAN_ARRAY: {
+                boolean[] array = new boolean[varint()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = bool();
+                }
+                return array;
+            }
+            case V_BYTE_ARRAY: {
+                byte[] array = new byte[varint()];
+                buffer.get(array);
+                return array;
+            }
+            case V_CHAR_ARRAY: {
+                char[] array = new char[varint()];
+                buffer.asCharBuffer().get(array);
+                buffer.position(buffer.position() + array.length * Character.BYTES);
+                return array;
+            }
+            case V_SHORT_ARRAY: {
+                short[] array = new short[varint()];
+                buffer.asShortBuffer().get(array);
+                buffer.position(buffer.position() + array.length * Short.BYTES);
+                return array;
+            }
+            case V_INT_ARRAY: {
+                int[] array = new int[varint()];
+                buffer.asIntBuffer().get(array);
+                buffer.position(buffer.position() + array.length * Integer.BYTES);
+                return array;
+            }
+            case V_LONG_ARRAY: {
+                long[] array = new long[varint()];
+                buffer.asLongBuffer().get(array);
+                buffer.position(buffer.position() + array.length * Long.BYTES);
+                return array;
+            }
+            case V_FLOAT_ARRAY: {
+                float[] array = new float[varint()];
+                buffer.asFloatBuffer().get(array);
+                buffer.position(buffer.position() + array.length * Float.BYTES);
+                return array;
+            }
+            case V_DOUBLE_ARRAY: {
+                double[] array = new double[varint()];
+                buffer.asDoubleBuffer().get(array);
+                buffer.position(buffer.position() + array.length * Double.BYTES);
+                return array;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown value tag " + tag);
+            }
+        }
+    }
+}
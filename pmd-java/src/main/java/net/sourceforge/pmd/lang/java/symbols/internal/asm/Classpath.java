@@ -4,6 +4,7 @@
 
 package net.sourceforge.pmd.lang.java.symbols.internal.asm;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Set;
 
@@ -27,6 +28,27 @@ public interface Classpath {
      */
     @Nullable InputStream findResource(String resourcePath);
 
+    /**
+     * Finds a resource like {@link #findResource(String)}, and returns it
+     * with a fingerprint of the classpath entry (e.g. jar) that contains
+     * it. The fingerprint changes when the content of the entry changes,
+     * so it may be used to cache information derived from the resources
+     * of that entry between runs. The stream is only opened when
+     * {@link Resource#open()} is called.
+     *
+     * <p>The default implementation has no fingerprint.
+     *
+     * @param resourcePath Resource path, as described in {@link ClassLoader#getResource(String)}
+     *
+     * @return A resource if it exists, otherwise null
+     *
+     * @since 7.12.0
+     */
+    default @Nullable Resource findFingerprintedResource(String resourcePath) {
+        InputStream stream = findResource(resourcePath);
+        return stream == null ? null : Resource.ofStream(null, stream);
+    }
+
     // <editor-fold  defaultstate="collapsed" desc="Transformation methods (defaults)">
 
     /**
@@ -37,16 +59,40 @@ public interface Classpath {
      * @param deletedEntries Set of resource paths to exclude
      */
     default Classpath exclude(Set<String> deletedEntries) {
-        return resourcePath -> deletedEntries.contains(resourcePath) ? null : findResource(resourcePath);
+        Classpath self = this;
+        return new Classpath() {
+            @Override
+            public @Nullable InputStream findResource(String resourcePath) {
+                return deletedEntries.contains(resourcePath) ? null : self.findResource(resourcePath);
+            }
+
+            @Override
+            public @Nullable Resource findFingerprintedResource(String resourcePath) {
+                return deletedEntries.contains(resourcePath) ? null : self.findFingerprintedResource(resourcePath);
+            }
+        };
     }
 
     default Classpath delegateTo(Classpath c) {
-        return path -> {
-            InputStream p = findResource(path);
-            if (p != null) {
-                return p;
+        Classpath self = this;
+        return new Classpath() {
+            @Override
+            public @Nullable InputStream findResource(String path) {
+                InputStream p = self.findResource(path);
+                if (p != null) {
+                    return p;
+                }
+                return c.findResource(path);
+            }
+
+            @Override
+            public @Nullable Resource findFingerprintedResource(String path) {
+                Resource r = self.findFingerprintedResource(path);
+                if (r != null) {
+                    return r;
+                }
+                return c.findFingerprintedResource(path);
             }
-            return c.findResource(path);
         };
     }
 
@@ -60,7 +106,7 @@ public interface Classpath {
      * to find resources.
      */
     static Classpath forClassLoader(ClassLoader classLoader) {
-        return classLoader::getResourceAsStream;
+        return new ClassLoaderClasspath(classLoader);
     }
 
     static Classpath contextClasspath() {
@@ -69,4 +115,39 @@ public interface Classpath {
 
     // </editor-fold>
 
+    /**
+     * A resource found by {@link #findFingerprintedResource(String)}.
+     *
+     * @since 7.12.0
+     */
+    abstract class Resource {
+
+        private final @Nullable String entryFingerprint;
+
+        protected Resource(@Nullable String entryFingerprint) {
+            this.entryFingerprint = entryFingerprint;
+        }
+
+        /**
+         * Returns the fingerprint of the classpath entry that contains
+         * this resource, or null if it is unknown. Fingerprints only
+         * contain letters, digits and dashes.
+         */
+        public @Nullable String getEntryFingerprint() {
+            return entryFingerprint;
+        }
+
+        /** Opens the resource. */
+        public abstract InputStream open() throws IOException;
+
+        /** Returns a resource that opens to the given stream. */
+        public static Resource ofStream(@Nullable String entryFingerprint, InputStream stream) {
+            return new Resource(entryFingerprint) {
+                @Override
+                public InputStream open() {
+                    return stream;
+                }
+            };
+        }
+    }
 }
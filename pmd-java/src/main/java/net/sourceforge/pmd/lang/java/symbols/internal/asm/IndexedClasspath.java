@@ -0,0 +1,647 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.ClassLoaderClasspath.Fingerprint;
+
+/**
+ * A classpath that finds the class files of a {@link ClasspathClassLoader}
+ * without asking the class loader, which scans its jars one by one for
+ * each lookup. Instead, the class files of all jars and directories of
+ * the class loader are indexed by package when this classpath is created.
+ * A lookup only probes the entries that contain the package of the class,
+ * and lookups of classes that don't exist, which are frequent, are mostly
+ * answered by a Bloom filter without probing any entry.
+ *
+ * <p>The lookup order of the class loader is preserved: first the runtime image
+ * given with its {@code jrt-fs.jar}, then the jars and directories
+ * of the class loader (including those of {@code Class-Path} manifest attributes),
+ * then the parent class loader. Resources that are not class files,
+ * {@code module-info.class} files, and files under {@code META-INF},
+ * are found by the class loader.
+ *
+ * <p>Entries are indexed in parallel. If an index directory is given,
+ * the index of each jar is also stored there, and reused as long as the
+ * jar has the same size and modification time. Each jar is opened
+ * once, when a class of it is first read, and stays open until
+ * this classpath is {@linkplain #close() closed}. Jars also get their
+ * {@linkplain Resource#getEntryFingerprint() fingerprint} from the index.
+ *
+ * @since 7.12.0
+ */
+public final class IndexedClasspath implements Classpath, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedClasspath.class);
+
+    private static final int INDEX_MAGIC = 0x504d4449; // "PMDI"
+    private static final int INDEX_FORMAT_VERSION = 1;
+    private static final String INDEX_EXTENSION = ".index";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String VERSIONS_DIR = "META-INF/versions/";
+
+    private final ClasspathClassLoader classLoader;
+    /** Finds the classes of the runtime image and the resources that are not indexed, with the class loader. */
+    private final ClassLoaderClasspath classLoaderClasspath;
+    private final Classpath parent;
+    private final List<Entry> entries;
+    /** Indices in {@link #entries} of the entries that contain each package, in lookup order. */
+    private final Map<String, int[]> packageToEntries;
+    private final BloomFilter knownClassFiles;
+
+    private IndexedClasspath(ClasspathClassLoader classLoader, ClassLoader parent, List<Entry> entries) {
+        this.classLoader = classLoader;
+        this.classLoaderClasspath = new ClassLoaderClasspath(classLoader);
+        this.parent = Classpath.forClassLoader(parent);
+        this.entries = entries;
+
+        Map<String, List<Integer>> packages = new HashMap<>();
+        int numClassFiles = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            for (String packageName : entries.get(i).packages) {
+                packages.computeIfAbsent(packageName, k -> new ArrayList<>()).add(i);
+            }
+            numClassFiles += entries.get(i).classFiles.size();
+        }
+        this.packageToEntries = new HashMap<>(packages.size() * 2);
+        packages.forEach((packageName, indices) -> packageToEntries.put(packageName, indices.stream().mapToInt(i -> i).toArray()));
+
+        this.knownClassFiles = new BloomFilter(numClassFiles);
+        for (Entry entry : entries) {
+            entry.classFiles.forEach(knownClassFiles::add);
+            // only needed to build the index
+            entry.classFiles = Collections.emptyList();
+        }
+    }
+
+    /**
+     * Indexes the jars and directories of the given class loader. Returns
+     * null if the class loader has entries that cannot be indexed, e.g.
+     * remote URLs, in which case the class loader should be used directly
+     * with {@link Classpath#forClassLoader(ClassLoader)}.
+     *
+     * @param classLoader    Class loader to index
+     * @param indexDirectory Directory where the index of each jar is stored
+     *                       for the next runs, or null
+     */
+    public static @Nullable IndexedClasspath create(ClasspathClassLoader classLoader, @Nullable Path indexDirectory) {
+        ClassLoader parent = classLoader.getParent();
+        if (parent == null) {
+            return null;
+        }
+        List<Path> paths = new ArrayList<>();
+        for (URL url : classLoader.getURLs()) {
+            Path path = toPath(url);
+            if (path == null) {
+                LOG.debug("Cannot index classpath entry {}, not using an indexed classpath", url);
+                return null;
+            }
+            paths.add(path);
+        }
+
+        long start = System.nanoTime();
+        IndexStats stats = new IndexStats();
+        List<Entry> entries = new ArrayList<>();
+        indexEntries(paths, new HashSet<>(), indexDirectory, stats, entries);
+        IndexedClasspath classpath = new IndexedClasspath(classLoader, parent, entries);
+        LOG.debug("Indexed {} classpath entries in {} ms, {} jars were already indexed",
+                  entries.size(), (System.nanoTime() - start) / 1_000_000, stats.numReused);
+        return classpath;
+    }
+
+    /**
+     * Index the given entries in parallel, and add them to the result in
+     * order, each followed by the entries of its {@code Class-Path} manifest
+     * attribute, like {@link java.net.URLClassLoader} does.
+     */
+    private static void indexEntries(List<Path> paths, Set<Path> seen, @Nullable Path indexDirectory, IndexStats stats, List<Entry> result) {
+        List<Path> newPaths = paths.stream().filter(seen::add).collect(Collectors.toList());
+        List<@Nullable Entry> indexed = newPaths.parallelStream()
+                                                .map(path -> indexEntry(path, indexDirectory, stats))
+                                                .collect(Collectors.toList());
+        for (Entry entry : indexed) {
+            if (entry != null) {
+                result.add(entry);
+                indexEntries(entry.manifestClassPath, seen, indexDirectory, stats, result);
+            }
+        }
+    }
+
+    private static @Nullable Entry indexEntry(Path path, @Nullable Path indexDirectory, IndexStats stats) {
+        try {
+            if (Files.isDirectory(path)) {
+                return DirectoryIndex.index(path);
+            } else if (Files.isRegularFile(path)) {
+                return JarIndex.index(path, indexDirectory, stats);
+            }
+            // like URLClassLoader, ignore missing entries
+            LOG.debug("Ignoring missing classpath entry {}", path);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Ignoring unreadable classpath entry {}", path, e);
+        }
+        return null;
+    }
+
+    private static @Nullable Path toPath(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public @Nullable InputStream findResource(String resourcePath) {
+        Resource resource = findFingerprintedResource(resourcePath);
+        if (resource == null) {
+            return null;
+        }
+        try {
+            return resource.open();
+        } catch (IOException e) {
+            LOG.debug("Cannot read {}", resourcePath, e);
+            return null;
+        }
+    }
+
+    @Override
+    public @Nullable Resource findFingerprintedResource(String resourcePath) {
+        if (!resourcePath.endsWith(CLASS_SUFFIX)
+            || resourcePath.endsWith("module-info.class")
+            || resourcePath.startsWith("META-INF/")) {
+            return classLoaderClasspath.findFingerprintedResource(resourcePath);
+        } else if (classLoader.getJrtJavaHome(resourcePath) != null) {
+            return classLoaderClasspath.findFingerprintedResource(resourcePath);
+        }
+
+        int[] candidates = packageToEntries.get(getPackageDir(resourcePath));
+        if (candidates != null && knownClassFiles.mightContain(resourcePath)) {
+            for (int i : candidates) {
+                Resource resource = entries.get(i).find(resourcePath);
+                if (resource != null) {
+                    return resource;
+                }
+            }
+        }
+        return parent.findFingerprintedResource(resourcePath);
+    }
+
+    private static String getPackageDir(String resourcePath) {
+        int lastSlash = resourcePath.lastIndexOf('/');
+        return lastSlash < 0 ? "" : resourcePath.substring(0, lastSlash);
+    }
+
+    /** Closes the jars that have been opened. */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (Entry entry : entries) {
+            try {
+                entry.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedClasspath[" + entries.size() + " entries, parent " + parent + "]";
+    }
+
+    private static final class IndexStats {
+        final AtomicInteger numReused = new AtomicInteger();
+    }
+
+    /** A jar or directory of the classpath. */
+    private abstract static class Entry {
+        final Path path;
+        final Set<String> packages;
+        /** Entries of the Class-Path manifest attribute of a jar. */
+        final List<Path> manifestClassPath;
+        /** Class files of this entry, cleared after the classpath is built. */
+        List<String> classFiles;
+
+        Entry(Path path, List<String> classFiles, List<Path> manifestClassPath) {
+            this.path = path;
+            this.classFiles = classFiles;
+            this.manifestClassPath = manifestClassPath;
+            this.packages = new HashSet<>();
+            for (String classFile : classFiles) {
+                packages.add(getPackageDir(classFile));
+            }
+        }
+
+        /** Returns the class file if it is in this entry. */
+        abstract @Nullable Resource find(String resourcePath);
+
+        void close() throws IOException {
+            // nothing to close by default
+        }
+
+        @Override
+        public String toString() {
+            return path.toString();
+        }
+    }
+
+    private static final class DirectoryIndex extends Entry {
+
+        private DirectoryIndex(Path path, List<String> classFiles) {
+            super(path, classFiles, Collections.emptyList());
+        }
+
+        static DirectoryIndex index(Path directory) throws IOException {
+            List<String> classFiles;
+            try (Stream<Path> files = Files.walk(directory)) {
+                classFiles = files.filter(f -> f.getFileName().toString().endsWith(CLASS_SUFFIX) && Files.isRegularFile(f))
+                                  .map(f -> directory.relativize(f).toString().replace(f.getFileSystem().getSeparator(), "/"))
+                                  .collect(Collectors.toList());
+            }
+            return new DirectoryIndex(directory, classFiles);
+        }
+
+        @Override
+        @Nullable Resource find(String resourcePath) {
+            Path file = path.resolve(resourcePath);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            // the content of a directory is not fingerprinted
+            return new Resource(null) {
+                @Override
+                public InputStream open() throws IOException {
+                    return Files.newInputStream(file);
+                }
+            };
+        }
+    }
+
+    private static final class JarIndex extends Entry {
+        private final @Nullable String fingerprint;
+        /**
+         * For multi-release jars, the name of the entry that is used for some
+         * class files instead of the unversioned one.
+         */
+        private final Map<String, String> versionedEntries;
+        private @Nullable ZipFile zip;
+        private boolean closed;
+
+        private JarIndex(Path path, @Nullable String fingerprint, List<String> classFiles, List<Path> manifestClassPath, Map<String, String> versionedEntries) {
+            super(path, classFiles, manifestClassPath);
+            this.fingerprint = fingerprint;
+            this.versionedEntries = versionedEntries;
+        }
+
+        private static JarIndex create(Path path, @Nullable String fingerprint, List<String> allClassFiles, List<Path> manifestClassPath, boolean multiRelease) {
+            Map<String, String> versionedEntries = multiRelease ? selectVersionedEntries(allClassFiles) : Collections.emptyMap();
+            // the class files that the class loader may find
+            Set<String> classFiles = new HashSet<>(versionedEntries.keySet());
+            for (String classFile : allClassFiles) {
+                if (!classFile.startsWith(VERSIONS_DIR)) {
+                    classFiles.add(classFile);
+                }
+            }
+            return new JarIndex(path, fingerprint, new ArrayList<>(classFiles), manifestClassPath, versionedEntries);
+        }
+
+        static JarIndex index(Path jar, @Nullable Path indexDirectory, IndexStats stats) throws IOException {
+            Path indexFile = indexDirectory == null ? null : indexDirectory.resolve(getIndexFileName(jar));
+            if (indexFile != null && Files.isRegularFile(indexFile)) {
+                try {
+                    JarIndex entry = readIndex(jar, indexFile);
+                    stats.numReused.incrementAndGet();
+                    return entry;
+                } catch (IOException | RuntimeException e) {
+                    LOG.debug("Ignoring unreadable index file {}", indexFile, e);
+                }
+            }
+
+            JarIndex entry;
+            try (ZipFile zip = new ZipFile(jar.toFile())) {
+                List<String> classFiles = new ArrayList<>();
+                for (Enumeration<? extends ZipEntry> zipEntries = zip.entries(); zipEntries.hasMoreElements();) {
+                    String name = zipEntries.nextElement().getName();
+                    if (name.endsWith(CLASS_SUFFIX)) {
+                        classFiles.add(name);
+                    }
+                }
+                String fingerprint = ClassLoaderClasspath.fingerprintJar(zip);
+                Manifest manifest = readManifest(zip);
+                List<String> manifestClassPath = manifest == null ? Collections.emptyList() : getManifestClassPath(manifest);
+                boolean multiRelease = manifest != null && "true".equalsIgnoreCase(manifest.getMainAttributes().getValue("Multi-Release"));
+                if (indexFile != null) {
+                    writeIndex(indexFile, fingerprint, classFiles, manifestClassPath, multiRelease);
+                }
+                entry = create(jar, fingerprint, classFiles, resolveClassPath(jar, manifestClassPath), multiRelease);
+            }
+            return entry;
+        }
+
+        @Override
+        @Nullable Resource find(String resourcePath) {
+            String versioned = versionedEntries.get(resourcePath);
+            String entryName = versioned != null ? versioned : resourcePath;
+            ZipFile zipFile;
+            ZipEntry zipEntry;
+            try {
+                zipFile = getZipFile();
+                zipEntry = zipFile.getEntry(entryName);
+            } catch (IOException e) {
+                LOG.debug("Cannot read {}", path, e);
+                return null;
+            }
+            if (zipEntry == null) {
+                return null;
+            }
+            // Versioned class files depend on the running JVM, they are not
+            // cached, like with ClassLoaderClasspath
+            return new Resource(versioned == null ? fingerprint : null) {
+                @Override
+                public InputStream open() throws IOException {
+                    return zipFile.getInputStream(zipEntry);
+                }
+            };
+        }
+
+        private synchronized ZipFile getZipFile() throws IOException {
+            if (closed) {
+                throw new IOException("Classpath is closed");
+            }
+            if (zip == null) {
+                zip = new ZipFile(path.toFile());
+            }
+            return zip;
+        }
+
+        @Override
+        synchronized void close() throws IOException {
+            closed = true;
+            if (zip != null) {
+                zip.close();
+                zip = null;
+            }
+        }
+
+        /**
+         * Selects the class files that the running JVM uses instead
+         * of the unversioned ones, like a {@link JarFile} opened with the runtime version.
+         */
+        private static Map<String, String> selectVersionedEntries(List<String> classFiles) {
+            int runtimeVersion = getRuntimeFeatureVersion();
+            Map<String, String> result = new HashMap<>();
+            Map<String, Integer> selectedVersions = new HashMap<>();
+            for (String classFile : classFiles) {
+                if (!classFile.startsWith(VERSIONS_DIR)) {
+                    continue;
+                }
+                int versionEnd = classFile.indexOf('/', VERSIONS_DIR.length());
+                if (versionEnd < 0) {
+                    continue;
+                }
+                int version;
+                try {
+                    version = Integer.parseInt(classFile.substring(VERSIONS_DIR.length(), versionEnd));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                String resourcePath = classFile.substring(versionEnd + 1);
+                if (version >= 9 && version <= runtimeVersion && version > selectedVersions.getOrDefault(resourcePath, 0)) {
+                    selectedVersions.put(resourcePath, version);
+                    result.put(resourcePath, classFile);
+                }
+            }
+            return result;
+        }
+
+        private static int getRuntimeFeatureVersion() {
+            // "1.8" or "9", "17"...
+            String version = System.getProperty("java.specification.version", "8");
+            if (version.startsWith("1.")) {
+                version = version.substring(2);
+            }
+            try {
+                return Integer.parseInt(version);
+            } catch (NumberFormatException e) {
+                return 8;
+            }
+        }
+
+        private static @Nullable Manifest readManifest(ZipFile zip) throws IOException {
+            ZipEntry manifestEntry = zip.getEntry(JarFile.MANIFEST_NAME);
+            if (manifestEntry == null) {
+                return null;
+            }
+            try (InputStream in = zip.getInputStream(manifestEntry)) {
+                return new Manifest(in);
+            }
+        }
+
+        private static List<String> getManifestClassPath(Manifest manifest) {
+            String classPath = manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+            if (classPath == null) {
+                return Collections.emptyList();
+            }
+            List<String> result = new ArrayList<>();
+            StringTokenizer tokens = new StringTokenizer(classPath);
+            while (tokens.hasMoreTokens()) {
+                result.add(tokens.nextToken());
+            }
+            return result;
+        }
+
+        /** The Class-Path attribute contains URLs relative to the jar. */
+        private static List<Path> resolveClassPath(Path jar, List<String> classPath) {
+            List<Path> result = new ArrayList<>(classPath.size());
+            for (String relativeUrl : classPath) {
+                try {
+                    Path path = toPath(new URL(jar.toUri().toURL(), relativeUrl));
+                    if (path != null) {
+                        result.add(path);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOG.debug("Ignoring invalid Class-Path entry {} of {}", relativeUrl, jar, e);
+                }
+            }
+            return result;
+        }
+
+        /*
+         * An index file is named after the path, size and modification time of
+         * the jar. It contains a header (magic, format version, PMD version),
+         * the fingerprint of the jar, its Class-Path attribute, whether it is
+         * a multi-release jar, and the names of its class files.
+         */
+
+        private static String getIndexFileName(Path jar) throws IOException {
+            Fingerprint key = new Fingerprint();
+            key.update(jar.toAbsolutePath().toString());
+            key.update(Files.size(jar));
+            key.update(Files.getLastModifiedTime(jar).toMillis());
+            return key.toString("classpath") + INDEX_EXTENSION;
+        }
+
+        private static JarIndex readIndex(Path jar, Path indexFile) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+                if (in.readInt() != INDEX_MAGIC
+                    || in.readInt() != INDEX_FORMAT_VERSION
+                    || !PMDVersion.VERSION.equals(in.readUTF())) {
+                    throw new IOException("Index file written by another version of PMD");
+                }
+                String fingerprint = in.readUTF();
+                List<String> manifestClassPath = readStrings(in);
+                boolean multiRelease = in.readBoolean();
+                List<String> classFiles = readStrings(in);
+                return create(jar, fingerprint, classFiles, resolveClassPath(jar, manifestClassPath), multiRelease);
+            }
+        }
+
+        private static void writeIndex(Path indexFile, String fingerprint, List<String> classFiles, List<String> manifestClassPath, boolean multiRelease) {
+            Path temp = null;
+            try {
+                Files.createDirectories(indexFile.getParent());
+                temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+                try (OutputStream os = Files.newOutputStream(temp);
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                    out.writeInt(INDEX_MAGIC);
+                    out.writeInt(INDEX_FORMAT_VERSION);
+                    out.writeUTF(PMDVersion.VERSION);
+                    out.writeUTF(fingerprint);
+                    writeStrings(out, manifestClassPath);
+                    out.writeBoolean(multiRelease);
+                    writeStrings(out, classFiles);
+                }
+                try {
+                    Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                LOG.debug("Cannot write the index file {}", indexFile, e);
+            } finally {
+                if (temp != null) {
+                    try {
+                        Files.deleteIfExists(temp);
+                    } catch (IOException ignored) {
+                        // it's only a temp file
+                    }
+                }
+            }
+        }
+
+        private static List<String> readStrings(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            List<String> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(in.readUTF());
+            }
+            return result;
+        }
+
+        private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                out.writeUTF(s);
+            }
+        }
+    }
+
+    /**
+     * A Bloom filter of the class files of the classpath, with about
+     * 1% of false positives.
+     */
+    private static final class BloomFilter {
+        private static final int NUM_HASHES = 7;
+
+        private final long[] bits;
+        private final int numBits;
+
+        BloomFilter(int expectedSize) {
+            // 10 bits per element
+            long size = Math.max(64L, expectedSize * 10L);
+            this.bits = new long[(int) Math.min(Integer.MAX_VALUE / 64, (size + 63) / 64)];
+            this.numBits = bits.length * 64;
+        }
+
+        void add(String string) {
+            int h1 = string.hashCode();
+            int h2 = secondHash(string);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int bit = Math.floorMod(h1 + i * h2, numBits);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(String string) {
+            int h1 = string.hashCode();
+            int h2 = secondHash(string);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int bit = Math.floorMod(h1 + i * h2, numBits);
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int secondHash(String string) {
+            // FNV-1a, independent from String.hashCode
+            int h = 0x811c9dc5;
+            for (int i = 0; i < string.length(); i++) {
+                h ^= string.charAt(i);
+                h *= 0x01000193;
+            }
+            // odd, so that the probes don't cycle early
+            return h | 1;
+        }
+    }
+}
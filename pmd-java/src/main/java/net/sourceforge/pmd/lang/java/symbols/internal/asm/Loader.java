@@ -10,13 +10,33 @@ import java.io.InputStream;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.Classpath.Resource;
 
 abstract class Loader {
 
+    static final int PARSING_OPTIONS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
 
     @Nullable
     abstract InputStream getInputStream() throws IOException;
 
+    /**
+     * Makes the visitor visit the class file. Returns false if there is
+     * no class file.
+     */
+    boolean accept(ClassVisitor visitor) throws IOException {
+        try (InputStream instream = getInputStream()) {
+            if (instream == null) {
+                return false;
+            }
+            new ClassReader(instream).accept(visitor, PARSING_OPTIONS);
+            return true;
+        }
+    }
+
 
     static class FailedLoader extends Loader {
 
@@ -53,4 +73,24 @@ abstract class Loader {
             return "StreamLoader(for " + name + ")";
         }
     }
+
+    static class ResourceLoader extends Loader {
+        private final @NonNull String name;
+        private final @NonNull Resource resource;
+
+        ResourceLoader(@NonNull String name, @NonNull Resource resource) {
+            this.name = name;
+            this.resource = resource;
+        }
+
+        @Override
+        @NonNull InputStream getInputStream() throws IOException {
+            return resource.open();
+        }
+
+        @Override
+        public String toString() {
+            return "ResourceLoader(for " + name + ")";
+        }
+    }
 }
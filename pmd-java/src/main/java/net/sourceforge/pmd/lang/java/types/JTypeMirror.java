@@ -135,6 +135,7 @@ public interface JTypeMirror extends JTypeVisitable {
      *
      * <p>The returned set always contains this type, so is
      * never empty. Ordering is stable, though unspecified.
+     * The set may be shared and should not be modified.
      *
      * <p>Note that this set contains {@link TypeSystem#OBJECT}
      * for interfaces too.
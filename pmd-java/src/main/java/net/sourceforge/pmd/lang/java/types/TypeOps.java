@@ -37,6 +37,7 @@ import net.sourceforge.pmd.lang.java.symbols.table.coreimpl.CoreResolvers;
 import net.sourceforge.pmd.lang.java.symbols.table.coreimpl.NameResolver;
 import net.sourceforge.pmd.lang.java.symbols.table.internal.JavaResolvers;
 import net.sourceforge.pmd.lang.java.types.JVariableSig.FieldSig;
+import net.sourceforge.pmd.lang.java.types.TypeRelationCache.ConvertibilityFunction;
 import net.sourceforge.pmd.lang.java.types.internal.infer.InferenceVar;
 import net.sourceforge.pmd.lang.java.types.internal.infer.InferenceVar.BoundKind;
 import net.sourceforge.pmd.lang.java.types.internal.infer.OverloadSet;
@@ -294,6 +295,10 @@ public final class TypeOps {
      * @see JTypeMirror#getSuperTypeSet()
      */
     public static Set<JTypeMirror> getSuperTypeSet(@NonNull JTypeMirror t) {
+        return t.getTypeSystem().relationCache.getSuperTypeSet(t, TypeOps::computeSuperTypeSet);
+    }
+
+    private static Set<JTypeMirror> computeSuperTypeSet(@NonNull JTypeMirror t) {
         Set<JTypeMirror> result = new LinkedHashSet<>();
         t.acceptVisitor(SuperTypesVisitor.INSTANCE, result);
         assert !result.isEmpty() : "Empty supertype set for " + t;
@@ -399,7 +404,7 @@ public final class TypeOps {
 
 
     public static Convertibility isConvertible(@NonNull JTypeMirror t, @NonNull JTypeMirror s) {
-        return SubtypeVisitor.INFERENCE.isConvertible(t, s, true);
+        return t.getTypeSystem().relationCache.isConvertible(t, s, true, SubtypeVisitor.INFERENCE);
     }
 
     @Deprecated // unused
@@ -408,12 +413,12 @@ public final class TypeOps {
     }
 
     public static Convertibility isConvertibleNoCapture(@NonNull JTypeMirror t, @NonNull JTypeMirror s) {
-        return SubtypeVisitor.PURE.isConvertible(t, s, false);
+        return t.getTypeSystem().relationCache.isConvertible(t, s, false, SubtypeVisitor.PURE);
     }
 
     // does not perform side effects on inference vars
     public static Convertibility isConvertiblePure(JTypeMirror t, JTypeMirror s) {
-        return SubtypeVisitor.PURE.isConvertible(t, s);
+        return t.getTypeSystem().relationCache.isConvertible(t, s, false, SubtypeVisitor.PURE);
     }
 
     public static boolean allArgsAreUnboundedWildcards(List<JTypeMirror> sargs) {
@@ -584,7 +589,7 @@ public final class TypeOps {
     }
 
 
-    private static final class SubtypeVisitor implements JTypeVisitor<Convertibility, JTypeMirror> {
+    private static final class SubtypeVisitor implements JTypeVisitor<Convertibility, JTypeMirror>, ConvertibilityFunction {
 
         static final SubtypeVisitor INFERENCE = new SubtypeVisitor(false);
         static final SubtypeVisitor PURE = new SubtypeVisitor(true);
@@ -608,7 +613,8 @@ public final class TypeOps {
          * @param t A type T
          * @param s A type S
          */
-        Convertibility isConvertible(@NonNull JTypeMirror t, @NonNull JTypeMirror s, boolean capture) {
+        @Override
+        public Convertibility isConvertible(@NonNull JTypeMirror t, @NonNull JTypeMirror s, boolean capture) {
             // This is commented out as it makes JTypeMirror#isSubtypeOf partial,
             // which is not nice for the API... But this assert caught a bug and
             // should probably be enabled.
@@ -0,0 +1,272 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.types.TypeOps.Convertibility;
+
+/**
+ * Caches the results of convertibility checks and the supertype sets
+ * of types that only involve classes of the classpath. Those classes
+ * don't change during the analysis, so unlike the caches of type inference,
+ * which are created for each file, this cache is shared by all the files
+ * analyzed with a type system. It is thread-safe and bounded.
+ *
+ * <p>A type is only cached if it is made of class types, array types,
+ * wildcards and primitive types, without type annotations. Class types
+ * must have a resolved symbol that is not declared in an analyzed file.
+ * Type variables, inference variables and intersections are never cached.
+ * Symbols are compared by identity, so that a class of the analyzed
+ * sources is not mistaken for the class of the same name on the classpath.
+ */
+final class TypeRelationCache {
+
+    /** Max number of entries of a generation, see {@link BoundedMap}. */
+    private static final int MAX_GENERATION_SIZE = 20_000;
+    private static final int NOT_CACHEABLE = 0;
+
+    private final BoundedMap<Key, Convertibility> convertibility = new BoundedMap<>();
+    private final BoundedMap<Key, Set<JTypeMirror>> superTypeSets = new BoundedMap<>();
+
+    private final LongAdder numQueries = new LongAdder();
+    private final LongAdder numHits = new LongAdder();
+
+    /**
+     * Returns whether t is convertible to s, computing it with the
+     * given function if it is not cached. Convertibility only depends
+     * on whether t is captured, since the types that are cached don't
+     * contain inference variables.
+     */
+    Convertibility isConvertible(JTypeMirror t, JTypeMirror s, boolean capture, ConvertibilityFunction compute) {
+        if (t == s || s.isTop()) {
+            // trivial
+            return compute.isConvertible(t, s, capture);
+        }
+        int tHash = hash(t);
+        int sHash = tHash == NOT_CACHEABLE ? NOT_CACHEABLE : hash(s);
+        if (sHash == NOT_CACHEABLE) {
+            return compute.isConvertible(t, s, capture);
+        }
+
+        numQueries.increment();
+        Key key = new Key(t, s, capture, (tHash * 31 + sHash) * 31 + Boolean.hashCode(capture));
+        Convertibility result = convertibility.get(key);
+        if (result != null) {
+            numHits.increment();
+            return result;
+        }
+        result = compute.isConvertible(t, s, capture);
+        convertibility.put(key, result);
+        return result;
+    }
+
+    /**
+     * Returns the supertype set of t, computing it with the given function
+     * if it is not cached. The set of a cached type is unmodifiable.
+     */
+    Set<JTypeMirror> getSuperTypeSet(JTypeMirror t, Function<JTypeMirror, Set<JTypeMirror>> compute) {
+        int hash = hash(t);
+        if (hash == NOT_CACHEABLE) {
+            return compute.apply(t);
+        }
+
+        numQueries.increment();
+        Key key = new Key(t, null, false, hash);
+        Set<JTypeMirror> result = superTypeSets.get(key);
+        if (result != null) {
+            numHits.increment();
+            return result;
+        }
+        result = Collections.unmodifiableSet(compute.apply(t));
+        superTypeSets.put(key, result);
+        return result;
+    }
+
+    /** Number of queries on cacheable types since the last call. */
+    long takeNumQueries() {
+        return numQueries.sumThenReset();
+    }
+
+    /** Number of queries that were answered from the cache since the last call. */
+    long takeNumHits() {
+        return numHits.sumThenReset();
+    }
+
+    /**
+     * Returns a hash of the type that is consistent with {@link #isSame(JTypeMirror, JTypeMirror)},
+     * or {@link #NOT_CACHEABLE} if the type should not be cached.
+     */
+    private static int hash(@Nullable JTypeMirror t) {
+        if (t == null) {
+            return 1;
+        } else if (!t.getTypeAnnotations().isEmpty()) {
+            return NOT_CACHEABLE;
+        } else if (t instanceof JPrimitiveType) {
+            return nonZero(((JPrimitiveType) t).getKind().ordinal() + 1);
+        } else if (t instanceof JClassType) {
+            JClassType classType = (JClassType) t;
+            if (!isCacheable(classType.getSymbol())) {
+                return NOT_CACHEABLE;
+            }
+            int hash = System.identityHashCode(classType.getSymbol());
+            hash = combine(hash, hash(classType.getEnclosingType()));
+            for (JTypeMirror arg : classType.getTypeArgs()) {
+                hash = combine(hash, hash(arg));
+            }
+            return hash;
+        } else if (t instanceof JArrayType) {
+            return combine(3, hash(((JArrayType) t).getComponentType()));
+        } else if (t instanceof JWildcardType) {
+            JWildcardType wildcard = (JWildcardType) t;
+            return combine(wildcard.isUpperBound() ? 5 : 7, hash(wildcard.getBound()));
+        }
+        return NOT_CACHEABLE;
+    }
+
+    private static int combine(int hash, int componentHash) {
+        if (hash == NOT_CACHEABLE || componentHash == NOT_CACHEABLE) {
+            return NOT_CACHEABLE;
+        }
+        return nonZero(hash * 31 + componentHash);
+    }
+
+    private static int nonZero(int hash) {
+        return hash == NOT_CACHEABLE ? 1 : hash;
+    }
+
+    private static boolean isCacheable(JClassSymbol symbol) {
+        // symbols with a node are declared in an analyzed file
+        return !symbol.isUnresolved()
+            && symbol.tryGetNode() == null
+            && !(symbol instanceof FakeIntersectionSymbol);
+    }
+
+    /**
+     * Compares cacheable types. This is stricter than {@link TypeOps#isSameType(JTypeMirror, JTypeMirror)},
+     * as some types are not interchangeable for subtyping even though
+     * they are the same type.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private static boolean isSame(@Nullable JTypeMirror t, @Nullable JTypeMirror s) {
+        if (t == s) {
+            return true;
+        } else if (t == null || s == null || t.getClass() != s.getClass()) {
+            return false;
+        } else if (t instanceof JClassType) {
+            JClassType ct = (JClassType) t;
+            JClassType cs = (JClassType) s;
+            return ct.getSymbol() == cs.getSymbol()
+                && ct.hasErasedSuperTypes() == cs.hasErasedSuperTypes()
+                && isSame(ct.getEnclosingType(), cs.getEnclosingType())
+                && areSame(ct.getTypeArgs(), cs.getTypeArgs());
+        } else if (t instanceof JArrayType) {
+            return isSame(((JArrayType) t).getComponentType(), ((JArrayType) s).getComponentType());
+        } else if (t instanceof JWildcardType) {
+            JWildcardType wt = (JWildcardType) t;
+            JWildcardType ws = (JWildcardType) s;
+            return wt.isUpperBound() == ws.isUpperBound() && isSame(wt.getBound(), ws.getBound());
+        }
+        // primitive types are unique
+        return false;
+    }
+
+    private static boolean areSame(List<JTypeMirror> ts, List<JTypeMirror> ss) {
+        if (ts.size() != ss.size()) {
+            return false;
+        }
+        for (int i = 0; i < ts.size(); i++) {
+            if (!isSame(ts.get(i), ss.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    interface ConvertibilityFunction {
+        Convertibility isConvertible(@NonNull JTypeMirror t, @NonNull JTypeMirror s, boolean capture);
+    }
+
+    private static final class Key {
+        private final JTypeMirror t;
+        private final @Nullable JTypeMirror s;
+        private final boolean capture;
+        private final int hash;
+
+        Key(JTypeMirror t, @Nullable JTypeMirror s, boolean capture, int hash) {
+            this.t = t;
+            this.s = s;
+            this.capture = capture;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return hash == that.hash
+                && capture == that.capture
+                && isSame(t, that.t)
+                && isSame(s, that.s);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A concurrent map with two generations of entries. When the current
+     * generation is full, it becomes the old generation, and the previous
+     * old generation is dropped. Entries of the old generation that are
+     * used again are copied into the current generation, so that the
+     * entries that are used often are kept.
+     */
+    private static final class BoundedMap<K, V> {
+        private volatile ConcurrentMap<K, V> current = new ConcurrentHashMap<>();
+        private volatile ConcurrentMap<K, V> old = new ConcurrentHashMap<>();
+
+        @Nullable V get(K key) {
+            V value = current.get(key);
+            if (value == null) {
+                value = old.get(key);
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            return value;
+        }
+
+        void put(K key, V value) {
+            ConcurrentMap<K, V> generation = current;
+            generation.put(key, value);
+            if (generation.size() > MAX_GENERATION_SIZE) {
+                synchronized (this) {
+                    if (current == generation) {
+                        old = generation;
+                        current = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -23,6 +23,8 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.pcollections.HashTreePSet;
 import org.pcollections.PSet;
 
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JExecutableSymbol;
@@ -66,6 +68,8 @@ import net.sourceforge.pmd.util.CollectionUtil;
 @SuppressWarnings("PMD.CompareObjectsWithEquals")
 public final class TypeSystem {
 
+    private static final String RELATION_CACHE_LABEL = "Type relation cache (counter: cache hits)";
+
     /**
      * Top type of the reference type system. This is the type for the
      * {@link Object} class. Note that even interfaces have this type
@@ -175,6 +179,8 @@ public final class TypeSystem {
     private final Map<JTypeDeclSymbol, JTypeMirror> sharedTypes;
     // test only
     final SymbolResolver resolver;
+    /** Caches the subtyping relations of classpath types for all files. */
+    final TypeRelationCache relationCache = new TypeRelationCache();
 
     /**
      * Builds a new type system. Its public fields will be initialized
@@ -755,9 +761,16 @@ public final class TypeSystem {
 
     /**
      * Called at the end of the analysis to log statistics about the loaded types.
+     * The hit rate of the cache of subtyping relations is also reported to the
+     * {@link TimeTracker}, as the number of queries and of hits since the last call.
      */
     public void logStats() {
         resolver.logStats();
+        // "# Calls" is the number of queries, and "Counter" the number
+        // of them that were answered from the cache, no time is measured
+        long numQueries = relationCache.takeNumQueries();
+        TimeTracker.addMeasurement(TimedOperationCategory.LANGUAGE_SPECIFIC_PROCESSING, RELATION_CACHE_LABEL,
+                                   0, (int) Math.min(numQueries, Integer.MAX_VALUE), relationCache.takeNumHits());
     }
 
     private static final class NullType implements JTypeMirror {
@@ -17,6 +17,7 @@ import static net.sourceforge.pmd.util.CollectionUtil.setOf;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -59,9 +60,10 @@ public final class Infer {
     final MethodCtDecl FAILED_INVOCATION; // SUPPRESS CHECKSTYLE same
 
     private final SupertypeCheckCache supertypeCheckCache = new SupertypeCheckCache();
+    private final InferenceBudget budget;
 
     /**
-     * Creates a new instance.
+     * Creates a new instance, whose inference is not limited.
      *
      * @param ts         Type system
      * @param jdkVersion JDK version to use. Type inference was changed
@@ -69,9 +71,25 @@ public final class Infer {
      * @param logger     Strategy to log failures
      */
     public Infer(TypeSystem ts, int jdkVersion, TypeInferenceLogger logger) {
+        this(ts, jdkVersion, logger, 0);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param ts         Type system
+     * @param jdkVersion JDK version to use. Type inference was changed
+     *                   in Java 8 to propagate the context type.
+     * @param logger     Strategy to log failures
+     * @param budget     Max number of reduction steps for the inference of
+     *                   a top-level call site, zero if there is no limit.
+     *                   When it is exceeded, the call site is left unresolved.
+     */
+    public Infer(TypeSystem ts, int jdkVersion, TypeInferenceLogger logger, int budget) {
         this.ts = ts;
         this.isPreJava8 = jdkVersion < 8;
         this.LOG = logger;
+        this.budget = new InferenceBudget(budget);
 
         this.NO_CTDECL = MethodCtDecl.unresolved(ts);
         this.FAILED_INVOCATION = MethodCtDecl.unresolved(ts);
@@ -123,7 +141,39 @@ public final class Infer {
     }
 
     InferenceContext newContextFor(List<JTypeVar> tvars, boolean addPrimaryBound) {
-        return new InferenceContext(ts, supertypeCheckCache, tvars, LOG, addPrimaryBound);
+        return new InferenceContext(ts, supertypeCheckCache, budget, tvars, LOG, addPrimaryBound);
+    }
+
+    /**
+     * Runs the inference of a top-level call site within the budget.
+     * If the budget is exceeded, the inference is aborted and the
+     * fallback is returned instead. If a call site is already being
+     * inferred, the given inference is part of it and uses its budget.
+     */
+    private <T> T withBudget(ExprMirror site, Supplier<T> inference, Supplier<T> fallback) {
+        if (budget.isRunning()) {
+            return inference.get();
+        }
+
+        long start = LOG.isNoop() ? 0 : System.nanoTime();
+        T result = null;
+        boolean exceeded = false;
+        budget.start();
+        try {
+            result = inference.get();
+        } catch (RuntimeException e) {
+            if (!InferenceBudget.isExceeded(e)) {
+                throw e;
+            }
+            exceeded = true;
+        } finally {
+            long steps = budget.stop();
+            if (!LOG.isNoop()) {
+                LOG.callSiteInferred(site, steps, System.nanoTime() - start, exceeded);
+            }
+        }
+        // the fallback is outside the budget
+        return exceeded ? fallback.get() : result;
     }
 
     /**
@@ -133,14 +183,21 @@ public final class Infer {
     public void inferFunctionalExprInUnambiguousContext(PolySite<FunctionalExprMirror> site) {
         FunctionalExprMirror expr = site.getExpr();
         JTypeMirror expected = site.getExpectedType();
-        try {
-            if (expected == null) {
-                throw ResolutionFailedException.missingTargetTypeForFunctionalExpr(LOG, expr);
+        boolean success = withBudget(expr, () -> {
+            try {
+                if (expected == null) {
+                    throw ResolutionFailedException.missingTargetTypeForFunctionalExpr(LOG, expr);
+                }
+                addBoundOrDefer(null, emptyContext(), INVOC_LOOSE, expr, expected);
+                return true;
+            } catch (ResolutionFailedException rfe) {
+                rfe.getFailure().addContext(null, site, null);
+                LOG.logResolutionFail(rfe.getFailure());
+                return false;
             }
-            addBoundOrDefer(null, emptyContext(), INVOC_LOOSE, expr, expected);
-        } catch (ResolutionFailedException rfe) {
-            rfe.getFailure().addContext(null, site, null);
-            LOG.logResolutionFail(rfe.getFailure());
+        }, () -> false);
+
+        if (!success) {
             expr.finishFailedInference(expected);
         }
     }
@@ -162,8 +219,8 @@ public final class Infer {
      * in an invocation or assignment context, otherwise can be left blank.
      */
     public void inferInvocationRecursively(MethodCallSite site) {
-        MethodCtDecl ctdecl = goToInvocationWithFallback(site);
         InvocationMirror expr = site.getExpr();
+        MethodCtDecl ctdecl = withBudget(expr, () -> goToInvocationWithFallback(site), () -> NO_CTDECL);
         expr.setCtDecl(ctdecl);
         if (ctdecl == NO_CTDECL) {
             expr.setInferredType(fallbackType(expr));
@@ -267,7 +324,7 @@ public final class Infer {
 
     public @NonNull MethodCtDecl getCompileTimeDecl(MethodCallSite site) {
         if (site.getExpr().getCtDecl() == null) {
-            MethodCtDecl ctdecl = computeCompileTimeDecl(site);
+            MethodCtDecl ctdecl = withBudget(site.getExpr(), () -> computeCompileTimeDecl(site), () -> NO_CTDECL);
             site.getExpr().setCtDecl(ctdecl); // cache it for later
         }
         return site.getExpr().getCtDecl();
@@ -364,6 +421,7 @@ public final class Infer {
 
 
     private @NonNull MethodCtDecl logInference(MethodCallSite site, MethodResolutionPhase phase, JMethodSig m) {
+        budget.step();
         LOG.startInference(m, site, phase);
         @Nullable JMethodSig candidate = instantiateMethodOrCtor(site, phase, m);
         LOG.endInference(candidate);
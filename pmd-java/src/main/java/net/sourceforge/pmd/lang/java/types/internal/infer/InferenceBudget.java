@@ -0,0 +1,95 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types.internal.infer;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+/**
+ * Limits the number of reduction steps spent on the inference of a
+ * single top-level call site. A step is an incorporation action or
+ * the instantiation of a candidate method. Some expressions, like
+ * deeply nested generic calls, take an exponential number of steps,
+ * and would otherwise hold the analysis of their file for minutes.
+ * When the budget is exceeded, the inference is aborted, and the call
+ * site is left unresolved.
+ *
+ * <p>The budget is counted in steps and not in time so that the
+ * results of the analysis don't depend on the load of the machine.
+ * One instance is used by the {@link Infer} of a file, it is not
+ * thread-safe.
+ */
+final class InferenceBudget {
+
+    private final int maxSteps;
+    private boolean running;
+    private long steps;
+
+    /**
+     * Creates a budget.
+     *
+     * @param maxSteps Max number of steps of a call site, zero or
+     *                 negative if there is no limit
+     */
+    InferenceBudget(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Returns true if the inference of a top-level call site is running.
+     * Inference of the call sites it contains shares its budget.
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    /** Starts counting the steps of a top-level call site. */
+    void start() {
+        assert !running : "Already started";
+        running = true;
+        steps = 0;
+    }
+
+    /** Stops counting, and returns the number of steps that were made. */
+    long stop() {
+        running = false;
+        return steps;
+    }
+
+    /**
+     * Counts one step.
+     *
+     * @throws BudgetExceededException If the budget of the running
+     *                                 call site is exceeded
+     */
+    void step() {
+        steps++;
+        if (running && maxSteps > 0 && steps > maxSteps) {
+            throw BudgetExceededException.INSTANCE;
+        }
+    }
+
+    /**
+     * Returns true if the exception was thrown because the budget was
+     * exceeded. The exception may have been wrapped by the type resolution
+     * of a node, if that was requested during the inference.
+     */
+    static boolean isExceeded(Throwable e) {
+        return ExceptionUtils.indexOfThrowable(e, BudgetExceededException.class) >= 0;
+    }
+
+    /**
+     * Aborts the inference of a call site. This is only caught where
+     * the inference of a top-level call site starts, not during overload
+     * resolution, so that the remaining candidates are not tried.
+     */
+    static final class BudgetExceededException extends RuntimeException {
+
+        private static final BudgetExceededException INSTANCE = new BudgetExceededException();
+
+        private BudgetExceededException() {
+            super("Type inference budget exceeded", null, false, false);
+        }
+    }
+}
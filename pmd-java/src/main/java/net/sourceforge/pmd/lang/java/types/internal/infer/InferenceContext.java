@@ -67,6 +67,7 @@ final class InferenceContext {
     private final Deque<IncorporationAction> incorporationActions = new ArrayDeque<>();
     final TypeSystem ts;
     private final SupertypeCheckCache supertypeCheckCache;
+    private final InferenceBudget budget;
     final TypeInferenceLogger logger;
 
     private Substitution mapping = Substitution.EMPTY;
@@ -80,7 +81,7 @@ final class InferenceContext {
      *
      * https://docs.oracle.com/javase/specs/jls/se9/html/jls-18.html#jls-18.1.3
      *
-     * under the purple rectangle.
+     * under the purple rectangle. The steps of this context are not limited.
      *
      * @param ts                  The global type system
      * @param supertypeCheckCache Super type check cache, shared by all
@@ -91,7 +92,7 @@ final class InferenceContext {
      * @param logger              Logger for events related to ivar bounds
      */
     InferenceContext(TypeSystem ts, SupertypeCheckCache supertypeCheckCache, List<JTypeVar> tvars, TypeInferenceLogger logger) {
-        this(ts, supertypeCheckCache, tvars, logger, true);
+        this(ts, supertypeCheckCache, new InferenceBudget(0), tvars, logger, true);
     }
 
     /**
@@ -106,15 +107,18 @@ final class InferenceContext {
      * @param supertypeCheckCache Super type check cache, shared by all
      *                            inference runs in the same compilation unit
      *                            (stored in {@link Infer}).
+     * @param budget              Budget of the current call site, which counts
+     *                            the incorporation steps (stored in {@link Infer}).
      * @param tvars               Initial tvars which will be turned
      *                            into ivars
      * @param logger              Logger for events related to ivar bounds
      * @param addPrimaryBound     Whether to add the primary bound of the vars.
      */
     @SuppressWarnings("PMD.AssignmentToNonFinalStatic") // ctxId
-    InferenceContext(TypeSystem ts, SupertypeCheckCache supertypeCheckCache, List<JTypeVar> tvars, TypeInferenceLogger logger, boolean addPrimaryBound) {
+    InferenceContext(TypeSystem ts, SupertypeCheckCache supertypeCheckCache, InferenceBudget budget, List<JTypeVar> tvars, TypeInferenceLogger logger, boolean addPrimaryBound) {
         this.ts = ts;
         this.supertypeCheckCache = supertypeCheckCache;
+        this.budget = budget;
         this.logger = logger;
         this.id = ctxId++;
 
@@ -143,7 +147,7 @@ final class InferenceContext {
      * are not copied, and parent contexts are not copied.
      */
     public InferenceContext shallowCopy() {
-        final InferenceContext copy = new InferenceContext(ts, supertypeCheckCache, Collections.emptyList(), logger);
+        final InferenceContext copy = new InferenceContext(ts, supertypeCheckCache, budget, Collections.emptyList(), logger, true);
         copy.freeVars.addAll(this.freeVars);
         copy.inferenceVars.addAll(this.inferenceVars);
         copy.incorporationActions.addAll(this.incorporationActions);
@@ -406,6 +410,9 @@ final class InferenceContext {
 
                     // TODO investigate
                 } catch (Exception e) {
+                    if (InferenceBudget.isExceeded(e)) {
+                        throw e;
+                    }
                     e.printStackTrace();
                 } finally {
                     instantiationListeners.remove(entry.getKey());
@@ -478,6 +485,7 @@ final class InferenceContext {
         while (hook != null) {
 
             if (hook.doApplyToInstVar || hook.ivar.getInst() == null) {
+                budget.step();
                 hook.apply(this);
             }
 
@@ -14,7 +14,9 @@ import net.sourceforge.pmd.lang.java.types.JPrimitiveType;
 import net.sourceforge.pmd.lang.java.types.JTypeMirror;
 
 /**
- * Caches some results of subtyping checks.
+ * Caches some results of subtyping checks. This cache lives as long
+ * as the inference of a file. Subtyping checks between types of the
+ * classpath are also cached across files by the type system.
  */
 final class SupertypeCheckCache {
 
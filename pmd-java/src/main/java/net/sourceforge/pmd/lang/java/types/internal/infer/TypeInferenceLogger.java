@@ -9,9 +9,12 @@ import static net.sourceforge.pmd.lang.java.types.internal.InternalMethodTypeItf
 
 import java.io.PrintStream;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -121,6 +124,20 @@ public interface TypeInferenceLogger {
      */
     default void logResolutionFail(ResolutionFailure exception) { }
 
+    /**
+     * Log that the inference of a top-level call site is finished.
+     * This is not called for the call sites nested in it, their
+     * inference is part of the enclosing one.
+     *
+     * @param expr           The call site
+     * @param steps          Number of reduction steps that were made
+     * @param timeNanos      Time spent on the inference, in nanoseconds
+     * @param budgetExceeded Whether the inference was aborted because
+     *                       it exceeded the budget. The call site is then
+     *                       left unresolved.
+     */
+    default void callSiteInferred(ExprMirror expr, long steps, long timeNanos, boolean budgetExceeded) { }
+
     default boolean isNoop() {
         return false;
     }
@@ -328,6 +345,15 @@ public interface TypeInferenceLogger {
             }
         }
 
+        @Override
+        public void callSiteInferred(ExprMirror expr, long steps, long timeNanos, boolean budgetExceeded) {
+            if (budgetExceeded) {
+                startSection("[WARNING] Type inference budget exceeded after " + steps + " steps");
+                printExpr(expr);
+                endSection("");
+            }
+        }
+
         protected void printExpr(ExprMirror expr) {
             String exprText = expr.getLocation().getText().toString();
             exprText = exprText.replaceAll("\\R\\s+", "");
@@ -520,4 +546,130 @@ public interface TypeInferenceLogger {
     }
 
 
+    /**
+     * Collects the top-level call sites whose inference took the longest,
+     * and those that exceeded the budget, without logging anything else.
+     * The instances created by {@link #newInstance()} share the collected
+     * records, so that a single report can be printed at the end of the
+     * analysis with {@link #printReport(PrintStream)}.
+     */
+    class SlowCallSitesLogger implements TypeInferenceLogger {
+
+        private final CallSiteStats stats;
+
+        /**
+         * Create a new logger.
+         *
+         * @param maxReported Max number of call sites listed in each
+         *                    section of the report
+         */
+        public SlowCallSitesLogger(int maxReported) {
+            this(new CallSiteStats(maxReported));
+        }
+
+        private SlowCallSitesLogger(CallSiteStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void callSiteInferred(ExprMirror expr, long steps, long timeNanos, boolean budgetExceeded) {
+            stats.add(expr, steps, timeNanos, budgetExceeded);
+        }
+
+        /**
+         * Print the call sites collected by this instance and all the
+         * instances created from it.
+         */
+        public void printReport(PrintStream out) {
+            stats.printReport(out);
+        }
+
+        @Override
+        public TypeInferenceLogger newInstance() {
+            return new SlowCallSitesLogger(stats);
+        }
+
+        private static final class CallSiteStats {
+
+            private final int maxReported;
+            // min-heap, the fastest of the recorded call sites is evicted first
+            private final PriorityQueue<CallSiteRecord> slowest =
+                new PriorityQueue<>(Comparator.comparingLong(r -> r.timeNanos));
+            private final List<CallSiteRecord> exceeded = new ArrayList<>();
+            private long numCallSites;
+            private long numExceeded;
+
+            CallSiteStats(int maxReported) {
+                this.maxReported = maxReported;
+            }
+
+            synchronized void add(ExprMirror expr, long steps, long timeNanos, boolean budgetExceeded) {
+                numCallSites++;
+                boolean isSlow = slowest.size() < maxReported || timeNanos > slowest.peek().timeNanos;
+                boolean isReportedExceeded = budgetExceeded && exceeded.size() < maxReported;
+                if (budgetExceeded) {
+                    numExceeded++;
+                }
+                if (!isSlow && !isReportedExceeded) {
+                    return;
+                }
+                CallSiteRecord record = new CallSiteRecord(expr, steps, timeNanos, budgetExceeded);
+                if (isSlow) {
+                    slowest.add(record);
+                    if (slowest.size() > maxReported) {
+                        slowest.poll();
+                    }
+                }
+                if (isReportedExceeded) {
+                    exceeded.add(record);
+                }
+            }
+
+            synchronized void printReport(PrintStream out) {
+                out.println("Type inference: " + numCallSites + " top-level call sites, "
+                                + numExceeded + " exceeded the budget");
+                if (!slowest.isEmpty()) {
+                    List<CallSiteRecord> records = new ArrayList<>(slowest);
+                    records.sort(Comparator.comparingLong((CallSiteRecord r) -> r.timeNanos).reversed());
+                    out.println("Slowest call sites:");
+                    records.forEach(r -> out.println(SimpleLogger.BASE_INDENT + r));
+                }
+                if (!exceeded.isEmpty()) {
+                    out.println("Call sites that exceeded the budget (left unresolved):");
+                    exceeded.forEach(r -> out.println(SimpleLogger.BASE_INDENT + r));
+                }
+                out.flush();
+            }
+        }
+
+        private static final class CallSiteRecord {
+
+            private final String location;
+            private final String exprText;
+            private final long steps;
+            private final long timeNanos;
+            private final boolean budgetExceeded;
+
+            CallSiteRecord(ExprMirror expr, long steps, long timeNanos, boolean budgetExceeded) {
+                // don't keep a reference to the node, its file may be large
+                this.location = expr.getLocation().getReportLocation().startPosToStringWithFile();
+                String text = expr.getLocation().getText().toString().replaceAll("\\R\\s+", "");
+                this.exprText = StringUtil.escapeJava(StringUtils.truncate(text, 100));
+                this.steps = steps;
+                this.timeNanos = timeNanos;
+                this.budgetExceeded = budgetExceeded;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("%8.1f ms %10d steps%s   %s   %s",
+                                     timeNanos / 1_000_000.0,
+                                     steps,
+                                     budgetExceeded ? " (budget exceeded)" : "",
+                                     location,
+                                     exprText);
+            }
+        }
+    }
+
 }
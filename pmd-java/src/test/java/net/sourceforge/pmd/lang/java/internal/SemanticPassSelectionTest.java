@@ -0,0 +1,110 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.java.FooRule;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
+import net.sourceforge.pmd.lang.java.ast.ASTVariableId;
+import net.sourceforge.pmd.lang.java.rule.AbstractJavaRulechainRule;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses;
+import net.sourceforge.pmd.lang.java.rule.SemanticPasses.Pass;
+import net.sourceforge.pmd.lang.java.rule.codestyle.ClassNamingConventionsRule;
+import net.sourceforge.pmd.lang.java.rule.codestyle.MethodNamingConventionsRule;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleReference;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+class SemanticPassSelectionTest {
+
+    @Test
+    void testNeededPasses() {
+        Rule classNaming = javaRule(new ClassNamingConventionsRule());
+        Rule methodNaming = javaRule(new MethodNamingConventionsRule());
+
+        assertEquals(EnumSet.noneOf(Pass.class), neededPasses(classNaming));
+        // the annotation of the referenced rule is used
+        assertEquals(EnumSet.of(Pass.OVERRIDE_RESOLUTION), neededPasses(classNaming, new RuleReference(methodNaming, null)));
+        // a rule without the annotation needs everything
+        assertEquals(EnumSet.allOf(Pass.class), neededPasses(classNaming, javaRule(new FooRule())));
+    }
+
+    @Test
+    void testDeferredPassesRunOnDemand() {
+        String code = "class Foo implements Runnable {\n"
+            + "    public void run() {\n"
+            + "        int used = 0;\n"
+            + "        int unused = 1;\n"
+            + "        System.out.println(used);\n"
+            + "    }\n"
+            + "    void other() { }\n"
+            + "}\n";
+
+        PMDConfiguration config = new PMDConfiguration();
+        config.setThreads(0);
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            pmd.addRuleSet(RuleSet.forSingleRule(new OverriddenOrUnusedRule()));
+            pmd.files().addSourceFile(FileId.fromPathLikeString("Foo.java"), code);
+            Report report = pmd.performAnalysisAndCollectReport();
+
+            assertEquals(0, report.getProcessingErrors().size());
+            List<Integer> lines = report.getViolations().stream()
+                                        .map(RuleViolation::getBeginLine)
+                                        .sorted()
+                                        .collect(Collectors.toList());
+            assertEquals(Arrays.asList(2, 4), lines);
+        }
+    }
+
+    private static EnumSet<Pass> neededPasses(Rule... rules) {
+        return EnumSet.copyOf(JavaLanguageProcessor.getNeededPasses(JavaLanguageModule.getInstance(), Arrays.asList(rules)));
+    }
+
+    private static Rule javaRule(Rule rule) {
+        rule.setLanguage(JavaLanguageModule.getInstance());
+        return rule;
+    }
+
+    /** Reports overridden methods and unused local variables, without asking for the passes that find them. */
+    @SemanticPasses({})
+    public static class OverriddenOrUnusedRule extends AbstractJavaRulechainRule {
+
+        public OverriddenOrUnusedRule() {
+            super(ASTMethodDeclaration.class, ASTVariableId.class);
+            setLanguage(JavaLanguageModule.getInstance());
+            setMessage("Overridden or unused");
+        }
+
+        @Override
+        public Object visit(ASTMethodDeclaration node, Object data) {
+            if (node.isOverridden()) {
+                asCtx(data).addViolation(node);
+            }
+            return data;
+        }
+
+        @Override
+        public Object visit(ASTVariableId node, Object data) {
+            if (node.isLocalVariable() && node.getLocalUsages().isEmpty()) {
+                asCtx(data).addViolation(node);
+            }
+            return data;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.lang.java.JavaParsingHelper;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JConstructorSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JExecutableSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JFieldSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JMethodSymbol;
+import net.sourceforge.pmd.lang.java.types.JClassType;
+import net.sourceforge.pmd.lang.java.types.TypeSystem;
+
+class ClassStubCacheTest {
+
+    // classes of the JDK and of jars, which are cached
+    private static final List<String> CLASSES = Arrays.asList(
+        "java.util.HashMap",
+        "java.lang.Thread",
+        "java.lang.Integer",
+        "java.lang.annotation.Retention",
+        "org.pcollections.HashTreePSet",
+        "org.junit.jupiter.api.Test"
+    );
+
+    @TempDir
+    private Path cacheDir;
+
+    @Test
+    void testCachedSymbolsAreEqual() throws IOException {
+        CountingClasspath coldClasspath = new CountingClasspath();
+        List<String> cold = describeClasses(coldClasspath, new ClassStubCache(cacheDir));
+        assertEquals(CLASSES.size(), coldClasspath.opened.get(), "class files should have been read");
+
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            assertTrue(files.anyMatch(f -> f.toString().endsWith(".stubs")), "a cache file should have been written");
+        }
+
+        CountingClasspath warmClasspath = new CountingClasspath();
+        List<String> warm = describeClasses(warmClasspath, new ClassStubCache(cacheDir));
+        assertEquals(0, warmClasspath.opened.get(), "class files should have been read from the cache");
+        assertEquals(cold, warm);
+    }
+
+    @Test
+    void testUnreadableCacheFileIsIgnored() throws IOException {
+        describeClasses(new CountingClasspath(), new ClassStubCache(cacheDir));
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.write(file, new byte[] {1, 2, 3});
+            }
+        }
+
+        CountingClasspath classpath = new CountingClasspath();
+        List<String> described = describeClasses(classpath, new ClassStubCache(cacheDir));
+        assertEquals(CLASSES.size(), classpath.opened.get(), "class files should have been read");
+        assertEquals(describeClasses(new CountingClasspath(), null), described);
+    }
+
+    @Test
+    void testPersistTwiceToTheSameFile() throws IOException {
+        // the classes of the JDK are written to the same file twice by the same cache,
+        // while the first version is mapped
+        ClassStubCache cache = new ClassStubCache(cacheDir);
+        CountingClasspath classpath = new CountingClasspath();
+        TypeSystem ts = new TypeSystem(t -> new AsmSymbolResolver(t, classpath, cache));
+        describe(ts, "java.util.HashMap");
+        cache.persist();
+        describe(ts, "java.lang.Thread");
+        cache.persist();
+        List<String> cold = describeClasses(new CountingClasspath(), cache);
+
+        if (!SystemUtils.IS_OS_WINDOWS) {
+            // on Windows, the mapped generations are only deleted by a later call
+            try (Stream<Path> files = Files.list(cacheDir)) {
+                List<String> names = files.map(f -> f.getFileName().toString()).collect(Collectors.toList());
+                assertEquals(names.size(), names.stream().map(n -> n.substring(0, n.indexOf('.'))).distinct().count(),
+                             "previous generations should have been deleted: " + names);
+            }
+        }
+
+        CountingClasspath warmClasspath = new CountingClasspath();
+        List<String> warm = describeClasses(warmClasspath, new ClassStubCache(cacheDir));
+        assertEquals(0, warmClasspath.opened.get(), "class files should have been read from the cache");
+        assertEquals(cold, warm);
+    }
+
+    private static List<String> describeClasses(Classpath classpath, @Nullable ClassStubCache cache) {
+        TypeSystem ts = new TypeSystem(t -> new AsmSymbolResolver(t, classpath, cache));
+        List<String> result = CLASSES.stream().map(name -> describe(ts, name)).collect(Collectors.toList());
+        if (cache != null) {
+            cache.persist();
+        }
+        return result;
+    }
+
+    private static String describe(TypeSystem ts, String className) {
+        JClassSymbol sym = ts.getClassSymbol(className);
+        assertNotNull(sym, className);
+        JClassType type = (JClassType) ts.declaration(sym);
+        StringBuilder sb = new StringBuilder();
+        sb.append(sym.getModifiers()).append(' ').append(type)
+          .append(" extends ").append(type.getSuperClass())
+          .append(" implements ").append(type.getSuperInterfaces())
+          .append(' ').append(sym.getDeclaredAnnotations())
+          .append(" enclosed by ").append(sym.getEnclosingClass())
+          .append(" members ").append(sym.getDeclaredClasses())
+          .append('\n');
+        for (JFieldSymbol field : sym.getDeclaredFields()) {
+            sb.append(field.getModifiers()).append(' ').append(type.getDeclaredField(field.getSimpleName()))
+              .append(" = ").append(field.getConstValue())
+              .append(' ').append(field.getDeclaredAnnotations())
+              .append('\n');
+        }
+        for (JConstructorSymbol ctor : sym.getConstructors()) {
+            describe(sb, type, ctor);
+        }
+        for (JMethodSymbol method : sym.getDeclaredMethods()) {
+            describe(sb, type, method);
+            sb.append(" default ").append(method.getDefaultAnnotationValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void describe(StringBuilder sb, JClassType type, JExecutableSymbol sym) {
+        sb.append(sym.getModifiers()).append(' ').append(type.getDeclaredMethod(sym))
+          .append(" throws ").append(type.getDeclaredMethod(sym).getThrownExceptions())
+          .append(' ').append(sym.getDeclaredAnnotations());
+        sym.getFormalParameters().forEach(p -> sb.append(' ').append(p.getDeclaredAnnotations()));
+        sb.append('\n');
+    }
+
+    /** Counts the class files that are read. */
+    private static final class CountingClasspath implements Classpath {
+        private final Classpath delegate = Classpath.forClassLoader(JavaParsingHelper.class.getClassLoader());
+        private final AtomicInteger opened = new AtomicInteger();
+
+        @Override
+        public @Nullable InputStream findResource(String resourcePath) {
+            return delegate.findResource(resourcePath);
+        }
+
+        @Override
+        public @Nullable Resource findFingerprintedResource(String resourcePath) {
+            Resource resource = delegate.findFingerprintedResource(resourcePath);
+            if (resource == null) {
+                return null;
+            }
+            return new Resource(resource.getEntryFingerprint()) {
+                @Override
+                public InputStream open() throws IOException {
+                    if (CLASSES.contains(resourcePath.replace('/', '.').replace(".class", ""))) {
+                        opened.incrementAndGet();
+                    }
+                    return resource.open();
+                }
+            };
+        }
+    }
+}
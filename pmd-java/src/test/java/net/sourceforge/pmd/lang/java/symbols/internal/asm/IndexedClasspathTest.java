@@ -0,0 +1,155 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.Classpath.Resource;
+
+class IndexedClasspathTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void testLookupOrderIsPreserved() throws IOException {
+        writeJar(tempDir.resolve("lib.jar"), null, "p/Shared.class", "q/Lib.class");
+        Path jar = writeJar(tempDir.resolve("main.jar"), "lib.jar", "p/A.class", "p/Shared.class");
+        Path dir = Files.createDirectories(tempDir.resolve("classes"));
+        writeFile(dir, "p/A.class");
+        writeFile(dir, "r/Dir.class");
+
+        try (ClasspathClassLoader loader = newLoader(dir, jar);
+             IndexedClasspath classpath = IndexedClasspath.create(loader, null)) {
+            assertNotNull(classpath);
+
+            assertEquals("classes/p/A.class", read(classpath, "p/A.class"));
+            // the manifest Class-Path comes right after its jar
+            assertEquals("main.jar/p/Shared.class", read(classpath, "p/Shared.class"));
+            assertEquals("lib.jar/q/Lib.class", read(classpath, "q/Lib.class"));
+            assertEquals("classes/r/Dir.class", read(classpath, "r/Dir.class"));
+
+            assertNull(classpath.findResource("p/Missing.class"));
+            assertNull(classpath.findResource("missing/A.class"));
+            // found by the parent
+            assertNotNull(classpath.findResource("java/lang/Object.class"));
+            assertNotNull(classpath.findResource("org/junit/jupiter/api/Test.class"));
+
+            assertSameAsClassLoader(loader, classpath, "p/A.class", "p/Shared.class", "q/Lib.class", "r/Dir.class",
+                                    "p/Missing.class", "java/lang/Object.class", "META-INF/MANIFEST.MF");
+        }
+    }
+
+    @Test
+    void testPersistedIndexIsReused() throws IOException {
+        Path indexDir = tempDir.resolve("index");
+        Path jar = writeJar(tempDir.resolve("main.jar"), null, "p/A.class");
+
+        try (ClasspathClassLoader loader = newLoader(jar);
+             IndexedClasspath classpath = IndexedClasspath.create(loader, indexDir)) {
+            assertNotNull(classpath);
+            assertEquals("main.jar/p/A.class", read(classpath, "p/A.class"));
+            assertSameAsClassLoader(loader, classpath, "p/A.class");
+        }
+        try (Stream<Path> files = Files.list(indexDir)) {
+            assertTrue(files.anyMatch(f -> f.toString().endsWith(".index")), "an index should have been written");
+        }
+
+        try (ClasspathClassLoader loader = newLoader(jar);
+             IndexedClasspath classpath = IndexedClasspath.create(loader, indexDir)) {
+            assertNotNull(classpath);
+            assertEquals("main.jar/p/A.class", read(classpath, "p/A.class"));
+            assertSameAsClassLoader(loader, classpath, "p/A.class");
+        }
+
+        // the index of a jar that changed is not reused
+        writeJar(jar, null, "p/A.class", "p/B.class");
+        try (ClasspathClassLoader loader = newLoader(jar);
+             IndexedClasspath classpath = IndexedClasspath.create(loader, indexDir)) {
+            assertNotNull(classpath);
+            assertEquals("main.jar/p/B.class", read(classpath, "p/B.class"));
+            assertSameAsClassLoader(loader, classpath, "p/A.class", "p/B.class");
+        }
+    }
+
+    private static void assertSameAsClassLoader(ClassLoader loader, Classpath indexed, String... resourcePaths) throws IOException {
+        Classpath expected = Classpath.forClassLoader(loader);
+        for (String path : resourcePaths) {
+            Resource expectedResource = expected.findFingerprintedResource(path);
+            Resource actualResource = indexed.findFingerprintedResource(path);
+            if (expectedResource == null) {
+                assertNull(actualResource, path);
+                continue;
+            }
+            assertNotNull(actualResource, path);
+            assertEquals(expectedResource.getEntryFingerprint(), actualResource.getEntryFingerprint(), path);
+            try (InputStream expectedStream = expectedResource.open();
+                 InputStream actualStream = actualResource.open()) {
+                assertArrayEquals(IOUtil.toByteArray(expectedStream), IOUtil.toByteArray(actualStream), path);
+            }
+        }
+    }
+
+    private static ClasspathClassLoader newLoader(Path... entries) throws IOException {
+        List<File> files = Arrays.stream(entries).map(Path::toFile).collect(Collectors.toList());
+        return new ClasspathClassLoader(files, IndexedClasspathTest.class.getClassLoader());
+    }
+
+    private static @Nullable String read(Classpath classpath, String resourcePath) throws IOException {
+        try (InputStream stream = classpath.findResource(resourcePath)) {
+            return stream == null ? null : IOUtil.readToString(stream, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Writes a jar whose files contain their own name, prefixed with the name of the jar. */
+    private static Path writeJar(Path jar, @Nullable String manifestClassPath, String... files) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (manifestClassPath != null) {
+            manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, manifestClassPath);
+        }
+        try (OutputStream os = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(os, manifest)) {
+            for (String file : files) {
+                out.putNextEntry(new ZipEntry(file));
+                out.write((jar.getFileName() + "/" + file).getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static void writeFile(Path dir, String file) throws IOException {
+        Path path = dir.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, (dir.getFileName() + "/" + file).getBytes(StandardCharsets.UTF_8));
+    }
+}
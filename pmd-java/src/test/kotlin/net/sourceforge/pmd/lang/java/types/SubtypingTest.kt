@@ -9,6 +9,7 @@ import io.kotest.assertions.withClue
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.inspectors.forNone
 import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
 import io.kotest.property.Exhaustive
 import io.kotest.property.checkAll
 import io.kotest.property.exhaustive.ints
@@ -354,5 +355,36 @@ class SubtypingTest : IntelliMarker, FunSpec({
 
     }
 
+    test("Subtyping relations of classpath types are cached") {
+        val ts = TypeSystem.usingClassLoaderClasspath(javaClass.classLoader)
+        val cache = ts.relationCache
+        with(TypeDslOf(ts)) {
+            val sub = java.util.ArrayList::class[ts.STRING]
+            val sup = java.util.Collection::class[`?` extends java.lang.CharSequence::class]
+
+            cache.takeNumQueries()
+            cache.takeNumHits()
+            repeat(3) {
+                sub.isSubtypeOf(sup) shouldBe true
+                sup.isSubtypeOf(sub) shouldBe false
+            }
+            cache.takeNumQueries() shouldBe 6L
+            cache.takeNumHits() shouldBe 4L
+
+            sub.superTypeSet shouldBeSameInstanceAs sub.superTypeSet
+        }
+    }
 
+    test("Subtyping relations of types declared in sources are not cached") {
+        val foo = javaParser.parse("class Foo extends java.util.ArrayList<String> {}").firstTypeSignature()
+        val cache = foo.typeSystem.relationCache
+
+        with(TypeDslOf(foo.typeSystem)) {
+            val sup = java.util.Collection::class[`?` extends java.lang.CharSequence::class]
+            cache.takeNumQueries()
+            foo.isSubtypeOf(sup) shouldBe true
+            foo.isSubtypeOf(sup) shouldBe true
+            cache.takeNumQueries() shouldBe 0L
+        }
+    }
 })
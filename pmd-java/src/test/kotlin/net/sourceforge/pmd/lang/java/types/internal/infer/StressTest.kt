@@ -8,15 +8,19 @@ package net.sourceforge.pmd.lang.java.types.internal.infer
 import com.github.oowekyala.treeutils.matchers.TreeNodeWrapper
 import io.kotest.matchers.shouldBe
 import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.string.shouldContain
 import net.sourceforge.pmd.lang.ast.Node
 import net.sourceforge.pmd.lang.test.ast.NodeSpec
 import net.sourceforge.pmd.lang.test.ast.shouldBeA
 import net.sourceforge.pmd.lang.java.ast.*
+import net.sourceforge.pmd.lang.java.internal.JavaLanguageProperties
 import net.sourceforge.pmd.lang.java.types.JClassType
 import net.sourceforge.pmd.lang.java.types.shouldHaveType
 import net.sourceforge.pmd.lang.java.types.testdata.BoolLogic
 import net.sourceforge.pmd.lang.java.types.testdata.TypeInferenceTestCases
 import net.sourceforge.pmd.lang.java.types.typeDsl
+import java.io.ByteArrayOutputStream
+import java.io.PrintStream
 import java.util.*
 import kotlin.system.measureTimeMillis
 import kotlin.test.assertFalse
@@ -151,6 +155,36 @@ class StressTest : ProcessorTestSpec({
             }
     }
 
+    parserTest("Inference of a call site is aborted when it exceeds its budget") {
+        val logger = TypeInferenceLogger.SlowCallSitesLogger(5)
+        val acu = parser.withLanguageProperties {
+            (this as JavaLanguageProperties).setProperty(JavaLanguageProperties.TYPE_INFERENCE_BUDGET, 20)
+        }.logTypeInference(logger).parse(
+        """
+        class C<U> {
+            U fu;
+            C() {}
+            C(C<U> other) { this.fu = other.fu; }
+            C(U fu) { this.fu = fu; }
+
+            static <U> C<U> m(C<U> src) { return new C<U>(src); }
+
+            public static void main(String argv[]) {
+                C<String> c6 = m(new C<>(m(new C<>(m(new C<>(m(new C<>(m(new C<>(m(new C<>())))))))))));
+            }
+        }
+        """
+        )
+
+        val init = acu.descendants(ASTLocalVariableDeclaration::class.java).firstOrThrow().varIds[0]!!.initializer!!
+        // the call site is left unresolved instead
+        init.typeMirror shouldBe init.typeSystem.UNKNOWN
+
+        val report = ByteArrayOutputStream()
+        PrintStream(report).use { logger.printReport(it) }
+        report.toString() shouldContain "(budget exceeded)"
+    }
+
     parserTest("OpenJDK bug 8225508: Compiler OOM Error with Type Inference Hierarchy") {
         // https://bugs.openjdk.java.net/browse/JDK-8225508
 
@@ -20,4 +20,9 @@ public class JuliaCpdLexer extends AntlrCpdLexer {
     protected Lexer getLexerForSource(CharStream charStream) {
         return new JuliaLexer(charStream);
     }
+
+    @Override
+    protected boolean isLexerReusable() {
+        return true; // the grammar has no lexer members
+    }
 }
@@ -25,6 +25,11 @@ public class KotlinCpdLexer extends AntlrCpdLexer {
         return new KotlinLexer(charStream);
     }
 
+    @Override
+    protected boolean isLexerReusable() {
+        return true; // the grammar has no lexer members
+    }
+
     @Override
     protected TokenManager<AntlrToken> filterTokenStream(TokenManager<AntlrToken> tokenManager) {
         return new KotlinTokenFilter(tokenManager);
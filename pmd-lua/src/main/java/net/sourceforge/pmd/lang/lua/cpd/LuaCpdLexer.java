@@ -33,6 +33,11 @@ public class LuaCpdLexer extends AntlrCpdLexer {
         return new LuaLexer(charStream);
     }
 
+    @Override
+    protected boolean isLexerReusable() {
+        return true; // the grammar has no lexer members
+    }
+
     @Override
     protected TokenManager<AntlrToken> filterTokenStream(TokenManager<AntlrToken> tokenManager) {
         return new LuaTokenFilter(tokenManager, ignoreLiteralSequences);
@@ -21,4 +21,9 @@ public class SwiftCpdLexer extends AntlrCpdLexer {
     protected Lexer getLexerForSource(final CharStream charStream) {
         return new SwiftLexer(charStream);
     }
+
+    @Override
+    protected boolean isLexerReusable() {
+        return true; // the grammar has no lexer members
+    }
 }
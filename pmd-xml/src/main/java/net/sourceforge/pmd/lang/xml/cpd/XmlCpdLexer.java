@@ -19,4 +19,9 @@ public class XmlCpdLexer extends AntlrCpdLexer {
     protected Lexer getLexerForSource(CharStream charStream) {
         return new XMLLexer(charStream);
     }
+
+    @Override
+    protected boolean isLexerReusable() {
+        return true; // the grammar has no lexer members
+    }
 }